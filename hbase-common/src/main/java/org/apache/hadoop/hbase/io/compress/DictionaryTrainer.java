@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.compress;
+
+import java.io.IOException;
+import java.util.List;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Trains compression dictionaries from samples of the data to be compressed, for codecs that can
+ * load a dictionary with {@link CanReinit#reinit}, such as ZStandard. Implementations live in the
+ * compression modules and are instantiated by name, so they must have a no-argument constructor.
+ */
+@InterfaceAudience.Private
+public interface DictionaryTrainer {
+
+  /**
+   * Trains a dictionary.
+   * @param samples the samples to train the dictionary with
+   * @param maxSize the maximum size of the dictionary, in bytes
+   * @return the dictionary, in the format the codec loads
+   */
+  byte[] train(List<byte[]> samples, int maxSize) throws IOException;
+
+  /** Returns the identifier the codec records for the given dictionary */
+  int getDictionaryId(byte[] dictionary);
+
+}
@@ -52,6 +52,11 @@ public class FastDiffDeltaEncoder extends BufferedDataBlockEncoder {
   static final int FLAG_SAME_VALUE_LENGTH = 1 << 4;
   static final int FLAG_SAME_TYPE = 1 << 5;
   static final int FLAG_SAME_VALUE = 1 << 6;
+  /**
+   * Set on a cell written without reference to the previous cell, so decoding can start there. See
+   * {@link RowIndexFastDiffEncoder}.
+   */
+  static final int FLAG_RESTART = 1 << 7;
 
   private static class FastDiffCompressionState extends CompressionState {
     byte[] timestamp = new byte[KeyValue.TIMESTAMP_SIZE];
@@ -117,7 +122,7 @@ public class FastDiffDeltaEncoder extends BufferedDataBlockEncoder {
 
     int kvPos = out.position();
 
-    if (!state.isFirst()) {
+    if (!state.isFirst() && (flag & FLAG_RESTART) == 0) {
       // copy the prefix
       int common;
       int prevOffset;
@@ -217,14 +222,25 @@ public class FastDiffDeltaEncoder extends BufferedDataBlockEncoder {
   @Override
   public int internalEncode(Cell cell, HFileBlockDefaultEncodingContext encodingContext,
     DataOutputStream out) throws IOException {
+    return internalEncode(cell, encodingContext, out, false);
+  }
+
+  /**
+   * Encodes a cell. When restart is set the cell is written in full, as the first cell of a block
+   * is, and flagged with {@link #FLAG_RESTART}.
+   */
+  int internalEncode(Cell cell, HFileBlockDefaultEncodingContext encodingContext,
+    DataOutputStream out, boolean restart) throws IOException {
     EncodingState state = encodingContext.getEncodingState();
-    int size = compressSingleKeyValue(out, cell, state.prevCell);
+    int size = restart
+      ? compressSingleKeyValue(out, cell, null, FLAG_RESTART)
+      : compressSingleKeyValue(out, cell, state.prevCell, 0);
     size += afterEncodingKeyValue(cell, out, encodingContext);
     state.prevCell = cell;
     return size;
   }
 
-  private int compressSingleKeyValue(DataOutputStream out, Cell cell, Cell prevCell)
+  private int compressSingleKeyValue(DataOutputStream out, Cell cell, Cell prevCell, int firstFlag)
     throws IOException {
     int flag = 0; // Do not use more bits than will fit into a byte
     int kLength = KeyValueUtil.keyLength(cell);
@@ -232,7 +248,7 @@ public class FastDiffDeltaEncoder extends BufferedDataBlockEncoder {
 
     if (prevCell == null) {
       // copy the key, there is no common prefix with none
-      out.write(flag);
+      out.write(firstFlag);
       ByteBufferUtils.putCompressedInt(out, kLength);
       ByteBufferUtils.putCompressedInt(out, vLength);
       ByteBufferUtils.putCompressedInt(out, 0);
@@ -372,15 +388,17 @@ public class FastDiffDeltaEncoder extends BufferedDataBlockEncoder {
     return new FastDiffSeekerStateBufferedEncodedSeeker(decodingCtx);
   }
 
-  private static class FastDiffSeekerStateBufferedEncodedSeeker
+  static class FastDiffSeekerStateBufferedEncodedSeeker
     extends BufferedEncodedSeeker<FastDiffSeekerState> {
 
-    private FastDiffSeekerStateBufferedEncodedSeeker(HFileBlockDecodingContext decodingCtx) {
+    FastDiffSeekerStateBufferedEncodedSeeker(HFileBlockDecodingContext decodingCtx) {
       super(decodingCtx);
     }
 
-    private void decode(boolean isFirst) {
+    private void decode(boolean first) {
       byte flag = currentBuffer.get();
+      // A restart cell does not depend on the previous cell, decode it as a first cell
+      boolean isFirst = first || (flag & FLAG_RESTART) != 0;
       if ((flag & FLAG_SAME_KEY_LENGTH) == 0) {
         if (!isFirst) {
           System.arraycopy(current.keyBuffer,
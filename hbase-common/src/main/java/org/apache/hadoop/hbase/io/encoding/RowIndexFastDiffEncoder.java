@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.hadoop.hbase.ByteBufferKeyOnlyKeyValue;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * {@link FastDiffDeltaEncoder} with restart points, so a seek can binary search to a row like
+ * {@link RowIndexCodecV1} does and only decode the cells after the closest restart point.
+ * <p>
+ * The first cell of a row is written in full and flagged with
+ * {@link FastDiffDeltaEncoder#FLAG_RESTART} once at least {@link #RESTART_INTERVAL} cells were
+ * written since the previous restart point. The other cells are delta encoded against the previous
+ * cell as in FAST_DIFF. Format: FAST_DIFF encoded cells, integer: offset of restart 1 ... integer:
+ * offset of restart n, integer: n. The offsets are relative to the first cell, which is the
+ * implicit restart 0.
+ * <p>
+ * Compressed tags use a dictionary built from all the previous cells of the block, so no restart
+ * points are written when tag compression is on and seeks scan from the start of the block.
+ */
+@InterfaceAudience.Private
+public class RowIndexFastDiffEncoder extends FastDiffDeltaEncoder {
+
+  /** Minimum number of cells between two restart points */
+  static final int RESTART_INTERVAL = 16;
+
+  private static class RowIndexFastDiffEncodingState extends EncodingState {
+    /** Position in the output stream of the first cell */
+    private final int cellsStart;
+    private final boolean restartsEnabled;
+    private final ByteArrayOutputStream restarts = new ByteArrayOutputStream(64 * 4);
+    private int cellsSinceRestart = 0;
+
+    RowIndexFastDiffEncodingState(int cellsStart, boolean restartsEnabled) {
+      this.cellsStart = cellsStart;
+      this.restartsEnabled = restartsEnabled;
+    }
+  }
+
+  @Override
+  public void startBlockEncoding(HFileBlockEncodingContext blkEncodingCtx, DataOutputStream out)
+    throws IOException {
+    super.startBlockEncoding(blkEncodingCtx, out);
+    blkEncodingCtx.setEncodingState(new RowIndexFastDiffEncodingState(out.size(),
+      !blkEncodingCtx.getHFileContext().isCompressTags()));
+  }
+
+  @Override
+  public void encode(Cell cell, HFileBlockEncodingContext encodingCtx, DataOutputStream out)
+    throws IOException {
+    RowIndexFastDiffEncodingState state =
+      (RowIndexFastDiffEncodingState) encodingCtx.getEncodingState();
+    int posBeforeEncode = out.size();
+    boolean restart =
+      state.restartsEnabled && state.prevCell != null && state.cellsSinceRestart >= RESTART_INTERVAL
+        && !CellUtil.matchingRows(state.prevCell, cell);
+    int extraBytesForRestart = 0;
+    if (restart) {
+      state.restarts.writeInt(posBeforeEncode - state.cellsStart);
+      state.cellsSinceRestart = 0;
+      extraBytesForRestart = Bytes.SIZEOF_INT;
+    }
+    state.cellsSinceRestart++;
+    int encodedKvSize =
+      internalEncode(cell, (HFileBlockDefaultEncodingContext) encodingCtx, out, restart);
+    state.postCellEncode(encodedKvSize, out.size() - posBeforeEncode + extraBytesForRestart);
+  }
+
+  @Override
+  public void endBlockEncoding(HFileBlockEncodingContext encodingCtx, DataOutputStream out,
+    byte[] uncompressedBytesWithHeader) throws IOException {
+    RowIndexFastDiffEncodingState state =
+      (RowIndexFastDiffEncodingState) encodingCtx.getEncodingState();
+    // Fills in the unencoded size before appending the restart points, which may move the bytes
+    // of the underlying stream to a new array.
+    Bytes.putInt(uncompressedBytesWithHeader,
+      HConstants.HFILEBLOCK_HEADER_SIZE + DataBlockEncoding.ID_SIZE,
+      state.getUnencodedDataSizeWritten());
+    out.write(state.restarts.getBuffer(), 0, state.restarts.size());
+    out.writeInt(state.restarts.size() / Bytes.SIZEOF_INT);
+    postEncoding(encodingCtx);
+  }
+
+  @Override
+  public ByteBuffer decodeKeyValues(DataInputStream source, HFileBlockDecodingContext decodingCtx)
+    throws IOException {
+    ByteBuffer block = ByteBufferUtils.drainInputStreamToBuffer(source);
+    int numRestarts = block.getInt(block.limit() - Bytes.SIZEOF_INT);
+    int length = block.remaining() - (numRestarts + 1) * Bytes.SIZEOF_INT;
+    return super.decodeKeyValues(
+      new DataInputStream(
+        new ByteArrayInputStream(block.array(), block.arrayOffset() + block.position(), length)),
+      decodingCtx);
+  }
+
+  @Override
+  public String toString() {
+    return RowIndexFastDiffEncoder.class.getSimpleName();
+  }
+
+  @Override
+  public EncodedSeeker createSeeker(HFileBlockDecodingContext decodingCtx) {
+    return new RowIndexFastDiffSeeker(decodingCtx);
+  }
+
+  private static class RowIndexFastDiffSeeker extends FastDiffSeekerStateBufferedEncodedSeeker {
+    private final CellComparator comparator;
+    private final ByteBufferKeyOnlyKeyValue restartKey = new ByteBufferKeyOnlyKeyValue();
+    private ByteBuff block;
+    private int cellsStart;
+    private int restartsStart;
+    private int numRestarts;
+
+    private RowIndexFastDiffSeeker(HFileBlockDecodingContext decodingCtx) {
+      super(decodingCtx);
+      this.comparator = decodingCtx.getHFileContext().getCellComparator();
+    }
+
+    @Override
+    public void setCurrentBuffer(ByteBuff buffer) {
+      block = buffer;
+      cellsStart = buffer.position() + Bytes.SIZEOF_INT;
+      numRestarts = buffer.getInt(buffer.limit() - Bytes.SIZEOF_INT);
+      restartsStart = buffer.limit() - (numRestarts + 1) * Bytes.SIZEOF_INT;
+      ByteBuff cells = buffer.duplicate();
+      cells.limit(restartsStart);
+      super.setCurrentBuffer(cells);
+    }
+
+    private int getRestartPosition(int index) {
+      return cellsStart + block.getInt(restartsStart + index * Bytes.SIZEOF_INT);
+    }
+
+    private int compareRestartKey(Cell seekCell, int index) {
+      // A restart cell is written in full: flag, key length, value length, a zero common prefix
+      // length and the key.
+      currentBuffer.position(getRestartPosition(index) + Bytes.SIZEOF_BYTE);
+      int keyLength = ByteBuff.readCompressedInt(currentBuffer);
+      ByteBuff.readCompressedInt(currentBuffer);
+      ByteBuff.readCompressedInt(currentBuffer);
+      currentBuffer.asSubByteBuffer(currentBuffer.position(), keyLength, tmpPair);
+      restartKey.setKey(tmpPair.getFirst(), tmpPair.getSecond(), keyLength);
+      return PrivateCellUtil.compareKeyIgnoresMvcc(comparator, seekCell, restartKey);
+    }
+
+    /**
+     * Returns the last restart point before the seek key, or at it when not seeking before, or -1
+     * if the seek key sorts before restart 1.
+     */
+    private int findRestart(Cell seekCell, boolean seekBefore) {
+      int low = 0;
+      int high = numRestarts - 1;
+      int found = -1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int comp = compareRestartKey(seekCell, mid);
+        if (comp > 0 || (comp == 0 && !seekBefore)) {
+          found = mid;
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return found;
+    }
+
+    @Override
+    public int seekToKeyInBlock(Cell seekCell, boolean seekBefore) {
+      if (numRestarts > 0) {
+        int position = currentBuffer.position();
+        int restart = findRestart(seekCell, seekBefore);
+        // Only move forward, a reseek may already be past the restart point
+        if (restart >= 0 && getRestartPosition(restart) >= current.nextKvOffset) {
+          currentBuffer.position(getRestartPosition(restart));
+          decodeNext();
+          current.setKey(current.keyBuffer, current.memstoreTS);
+        } else {
+          currentBuffer.position(position);
+        }
+      }
+      return super.seekToKeyInBlock(seekCell, seekBefore);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.compress;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseCommonTestingUtil;
+import org.apache.hadoop.hbase.testclassification.MiscTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ MiscTests.class, SmallTests.class })
+public class TestDictionaryCache {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestDictionaryCache.class);
+
+  private static final HBaseCommonTestingUtil TEST_UTIL = new HBaseCommonTestingUtil();
+
+  /**
+   * Test that every dictionary is loaded from its own path, not from the first one the cache was
+   * asked for.
+   */
+  @Test
+  public void testLoadEachPath() throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    File dir = new File(TEST_UTIL.getDataTestDir().toString());
+    dir.mkdirs();
+    byte[][] contents = { Bytes.toBytes("first dictionary"), Bytes.toBytes("second dictionary") };
+    for (int i = 0; i < contents.length; i++) {
+      File file = new File(dir, "dict" + i);
+      Files.write(file.toPath(), contents[i]);
+      assertArrayEquals(contents[i], DictionaryCache.getDictionary(conf, file.toURI().toString()));
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.compress.zstd;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import java.io.IOException;
+import java.util.List;
+import org.apache.hadoop.hbase.io.compress.DictionaryTrainer;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Trains ZStandard dictionaries with zstd-jni. The dictionaries can be loaded by {@link ZstdCodec}
+ * through {@link ZstdCodec#ZSTD_DICTIONARY_KEY}.
+ */
+@InterfaceAudience.Private
+public class ZstdDictionaryTrainer implements DictionaryTrainer {
+
+  @Override
+  public byte[] train(List<byte[]> samples, int maxSize) throws IOException {
+    long samplesSize = 0;
+    for (byte[] sample : samples) {
+      samplesSize += sample.length;
+    }
+    if (samplesSize > Integer.MAX_VALUE) {
+      throw new IOException("Too many samples to train a dictionary, size=" + samplesSize);
+    }
+    ZstdDictTrainer trainer = new ZstdDictTrainer((int) samplesSize, maxSize);
+    for (byte[] sample : samples) {
+      trainer.addSample(sample);
+    }
+    try {
+      return trainer.trainSamples();
+    } catch (ZstdException e) {
+      throw new IOException("Failed to train a dictionary with " + samples.size()
+        + " samples of " + samplesSize + " bytes", e);
+    }
+  }
+
+  @Override
+  public int getDictionaryId(byte[] dictionary) {
+    return ZstdCodec.getDictionaryId(dictionary);
+  }
+
+}
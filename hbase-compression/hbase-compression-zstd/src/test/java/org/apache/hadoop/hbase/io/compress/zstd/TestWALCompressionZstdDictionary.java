@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.compress.zstd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellBuilderFactory;
+import org.apache.hadoop.hbase.CellBuilderType;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.compress.DictionaryCache;
+import org.apache.hadoop.hbase.master.cleaner.WALValueDictionaryCleaner;
+import org.apache.hadoop.hbase.regionserver.MultiVersionConcurrencyControl;
+import org.apache.hadoop.hbase.regionserver.wal.CompressionContext;
+import org.apache.hadoop.hbase.regionserver.wal.WALValueDictionaries;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.CommonFSUtils;
+import org.apache.hadoop.hbase.wal.AbstractFSWALProvider;
+import org.apache.hadoop.hbase.wal.CompressedWALTestBase;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.apache.hadoop.hbase.wal.WALEdit;
+import org.apache.hadoop.hbase.wal.WALFactory;
+import org.apache.hadoop.hbase.wal.WALKeyImpl;
+import org.apache.hadoop.hbase.wal.WALStreamReader;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestWALCompressionZstdDictionary extends CompressedWALTestBase {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestWALCompressionZstdDictionary.class);
+
+  @Rule
+  public TestName name = new TestName();
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    conf.set(Compression.ZSTD_CODEC_CLASS_KEY, ZstdCodec.class.getCanonicalName());
+    Compression.Algorithm.ZSTD.reload(conf);
+    conf.setBoolean(HConstants.ENABLE_WAL_COMPRESSION, true);
+    conf.setBoolean(CompressionContext.ENABLE_WAL_VALUE_COMPRESSION, true);
+    conf.set(CompressionContext.WAL_VALUE_COMPRESSION_TYPE, Compression.Algorithm.ZSTD.getName());
+    conf.setBoolean(CompressionContext.ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY, true);
+    conf.setInt(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_SIZE, 4 * 1024);
+    conf.setInt(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_SAMPLES_SIZE, 64 * 1024);
+    conf.setLong(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_RETRAIN_INTERVAL, 0);
+    TEST_UTIL.startMiniDFSCluster(3);
+    conf.set(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_DIR,
+      TEST_UTIL.getDataTestDirOnTestFS("walValueDictionaries").toString());
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    TEST_UTIL.shutdownMiniCluster();
+  }
+
+  private static WALEdit createEdit(byte[] family, int i) {
+    // small values sharing their structure, as the ones a dictionary helps with
+    byte[] value = Bytes.toBytes(String.format(
+      "{\"id\":%d,\"name\":\"user-%d\",\"email\":\"user-%d@example.com\",\"active\":%b}", i,
+      i * 7, i * 13, i % 3 == 0));
+    WALEdit edit = new WALEdit();
+    edit.add(CellBuilderFactory.create(CellBuilderType.SHALLOW_COPY).setType(Cell.Type.Put)
+      .setRow(Bytes.toBytes(i)).setFamily(family).setQualifier(family).setValue(value).build());
+    return edit;
+  }
+
+  private void writeSamples(TableName tableName) throws Exception {
+    NavigableMap<byte[], Integer> scopes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    scopes.put(tableName.getName(), 0);
+    RegionInfo regionInfo = RegionInfoBuilder.newBuilder(tableName).build();
+    WALFactory wals = new WALFactory(TEST_UTIL.getConfiguration(), tableName.getNameAsString());
+    WAL wal = wals.getWAL(regionInfo);
+    MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    byte[] family = Bytes.toBytes("family");
+    for (int i = 0; i < 2000; i++) {
+      wal.appendData(regionInfo, new WALKeyImpl(regionInfo.getEncodedNameAsBytes(), tableName,
+        System.currentTimeMillis(), mvcc, scopes), createEdit(family, i));
+    }
+    wal.sync();
+    // the next writer trains a dictionary from the values sampled
+    wal.rollWriter();
+    wals.shutdown();
+  }
+
+  private Path getDictionary(TableName tableName) throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    writeSamples(TableName.valueOf(tableName.getNameAsString() + "_samples"));
+    Path dir = new Path(conf.get(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_DIR));
+    FileSystem fs = dir.getFileSystem(conf);
+    // skip the dictionaries still being written
+    PathFilter filter = p -> !p.getName().startsWith(".");
+    TEST_UTIL.waitFor(30000, () -> fs.exists(dir) && fs.listStatus(dir, filter).length > 0);
+    FileStatus[] dictionaries = fs.listStatus(dir, filter);
+    assertEquals(1, dictionaries.length);
+    return new Path(dir, dictionaries[0].getPath().getName());
+  }
+
+  @Test
+  public void test() throws Exception {
+    TableName tableName = TableName.valueOf(name.getMethodName().replaceAll("[^a-zA-Z0-9]", "_"));
+    Path dictionary = getDictionary(tableName);
+
+    // the WAL written and read back by doTest are compressed with the dictionary
+    doTest(tableName);
+    assertTrue("Dictionary was not loaded", DictionaryCache.contains(dictionary.toString()));
+  }
+
+  @Test
+  public void testReadWithOtherConfAndClean() throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    TableName tableName = TableName.valueOf(name.getMethodName().replaceAll("[^a-zA-Z0-9]", "_"));
+    Path dictionary = getDictionary(tableName);
+    FileSystem fs = dictionary.getFileSystem(conf);
+
+    NavigableMap<byte[], Integer> scopes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    scopes.put(tableName.getName(), 0);
+    RegionInfo regionInfo = RegionInfoBuilder.newBuilder(tableName).build();
+    WALFactory wals = new WALFactory(conf, tableName.getNameAsString());
+    WAL wal = wals.getWAL(regionInfo);
+    wal.appendData(regionInfo, new WALKeyImpl(regionInfo.getEncodedNameAsBytes(), tableName,
+      System.currentTimeMillis(), new MultiVersionConcurrencyControl(), scopes),
+      createEdit(Bytes.toBytes("family"), 0));
+    wal.sync();
+    Path walPath = AbstractFSWALProvider.getCurrentFileName(wal);
+    wals.shutdown();
+    assertEquals(dictionary, WALValueDictionaries.readDictionary(fs, walPath));
+
+    // the header tells the reader where the dictionary is, whatever its configuration
+    Configuration otherConf = new Configuration(conf);
+    otherConf.set(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_DIR,
+      TEST_UTIL.getDataTestDirOnTestFS("otherWalValueDictionaries").toString());
+    WALFactory otherWals = new WALFactory(otherConf, tableName.getNameAsString() + "_other");
+    try (WALStreamReader reader = otherWals.createStreamReader(fs, walPath)) {
+      assertTrue(reader.next(new WAL.Entry()) != null);
+    } finally {
+      otherWals.close();
+    }
+
+    Configuration cleanerConf = new Configuration(conf);
+    cleanerConf.setLong(WALValueDictionaryCleaner.TTL_CONF_KEY, 0);
+    WALValueDictionaryCleaner cleaner = new WALValueDictionaryCleaner();
+    cleaner.setConf(cleanerConf);
+    // kept while a WAL is compressed with it
+    cleaner.preClean();
+    assertTrue(fs.exists(dictionary));
+    Path walRootDir = CommonFSUtils.getWALRootDir(conf);
+    fs.delete(new Path(walRootDir, HConstants.HREGION_LOGDIR_NAME), true);
+    fs.delete(new Path(walRootDir, HConstants.HREGION_OLDLOGDIR_NAME), true);
+    cleaner.preClean();
+    assertFalse(fs.exists(dictionary));
+
+    // the next WAL compressed with the dictionary writes it back
+    wals = new WALFactory(conf, tableName.getNameAsString() + "_next");
+    wals.getWAL(regionInfo);
+    wals.shutdown();
+    assertTrue(fs.exists(dictionary));
+  }
+}
@@ -22,9 +22,12 @@ import io.opentelemetry.context.Scope;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -36,6 +39,7 @@ import net.spy.memcached.ConnectionFactoryBuilder;
 import net.spy.memcached.FailureMode;
 import net.spy.memcached.MemcachedClient;
 import net.spy.memcached.OperationTimeoutException;
+import net.spy.memcached.internal.BulkFuture;
 import net.spy.memcached.transcoders.Transcoder;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
@@ -43,6 +47,7 @@ import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.nio.SingleByteBuff;
 import org.apache.hadoop.hbase.trace.TraceUtil;
 import org.apache.hadoop.hbase.util.Addressing;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
@@ -77,11 +82,22 @@ public class MemcachedBlockCache implements BlockCache {
   public static final String MEMCACHED_TIMEOUT_KEY = "hbase.cache.memcached.timeout";
   public static final String MEMCACHED_OPTIMEOUT_KEY = "hbase.cache.memcached.optimeout";
   public static final String MEMCACHED_OPTIMIZE_KEY = "hbase.cache.memcached.spy.optimze";
+  // Config keys for the bulk lookups of getBlocks: the most keys fetched by one multiget, and the
+  // most multigets in flight at once.
+  public static final String MEMCACHED_MULTIGET_MAX_KEYS_KEY =
+    "hbase.cache.memcached.multiget.max.keys";
+  public static final String MEMCACHED_MULTIGET_WINDOW_KEY =
+    "hbase.cache.memcached.multiget.window";
   public static final long MEMCACHED_DEFAULT_TIMEOUT = 500;
   public static final boolean MEMCACHED_OPTIMIZE_DEFAULT = false;
+  public static final int MEMCACHED_MULTIGET_MAX_KEYS_DEFAULT = 64;
+  public static final int MEMCACHED_MULTIGET_WINDOW_DEFAULT = 4;
   public static final int STAT_THREAD_PERIOD = 60 * 5;
 
   private final MemcachedClient client;
+  private final long opTimeout;
+  private final int multigetMaxKeys;
+  private final int multigetWindow;
   private final HFileBlockTranscoder tc = new HFileBlockTranscoder();
   private final CacheStats cacheStats = new CacheStats("MemcachedBlockCache");
   private final AtomicLong cachedCount = new AtomicLong();
@@ -97,7 +113,11 @@ public class MemcachedBlockCache implements BlockCache {
   public MemcachedBlockCache(Configuration c) throws IOException {
     LOG.info("Creating MemcachedBlockCache");
 
-    long opTimeout = c.getLong(MEMCACHED_OPTIMEOUT_KEY, MEMCACHED_DEFAULT_TIMEOUT);
+    opTimeout = c.getLong(MEMCACHED_OPTIMEOUT_KEY, MEMCACHED_DEFAULT_TIMEOUT);
+    multigetMaxKeys =
+      Math.max(1, c.getInt(MEMCACHED_MULTIGET_MAX_KEYS_KEY, MEMCACHED_MULTIGET_MAX_KEYS_DEFAULT));
+    multigetWindow =
+      Math.max(1, c.getInt(MEMCACHED_MULTIGET_WINDOW_KEY, MEMCACHED_MULTIGET_WINDOW_DEFAULT));
     long queueTimeout = c.getLong(MEMCACHED_TIMEOUT_KEY, opTimeout + MEMCACHED_DEFAULT_TIMEOUT);
     boolean optimize = c.getBoolean(MEMCACHED_OPTIMIZE_KEY, MEMCACHED_OPTIMIZE_DEFAULT);
 
@@ -167,20 +187,7 @@ public class MemcachedBlockCache implements BlockCache {
     } catch (Exception e) {
       // Catch a pretty broad set of exceptions to limit any changes in the memcache client
       // and how it handles failures from leaking into the read path.
-      if (
-        (e instanceof OperationTimeoutException) || ((e instanceof RuntimeException)
-          && (e.getCause() instanceof OperationTimeoutException))
-      ) {
-        timeoutCount.incrementAndGet();
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Timeout getting key " + cacheKey.toString(), e);
-        }
-      } else {
-        cacheErrorCount.incrementAndGet();
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Exception getting key " + cacheKey.toString(), e);
-        }
-      }
+      countFailure(cacheKey.toString(), e);
       result = null;
     } finally {
       span.end();
@@ -195,6 +202,118 @@ public class MemcachedBlockCache implements BlockCache {
     return result;
   }
 
+  private void countFailure(String keys, Exception e) {
+    if (
+      (e instanceof OperationTimeoutException)
+        || ((e instanceof RuntimeException) && (e.getCause() instanceof OperationTimeoutException))
+    ) {
+      timeoutCount.incrementAndGet();
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Timeout getting key " + keys, e);
+      }
+    } else {
+      cacheErrorCount.incrementAndGet();
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Exception getting key " + keys, e);
+      }
+    }
+  }
+
+  /** A multiget of the keys from start to end of a getBlocks call */
+  private static final class MultiGet {
+    private final int start;
+    private final int end;
+    private final long deadline;
+    private final BulkFuture<Map<String, HFileBlock>> future;
+
+    MultiGet(int start, int end, long deadline, BulkFuture<Map<String, HFileBlock>> future) {
+      this.start = start;
+      this.end = end;
+      this.deadline = deadline;
+      this.future = future;
+    }
+  }
+
+  /**
+   * Fetches the blocks with pipelined multigets of up to {@link #MEMCACHED_MULTIGET_MAX_KEYS_KEY}
+   * keys each, keeping up to {@link #MEMCACHED_MULTIGET_WINDOW_KEY} of them in flight. A multiget
+   * not done within the operation timeout is cancelled and the blocks it had not returned yet are
+   * misses, to be read from the file system instead.
+   */
+  @Override
+  public Cacheable[] getBlocks(BlockCacheKey[] cacheKeys, boolean caching,
+    boolean updateCacheMetrics) {
+    Cacheable[] results = new Cacheable[cacheKeys.length];
+    Span span =
+      TraceUtil.getGlobalTracer().spanBuilder("MemcachedBlockCache.getBlocks").startSpan();
+    try (Scope traceScope = span.makeCurrent()) {
+      ArrayDeque<MultiGet> inFlight = new ArrayDeque<>(multigetWindow);
+      int next = 0;
+      while (next < cacheKeys.length || !inFlight.isEmpty()) {
+        while (next < cacheKeys.length && inFlight.size() < multigetWindow) {
+          int end = Math.min(cacheKeys.length, next + multigetMaxKeys);
+          MultiGet multiGet = startMultiGet(cacheKeys, next, end);
+          if (multiGet != null) {
+            inFlight.addLast(multiGet);
+          }
+          next = end;
+        }
+        if (!inFlight.isEmpty()) {
+          finishMultiGet(inFlight.pollFirst(), cacheKeys, results);
+        }
+      }
+    } finally {
+      span.end();
+      if (updateCacheMetrics) {
+        for (int i = 0; i < cacheKeys.length; i++) {
+          if (results[i] == null) {
+            cacheStats.miss(caching, cacheKeys[i].isPrimary(), cacheKeys[i].getBlockType());
+          } else {
+            cacheStats.hit(caching, cacheKeys[i].isPrimary(), cacheKeys[i].getBlockType());
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  private MultiGet startMultiGet(BlockCacheKey[] cacheKeys, int start, int end) {
+    List<String> keys = new ArrayList<>(end - start);
+    for (int i = start; i < end; i++) {
+      keys.add(cacheKeys[i].toString());
+    }
+    try {
+      return new MultiGet(start, end, EnvironmentEdgeManager.currentTime() + opTimeout,
+        client.asyncGetBulk(keys, tc));
+    } catch (Exception e) {
+      countFailure(keys.toString(), e);
+      return null;
+    }
+  }
+
+  private void finishMultiGet(MultiGet multiGet, BlockCacheKey[] cacheKeys, Cacheable[] results) {
+    Map<String, HFileBlock> found;
+    try {
+      long wait = Math.max(0, multiGet.deadline - EnvironmentEdgeManager.currentTime());
+      found = multiGet.future.getSome(wait, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      multiGet.future.cancel(false);
+      return;
+    } catch (Exception e) {
+      countFailure(Arrays.toString(Arrays.copyOfRange(cacheKeys, multiGet.start, multiGet.end)), e);
+      return;
+    }
+    if (!multiGet.future.isDone()) {
+      // Use what arrived in time and read the rest from the file system
+      timeoutCount.incrementAndGet();
+      multiGet.future.cancel(false);
+    }
+    for (int i = multiGet.start; i < multiGet.end; i++) {
+      results[i] = found.get(cacheKeys[i].toString());
+    }
+  }
+
   @Override
   public boolean evictBlock(BlockCacheKey cacheKey) {
     try {
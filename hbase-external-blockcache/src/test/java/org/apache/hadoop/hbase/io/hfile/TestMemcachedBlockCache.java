@@ -18,8 +18,8 @@
 package org.apache.hadoop.hbase.io.hfile;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
-import com.thimbleware.jmemcached.CacheElement;
 import com.thimbleware.jmemcached.CacheImpl;
 import com.thimbleware.jmemcached.Key;
 import com.thimbleware.jmemcached.LocalCacheElement;
@@ -27,6 +27,7 @@ import com.thimbleware.jmemcached.MemCacheDaemon;
 import com.thimbleware.jmemcached.storage.hash.ConcurrentLinkedHashMap;
 import com.thimbleware.jmemcached.storage.hash.ConcurrentLinkedHashMap.EvictionPolicy;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.HBaseTestingUtil;
@@ -35,6 +36,8 @@ import org.apache.hadoop.hbase.Waiter;
 import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
 import org.apache.hadoop.hbase.testclassification.IOTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -49,8 +52,9 @@ public class TestMemcachedBlockCache {
   public static final HBaseClassTestRule CLASS_RULE =
     HBaseClassTestRule.forClass(TestMemcachedBlockCache.class);
 
-  static MemCacheDaemon<? extends CacheElement> MEMCACHED;
+  static MemCacheDaemon<LocalCacheElement> MEMCACHED;
   static MemcachedBlockCache CACHE;
+  static int PORT;
 
   @Before
   public void before() throws Exception {
@@ -60,10 +64,10 @@ public class TestMemcachedBlockCache {
 
   @BeforeClass
   public static void setup() throws Exception {
-    int port = HBaseTestingUtil.randomFreePort();
-    MEMCACHED = createDaemon(port);
+    PORT = HBaseTestingUtil.randomFreePort();
+    MEMCACHED = createDaemon(PORT);
     Configuration conf = new Configuration();
-    conf.set("hbase.cache.memcached.servers", "localhost:" + port);
+    conf.set("hbase.cache.memcached.servers", "localhost:" + PORT);
     CACHE = new MemcachedBlockCache(conf);
   }
 
@@ -102,7 +106,54 @@ public class TestMemcachedBlockCache {
     Waiter.waitFor(new Configuration(), 10000, () -> MEMCACHED.getCache().getCurrentItems() == 0);
   }
 
-  private static MemCacheDaemon<? extends CacheElement> createDaemon(int port) {
+  @Test
+  public void testGetBlocks() throws Exception {
+    final int NUM_BLOCKS = 40;
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(4096, NUM_BLOCKS);
+    BlockCacheKey[] keys = new BlockCacheKey[NUM_BLOCKS];
+    for (int i = 0; i < NUM_BLOCKS; i++) {
+      keys[i] = blocks[i].getBlockName();
+      if (i % 2 == 0) {
+        putBlock(keys[i], blocks[i].getBlock());
+      }
+    }
+    // Small multigets, more of them than can be in flight together
+    Configuration conf = new Configuration();
+    conf.set(MemcachedBlockCache.MEMCACHED_CONFIG_KEY, "localhost:" + PORT);
+    conf.setInt(MemcachedBlockCache.MEMCACHED_MULTIGET_MAX_KEYS_KEY, 3);
+    conf.setInt(MemcachedBlockCache.MEMCACHED_MULTIGET_WINDOW_KEY, 2);
+    MemcachedBlockCache cache = new MemcachedBlockCache(conf);
+    try {
+      Cacheable[] results = cache.getBlocks(keys, true, true);
+      assertEquals(NUM_BLOCKS, results.length);
+      for (int i = 0; i < NUM_BLOCKS; i++) {
+        if (i % 2 == 0) {
+          assertEquals(blocks[i].getBlock(), results[i]);
+        } else {
+          assertNull(results[i]);
+        }
+      }
+      assertEquals(NUM_BLOCKS / 2, cache.getStats().getHitCount());
+      assertEquals(NUM_BLOCKS / 2, cache.getStats().getMissCount());
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  /**
+   * Stores the block the way MemcachedBlockCache does, but without an expiry time, as jmemcached
+   * takes the 30 days MemcachedBlockCache asks for as an absolute time in 1970.
+   */
+  private static void putBlock(BlockCacheKey key, HFileBlock block) {
+    ByteBuffer bb = ByteBuffer.allocate(block.getSerializedLength());
+    block.serialize(bb, true);
+    LocalCacheElement element = new LocalCacheElement(
+      new Key(ChannelBuffers.wrappedBuffer(Bytes.toBytes(key.toString()))), 0, 0, 0L);
+    element.setData(ChannelBuffers.wrappedBuffer(bb.array()));
+    MEMCACHED.getCache().set(element);
+  }
+
+  private static MemCacheDaemon<LocalCacheElement> createDaemon(int port) {
     InetSocketAddress addr = new InetSocketAddress("localhost", port);
     MemCacheDaemon<LocalCacheElement> daemon = new MemCacheDaemon<LocalCacheElement>();
     ConcurrentLinkedHashMap<Key, LocalCacheElement> cacheStorage =
@@ -48,6 +48,9 @@ public interface MetricsIOSource extends BaseSource {
   String FS_WRITE_HISTO_KEY = "fsWriteTime";
 
   String CHECKSUM_FAILURES_KEY = "fsChecksumFailureCount";
+  String SINGLE_BLOCK_READS_KEY = "fsSingleBlockReadCount";
+  String COALESCED_READS_KEY = "fsCoalescedReadCount";
+  String COALESCED_READ_BLOCKS_KEY = "fsCoalescedReadBlockCount";
 
   String FS_READ_TIME_HISTO_DESC =
     "Latency of HFile's sequential reads on this region server in milliseconds";
@@ -58,6 +61,9 @@ public interface MetricsIOSource extends BaseSource {
 
   String CHECKSUM_FAILURES_DESC = "Number of checksum failures for the HBase HFile checksums at the"
     + " HBase level (separate from HDFS checksums)";
+  String SINGLE_BLOCK_READS_DESC = "Number of HFile block reads reading a single block";
+  String COALESCED_READS_DESC = "Number of HFile block reads coalescing several nearby blocks";
+  String COALESCED_READ_BLOCKS_DESC = "Number of HFile blocks read by coalesced reads";
 
   /**
    * Update the fs sequential read time histogram
@@ -76,4 +82,10 @@ public interface MetricsIOSource extends BaseSource {
    * @param t time it took, in milliseconds
    */
   void updateFsWriteTime(long t);
+
+  /**
+   * Update the block read counters
+   * @param blocks number of HFile blocks read by a single file system read
+   */
+  void updateBlockReads(int blocks);
 }
@@ -22,6 +22,7 @@ import org.apache.hadoop.metrics2.MetricHistogram;
 import org.apache.hadoop.metrics2.MetricsCollector;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MutableFastCounter;
 import org.apache.yetus.audience.InterfaceAudience;
 
 @InterfaceAudience.Private
@@ -32,6 +33,9 @@ public class MetricsIOSourceImpl extends BaseSourceImpl implements MetricsIOSour
   private final MetricHistogram fsReadTimeHisto;
   private final MetricHistogram fsPReadTimeHisto;
   private final MetricHistogram fsWriteTimeHisto;
+  private final MutableFastCounter singleBlockReads;
+  private final MutableFastCounter coalescedReads;
+  private final MutableFastCounter coalescedReadBlocks;
 
   public MetricsIOSourceImpl(MetricsIOWrapper wrapper) {
     this(METRICS_NAME, METRICS_DESCRIPTION, METRICS_CONTEXT, METRICS_JMX_CONTEXT, wrapper);
@@ -49,6 +53,11 @@ public class MetricsIOSourceImpl extends BaseSourceImpl implements MetricsIOSour
       getMetricsRegistry().newTimeHistogram(FS_PREAD_TIME_HISTO_KEY, FS_PREAD_TIME_HISTO_DESC);
     fsWriteTimeHisto =
       getMetricsRegistry().newTimeHistogram(FS_WRITE_HISTO_KEY, FS_WRITE_TIME_HISTO_DESC);
+    singleBlockReads =
+      getMetricsRegistry().newCounter(SINGLE_BLOCK_READS_KEY, SINGLE_BLOCK_READS_DESC, 0L);
+    coalescedReads = getMetricsRegistry().newCounter(COALESCED_READS_KEY, COALESCED_READS_DESC, 0L);
+    coalescedReadBlocks =
+      getMetricsRegistry().newCounter(COALESCED_READ_BLOCKS_KEY, COALESCED_READ_BLOCKS_DESC, 0L);
   }
 
   @Override
@@ -66,6 +75,16 @@ public class MetricsIOSourceImpl extends BaseSourceImpl implements MetricsIOSour
     fsWriteTimeHisto.add(t);
   }
 
+  @Override
+  public void updateBlockReads(int blocks) {
+    if (blocks > 1) {
+      coalescedReads.incr();
+      coalescedReadBlocks.incr(blocks);
+    } else {
+      singleBlockReads.incr();
+    }
+  }
+
   @Override
   public void getMetrics(MetricsCollector metricsCollector, boolean all) {
     MetricsRecordBuilder mrb = metricsCollector.addRecord(metricsName);
@@ -185,6 +185,12 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
    */
   void updateFlushOutputSize(long bytes);
 
+  /**
+   * Update the histogram of the time spent writing the snapshot of a single store during a flush
+   * @param t time it took, in milliseconds
+   */
+  void updateStoreFlushTime(long t);
+
   /**
    * Update the compaction time histogram, both major and minor
    * @param isMajor whether compaction is a major compaction
@@ -238,6 +244,12 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
   String MAX_COMPACTED_STORE_FILE_REF_COUNT = "maxCompactedStoreFileRefCount";
   String MEMSTORE_SIZE = "memStoreSize";
   String MEMSTORE_SIZE_DESC = "Size of the memstore";
+  String MSLAB_ALLOCATION_RETRY_COUNT = "memStoreLABAllocationRetryCount";
+  String MSLAB_ALLOCATION_RETRY_COUNT_DESC =
+    "Number of times MSLAB allocations were retried because the current chunk was full or being "
+      + "replaced by another handler";
+  String MSLAB_WASTE_PERCENT = "memStoreLABWastePercent";
+  String MSLAB_WASTE_PERCENT_DESC = "Percent of the space of the retired MSLAB chunks left unused";
   String STOREFILE_SIZE = "storeFileSize";
   String STOREFILE_SIZE_GROWTH_RATE = "storeFileSizeGrowthRate";
   String MAX_STORE_FILE_AGE = "maxStoreFileAge";
@@ -362,9 +374,22 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
   String BLOCK_CACHE_EXPRESS_HIT_PERCENT = "blockCacheExpressHitPercent";
   String BLOCK_CACHE_EXPRESS_HIT_PERCENT_DESC =
     "The percent of the time that requests with the cache turned on hit the cache.";
+  String BLOCK_CACHE_ESTIMATED_HIT_PERCENT_HALF_SIZE = "blockCacheEstimatedHitPercentAtHalfSize";
+  String BLOCK_CACHE_ESTIMATED_HIT_PERCENT_HALF_SIZE_DESC =
+    "Estimated percent of block cache requests that would hit with half the block cache size.";
+  String BLOCK_CACHE_ESTIMATED_HIT_PERCENT_DOUBLE_SIZE =
+    "blockCacheEstimatedHitPercentAtDoubleSize";
+  String BLOCK_CACHE_ESTIMATED_HIT_PERCENT_DOUBLE_SIZE_DESC =
+    "Estimated percent of block cache requests that would hit with twice the block cache size.";
+  String BLOCK_CACHE_MISS_RATIO_CURVE = "blockCacheMissRatioCurve";
+  String BLOCK_CACHE_MISS_RATIO_CURVE_DESC =
+    "Estimated block cache hit percents at multiples of its size, per table and column family.";
   String BLOCK_CACHE_FAILED_INSERTION_COUNT = "blockCacheFailedInsertionCount";
   String BLOCK_CACHE_FAILED_INSERTION_COUNT_DESC =
     "Number of times that a block cache " + "insertion failed. Usually due to size restrictions.";
+  String BLOCK_CACHE_REJECTED_ADMISSION_COUNT = "blockCacheRejectedAdmissionCount";
+  String BLOCK_CACHE_REJECTED_ADMISSION_COUNT_DESC =
+    "Number of blocks that the block cache admission filter refused to cache.";
   String BLOCK_CACHE_DATA_MISS_COUNT = "blockCacheDataMissCount";
   String BLOCK_CACHE_ENCODED_DATA_MISS_COUNT = "blockCacheEncodedDataMissCount";
   String BLOCK_CACHE_LEAF_INDEX_MISS_COUNT = "blockCacheLeafIndexMissCount";
@@ -420,6 +445,22 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
   String L2_CACHE_HIT_RATIO_DESC = "L2 cache hit ratio.";
   String L2_CACHE_MISS_RATIO = "l2CacheMissRatio";
   String L2_CACHE_MISS_RATIO_DESC = "L2 cache miss ratio.";
+  String L3_CACHE_FREE_SIZE = "l3CacheFreeSize";
+  String L3_CACHE_FREE_SIZE_DESC = "Amount of free bytes in the L3 cache, the lower tier of L2";
+  String L3_CACHE_SIZE = "l3CacheSize";
+  String L3_CACHE_SIZE_DESC = "Size of the L3 cache in bytes";
+  String L3_CACHE_COUNT = "l3CacheCount";
+  String L3_CACHE_COUNT_DESC = "Count of blocks in the L3 cache";
+  String L3_CACHE_EVICTION_COUNT = "l3CacheEvictionCount";
+  String L3_CACHE_EVICTION_COUNT_DESC = "Count of blocks evicted from the L3 cache";
+  String L3_CACHE_HIT_COUNT = "l3CacheHitCount";
+  String L3_CACHE_HIT_COUNT_DESC = "L3 cache hit count.";
+  String L3_CACHE_MISS_COUNT = "l3CacheMissCount";
+  String L3_CACHE_MISS_COUNT_DESC = "L3 cache miss count.";
+  String L3_CACHE_HIT_RATIO = "l3CacheHitRatio";
+  String L3_CACHE_HIT_RATIO_DESC = "L3 cache hit ratio.";
+  String L3_CACHE_MISS_RATIO = "l3CacheMissRatio";
+  String L3_CACHE_MISS_RATIO_DESC = "L3 cache miss ratio.";
   String RS_START_TIME_NAME = "regionServerStartTime";
   String ZOOKEEPER_QUORUM_NAME = "zookeeperQuorum";
   String SERVER_NAME_NAME = "serverName";
@@ -550,6 +591,9 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
   String FLUSHED_OUTPUT_BYTES_DESC = "Total number of bytes written from flush";
   String FLUSHED_MEMSTORE_BYTES = "flushedMemstoreBytes";
   String FLUSHED_MEMSTORE_BYTES_DESC = "Total number of bytes of cells in memstore from flush";
+  String STORE_FLUSH_TIME = "storeFlushTime";
+  String STORE_FLUSH_TIME_DESC =
+    "Histogram for the time in millis to write the snapshot of a single store during a flush";
 
   String COMPACTION_TIME = "compactionTime";
   String COMPACTION_TIME_DESC =
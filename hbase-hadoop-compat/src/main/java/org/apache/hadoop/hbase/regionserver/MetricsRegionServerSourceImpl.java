@@ -72,6 +72,7 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
   private final MetricHistogram flushOutputSizeHisto;
   private final MutableFastCounter flushedMemstoreBytes;
   private final MutableFastCounter flushedOutputBytes;
+  private final MetricHistogram storeFlushTimeHisto;
 
   // compaction related metrics
   private final MetricHistogram compactionTimeHisto;
@@ -151,6 +152,8 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
       getMetricsRegistry().newCounter(FLUSHED_OUTPUT_BYTES, FLUSHED_OUTPUT_BYTES_DESC, 0L);
     flushedMemstoreBytes =
       getMetricsRegistry().newCounter(FLUSHED_MEMSTORE_BYTES, FLUSHED_MEMSTORE_BYTES_DESC, 0L);
+    storeFlushTimeHisto =
+      getMetricsRegistry().newTimeHistogram(STORE_FLUSH_TIME, STORE_FLUSH_TIME_DESC);
 
     compactionTimeHisto =
       getMetricsRegistry().newTimeHistogram(COMPACTION_TIME, COMPACTION_TIME_DESC);
@@ -307,6 +310,11 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
     flushedOutputBytes.incr(bytes);
   }
 
+  @Override
+  public void updateStoreFlushTime(long t) {
+    storeFlushTimeHisto.add(t);
+  }
+
   @Override
   public void updateCompactionTime(boolean isMajor, long t) {
     compactionTimeHisto.add(t);
@@ -419,6 +427,8 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
         .addCounter(
           Interns.info(BLOCK_CACHE_FAILED_INSERTION_COUNT, BLOCK_CACHE_FAILED_INSERTION_COUNT_DESC),
           rsWrap.getBlockCacheFailedInsertions())
+        .addCounter(Interns.info(BLOCK_CACHE_REJECTED_ADMISSION_COUNT,
+          BLOCK_CACHE_REJECTED_ADMISSION_COUNT_DESC), rsWrap.getBlockCacheRejectedAdmissions())
         .addCounter(Interns.info(BLOCK_CACHE_DATA_MISS_COUNT, ""), rsWrap.getDataMissCount())
         .addCounter(Interns.info(BLOCK_CACHE_LEAF_INDEX_MISS_COUNT, ""),
           rsWrap.getLeafIndexMissCount())
@@ -499,7 +509,9 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
         .tag(Interns.info(ZOOKEEPER_QUORUM_NAME, ZOOKEEPER_QUORUM_DESC),
           rsWrap.getZookeeperQuorum())
         .tag(Interns.info(SERVER_NAME_NAME, SERVER_NAME_DESC), rsWrap.getServerName())
-        .tag(Interns.info(CLUSTER_ID_NAME, CLUSTER_ID_DESC), rsWrap.getClusterId());
+        .tag(Interns.info(CLUSTER_ID_NAME, CLUSTER_ID_DESC), rsWrap.getClusterId())
+        .tag(Interns.info(BLOCK_CACHE_MISS_RATIO_CURVE, BLOCK_CACHE_MISS_RATIO_CURVE_DESC),
+          rsWrap.getBlockCacheMissRatioCurve());
     }
 
     metricsRegistry.snapshot(mrb, all);
@@ -520,6 +532,11 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
       .addGauge(Interns.info(MAX_STOREFILE_COUNT, MAX_STOREFILE_COUNT_DESC),
         rsWrap.getMaxStoreFiles())
       .addGauge(Interns.info(MEMSTORE_SIZE, MEMSTORE_SIZE_DESC), rsWrap.getMemStoreSize())
+      .addCounter(
+        Interns.info(MSLAB_ALLOCATION_RETRY_COUNT, MSLAB_ALLOCATION_RETRY_COUNT_DESC),
+        rsWrap.getMemStoreLABAllocationRetryCount())
+      .addGauge(Interns.info(MSLAB_WASTE_PERCENT, MSLAB_WASTE_PERCENT_DESC),
+        rsWrap.getMemStoreLABWastePercent())
       .addGauge(Interns.info(STOREFILE_SIZE, STOREFILE_SIZE_DESC), rsWrap.getStoreFileSize())
       .addGauge(Interns.info(STOREFILE_SIZE_GROWTH_RATE, STOREFILE_SIZE_GROWTH_RATE_DESC),
         rsWrap.getStoreFileSizeGrowthRate())
@@ -582,6 +599,14 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
         rsWrap.getBlockCacheHitPercent())
       .addGauge(Interns.info(BLOCK_CACHE_EXPRESS_HIT_PERCENT, BLOCK_CACHE_EXPRESS_HIT_PERCENT_DESC),
         rsWrap.getBlockCacheHitCachingPercent())
+      .addGauge(
+        Interns.info(BLOCK_CACHE_ESTIMATED_HIT_PERCENT_HALF_SIZE,
+          BLOCK_CACHE_ESTIMATED_HIT_PERCENT_HALF_SIZE_DESC),
+        rsWrap.getBlockCacheEstimatedHitPercent(0.5))
+      .addGauge(
+        Interns.info(BLOCK_CACHE_ESTIMATED_HIT_PERCENT_DOUBLE_SIZE,
+          BLOCK_CACHE_ESTIMATED_HIT_PERCENT_DOUBLE_SIZE_DESC),
+        rsWrap.getBlockCacheEstimatedHitPercent(2))
       .addGauge(Interns.info(L1_CACHE_SIZE, L1_CACHE_SIZE_DESC), rsWrap.getL1CacheSize())
       .addGauge(Interns.info(L1_CACHE_FREE_SIZE, L1_CACHE_FREE_SIZE_DESC),
         rsWrap.getL1CacheFreeSize())
@@ -610,6 +635,20 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
         rsWrap.getL2CacheHitRatio())
       .addGauge(Interns.info(L2_CACHE_MISS_RATIO, L2_CACHE_MISS_RATIO_DESC),
         rsWrap.getL2CacheMissRatio())
+      .addGauge(Interns.info(L3_CACHE_SIZE, L3_CACHE_SIZE_DESC), rsWrap.getL3CacheSize())
+      .addGauge(Interns.info(L3_CACHE_FREE_SIZE, L3_CACHE_FREE_SIZE_DESC),
+        rsWrap.getL3CacheFreeSize())
+      .addGauge(Interns.info(L3_CACHE_COUNT, L3_CACHE_COUNT_DESC), rsWrap.getL3CacheCount())
+      .addCounter(Interns.info(L3_CACHE_EVICTION_COUNT, L3_CACHE_EVICTION_COUNT_DESC),
+        rsWrap.getL3CacheEvictedCount())
+      .addGauge(Interns.info(L3_CACHE_HIT_COUNT, L3_CACHE_HIT_COUNT_DESC),
+        rsWrap.getL3CacheHitCount())
+      .addGauge(Interns.info(L3_CACHE_MISS_COUNT, L3_CACHE_MISS_COUNT_DESC),
+        rsWrap.getL3CacheMissCount())
+      .addGauge(Interns.info(L3_CACHE_HIT_RATIO, L3_CACHE_HIT_RATIO_DESC),
+        rsWrap.getL3CacheHitRatio())
+      .addGauge(Interns.info(L3_CACHE_MISS_RATIO, L3_CACHE_MISS_RATIO_DESC),
+        rsWrap.getL3CacheMissRatio())
       .addGauge(Interns.info(MOB_FILE_CACHE_COUNT, MOB_FILE_CACHE_COUNT_DESC),
         rsWrap.getMobFileCacheCount())
       .addGauge(Interns.info(MOB_FILE_CACHE_HIT_PERCENT, MOB_FILE_CACHE_HIT_PERCENT_DESC),
@@ -111,6 +111,16 @@ public interface MetricsRegionServerWrapper {
    */
   long getOffHeapMemStoreSize();
 
+  /**
+   * Get the number of times MSLAB allocations were retried on this region server.
+   */
+  long getMemStoreLABAllocationRetryCount();
+
+  /**
+   * Get the percent of the space of the retired MSLAB chunks left unused on this region server.
+   */
+  double getMemStoreLABWastePercent();
+
   /**
    * Get the total size of the store files this region server is serving from.
    */
@@ -339,11 +349,28 @@ public interface MetricsRegionServerWrapper {
    */
   double getBlockCacheHitCachingPercent();
 
+  /**
+   * Get the estimated percent of block cache requests that would hit if the block cache had the
+   * given multiple of its size, or 0 if the miss ratio curve is not estimated.
+   */
+  double getBlockCacheEstimatedHitPercent(double sizeMultiplier);
+
+  /**
+   * Get the estimated block cache hit percents at several multiples of its size, per table and
+   * column family, or an empty string if the miss ratio curve is not estimated.
+   */
+  String getBlockCacheMissRatioCurve();
+
   /**
    * Number of cache insertions that failed.
    */
   long getBlockCacheFailedInsertions();
 
+  /**
+   * Number of blocks the cache admission filter refused to cache.
+   */
+  long getBlockCacheRejectedAdmissions();
+
   /**
    * Cache size (bytes) of L1 cache
    */
@@ -424,6 +451,46 @@ public interface MetricsRegionServerWrapper {
    */
   double getL2CacheMissRatio();
 
+  /**
+   * Cache size (bytes) of L3 cache, the lower tier of the L2 cache
+   */
+  long getL3CacheSize();
+
+  /**
+   * Free cache size (bytes) of L3 cache
+   */
+  long getL3CacheFreeSize();
+
+  /**
+   * Number of blocks in L3 cache
+   */
+  long getL3CacheCount();
+
+  /**
+   * Number of blocks evicted from L3 cache
+   */
+  long getL3CacheEvictedCount();
+
+  /**
+   * Hit count of L3 cache.
+   */
+  long getL3CacheHitCount();
+
+  /**
+   * Miss count of L3 cache.
+   */
+  long getL3CacheMissCount();
+
+  /**
+   * Hit ratio of L3 cache.
+   */
+  double getL3CacheHitRatio();
+
+  /**
+   * Miss ratio of L3 cache.
+   */
+  double getL3CacheMissRatio();
+
   /**
    * Force a re-computation of the metrics.
    */
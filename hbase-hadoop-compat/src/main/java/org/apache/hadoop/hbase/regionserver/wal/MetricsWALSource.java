@@ -57,6 +57,11 @@ public interface MetricsWALSource extends BaseSource {
   String SLOW_APPEND_COUNT_DESC = "Number of appends that were slow.";
   String SYNC_TIME = "syncTime";
   String SYNC_TIME_DESC = "The time it took to sync the WAL to HDFS.";
+  String SYNC_BATCH_WINDOW = "syncBatchWindow";
+  String SYNC_BATCH_WINDOW_DESC =
+    "The time (in microseconds) the sync requests could be held to sync more data at once.";
+  String SYNC_BATCH_SIZE = "syncBatchSize";
+  String SYNC_BATCH_SIZE_DESC = "Size (in bytes) of the data synced at once to the WAL.";
   String ROLL_REQUESTED = "rollRequest";
   String ROLL_REQUESTED_DESC = "How many times a roll has been requested total";
   String ERROR_ROLL_REQUESTED = "errorRollRequest";
@@ -75,12 +80,19 @@ public interface MetricsWALSource extends BaseSource {
   String WRITTEN_BYTES_DESC = "Size (in bytes) of the data written to the WAL.";
   String SUCCESSFUL_LOG_ROLLS = "successfulLogRolls";
   String SUCCESSFUL_LOG_ROLLS_DESC = "Number of successful log rolls requests";
+  String GROUP_APPEND_SIZE = "groupAppendSize";
+  String GROUP_APPEND_SIZE_DESC = "Size (in bytes) of the data appended to a WAL group.";
 
   /**
    * Add the append size.
    */
   void incrementAppendSize(TableName tableName, long size);
 
+  /**
+   * Add the append size to the given WAL group, when the region server has several WALs.
+   */
+  void incrementGroupAppendSize(String walGroup, long size);
+
   /**
    * Add the time it took to append.
    */
@@ -101,6 +113,16 @@ public interface MetricsWALSource extends BaseSource {
    */
   void incrementSyncTime(long time);
 
+  /**
+   * Add the batch window of the WAL syncs, in microseconds.
+   */
+  void incrementSyncBatchWindow(long window);
+
+  /**
+   * Add the size of the data synced at once.
+   */
+  void incrementSyncBatchSize(long size);
+
   void incrementLogRollRequested();
 
   void incrementErrorLogRoll();
@@ -36,6 +36,8 @@ public class MetricsWALSourceImpl extends BaseSourceImpl implements MetricsWALSo
   private final MetricHistogram appendSizeHisto;
   private final MetricHistogram appendTimeHisto;
   private final MetricHistogram syncTimeHisto;
+  private final MetricHistogram syncBatchWindowHisto;
+  private final MetricHistogram syncBatchSizeHisto;
   private final MutableFastCounter appendCount;
   private final MutableFastCounter slowAppendCount;
   private final MutableFastCounter logRollRequested;
@@ -48,6 +50,8 @@ public class MetricsWALSourceImpl extends BaseSourceImpl implements MetricsWALSo
   // Per table metrics.
   private final ConcurrentMap<TableName, MutableFastCounter> perTableAppendCount;
   private final ConcurrentMap<TableName, MutableFastCounter> perTableAppendSize;
+  // Per WAL group metrics.
+  private final ConcurrentMap<String, MutableFastCounter> perGroupAppendSize;
 
   public MetricsWALSourceImpl() {
     this(METRICS_NAME, METRICS_DESCRIPTION, METRICS_CONTEXT, METRICS_JMX_CONTEXT);
@@ -64,6 +68,10 @@ public class MetricsWALSourceImpl extends BaseSourceImpl implements MetricsWALSo
     slowAppendCount =
       this.getMetricsRegistry().newCounter(SLOW_APPEND_COUNT, SLOW_APPEND_COUNT_DESC, 0L);
     syncTimeHisto = this.getMetricsRegistry().newTimeHistogram(SYNC_TIME, SYNC_TIME_DESC);
+    syncBatchWindowHisto =
+      this.getMetricsRegistry().newHistogram(SYNC_BATCH_WINDOW, SYNC_BATCH_WINDOW_DESC);
+    syncBatchSizeHisto =
+      this.getMetricsRegistry().newSizeHistogram(SYNC_BATCH_SIZE, SYNC_BATCH_SIZE_DESC);
     logRollRequested =
       this.getMetricsRegistry().newCounter(ROLL_REQUESTED, ROLL_REQUESTED_DESC, 0L);
     errorRollRequested =
@@ -79,6 +87,7 @@ public class MetricsWALSourceImpl extends BaseSourceImpl implements MetricsWALSo
       this.getMetricsRegistry().newCounter(SUCCESSFUL_LOG_ROLLS, SUCCESSFUL_LOG_ROLLS_DESC, 0L);
     perTableAppendCount = new ConcurrentHashMap<>();
     perTableAppendSize = new ConcurrentHashMap<>();
+    perGroupAppendSize = new ConcurrentHashMap<>();
   }
 
   @Override
@@ -96,6 +105,18 @@ public class MetricsWALSourceImpl extends BaseSourceImpl implements MetricsWALSo
     tableAppendSizeCounter.incr(size);
   }
 
+  @Override
+  public void incrementGroupAppendSize(String walGroup, long size) {
+    MutableFastCounter groupAppendSizeCounter = perGroupAppendSize.get(walGroup);
+    if (groupAppendSizeCounter == null) {
+      String metricsKey = String.format("%s.%s", walGroup, GROUP_APPEND_SIZE);
+      perGroupAppendSize.putIfAbsent(walGroup,
+        getMetricsRegistry().newCounter(metricsKey, GROUP_APPEND_SIZE_DESC, 0L));
+      groupAppendSizeCounter = perGroupAppendSize.get(walGroup);
+    }
+    groupAppendSizeCounter.incr(size);
+  }
+
   @Override
   public void incrementAppendTime(long time) {
     appendTimeHisto.add(time);
@@ -124,6 +145,16 @@ public class MetricsWALSourceImpl extends BaseSourceImpl implements MetricsWALSo
     syncTimeHisto.add(time);
   }
 
+  @Override
+  public void incrementSyncBatchWindow(long window) {
+    syncBatchWindowHisto.add(window);
+  }
+
+  @Override
+  public void incrementSyncBatchSize(long size) {
+    syncBatchSizeHisto.add(size);
+  }
+
   @Override
   public void incrementLogRollRequested() {
     logRollRequested.incr();
@@ -54,7 +54,11 @@ public enum ExecutorType {
   RS_SWITCH_RPC_THROTTLE(33),
   RS_IN_MEMORY_COMPACTION(34),
   RS_CLAIM_REPLICATION_QUEUE(35),
-  RS_SNAPSHOT_OPERATIONS(36);
+  RS_SNAPSHOT_OPERATIONS(36),
+  RS_HFILE_READ_AHEAD(37),
+  RS_IN_MEMORY_COMPACTION_INDEX(38),
+  RS_HFILE_COMPRESSION(39),
+  RS_FLUSH_STORES(40);
 
   ExecutorType(int value) {
   }
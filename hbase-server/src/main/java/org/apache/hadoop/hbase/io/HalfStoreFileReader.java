@@ -283,6 +283,11 @@ public class HalfStoreFileReader extends StoreFileReader {
       public void recordBlockSize(IntConsumer blockSizeConsumer) {
         this.delegate.recordBlockSize(blockSizeConsumer);
       }
+
+      @Override
+      public void setBlockSkipTimeRange(TimeRange timeRange) throws IOException {
+        this.delegate.setBlockSkipTimeRange(timeRange);
+      }
     };
   }
 
@@ -56,4 +56,8 @@ public class MetricsIO {
   public void updateFsWriteTime(long t) {
     source.updateFsWriteTime(t);
   }
+
+  public void updateBlockReads(int blocks) {
+    source.updateBlockReads(blocks);
+  }
 }
@@ -81,6 +81,23 @@ public interface BlockCache extends Iterable<CachedBlock> {
     return getBlock(cacheKey, caching, repeat, updateCacheMetrics);
   }
 
+  /**
+   * Fetch several blocks from cache at once. Caches keeping their blocks in a remote store can look
+   * them up in fewer round trips than one {@link #getBlock} call per block.
+   * @param cacheKeys          Blocks to fetch.
+   * @param caching            Whether this request has caching enabled (used for stats)
+   * @param updateCacheMetrics Whether to update cache metrics or not
+   * @return The block of each key, in the order of the keys, or null for the ones not in cache.
+   */
+  default Cacheable[] getBlocks(BlockCacheKey[] cacheKeys, boolean caching,
+    boolean updateCacheMetrics) {
+    Cacheable[] blocks = new Cacheable[cacheKeys.length];
+    for (int i = 0; i < cacheKeys.length; i++) {
+      blocks[i] = getBlock(cacheKeys[i], caching, false, updateCacheMetrics);
+    }
+    return blocks;
+  }
+
   /**
    * Evict block from cache.
    * @param cacheKey Block to evict
@@ -161,4 +178,26 @@ public interface BlockCache extends Iterable<CachedBlock> {
   default boolean isMetaBlock(BlockType blockType) {
     return blockType != null && blockType.getCategory() != BlockType.BlockCategory.DATA;
   }
+
+  /**
+   * Returns the estimated number of recent lookups of the given block, or -1 if this cache does not
+   * track access frequencies.
+   * @param cacheKey block's cache key
+   */
+  default int getAccessFrequency(BlockCacheKey cacheKey) {
+    return -1;
+  }
+
+  /**
+   * Replaces the block cached under the given key by another form of the same block, such as its
+   * unpacked form. The cached block is kept if the new one can not be cached, and the admission
+   * policy of the cache, if any, does not apply as the key is already cached.
+   * @param cacheKey block's cache key
+   * @param buf      the new form of the block
+   * @param inMemory if block is in-memory
+   * @return true if the new form of the block is now cached
+   */
+  default boolean replaceBlock(BlockCacheKey cacheKey, Cacheable buf, boolean inMemory) {
+    return false;
+  }
 }
@@ -68,11 +68,26 @@ public final class BlockCacheFactory {
    */
   public static final String BUCKET_CACHE_BUCKETS_KEY = "hbase.bucketcache.bucket.sizes";
 
+  /**
+   * Size in megabytes of a RAM tier put in front of the bucket cache, 0 for none. The blocks the
+   * RAM tier evicts are demoted to the bucket cache configured with
+   * {@link #BUCKET_CACHE_IOENGINE_KEY}, typically a file on local SSD, and the blocks hit there
+   * repeatedly are promoted back.
+   */
+  public static final String BUCKET_CACHE_RAM_TIER_SIZE_KEY = "hbase.bucketcache.ramtier.size";
+
+  /**
+   * The ioengine of the RAM tier, see {@link #BUCKET_CACHE_RAM_TIER_SIZE_KEY}.
+   */
+  public static final String BUCKET_CACHE_RAM_TIER_IOENGINE_KEY =
+    "hbase.bucketcache.ramtier.ioengine";
+
   /**
    * Defaults for Bucket cache
    */
   public static final int DEFAULT_BUCKET_CACHE_WRITER_THREADS = 3;
   public static final int DEFAULT_BUCKET_CACHE_WRITER_QUEUE = 64;
+  public static final String DEFAULT_BUCKET_CACHE_RAM_TIER_IOENGINE = "offheap";
 
   /**
    * The target block size used by blockcache instances. Defaults to
@@ -95,6 +110,17 @@ public final class BlockCacheFactory {
   }
 
   public static BlockCache createBlockCache(Configuration conf) {
+    BlockCache blockCache = createTopLevelBlockCache(conf);
+    if (
+      blockCache != null
+        && conf.getBoolean(MissRatioCurve.ENABLED_KEY, MissRatioCurve.ENABLED_DEFAULT)
+    ) {
+      blockCache.getStats().setMissRatioCurve(new MissRatioCurve(conf));
+    }
+    return blockCache;
+  }
+
+  private static BlockCache createTopLevelBlockCache(Configuration conf) {
     FirstLevelBlockCache l1Cache = createFirstLevelCache(conf);
     if (l1Cache == null) {
       return null;
@@ -237,6 +263,16 @@ public final class BlockCacheFactory {
       // Bucket cache logs its stats on creation internal to the constructor.
       bucketCache = new BucketCache(bucketCacheIOEngineName, bucketCacheSize, blockSize,
         bucketSizes, writerThreads, writerQueueLen, persistentPath, ioErrorsTolerationDuration, c);
+      long ramTierSize = c.getLong(BUCKET_CACHE_RAM_TIER_SIZE_KEY, 0) * 1024 * 1024;
+      if (ramTierSize > 0) {
+        // The RAM tier is not persisted, the lower tier keeps its blocks across restarts
+        BucketCache ramTier = new BucketCache(
+          c.get(BUCKET_CACHE_RAM_TIER_IOENGINE_KEY, DEFAULT_BUCKET_CACHE_RAM_TIER_IOENGINE),
+          ramTierSize, blockSize, bucketSizes, writerThreads, writerQueueLen, null,
+          ioErrorsTolerationDuration, c);
+        ramTier.setVictimCache(bucketCache);
+        bucketCache = ramTier;
+      }
     } catch (IOException ioex) {
       LOG.error("Can't instantiate bucket cache", ioex);
       throw new RuntimeException(ioex);
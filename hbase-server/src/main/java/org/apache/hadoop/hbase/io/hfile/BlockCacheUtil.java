@@ -218,6 +218,12 @@ public class BlockCacheUtil {
       return true;
     }
     try {
+      if (isOtherFormOfBlock(existingBlock, newBlock)) {
+        // A compressed data block raced with its promotion to the unpacked form, see
+        // CacheConfig#CACHE_DATA_BLOCKS_COMPRESSED_PROMOTE_FREQUENCY_KEY. Either form will do.
+        LOG.debug("Block {} is already cached in its other form", cacheKey);
+        return false;
+      }
       int comparison = BlockCacheUtil.validateBlockAddition(existingBlock, newBlock, cacheKey);
       if (comparison < 0) {
         LOG.warn("Cached block contents differ by nextBlockOnDiskSize, the new block has "
@@ -238,6 +244,19 @@ public class BlockCacheUtil {
     }
   }
 
+  /**
+   * Returns true if the given blocks are the packed and unpacked forms of the same block, which can
+   * not be compared byte for byte.
+   */
+  private static boolean isOtherFormOfBlock(Cacheable existing, Cacheable newBlock) {
+    if (!(existing instanceof HFileBlock) || !(newBlock instanceof HFileBlock)) {
+      return false;
+    }
+    HFileBlock existingBlock = (HFileBlock) existing;
+    return existingBlock.hasDistinctUnpackedSize()
+      && existingBlock.isUnpacked() != ((HFileBlock) newBlock).isUnpacked();
+  }
+
   private static final int DEFAULT_MAX = 1000000;
 
   public static int getMaxCachedBlocksByFile(Configuration conf) {
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.apache.hadoop.hbase.io.hfile.BlockCompressedSizePredicator.BLOCK_COMPRESSED_SIZE_PREDICATOR;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.executor.ExecutorType;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.crypto.Encryption;
+import org.apache.hadoop.hbase.io.encoding.HFileBlockDefaultEncodingContext;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Compresses the data blocks of an HFile on a shared pool while the writer goes on encoding the
+ * next ones, so that a flush or compaction using an expensive codec is not bound by the speed of a
+ * single core.
+ * <p>
+ * The writer hands each finished data block over uncompressed with {@link #add}. Up to
+ * {@link #MAX_BLOCKS_KEY} blocks are compressed at once, each with its own compressor. The blocks
+ * are written to the stream in the order they were added, by the writer thread, and only then get
+ * their header and checksums, so the file is byte for byte the one the writer would produce
+ * without the pipeline. Since the location of a block is known only once it is written, the index
+ * entries referring to it are completed by the {@link BlockWrittenCallback} passed with it, and the
+ * writer must {@link #flush()} the pipeline before writing out anything that refers to them.
+ * <p>
+ * The pipeline is only used when it cannot change the bytes written or what is cached, see
+ * {@link #create}. The blocks are compressed on the {@link ExecutorType#RS_HFILE_COMPRESSION} pool
+ * of the region server, see {@link CacheConfig#getExecutor}, or on a pool of this class outside of
+ * a region server.
+ */
+@InterfaceAudience.Private
+class BlockCompressionPipeline {
+
+  /** Maximum number of data blocks of a writer being compressed at once, 0 to disable */
+  static final String MAX_BLOCKS_KEY = "hbase.hfile.writer.compression.pipeline.max.blocks";
+  static final int MAX_BLOCKS_DEFAULT = 0;
+
+  /** Number of threads compressing blocks, shared by all the writers */
+  static final String THREADS_KEY = "hbase.hfile.writer.compression.pipeline.threads";
+  static final int THREADS_DEFAULT = 8;
+
+  /** Pool used outside of a region server, by tools and tests */
+  private static ThreadPoolExecutor STANDALONE_POOL;
+
+  private static synchronized ThreadPoolExecutor getStandalonePool(int threads) {
+    if (STANDALONE_POOL == null) {
+      STANDALONE_POOL =
+        new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+          new ThreadFactoryBuilder().setNameFormat("hfile-compression-%d").setDaemon(true).build());
+      STANDALONE_POOL.allowCoreThreadTimeOut(true);
+    }
+    return STANDALONE_POOL;
+  }
+
+  /** Called by the writer thread once a block handed to the pipeline has been written */
+  interface BlockWrittenCallback {
+    void blockWritten(long offset, int onDiskSize);
+  }
+
+  private static final class Pending {
+    private final BlockType blockType;
+    private final int uncompressedSizeWithHeader;
+    private final HFileBlockDefaultEncodingContext context;
+    private final CompletableFuture<Bytes> compressed;
+    private final BlockWrittenCallback callback;
+
+    Pending(BlockType blockType, int uncompressedSizeWithHeader,
+      HFileBlockDefaultEncodingContext context, CompletableFuture<Bytes> compressed,
+      BlockWrittenCallback callback) {
+      this.blockType = blockType;
+      this.uncompressedSizeWithHeader = uncompressedSizeWithHeader;
+      this.context = context;
+      this.compressed = compressed;
+      this.callback = callback;
+    }
+  }
+
+  private final Configuration conf;
+  private final HFileContext fileContext;
+  private final HFileBlock.Writer blockWriter;
+  private final FSDataOutputStream out;
+  private final ThreadPoolExecutor pool;
+  private final int maxBlocks;
+  /** Blocks being compressed or compressed, in the order they are to be written */
+  private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+  /** Compression contexts of the blocks already written, reused for the next blocks */
+  private final ArrayDeque<HFileBlockDefaultEncodingContext> idleContexts = new ArrayDeque<>();
+
+  private BlockCompressionPipeline(Configuration conf, HFileContext fileContext,
+    HFileBlock.Writer blockWriter, FSDataOutputStream out, ThreadPoolExecutor pool, int maxBlocks) {
+    this.conf = conf;
+    this.fileContext = fileContext;
+    this.blockWriter = blockWriter;
+    this.out = out;
+    this.pool = pool;
+    this.maxBlocks = maxBlocks;
+  }
+
+  /**
+   * Returns a pipeline for the data blocks of the given writer, or null if it is disabled or would
+   * not write the same bytes: when the blocks are not compressed, when they are encrypted (the IV
+   * of a block depends on the size of the previous one), when the block boundaries depend on the
+   * compressed size of the previous block, or when data blocks are cached on write.
+   */
+  static BlockCompressionPipeline create(Configuration conf, HFileContext fileContext,
+    CacheConfig cacheConf, HFileBlock.Writer blockWriter, FSDataOutputStream out) {
+    int maxBlocks = conf.getInt(MAX_BLOCKS_KEY, MAX_BLOCKS_DEFAULT);
+    if (
+      maxBlocks <= 0 || out == null || fileContext.getCompression() == null
+        || fileContext.getCompression() == Compression.Algorithm.NONE
+        || fileContext.getEncryptionContext() != Encryption.Context.NONE
+        || cacheConf.shouldCacheDataOnWrite()
+        || conf.getClass(BLOCK_COMPRESSED_SIZE_PREDICATOR, UncompressedBlockSizePredicator.class)
+            != UncompressedBlockSizePredicator.class
+    ) {
+      return null;
+    }
+    int threads = conf.getInt(THREADS_KEY, THREADS_DEFAULT);
+    ThreadPoolExecutor pool = cacheConf.getExecutor(ExecutorType.RS_HFILE_COMPRESSION, threads);
+    return new BlockCompressionPipeline(conf, fileContext, blockWriter, out,
+      pool != null ? pool : getStandalonePool(threads), maxBlocks);
+  }
+
+  /**
+   * Takes the data block the block writer is writing and starts compressing it. Writes the blocks
+   * ahead of it that are already compressed, and waits for the oldest ones if too many blocks are
+   * in the pipeline.
+   * @param callback called when the block has been written
+   * @return the uncompressed size of the block, including the header
+   */
+  int add(BlockWrittenCallback callback) throws IOException {
+    byte[] uncompressed = blockWriter.finishBlockUncompressed();
+    HFileBlockDefaultEncodingContext context = idleContexts.poll();
+    if (context == null) {
+      context = new HFileBlockDefaultEncodingContext(conf, null,
+        HConstants.HFILEBLOCK_DUMMY_HEADER, fileContext);
+    }
+    HFileBlockDefaultEncodingContext ctx = context;
+    Supplier<Bytes> compress = () -> {
+      try {
+        return ctx.compressAndEncrypt(uncompressed, 0, uncompressed.length);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+    CompletableFuture<Bytes> compressed;
+    try {
+      compressed = CompletableFuture.supplyAsync(compress, pool);
+    } catch (RejectedExecutionException e) {
+      // the pool is shut down with the region server, compress in this thread
+      compressed = CompletableFuture.supplyAsync(compress, Runnable::run);
+    }
+    pending.add(new Pending(blockWriter.getBlockType(), uncompressed.length, context, compressed,
+      callback));
+    while (!pending.isEmpty()) {
+      if (pending.size() <= maxBlocks && !pending.peek().compressed.isDone()) {
+        break;
+      }
+      writeNext();
+    }
+    return uncompressed.length;
+  }
+
+  /** Writes all the blocks of the pipeline, waiting for them to be compressed */
+  void flush() throws IOException {
+    while (!pending.isEmpty()) {
+      writeNext();
+    }
+  }
+
+  private void writeNext() throws IOException {
+    Pending block = pending.peek();
+    Bytes compressed;
+    try {
+      compressed = block.compressed.get();
+    } catch (InterruptedException e) {
+      throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof UncheckedIOException
+        ? ((UncheckedIOException) cause).getCause()
+        : new IOException(cause);
+    }
+    long offset = out.getPos();
+    int onDiskSize = blockWriter.writeCompressedBlock(block.blockType,
+      block.uncompressedSizeWithHeader, compressed, out);
+    // the compressed bytes live in the context, which can be reused only now
+    pending.poll();
+    idleContexts.add(block.context);
+    block.callback.blockWritten(offset, onDiskSize);
+  }
+
+  /**
+   * Releases the compressors of the pipeline. Blocks still being compressed, if the writer failed,
+   * release theirs when done.
+   */
+  void close() {
+    for (Pending block : pending) {
+      block.compressed.whenComplete((b, e) -> block.context.close());
+    }
+    pending.clear();
+    for (HFileBlockDefaultEncodingContext context : idleContexts) {
+      context.close();
+    }
+    idleContexts.clear();
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A count-min sketch of the access frequency of blocks, with 4-bit counters, in the spirit of the
+ * TinyLFU sketch used by Caffeine (and therefore by {@link TinyLfuBlockCache}). Each key is counted
+ * in four of the sixteen counters packed in a long, and the estimate is the minimum of the four.
+ * Once the number of increments reaches ten times the number of counted keys all the counters are
+ * halved, so the sketch reflects recent history rather than all time popularity.
+ * <p>
+ * The sketch is shared by all threads without locking. Concurrent increments may occasionally be
+ * lost, which only makes the estimate slightly less accurate.
+ * <ul>
+ * <li>TinyLFU: http://arxiv.org/pdf/1512.00727.pdf</li>
+ * </ul>
+ */
+@InterfaceAudience.Private
+public class BlockFrequencySketch {
+  /** The largest value a counter can hold */
+  public static final int MAX_FREQUENCY = 15;
+
+  private static final long[] SEEDS =
+    { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+  private final AtomicInteger additions = new AtomicInteger();
+
+  /**
+   * @param expectedKeys number of distinct keys whose frequency should be tracked accurately,
+   *                     typically the number of blocks that fit in the cache.
+   */
+  public BlockFrequencySketch(long expectedKeys) {
+    int size = (int) Math.min(1 << 30, Math.max(64, expectedKeys));
+    size = Integer.highestOneBit(size - 1) << 1;
+    this.table = new long[size];
+    this.tableMask = size - 1;
+    this.sampleSize = (int) Math.min(Integer.MAX_VALUE / 2, 10L * size);
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private int indexOf(int hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += h >>> 32;
+    return ((int) h) & tableMask;
+  }
+
+  /**
+   * Records one access to the key with the given hash.
+   */
+  public void increment(int hash) {
+    int h = spread(hash);
+    // Each of the four hash functions picks a long, and a 4-bit counter within it.
+    int start = (h & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(h, i), start + i);
+    }
+    if (added && additions.incrementAndGet() >= sampleSize) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt(int i, int j) {
+    int offset = j << 2;
+    long mask = 0xFL << offset;
+    long value = table[i];
+    if ((value & mask) != mask) {
+      table[i] = value + (1L << offset);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the estimated number of recent accesses to the key with the given hash, at most
+   * {@link #MAX_FREQUENCY}.
+   */
+  public int frequency(int hash) {
+    int h = spread(hash);
+    int start = (h & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int offset = (start + i) << 2;
+      int count = (int) ((table[indexOf(h, i)] >>> offset) & 0xFL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Halves every counter, aging out accesses that happened long ago.
+   */
+  void reset() {
+    additions.set(0);
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+  }
+
+  /** Returns the memory used by the counters, in bytes */
+  public long size() {
+    return (long) table.length * Long.BYTES;
+  }
+}
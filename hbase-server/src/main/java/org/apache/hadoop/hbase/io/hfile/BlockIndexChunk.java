@@ -48,6 +48,8 @@ public interface BlockIndexChunk {
 
   int getOnDiskDataSize(int i);
 
+  void setBlockLocation(int i, long blockOffset, int onDiskDataSize);
+
   byte[] getMidKeyMetadata() throws IOException;
 
   void clear();
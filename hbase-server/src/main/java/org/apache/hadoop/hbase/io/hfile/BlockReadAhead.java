@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.executor.ExecutorType;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads the data blocks following the one a scanner is reading in the background, so that a long
+ * scan of blocks that are not cached overlaps its reads with the processing of the cells instead of
+ * waiting for every block in turn.
+ * <p>
+ * The offsets and sizes of the following data blocks are taken from the block index of the file,
+ * see {@link HFile.Reader#getDataBlocks}, and up to {@link #MAX_BLOCKS_KEY} of them are read ahead.
+ * They are read in batches, the nearby blocks of a batch sharing a single read (see
+ * {@link HFile.Reader#readBlocks}), and a new batch starts once the scanner has taken half of the
+ * blocks read ahead. The number of blocks read ahead adapts to the scanner: it doubles whenever the
+ * scanner has to wait for a block, and goes down by one when a new batch starts while several
+ * blocks are left, all read, and the scanner did not have to wait for any block since the previous
+ * batch started.
+ * <p>
+ * The blocks are read with positional reads through {@link HFile.Reader#readBlocks}, so they come
+ * from the block cache when present and are cached like the blocks the scanner reads itself. A
+ * block read ahead belongs to this class until the scanner takes it, and is released if the
+ * scanner seeks elsewhere or closes. When the scanner ships its cells, the blocks read ahead are
+ * released if the scanner caches its blocks, as it finds them in the block cache again, and are
+ * kept otherwise, as they would have to be read again.
+ * <p>
+ * The reads run on the {@link ExecutorType#RS_HFILE_READ_AHEAD} pool of the region server, see
+ * {@link CacheConfig#getExecutor}, or on a pool of this class outside of a region server.
+ */
+@InterfaceAudience.Private
+class BlockReadAhead {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlockReadAhead.class);
+
+  /** Maximum number of data blocks a scanner reads ahead, 0 to disable read-ahead */
+  static final String MAX_BLOCKS_KEY = "hbase.hfile.scanner.readahead.max.blocks";
+  static final int MAX_BLOCKS_DEFAULT = 0;
+
+  /** Number of threads reading blocks ahead, shared by all the scanners */
+  static final String THREADS_KEY = "hbase.hfile.scanner.readahead.threads";
+  static final int THREADS_DEFAULT = 16;
+
+  /** Pool used outside of a region server, by tools and tests */
+  private static ThreadPoolExecutor STANDALONE_POOL;
+
+  private static synchronized ThreadPoolExecutor getStandalonePool(int threads) {
+    if (STANDALONE_POOL == null) {
+      STANDALONE_POOL =
+        new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+          new ThreadFactoryBuilder().setNameFormat("hfile-readahead-%d").setDaemon(true).build());
+      STANDALONE_POOL.allowCoreThreadTimeOut(true);
+    }
+    return STANDALONE_POOL;
+  }
+
+  /** Returns the pool reading the blocks ahead, sized from the given configuration */
+  static ThreadPoolExecutor getPool(Configuration conf, CacheConfig cacheConf) {
+    int threads = conf.getInt(THREADS_KEY, THREADS_DEFAULT);
+    ThreadPoolExecutor pool = cacheConf.getExecutor(ExecutorType.RS_HFILE_READ_AHEAD, threads);
+    return pool != null ? pool : getStandalonePool(threads);
+  }
+
+  private static final class Pending {
+    private final long offset;
+    private final CompletableFuture<HFileBlock> block;
+
+    Pending(long offset, CompletableFuture<HFileBlock> block) {
+      this.offset = offset;
+      this.block = block;
+    }
+
+    /** Releases the block once read, as nobody will take it */
+    void discard() {
+      block.whenComplete((b, e) -> {
+        if (b != null) {
+          b.release();
+        }
+      });
+    }
+  }
+
+  private final HFile.Reader reader;
+  private final ThreadPoolExecutor pool;
+  private final boolean cacheBlocks;
+  private final boolean pread;
+  private final boolean isCompaction;
+  private final int maxBlocks;
+  /** Reads in flight or done, in increasing offset order */
+  private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+  private int depth = 1;
+  /** Whether the scanner had to wait for a block since the last batch started */
+  private boolean waited;
+
+  BlockReadAhead(HFile.Reader reader, ThreadPoolExecutor pool, boolean cacheBlocks, boolean pread,
+    boolean isCompaction, int maxBlocks) {
+    this.reader = reader;
+    this.pool = pool;
+    this.cacheBlocks = cacheBlocks;
+    this.pread = pread;
+    this.isCompaction = isCompaction;
+    this.maxBlocks = maxBlocks;
+  }
+
+  int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Returns the block at the given offset, read ahead or read now, and starts reading the blocks
+   * after it. The caller owns the returned block as if it had read it with
+   * {@link HFile.Reader#readBlock}.
+   */
+  HFileBlock readBlock(long offset, long onDiskSize, DataBlockEncoding encoding)
+    throws IOException {
+    HFileBlock block = take(offset);
+    if (block == null) {
+      block = reader.readBlock(offset, onDiskSize, cacheBlocks, pread, isCompaction, true, null,
+        encoding);
+    }
+    if (block != null) {
+      readAhead(block, encoding);
+    }
+    return block;
+  }
+
+  private HFileBlock take(long offset) throws IOException {
+    // Reads before the offset were passed over, by a seek or because the blocks were skipped
+    while (!pending.isEmpty() && pending.peekFirst().offset < offset) {
+      pending.pollFirst().discard();
+    }
+    if (pending.isEmpty() || pending.peekFirst().offset != offset) {
+      return null;
+    }
+    Pending head = pending.pollFirst();
+    if (!head.block.isDone()) {
+      depth = Math.min(maxBlocks, depth * 2);
+      waited = true;
+    }
+    try {
+      return head.block.get();
+    } catch (InterruptedException e) {
+      head.discard();
+      throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+    } catch (ExecutionException e) {
+      // Read the block again in the scanner thread, which reports the error if it happens again
+      LOG.debug("Failed to read ahead block at offset {} of {}", offset, reader.getName(),
+        e.getCause());
+      return null;
+    }
+  }
+
+  private void readAhead(HFileBlock block, DataBlockEncoding encoding) {
+    if (pending.size() > depth / 2) {
+      return;
+    }
+    // The data blocks after the given one, which may be an index or Bloom block
+    long offset = block.getOffset() + 1;
+    if (!pending.isEmpty()) {
+      // All the blocks left being read while the scanner did not have to wait for any since the
+      // last batch started means the batches are larger than needed
+      if (pending.size() > 1 && pending.peekLast().block.isDone() && !waited) {
+        depth--;
+      }
+      offset = pending.peekLast().offset + 1;
+    }
+    int count = depth - pending.size();
+    if (count <= 0) {
+      return;
+    }
+    waited = false;
+    long[] offsets = new long[count];
+    int[] onDiskSizes = new int[count];
+    try {
+      count = reader.getDataBlocks(offset, offsets, onDiskSizes);
+    } catch (IOException e) {
+      // The scanner reads the blocks itself, and reports the error if it happens again
+      LOG.debug("Failed to find the data blocks after offset {} of {}", offset, reader.getName(),
+        e);
+      return;
+    }
+    if (count > 0) {
+      submit(Arrays.copyOf(offsets, count), Arrays.copyOf(onDiskSizes, count), encoding);
+    }
+  }
+
+  /** Reads the given data blocks together, see {@link HFile.Reader#readBlocks} */
+  private void submit(long[] offsets, int[] onDiskSizes, DataBlockEncoding encoding) {
+    List<CompletableFuture<HFileBlock>> futures = new ArrayList<>(offsets.length);
+    for (long offset : offsets) {
+      CompletableFuture<HFileBlock> future = new CompletableFuture<>();
+      futures.add(future);
+      pending.addLast(new Pending(offset, future));
+    }
+    execute(() -> {
+      try {
+        HFileBlock[] blocks =
+          reader.readBlocks(offsets, onDiskSizes, cacheBlocks, isCompaction, false, encoding);
+        for (int i = 0; i < blocks.length; i++) {
+          futures.get(i).complete(blocks[i]);
+        }
+      } catch (Throwable t) {
+        futures.forEach(f -> f.completeExceptionally(t));
+      }
+    }, futures);
+  }
+
+  /**
+   * Runs the given read on the pool. If the pool is shut down, the blocks are left for the scanner
+   * to read itself.
+   */
+  private void execute(Runnable read, List<CompletableFuture<HFileBlock>> futures) {
+    try {
+      pool.execute(read);
+    } catch (RejectedExecutionException e) {
+      futures.forEach(f -> f.completeExceptionally(e));
+    }
+  }
+
+  /**
+   * Called when the scanner ships its cells. Releases the blocks read ahead if the scanner caches
+   * its blocks, as it finds them in the block cache. Otherwise they are kept, as releasing them
+   * would throw away their reads: there are at most {@link #MAX_BLOCKS_KEY} of them, and they are
+   * released when the scanner takes them, seeks past them or closes.
+   */
+  void shipped() {
+    if (cacheBlocks) {
+      close();
+    }
+  }
+
+  /**
+   * Releases the blocks read ahead, now or once read. The next block asked for is then read by the
+   * scanner, and the read-ahead starts again from there.
+   */
+  void close() {
+    while (!pending.isEmpty()) {
+      pending.pollFirst().discard();
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Per data block statistics of an HFile: the minimum and maximum timestamp of the cells of each
+ * data block, and whether it holds delete markers. They are written in a meta block when
+ * {@link #ENABLED_KEY} is set, and let a scanner with a time range skip the blocks it would only
+ * read to filter out, see {@link HFileScanner#setBlockSkipTimeRange(TimeRange)}.
+ * <p>
+ * Format: int version, int number of blocks, then for every data block in file order: long offset,
+ * int on disk size with header, long minimum timestamp, long maximum timestamp, byte 1 if the block
+ * has delete markers.
+ */
+@InterfaceAudience.Private
+public class BlockZoneMap {
+
+  /** Whether new HFiles get a zone map. Can be set per column family. */
+  public static final String ENABLED_KEY = "hbase.hfile.block.zonemap.enabled";
+  public static final boolean ENABLED_DEFAULT = false;
+
+  static final String META_BLOCK_NAME = "BLOCK_ZONE_MAP";
+
+  static final int VERSION = 1;
+
+  static final BlockZoneMap EMPTY =
+    new BlockZoneMap(new long[0], new int[0], new long[0], new long[0], new boolean[0]);
+
+  private final long[] offsets;
+  private final int[] onDiskSizes;
+  private final long[] minTimestamps;
+  private final long[] maxTimestamps;
+  private final boolean[] hasDeletes;
+
+  private BlockZoneMap(long[] offsets, int[] onDiskSizes, long[] minTimestamps,
+    long[] maxTimestamps, boolean[] hasDeletes) {
+    this.offsets = offsets;
+    this.onDiskSizes = onDiskSizes;
+    this.minTimestamps = minTimestamps;
+    this.maxTimestamps = maxTimestamps;
+    this.hasDeletes = hasDeletes;
+  }
+
+  static BlockZoneMap read(DataInput in) throws IOException {
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported block zone map version " + version);
+    }
+    int count = in.readInt();
+    long[] offsets = new long[count];
+    int[] onDiskSizes = new int[count];
+    long[] minTimestamps = new long[count];
+    long[] maxTimestamps = new long[count];
+    boolean[] hasDeletes = new boolean[count];
+    for (int i = 0; i < count; i++) {
+      offsets[i] = in.readLong();
+      onDiskSizes[i] = in.readInt();
+      minTimestamps[i] = in.readLong();
+      maxTimestamps[i] = in.readLong();
+      hasDeletes[i] = in.readBoolean();
+    }
+    return new BlockZoneMap(offsets, onDiskSizes, minTimestamps, maxTimestamps, hasDeletes);
+  }
+
+  public int getBlockCount() {
+    return offsets.length;
+  }
+
+  /**
+   * Returns whether no cell of the given block can be returned by a scan with the given time range.
+   * Cells older than the range are filtered out, and so are the cells their delete markers mask.
+   * Newer cells are filtered out too, but newer delete markers still mask older cells in the range,
+   * so a block newer than the range can only be skipped when it has no delete markers.
+   */
+  boolean canSkip(int index, TimeRange timeRange) {
+    if (maxTimestamps[index] < timeRange.getMin()) {
+      return true;
+    }
+    return minTimestamps[index] >= timeRange.getMax() && !hasDeletes[index];
+  }
+
+  /**
+   * Returns the offset to read instead of the given one: the end of the run of skippable data
+   * blocks starting at the given offset, or the given offset itself.
+   */
+  long skip(long offset, TimeRange timeRange) {
+    int index = Arrays.binarySearch(offsets, offset);
+    if (index < 0) {
+      return offset;
+    }
+    long next = offset;
+    for (; index < offsets.length && canSkip(index, timeRange); index++) {
+      next = offsets[index] + onDiskSizes[index];
+    }
+    return next;
+  }
+
+  /** Returns the index of the first data block at or after the given offset */
+  int indexOf(long offset) {
+    int index = Arrays.binarySearch(offsets, offset);
+    return index < 0 ? -(index + 1) : index;
+  }
+
+  long getBlockOffset(int index) {
+    return offsets[index];
+  }
+
+  int getBlockOnDiskSize(int index) {
+    return onDiskSizes[index];
+  }
+
+  /** Returns the on disk size of the data block at the given offset, or -1 if unknown. */
+  int getOnDiskSize(long offset) {
+    int index = Arrays.binarySearch(offsets, offset);
+    return index < 0 ? -1 : onDiskSizes[index];
+  }
+
+  /** Collects the zone map of an HFile while it is written. */
+  static class Writer {
+    private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    private final byte[] entry = new byte[Bytes.SIZEOF_LONG * 3 + Bytes.SIZEOF_INT + 1];
+    private int count = 0;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+    private boolean hasDeletes = false;
+
+    void append(Cell cell) {
+      long timestamp = cell.getTimestamp();
+      minTimestamp = Math.min(minTimestamp, timestamp);
+      maxTimestamp = Math.max(maxTimestamp, timestamp);
+      hasDeletes |= PrivateCellUtil.isDelete(cell.getTypeByte());
+    }
+
+    /** Records the data block just written, holding the cells appended since the previous one */
+    void finishBlock(long offset, int onDiskSize) {
+      int pos = Bytes.putLong(entry, 0, offset);
+      pos = Bytes.putInt(entry, pos, onDiskSize);
+      pos = Bytes.putLong(entry, pos, minTimestamp);
+      pos = Bytes.putLong(entry, pos, maxTimestamp);
+      Bytes.putByte(entry, pos, hasDeletes ? (byte) 1 : (byte) 0);
+      entries.write(entry, 0, entry.length);
+      count++;
+      minTimestamp = Long.MAX_VALUE;
+      maxTimestamp = Long.MIN_VALUE;
+      hasDeletes = false;
+    }
+
+    /** Sets the offset and size of a block recorded before it was written */
+    void setBlockLocation(int index, long offset, int onDiskSize) {
+      int pos = Bytes.putLong(entries.getBuffer(), index * entry.length, offset);
+      Bytes.putInt(entries.getBuffer(), pos, onDiskSize);
+    }
+
+    int getBlockCount() {
+      return count;
+    }
+
+    /** Writes the zone map, in the format read by {@link BlockZoneMap#read(DataInput)} */
+    void write(DataOutput out) throws IOException {
+      out.writeInt(VERSION);
+      out.writeInt(count);
+      out.write(entries.getBuffer(), 0, entries.size());
+    }
+
+    /** Returns the writer of the zone map meta block */
+    Writable getMetaWriter() {
+      return new MetaWriter();
+    }
+
+    private class MetaWriter implements Writable {
+      @Override
+      public void readFields(DataInput in) throws IOException {
+        throw new IOException("Cant read with this class.");
+      }
+
+      @Override
+      public void write(DataOutput out) throws IOException {
+        Writer.this.write(out);
+      }
+    }
+  }
+}
@@ -18,8 +18,12 @@
 package org.apache.hadoop.hbase.io.hfile;
 
 import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.executor.ExecutorService;
+import org.apache.hadoop.hbase.executor.ExecutorService.ExecutorConfig;
+import org.apache.hadoop.hbase.executor.ExecutorType;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
 import org.apache.hadoop.hbase.io.hfile.BlockType.BlockCategory;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -65,6 +69,16 @@ public class CacheConfig {
    */
   public static final String CACHE_DATA_BLOCKS_COMPRESSED_KEY = "hbase.block.data.cachecompressed";
 
+  /**
+   * Configuration key for the access frequency, as estimated by the block cache, at which a data
+   * block cached in compressed form is replaced by its unpacked form, so that hot blocks stop
+   * paying decompression on every hit while cold blocks keep taking less space. 0 disables it. Only
+   * used when {@link #CACHE_DATA_BLOCKS_COMPRESSED_KEY} is set and the block cache tracks access
+   * frequencies.
+   */
+  public static final String CACHE_DATA_BLOCKS_COMPRESSED_PROMOTE_FREQUENCY_KEY =
+    "hbase.block.data.cachecompressed.promote.frequency";
+
   /**
    * Configuration key to evict all blocks of a given file from the block cache when the file is
    * closed.
@@ -109,6 +123,7 @@ public class CacheConfig {
   public static final boolean DEFAULT_CACHE_BLOOMS_ON_WRITE = false;
   public static final boolean DEFAULT_EVICT_ON_CLOSE = false;
   public static final boolean DEFAULT_CACHE_DATA_COMPRESSED = false;
+  public static final int DEFAULT_CACHE_DATA_COMPRESSED_PROMOTE_FREQUENCY = 0;
   public static final boolean DEFAULT_PREFETCH_ON_OPEN = false;
   public static final boolean DEFAULT_CACHE_COMPACTED_BLOCKS_ON_WRITE = false;
   public static final boolean DROP_BEHIND_CACHE_COMPACTION_DEFAULT = true;
@@ -139,6 +154,9 @@ public class CacheConfig {
   /** Whether data blocks should be stored in compressed and/or encrypted form in the cache */
   private final boolean cacheDataCompressed;
 
+  /** Access frequency at which compressed data blocks are cached again unpacked, 0 if never */
+  private final int cacheDataCompressedPromoteFrequency;
+
   /** Whether data blocks should be prefetched into the cache */
   private final boolean prefetchOnOpen;
 
@@ -159,6 +177,9 @@ public class CacheConfig {
 
   private final ByteBuffAllocator byteBuffAllocator;
 
+  // Executors of the region server, null when not running in one
+  private final ExecutorService executorService;
+
   /**
    * Create a cache configuration using the specified configuration object and defaults for family
    * level settings. Only use if no column family context.
@@ -179,11 +200,26 @@ public class CacheConfig {
    */
   public CacheConfig(Configuration conf, ColumnFamilyDescriptor family, BlockCache blockCache,
     ByteBuffAllocator byteBuffAllocator) {
+    this(conf, family, blockCache, byteBuffAllocator, null);
+  }
+
+  /**
+   * Create a cache configuration using the specified configuration object and family descriptor.
+   * @param conf            hbase configuration
+   * @param family          column family configuration
+   * @param executorService executors of the region server, for the pools reading and writing the
+   *                        blocks in the background
+   */
+  public CacheConfig(Configuration conf, ColumnFamilyDescriptor family, BlockCache blockCache,
+    ByteBuffAllocator byteBuffAllocator, ExecutorService executorService) {
     this.cacheDataOnRead = conf.getBoolean(CACHE_DATA_ON_READ_KEY, DEFAULT_CACHE_DATA_ON_READ)
       && (family == null ? true : family.isBlockCacheEnabled());
     this.inMemory = family == null ? DEFAULT_IN_MEMORY : family.isInMemory();
     this.cacheDataCompressed =
       conf.getBoolean(CACHE_DATA_BLOCKS_COMPRESSED_KEY, DEFAULT_CACHE_DATA_COMPRESSED);
+    this.cacheDataCompressedPromoteFrequency =
+      conf.getInt(CACHE_DATA_BLOCKS_COMPRESSED_PROMOTE_FREQUENCY_KEY,
+        DEFAULT_CACHE_DATA_COMPRESSED_PROMOTE_FREQUENCY);
     this.dropBehindCompaction =
       conf.getBoolean(DROP_BEHIND_CACHE_COMPACTION_KEY, DROP_BEHIND_CACHE_COMPACTION_DEFAULT);
     // For the following flags we enable them regardless of per-schema settings
@@ -205,6 +241,7 @@ public class CacheConfig {
     this.cacheCompactedDataOnWriteThreshold = getCacheCompactedBlocksOnWriteThreshold(conf);
     this.blockCache = blockCache;
     this.byteBuffAllocator = byteBuffAllocator;
+    this.executorService = executorService;
   }
 
   /**
@@ -218,12 +255,14 @@ public class CacheConfig {
     this.cacheBloomsOnWrite = cacheConf.cacheBloomsOnWrite;
     this.evictOnClose = cacheConf.evictOnClose;
     this.cacheDataCompressed = cacheConf.cacheDataCompressed;
+    this.cacheDataCompressedPromoteFrequency = cacheConf.cacheDataCompressedPromoteFrequency;
     this.prefetchOnOpen = cacheConf.prefetchOnOpen;
     this.cacheCompactedDataOnWrite = cacheConf.cacheCompactedDataOnWrite;
     this.cacheCompactedDataOnWriteThreshold = cacheConf.cacheCompactedDataOnWriteThreshold;
     this.dropBehindCompaction = cacheConf.dropBehindCompaction;
     this.blockCache = cacheConf.blockCache;
     this.byteBuffAllocator = cacheConf.byteBuffAllocator;
+    this.executorService = cacheConf.executorService;
   }
 
   private CacheConfig() {
@@ -234,11 +273,13 @@ public class CacheConfig {
     this.cacheBloomsOnWrite = false;
     this.evictOnClose = false;
     this.cacheDataCompressed = false;
+    this.cacheDataCompressedPromoteFrequency = 0;
     this.prefetchOnOpen = false;
     this.cacheCompactedDataOnWrite = false;
     this.dropBehindCompaction = false;
     this.blockCache = null;
     this.byteBuffAllocator = ByteBuffAllocator.HEAP;
+    this.executorService = null;
   }
 
   /**
@@ -331,6 +372,14 @@ public class CacheConfig {
     return this.cacheDataOnRead && this.cacheDataCompressed;
   }
 
+  /**
+   * Returns the access frequency at which a data block cached compressed is cached again in its
+   * unpacked form, 0 if compressed data blocks are never promoted
+   */
+  public int getCacheDataCompressedPromoteFrequency() {
+    return this.cacheDataCompressedPromoteFrequency;
+  }
+
   /**
    * Returns true if this {@link BlockCategory} should be compressed in blockcache, false otherwise
    */
@@ -415,6 +464,19 @@ public class CacheConfig {
     return this.byteBuffAllocator;
   }
 
+  /**
+   * Returns the pool of the given type of the region server, created with the given number of
+   * threads on first use and stopped with the region server, or null when not running in one.
+   */
+  public ThreadPoolExecutor getExecutor(ExecutorType type, int threads) {
+    if (executorService == null) {
+      return null;
+    }
+    ExecutorConfig config = executorService.new ExecutorConfig().setExecutorType(type)
+      .setCorePoolSize(threads).setAllowCoreThreadTimeout(true);
+    return executorService.getExecutorLazily(config);
+  }
+
   private long getCacheCompactedBlocksOnWriteThreshold(Configuration conf) {
     long cacheCompactedBlocksOnWriteThreshold =
       conf.getLong(CACHE_COMPACTED_BLOCKS_ON_WRITE_THRESHOLD_KEY,
@@ -436,6 +498,7 @@ public class CacheConfig {
       + shouldCacheDataOnWrite() + ", cacheIndexesOnWrite=" + shouldCacheIndexesOnWrite()
       + ", cacheBloomsOnWrite=" + shouldCacheBloomsOnWrite() + ", cacheEvictOnClose="
       + shouldEvictOnClose() + ", cacheDataCompressed=" + shouldCacheDataCompressed()
+      + ", cacheDataCompressedPromoteFrequency=" + getCacheDataCompressedPromoteFrequency()
       + ", prefetchOnOpen=" + shouldPrefetchOnOpen();
   }
 }
@@ -71,6 +71,12 @@ public class CacheStats {
   /** The total number of blocks that were not inserted. */
   private final AtomicLong failedInserts = new AtomicLong(0);
 
+  /** The total number of blocks that were turned away by an admission filter. */
+  private final LongAdder rejectedAdmissions = new LongAdder();
+
+  /** Estimated hit ratios at other cache sizes, null unless enabled */
+  private volatile MissRatioCurve missRatioCurve;
+
   /** Per Block Type Counts */
   private final LongAdder dataMissCount = new LongAdder();
   private final LongAdder leafIndexMissCount = new LongAdder();
@@ -254,6 +260,10 @@ public class CacheStats {
     return failedInserts.incrementAndGet();
   }
 
+  public void rejectAdmission() {
+    rejectedAdmissions.increment();
+  }
+
   // All of the counts of misses and hits.
   public long getDataMissCount() {
     return dataMissCount.sum();
@@ -433,6 +443,19 @@ public class CacheStats {
     return failedInserts.get();
   }
 
+  public long getRejectedAdmissions() {
+    return rejectedAdmissions.sum();
+  }
+
+  /** Returns the miss ratio curve of the cache, or null if it is not estimated */
+  public MissRatioCurve getMissRatioCurve() {
+    return missRatioCurve;
+  }
+
+  public void setMissRatioCurve(MissRatioCurve missRatioCurve) {
+    this.missRatioCurve = missRatioCurve;
+  }
+
   public void rollMetricsPeriod() {
     hitCounts[windowIndex] = getHitCount() - lastHitCount;
     lastHitCount = getHitCount();
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hbase.io.hfile;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
@@ -101,6 +102,59 @@ public class CombinedBlockCache implements ResizableBlockCache, HeapSize {
     }
   }
 
+  @Override
+  public Cacheable[] getBlocks(BlockCacheKey[] cacheKeys, boolean caching,
+    boolean updateCacheMetrics) {
+    Cacheable[] blocks = new Cacheable[cacheKeys.length];
+    int[] misses = getBlocksFromL1(cacheKeys, blocks, caching, updateCacheMetrics);
+    if (misses.length > 0) {
+      // The blocks not in L1 are looked up in L2 together
+      BlockCacheKey[] missKeys = new BlockCacheKey[misses.length];
+      for (int i = 0; i < misses.length; i++) {
+        missKeys[i] = cacheKeys[misses[i]];
+      }
+      Cacheable[] l2Blocks = l2Cache.getBlocks(missKeys, caching, updateCacheMetrics);
+      for (int i = 0; i < misses.length; i++) {
+        blocks[misses[i]] = l2Blocks[i];
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Fetches the given blocks that are in L1, counting the others as L1 misses like
+   * {@link #getBlock(BlockCacheKey, boolean, boolean, boolean)} does.
+   * @return the indexes of the keys not in L1
+   */
+  protected int[] getBlocksFromL1(BlockCacheKey[] cacheKeys, Cacheable[] blocks, boolean caching,
+    boolean updateCacheMetrics) {
+    int[] misses = new int[cacheKeys.length];
+    int missCount = 0;
+    for (int i = 0; i < cacheKeys.length; i++) {
+      BlockCacheKey cacheKey = cacheKeys[i];
+      if (l1Cache.containsBlock(cacheKey)) {
+        blocks[i] = l1Cache.getBlock(cacheKey, caching, false, updateCacheMetrics);
+      } else if (updateCacheMetrics) {
+        l1Cache.getStats().miss(caching, cacheKey.isPrimary(), cacheKey.getBlockType());
+      }
+      if (blocks[i] == null) {
+        misses[missCount++] = i;
+      }
+    }
+    return Arrays.copyOf(misses, missCount);
+  }
+
+  @Override
+  public int getAccessFrequency(BlockCacheKey cacheKey) {
+    return Math.max(l1Cache.getAccessFrequency(cacheKey), l2Cache.getAccessFrequency(cacheKey));
+  }
+
+  @Override
+  public boolean replaceBlock(BlockCacheKey cacheKey, Cacheable buf, boolean inMemory) {
+    return l1Cache.replaceBlock(cacheKey, buf, inMemory)
+      || l2Cache.replaceBlock(cacheKey, buf, inMemory);
+  }
+
   @Override
   public boolean evictBlock(BlockCacheKey cacheKey) {
     return l1Cache.evictBlock(cacheKey) || l2Cache.evictBlock(cacheKey);
@@ -347,6 +401,11 @@ public class CombinedBlockCache implements ResizableBlockCache, HeapSize {
       return lruCacheStats.getFailedInserts() + bucketCacheStats.getFailedInserts();
     }
 
+    @Override
+    public long getRejectedAdmissions() {
+      return lruCacheStats.getRejectedAdmissions() + bucketCacheStats.getRejectedAdmissions();
+    }
+
     @Override
     public long getSumHitCountsPastNPeriods() {
       return lruCacheStats.getSumHitCountsPastNPeriods()
@@ -377,9 +436,20 @@ public class CombinedBlockCache implements ResizableBlockCache, HeapSize {
     return new BlockCachesIterator(getBlockCaches());
   }
 
+  /**
+   * Returns the L1 cache followed by the tiers of the L2 cache, see
+   * {@link BucketCache#setVictimCache(BucketCache)}, each with its own stats.
+   */
   @Override
   public BlockCache[] getBlockCaches() {
-    return new BlockCache[] { this.l1Cache, this.l2Cache };
+    BlockCache[] l2Tiers = this.l2Cache.getBlockCaches();
+    if (l2Tiers == null) {
+      return new BlockCache[] { this.l1Cache, this.l2Cache };
+    }
+    BlockCache[] caches = new BlockCache[1 + l2Tiers.length];
+    caches[0] = this.l1Cache;
+    System.arraycopy(l2Tiers, 0, caches, 1, l2Tiers.length);
+    return caches;
   }
 
   @Override
@@ -22,6 +22,7 @@ import java.io.IOException;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.util.BinaryFuseFilterChunk;
 import org.apache.hadoop.hbase.util.BloomFilter;
 import org.apache.hadoop.hbase.util.BloomFilterUtil;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -47,6 +48,9 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
   private int hashCount;
   private Hash hash;
 
+  /** Whether the chunks are binary fuse filters rather than Bloom filters */
+  private final boolean binaryFuse;
+
   private long[] numQueriesPerChunk;
   private long[] numPositivesPerChunk;
 
@@ -59,6 +63,16 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
    */
   public CompoundBloomFilter(DataInput meta, HFile.Reader reader, BloomFilterMetrics metrics)
     throws IOException {
+    this(VERSION, meta, reader, metrics);
+  }
+
+  /**
+   * De-serialization for compound Bloom filter metadata of the given version, either
+   * {@link #VERSION} or {@link #BINARY_FUSE_VERSION}.
+   */
+  public CompoundBloomFilter(int version, DataInput meta, HFile.Reader reader,
+    BloomFilterMetrics metrics) throws IOException {
+    this.binaryFuse = version == BINARY_FUSE_VERSION;
     this.reader = reader;
     this.metrics = metrics;
 
@@ -107,8 +121,11 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     HFileBlock bloomBlock = getBloomBlock(block);
     try {
       ByteBuff bloomBuf = bloomBlock.getBufferReadOnly();
-      result = BloomFilterUtil.contains(key, keyOffset, keyLength, bloomBuf,
-        bloomBlock.headerSize(), bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
+      result = binaryFuse
+        ? BinaryFuseFilterChunk.contains(key, keyOffset, keyLength, bloomBuf,
+          bloomBlock.headerSize(), hash)
+        : BloomFilterUtil.contains(key, keyOffset, keyLength, bloomBuf, bloomBlock.headerSize(),
+          bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
     } finally {
       // After the use, should release the block to deallocate byte buffers.
       bloomBlock.release();
@@ -156,8 +173,10 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     HFileBlock bloomBlock = getBloomBlock(block);
     try {
       ByteBuff bloomBuf = bloomBlock.getBufferReadOnly();
-      result = BloomFilterUtil.contains(keyCell, bloomBuf, bloomBlock.headerSize(),
-        bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount, type);
+      result = binaryFuse
+        ? BinaryFuseFilterChunk.contains(keyCell, bloomBuf, bloomBlock.headerSize(), hash, type)
+        : BloomFilterUtil.contains(keyCell, bloomBuf, bloomBlock.headerSize(),
+          bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount, type);
     } finally {
       // After the use, should release the block to deallocate the byte buffers.
       bloomBlock.release();
@@ -29,7 +29,9 @@ import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.util.BinaryFuseFilterChunk;
 import org.apache.hadoop.hbase.util.BloomFilterChunk;
+import org.apache.hadoop.hbase.util.BloomFilterFactory.ChunkType;
 import org.apache.hadoop.hbase.util.BloomFilterUtil;
 import org.apache.hadoop.hbase.util.BloomFilterWriter;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -82,6 +84,8 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
 
   private BloomType bloomType;
 
+  private ChunkType chunkType;
+
   /**
    * each chunk's size in bytes. The real chunk size might be different as required by the fold
    * factor. target false positive rate hash function type to use maximum degree of folding allowed
@@ -89,6 +93,17 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
    */
   public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate, int hashType,
     int maxFold, boolean cacheOnWrite, CellComparator comparator, BloomType bloomType) {
+    this(chunkByteSizeHint, errorRate, hashType, maxFold, cacheOnWrite, comparator, bloomType,
+      ChunkType.BLOOM);
+  }
+
+  /**
+   * Same as above, with chunks of the given type. The fold factor is only used by Bloom filter
+   * chunks.
+   */
+  public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate, int hashType,
+    int maxFold, boolean cacheOnWrite, CellComparator comparator, BloomType bloomType,
+    ChunkType chunkType) {
     chunkByteSize = BloomFilterUtil.computeFoldableByteSize(chunkByteSizeHint * 8L, maxFold);
 
     this.errorRate = errorRate;
@@ -97,6 +112,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
     this.cacheOnWrite = cacheOnWrite;
     this.comparator = comparator;
     this.bloomType = bloomType;
+    this.chunkType = chunkType;
   }
 
   @Override
@@ -184,7 +200,9 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
   }
 
   private void allocateNewChunk() {
-    if (prevChunk == null) {
+    if (prevChunk == null && chunkType == ChunkType.BINARY_FUSE) {
+      chunk = new BinaryFuseFilterChunk(chunkByteSize, errorRate, hashType, bloomType);
+    } else if (prevChunk == null) {
       // First chunk
       chunk = BloomFilterUtil.createBySize(chunkByteSize, errorRate, hashType, maxFold, bloomType);
     } else {
@@ -240,7 +258,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
      */
     @Override
     public void write(DataOutput out) throws IOException {
-      out.writeInt(VERSION);
+      out.writeInt(chunkType == ChunkType.BINARY_FUSE ? BINARY_FUSE_VERSION : VERSION);
 
       out.writeLong(getByteSize());
       out.writeInt(prevChunk.getHashCount());
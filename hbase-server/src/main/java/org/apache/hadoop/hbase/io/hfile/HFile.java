@@ -41,6 +41,7 @@ import org.apache.hadoop.hbase.io.MetricsIOWrapperImpl;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.hfile.ReaderContext.ReaderType;
+import org.apache.hadoop.hbase.ipc.RpcServer;
 import org.apache.hadoop.hbase.regionserver.CellSink;
 import org.apache.hadoop.hbase.regionserver.ShipperListener;
 import org.apache.hadoop.hbase.util.BloomFilterWriter;
@@ -191,9 +192,27 @@ public final class HFile {
     return CHECKSUM_FAILURES.sum();
   }
 
+  /** Counts a file system read of the given number of blocks */
+  public static final void updateBlockReads(int blocks) {
+    metrics.updateBlockReads(blocks);
+  }
+
   public static final void updateReadLatency(long latencyMillis, boolean pread) {
+    updateReadLatency(latencyMillis, pread, 1);
+  }
+
+  /**
+   * Records the latency of a file system read of the given number of blocks. Only the single block
+   * preads of the RPC handlers feed the foreground latency prefetch backs off on, see
+   * {@link PrefetchThrottle}: the reads of the prefetch and read-ahead threads, and the reads of
+   * several blocks at once, do not.
+   */
+  public static final void updateReadLatency(long latencyMillis, boolean pread, int blocks) {
     if (pread) {
       metrics.updateFsPreadTime(latencyMillis);
+      if (blocks == 1 && RpcServer.isInRpcCallContext()) {
+        PrefetchExecutor.updateForegroundReadLatency(latencyMillis);
+      }
     } else {
       metrics.updateFsReadTime(latencyMillis);
     }
@@ -394,6 +413,30 @@ public final class HFile {
 
     HFileBlock getMetaBlock(String metaBlockName, boolean cacheBlock) throws IOException;
 
+    /** Returns the per data block statistics of the file, empty if it was written without them */
+    BlockZoneMap getBlockZoneMap() throws IOException;
+
+    /**
+     * Fills the given arrays with the offsets and on-disk sizes, headers included, of the data
+     * blocks starting at or after the given offset, in file order, as listed by the block index.
+     * @return the number of data blocks found, at most the length of the arrays
+     */
+    int getDataBlocks(long fromOffset, long[] offsets, int[] onDiskSizes) throws IOException;
+
+    /**
+     * Reads the blocks at the given offsets like {@link #readBlock} with positional reads, checking
+     * the block cache first. The blocks missing from the cache are read together, nearby blocks
+     * sharing a single read, see {@link HFileBlock.FSReader#readBlocksData}. With cacheOnly, as
+     * when prefetching, the cache lookups are not counted in the cache metrics and the blocks read
+     * are returned as cached.
+     * @param offsets     the offsets of the blocks, in increasing order
+     * @param onDiskSizes the on-disk sizes of the blocks, including their headers
+     * @return the blocks in the order of the offsets, all of which the caller must release
+     */
+    HFileBlock[] readBlocks(long[] offsets, int[] onDiskSizes, boolean cacheBlock,
+      boolean isCompaction, boolean cacheOnly, DataBlockEncoding expectedDataBlockEncoding)
+      throws IOException;
+
     Optional<Cell> getLastKey();
 
     Optional<Cell> midKey() throws IOException;
@@ -685,6 +685,28 @@ public class HFileBlock implements Cacheable {
     return bufCapacity == expectedCapacity || bufCapacity == expectedCapacity + headerSize;
   }
 
+  /**
+   * Return true when {@link #isUnpacked()} can tell the packed and unpacked forms of this block
+   * apart. That is not the case when compression saved exactly the size of a header, or of the
+   * checksums, so such blocks are never cached in both forms.
+   */
+  boolean hasDistinctUnpackedSize() {
+    final int headerSize = headerSize();
+    final int unpackedCapacity = headerSize + uncompressedSizeWithoutHeader;
+    // The packed buffer holds the on disk bytes, with or without the checksums, and possibly the
+    // header of the next block
+    for (int packedCapacity : new int[] { headerSize + onDiskSizeWithoutHeader,
+      onDiskDataSizeWithHeader }) {
+      if (
+        packedCapacity == unpackedCapacity || packedCapacity == unpackedCapacity + headerSize
+          || packedCapacity + headerSize == unpackedCapacity
+      ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Cannot be {@link #UNSET}. Must be a legitimate value. Used re-making the {@link BlockCacheKey}
    * when block is returned to the cache.
@@ -985,6 +1007,11 @@ public class HFileBlock implements Cacheable {
      */
     private void putHeader(byte[] dest, int offset, int onDiskSize, int uncompressedSize,
       int onDiskDataSize) {
+      putHeader(dest, offset, blockType, prevOffset, onDiskSize, uncompressedSize, onDiskDataSize);
+    }
+
+    private void putHeader(byte[] dest, int offset, BlockType blockType, long prevOffset,
+      int onDiskSize, int uncompressedSize, int onDiskDataSize) {
       offset = blockType.put(dest, offset);
       offset = Bytes.putInt(dest, offset, onDiskSize - HConstants.HFILEBLOCK_HEADER_SIZE);
       offset = Bytes.putInt(dest, offset, uncompressedSize - HConstants.HFILEBLOCK_HEADER_SIZE);
@@ -1040,6 +1067,62 @@ public class HFileBlock implements Cacheable {
       HFile.updateWriteLatency(EnvironmentEdgeManager.currentTime() - startTime);
     }
 
+    /**
+     * Ends the data block being written like {@link #finishBlock()}, but returns it uncompressed,
+     * behind a dummy header, instead of compressing it. Used by {@link BlockCompressionPipeline},
+     * which compresses the block elsewhere and writes it with {@link #writeCompressedBlock}. The
+     * writer is left idle until the next {@link #startWriting(BlockType)}.
+     * @return a copy of the dummy header and the encoded block data
+     */
+    byte[] finishBlockUncompressed() throws IOException {
+      expectState(State.WRITING);
+      if (blockType == BlockType.DATA) {
+        this.dataBlockEncoder.endBlockEncoding(dataBlockEncodingCtx, userDataStream,
+          baosInMemory.getBuffer(), blockType);
+        blockType = dataBlockEncodingCtx.getBlockType();
+      }
+      userDataStream.flush();
+      state = State.INIT;
+      return baosInMemory.toByteArray();
+    }
+
+    /** Returns the type of the block being written or last written */
+    BlockType getBlockType() {
+      return blockType;
+    }
+
+    /**
+     * Writes a block returned by {@link #finishBlockUncompressed()} once compressed, filling in its
+     * header and checksums the same way {@link #finishBlock()} does, so that the bytes written are
+     * the same as if the block had been compressed in place.
+     * @param blockType                  the type of the block
+     * @param uncompressedSizeWithHeader the size of the block returned by
+     *                                   {@link #finishBlockUncompressed()}
+     * @param compressed                 the dummy header and the compressed block data
+     * @param out                        the stream to write the block to
+     * @return the on-disk size of the block, including the header and the checksums
+     */
+    int writeCompressedBlock(BlockType blockType, int uncompressedSizeWithHeader, Bytes compressed,
+      FSDataOutputStream out) throws IOException {
+      long offset = out.getPos();
+      byte[] buf = compressed.get();
+      int start = compressed.getOffset();
+      int onDiskDataSize = compressed.getLength();
+      int numBytes =
+        (int) ChecksumUtil.numBytes(onDiskDataSize, fileContext.getBytesPerChecksum());
+      putHeader(buf, start, blockType, prevOffsetByType[blockType.getId()],
+        onDiskDataSize + numBytes, uncompressedSizeWithHeader, onDiskDataSize);
+      byte[] checksum = new byte[numBytes];
+      ChecksumUtil.generateChecksums(buf, start, start + onDiskDataSize, checksum, 0,
+        fileContext.getChecksumType(), fileContext.getBytesPerChecksum());
+      long startTime = EnvironmentEdgeManager.currentTime();
+      out.write(buf, start, onDiskDataSize);
+      out.write(checksum);
+      HFile.updateWriteLatency(EnvironmentEdgeManager.currentTime() - startTime);
+      prevOffsetByType[blockType.getId()] = offset;
+      return onDiskDataSize + numBytes;
+    }
+
     /**
      * Returns the header or the compressed data (or uncompressed data when not using compression)
      * as a byte array. Can be called in the "writing" state or in the "block ready" state. If
@@ -1295,6 +1378,19 @@ public class HFileBlock implements Cacheable {
     HFileBlock readBlockData(long offset, long onDiskSize, boolean pread, boolean updateMetrics,
       boolean intoHeap) throws IOException;
 
+    /**
+     * Reads the blocks at the given offsets with positional reads, coalescing the reads of nearby
+     * blocks: a run of blocks separated by at most {@link FSReaderImpl#COALESCE_MAX_GAP_KEY} bytes
+     * and spanning at most {@link FSReaderImpl#COALESCE_MAX_SIZE_KEY} bytes is read by a single
+     * read, which is then split into the blocks. The bytes between the blocks are read and dropped.
+     * @param offsets     the offsets of the blocks, in increasing order
+     * @param onDiskSizes the on-disk sizes of the blocks, including their headers
+     * @return the newly read blocks, in the order of the offsets
+     * @see #readBlockData(long, long, boolean, boolean, boolean)
+     */
+    HFileBlock[] readBlocksData(long[] offsets, int[] onDiskSizes, boolean updateMetrics,
+      boolean intoHeap) throws IOException;
+
     /**
      * Creates a block iterator over the given portion of the {@link HFile}. The iterator returns
      * blocks starting with offset such that offset &lt;= startOffset &lt; endOffset. Returned
@@ -1347,6 +1443,16 @@ public class HFileBlock implements Cacheable {
    * Reads version 2 HFile blocks from the filesystem.
    */
   static class FSReaderImpl implements FSReader {
+    /**
+     * Largest gap between two blocks read by the same coalesced read, 0 for adjacent blocks only
+     */
+    static final String COALESCE_MAX_GAP_KEY = "hbase.hfile.block.read.coalesce.max.gap";
+    static final int COALESCE_MAX_GAP_DEFAULT = 64 * 1024;
+
+    /** Largest coalesced read, 0 to read every block by itself */
+    static final String COALESCE_MAX_SIZE_KEY = "hbase.hfile.block.read.coalesce.max.size";
+    static final int COALESCE_MAX_SIZE_DEFAULT = 4 * 1024 * 1024;
+
     /**
      * The file system stream of the underlying {@link HFile} that does or doesn't do checksum
      * validations in the filesystem
@@ -1385,6 +1491,10 @@ public class HFileBlock implements Cacheable {
 
     private final boolean isPreadAllBytes;
 
+    private final int coalesceMaxGap;
+
+    private final int coalesceMaxSize;
+
     FSReaderImpl(ReaderContext readerContext, HFileContext fileContext, ByteBuffAllocator allocator,
       Configuration conf) throws IOException {
       this.fileSize = readerContext.getFileSize();
@@ -1402,6 +1512,8 @@ public class HFileBlock implements Cacheable {
       defaultDecodingCtx = new HFileBlockDefaultDecodingContext(conf, fileContext);
       encodedBlockDecodingCtx = defaultDecodingCtx;
       isPreadAllBytes = readerContext.isPreadAllBytes();
+      coalesceMaxGap = conf.getInt(COALESCE_MAX_GAP_KEY, COALESCE_MAX_GAP_DEFAULT);
+      coalesceMaxSize = conf.getInt(COALESCE_MAX_SIZE_KEY, COALESCE_MAX_SIZE_DEFAULT);
     }
 
     @Override
@@ -1580,6 +1692,117 @@ public class HFileBlock implements Cacheable {
       }
     }
 
+    @Override
+    public HFileBlock[] readBlocksData(long[] offsets, int[] onDiskSizes, boolean updateMetrics,
+      boolean intoHeap) throws IOException {
+      HFileBlock[] blocks = new HFileBlock[offsets.length];
+      boolean success = false;
+      try {
+        for (int start = 0, end; start < offsets.length; start = end) {
+          end = planRead(offsets, onDiskSizes, start, coalesceMaxGap, coalesceMaxSize);
+          if (end - start == 1) {
+            blocks[start] =
+              readBlockData(offsets[start], onDiskSizes[start], true, updateMetrics, intoHeap);
+          } else {
+            readCoalesced(offsets, onDiskSizes, start, end, blocks, updateMetrics, intoHeap);
+          }
+        }
+        success = true;
+        return blocks;
+      } finally {
+        if (!success) {
+          for (HFileBlock block : blocks) {
+            if (block != null) {
+              block.release();
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns the end, exclusive, of the run of blocks starting at the given index that can be read
+     * by a single read: every block starts at most maxGap bytes after the end of the previous one,
+     * and the run spans at most maxSize bytes. The run always has at least the starting block.
+     */
+    static int planRead(long[] offsets, int[] onDiskSizes, int start, int maxGap, int maxSize) {
+      long runOffset = offsets[start];
+      int end = start + 1;
+      for (; end < offsets.length; end++) {
+        long previousEnd = offsets[end - 1] + onDiskSizes[end - 1];
+        if (
+          offsets[end] < previousEnd || offsets[end] - previousEnd > maxGap
+            || offsets[end] + onDiskSizes[end] - runOffset > maxSize
+        ) {
+          break;
+        }
+      }
+      return end;
+    }
+
+    /**
+     * Reads the blocks from start to end, exclusive, with a single positional read, and splits it
+     * into the blocks. A block failing its HBase checksum is read again by itself, going through
+     * the HDFS checksum fallback of {@link #readBlockData(long, long, boolean, boolean, boolean)}.
+     */
+    private void readCoalesced(long[] offsets, int[] onDiskSizes, int start, int end,
+      HFileBlock[] blocks, boolean updateMetrics, boolean intoHeap) throws IOException {
+      long runOffset = offsets[start];
+      long runEnd = offsets[end - 1] + onDiskSizes[end - 1];
+      int runSize = checkAndGetSizeAsInt(runEnd - runOffset, hdrSize);
+      boolean verifyChecksum = streamWrapper.shouldUseHBaseChecksum();
+      boolean checksumSupport = fileContext.isUseHBaseChecksum();
+      FSDataInputStream is = streamWrapper.getStream(verifyChecksum);
+      long startTime = EnvironmentEdgeManager.currentTime();
+      ByteBuff run = allocator.allocate(runSize);
+      try {
+        BlockIOUtils.preadWithExtra(run, is, runOffset, runSize, 0, isPreadAllBytes);
+        if (updateMetrics) {
+          HFile.updateReadLatency(EnvironmentEdgeManager.currentTime() - startTime, true,
+            end - start);
+          HFile.updateBlockReads(end - start);
+        }
+        for (int i = start; i < end; i++) {
+          int onDiskSizeWithHeader = checkAndGetSizeAsInt(onDiskSizes[i], hdrSize);
+          int position = (int) (offsets[i] - runOffset);
+          // The header of the next block is known when the run goes on past it
+          boolean readNextHeader = position + onDiskSizeWithHeader + hdrSize <= runSize;
+          ByteBuff onDiskBlock = allocate(onDiskSizeWithHeader + hdrSize, intoHeap);
+          boolean initHFileBlockSuccess = false;
+          try {
+            onDiskBlock.put(0, run, position,
+              onDiskSizeWithHeader + (readNextHeader ? hdrSize : 0));
+            verifyOnDiskSizeMatchesHeader(onDiskSizeWithHeader,
+              onDiskBlock.duplicate().position(0).limit(hdrSize), offsets[i], checksumSupport);
+            ByteBuff curBlock = onDiskBlock.duplicate().position(0).limit(onDiskSizeWithHeader);
+            if (verifyChecksum && !validateChecksum(offsets[i], curBlock, hdrSize)) {
+              HFile.LOG.warn("HBase checksum verification failed for file {} at offset {} in a"
+                + " coalesced read, reading the block again", pathName, offsets[i]);
+              blocks[i] =
+                readBlockData(offsets[i], onDiskSizeWithHeader, true, updateMetrics, intoHeap);
+              continue;
+            }
+            curBlock.limit(curBlock.getInt(Header.ON_DISK_DATA_SIZE_WITH_HEADER_INDEX));
+            HFileBlock hFileBlock = createFromBuff(curBlock, checksumSupport, offsets[i],
+              getNextBlockOnDiskSize(readNextHeader, onDiskBlock, onDiskSizeWithHeader),
+              fileContext, intoHeap ? HEAP : allocator);
+            if (!fileContext.isCompressedOrEncrypted()) {
+              hFileBlock.sanityCheckUncompressed();
+            }
+            blocks[i] = hFileBlock;
+            initHFileBlockSuccess = true;
+          } finally {
+            if (!initHFileBlockSuccess) {
+              onDiskBlock.release();
+            }
+          }
+        }
+        streamWrapper.checksumOk();
+      } finally {
+        run.release();
+      }
+    }
+
     /**
      * Returns Check <code>onDiskSizeWithHeaderL</code> size is healthy and then return it as an int
      */
@@ -1748,6 +1971,7 @@ public class HFileBlock implements Cacheable {
         long duration = EnvironmentEdgeManager.currentTime() - startTime;
         if (updateMetrics) {
           HFile.updateReadLatency(duration, pread);
+          HFile.updateBlockReads(1);
         }
         // The onDiskBlock will become the headerAndDataBuffer for this block.
         // If nextBlockOnDiskSizeWithHeader is not zero, the onDiskBlock already
@@ -25,6 +25,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -102,6 +103,37 @@ public class HFileBlockIndex {
    */
   protected static final int MID_KEY_METADATA_SIZE = Bytes.SIZEOF_LONG + 2 * Bytes.SIZEOF_INT;
 
+  /**
+   * The block offsets and on-disk sizes of the entries of one index block, in the order of the
+   * entries, which is also the order of the blocks in the file.
+   */
+  static final class IndexEntries {
+    final long[] offsets;
+    final int[] onDiskSizes;
+    final int count;
+
+    IndexEntries(long[] offsets, int[] onDiskSizes, int count) {
+      this.offsets = offsets;
+      this.onDiskSizes = onDiskSizes;
+      this.count = count;
+    }
+
+    /** Reads the entries of a non-root index block in the format of {@link NoOpIndexBlockEncoder} */
+    static IndexEntries readNonRoot(ByteBuff nonRootIndex) {
+      int numEntries = nonRootIndex.getInt(0);
+      long[] offsets = new long[numEntries];
+      int[] onDiskSizes = new int[numEntries];
+      // Entries start after the number of entries and the secondary index.
+      int entriesOffset = Bytes.SIZEOF_INT * (numEntries + 2);
+      for (int i = 0; i < numEntries; i++) {
+        int entryOffset = entriesOffset + nonRootIndex.getInt(Bytes.SIZEOF_INT * (i + 1));
+        offsets[i] = nonRootIndex.getLong(entryOffset);
+        onDiskSizes[i] = nonRootIndex.getInt(entryOffset + Bytes.SIZEOF_LONG);
+      }
+      return new IndexEntries(offsets, onDiskSizes, numEntries);
+    }
+  }
+
   /**
    * An implementation of the BlockIndexReader that deals with block keys which are plain byte[]
    * like MetaBlock or the Bloom Block for ROW bloom. Does not need a comparator. It can work on
@@ -547,6 +579,16 @@ public class HFileBlockIndex {
       return heapSize;
     }
 
+    @Override
+    protected IndexEntries getRootEntries() {
+      return seeker.getRootEntries();
+    }
+
+    @Override
+    protected IndexEntries getNonRootEntries(ByteBuff nonRootIndex) {
+      return seeker.getNonRootEntries(nonRootIndex);
+    }
+
     @Override
     public void readMultiLevelIndexRoot(HFileBlock blk, final int numEntries) throws IOException {
       seeker = indexBlockEncoder.createSeeker();
@@ -833,6 +875,91 @@ public class HFileBlockIndex {
       return entryIndex;
     }
 
+    /** Returns the block offsets and on-disk sizes of the root-level entries */
+    protected IndexEntries getRootEntries() {
+      return new IndexEntries(blockOffsets, blockDataSizes, rootCount);
+    }
+
+    /** Returns the block offsets and on-disk sizes of the entries of a non-root index block */
+    protected IndexEntries getNonRootEntries(ByteBuff nonRootIndex) {
+      return IndexEntries.readNonRoot(nonRootIndex);
+    }
+
+    /**
+     * Fills the given arrays with the offsets and on-disk sizes, headers included, of the data
+     * blocks starting at or after the given offset, in file order, until the arrays are full or the
+     * data blocks run out. The index is walked by offset rather than by key: each leaf index block
+     * is written inline after the data blocks it indexes, so the data blocks from the given offset
+     * on are indexed by the leaf index blocks after it. The index blocks are read through the given
+     * reader and cached.
+     * @return the number of data blocks found
+     */
+    public int getDataBlocks(long fromOffset, long[] offsets, int[] onDiskSizes,
+      CachingBlockReader cachingBlockReader) throws IOException {
+      if (isEmpty()) {
+        return 0;
+      }
+      return addDataBlocks(getRootEntries(), 1, fromOffset, offsets, onDiskSizes, 0,
+        cachingBlockReader);
+    }
+
+    private int addDataBlocks(IndexEntries entries, int level, long fromOffset, long[] offsets,
+      int[] onDiskSizes, int found, CachingBlockReader cachingBlockReader) throws IOException {
+      if (level == searchTreeLevel) {
+        // The entries are the data blocks
+        int i = Arrays.binarySearch(entries.offsets, 0, entries.count, fromOffset);
+        for (i = i < 0 ? -(i + 1) : i; i < entries.count && found < offsets.length; i++) {
+          offsets[found] = entries.offsets[i];
+          onDiskSizes[found++] = entries.onDiskSizes[i];
+        }
+        return found;
+      }
+      // The first entry with data blocks from the offset on is the first one whose last leaf index
+      // block is after the offset
+      int low = 0;
+      int high = entries.count;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (getLastLeafOffset(entries, mid, level, cachingBlockReader) > fromOffset) {
+          high = mid;
+        } else {
+          low = mid + 1;
+        }
+      }
+      for (int i = low; i < entries.count && found < offsets.length; i++) {
+        IndexEntries child = readEntries(entries.offsets[i], entries.onDiskSizes[i], level + 1,
+          cachingBlockReader);
+        found = addDataBlocks(child, level + 1, fromOffset, offsets, onDiskSizes, found,
+          cachingBlockReader);
+      }
+      return found;
+    }
+
+    /** Returns the offset of the last leaf index block under the given entry of the given level */
+    private long getLastLeafOffset(IndexEntries entries, int i, int level,
+      CachingBlockReader cachingBlockReader) throws IOException {
+      while (level < searchTreeLevel - 1) {
+        entries = readEntries(entries.offsets[i], entries.onDiskSizes[i], ++level,
+          cachingBlockReader);
+        i = entries.count - 1;
+      }
+      return entries.offsets[i];
+    }
+
+    private IndexEntries readEntries(long offset, int onDiskSize, int level,
+      CachingBlockReader cachingBlockReader) throws IOException {
+      BlockType expectedBlockType =
+        level == searchTreeLevel ? BlockType.LEAF_INDEX : BlockType.INTERMEDIATE_INDEX;
+      // We always cache index blocks, as in loadDataBlockWithScanInfo
+      HFileBlock block = cachingBlockReader.readBlock(offset, onDiskSize, true, true, false, true,
+        expectedBlockType, null);
+      try {
+        return getNonRootEntries(block.getBufferWithoutHeader());
+      } finally {
+        block.release();
+      }
+    }
+
     /**
      * Read in the root-level index from the given input stream. Must match what was written into
      * the root level by {@link BlockIndexWriter#writeIndexBlocks(FSDataOutputStream)} at the offset
@@ -1313,6 +1440,28 @@ public class HFileBlockIndex {
       ++totalNumEntries;
     }
 
+    /**
+     * Adds an index entry for a data block that has not been written yet, see
+     * {@link #setEntryLocation(int, long, int)}.
+     * @param firstKey the first key of the data block
+     * @return the position of the entry in the current leaf-level block
+     */
+    int addPendingEntry(byte[] firstKey) {
+      addEntry(firstKey, -1, 0);
+      return curInlineChunk.getNumEntries() - 1;
+    }
+
+    /**
+     * Sets the location of an entry added by {@link #addPendingEntry(byte[])} once its data block
+     * has been written. This must happen before the current leaf-level block is written out.
+     * @param entry         the position of the entry in the current leaf-level block
+     * @param blockOffset   the offset of the data block
+     * @param blockDataSize the on-disk size of the data block
+     */
+    void setEntryLocation(int entry, long blockOffset, int blockDataSize) {
+      curInlineChunk.setBlockLocation(entry, blockOffset, blockDataSize);
+    }
+
     /**
      * @throws IOException if we happened to write a multi-level index.
      */
@@ -1552,6 +1701,12 @@ public class HFileBlockIndex {
       return blockOffsets.get(i);
     }
 
+    @Override
+    public void setBlockLocation(int i, long blockOffset, int onDiskDataSize) {
+      blockOffsets.set(i, blockOffset);
+      onDiskDataSizes.set(i, onDiskDataSize);
+    }
+
     public int getOnDiskDataSize(int i) {
       return onDiskDataSizes.get(i);
     }
@@ -24,6 +24,7 @@ import org.apache.hadoop.hbase.CellComparator;
 import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
+import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.yetus.audience.InterfaceAudience;
 
@@ -70,5 +71,11 @@ public interface HFileIndexBlockEncoder {
       boolean cacheBlocks, boolean pread, boolean isCompaction,
       DataBlockEncoding expectedDataBlockEncoding, HFile.CachingBlockReader cachingBlockReader)
       throws IOException;
+
+    /** Returns the block offsets and on-disk sizes of the root-level entries */
+    HFileBlockIndex.IndexEntries getRootEntries();
+
+    /** Returns the block offsets and on-disk sizes of the entries of a non-root index block */
+    HFileBlockIndex.IndexEntries getNonRootEntries(ByteBuff nonRootIndex);
   }
 }
@@ -29,6 +29,7 @@ import org.apache.yetus.audience.InterfaceAudience;
 @InterfaceAudience.Private
 public class HFileIndexBlockEncoderImpl implements HFileIndexBlockEncoder {
   private final IndexBlockEncoding indexBlockEncoding;
+  private final HFileIndexBlockEncoder encoder;
 
   /**
    * Do index block encoding with specified options.
@@ -36,6 +37,18 @@ public class HFileIndexBlockEncoderImpl implements HFileIndexBlockEncoder {
    */
   public HFileIndexBlockEncoderImpl(IndexBlockEncoding encoding) {
     this.indexBlockEncoding = encoding != null ? encoding : IndexBlockEncoding.NONE;
+    this.encoder = getEncoder(this.indexBlockEncoding);
+  }
+
+  private static HFileIndexBlockEncoder getEncoder(IndexBlockEncoding encoding) {
+    switch (encoding) {
+      case NONE:
+        return NoOpIndexBlockEncoder.INSTANCE;
+      case PREFIX_TREE:
+        return PrefixTreeIndexBlockEncoder.INSTANCE;
+      default:
+        throw new IllegalArgumentException("Unsupported index block encoding " + encoding);
+    }
   }
 
   public static HFileIndexBlockEncoder createFromFileInfo(HFileInfo fileInfo) throws IOException {
@@ -70,12 +83,12 @@ public class HFileIndexBlockEncoderImpl implements HFileIndexBlockEncoder {
   @Override
   public void encode(BlockIndexChunk blockIndexChunk, boolean rootIndexBlock, DataOutput out)
     throws IOException {
-    // TODO
+    encoder.encode(blockIndexChunk, rootIndexBlock, out);
   }
 
   @Override
   public EncodedSeeker createSeeker() {
-    return null;
+    return encoder.createSeeker();
   }
 
   @Override
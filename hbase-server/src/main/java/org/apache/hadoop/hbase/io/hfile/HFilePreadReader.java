@@ -18,6 +18,7 @@
 package org.apache.hadoop.hbase.io.hfile;
 
 import java.io.IOException;
+import java.util.Arrays;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.io.FSDataInputStreamWrapper;
@@ -32,6 +33,9 @@ import org.slf4j.LoggerFactory;
 public class HFilePreadReader extends HFileReaderImpl {
   private static final Logger LOG = LoggerFactory.getLogger(HFileReaderImpl.class);
 
+  /** Largest number of adjacent data blocks prefetch reads together */
+  private static final int PREFETCH_RUN_MAX_BLOCKS = 32;
+
   public HFilePreadReader(ReaderContext context, HFileInfo fileInfo, CacheConfig cacheConf,
     Configuration conf) throws IOException {
     super(context, fileInfo, cacheConf, conf);
@@ -40,7 +44,7 @@ public class HFilePreadReader extends HFileReaderImpl {
       PrefetchExecutor.request(path, new Runnable() {
         @Override
         public void run() {
-          long offset = 0;
+          long offset = PrefetchExecutor.getResumeOffset(path.getName());
           long end = 0;
           HFile.Reader prefetchStreamReader = null;
           try {
@@ -52,7 +56,9 @@ public class HFilePreadReader extends HFileReaderImpl {
             prefetchStreamReader =
               new HFileStreamReader(streamReaderContext, fileInfo, cacheConf, conf);
             end = getTrailer().getLoadOnOpenDataOffset();
-            if (LOG.isTraceEnabled()) {
+            if (offset > 0) {
+              LOG.debug("Prefetch resuming {}", getPathOffsetEndStr(path, offset, end));
+            } else if (LOG.isTraceEnabled()) {
               LOG.trace("Prefetch start " + getPathOffsetEndStr(path, offset, end));
             }
             // Don't use BlockIterator here, because it's designed to read load-on-open section.
@@ -61,22 +67,35 @@ public class HFilePreadReader extends HFileReaderImpl {
               if (Thread.interrupted()) {
                 break;
               }
-              // Perhaps we got our block from cache? Unlikely as this may be, if it happens, then
-              // the internal-to-hfileblock thread local which holds the overread that gets the
-              // next header, will not have happened...so, pass in the onDiskSize gotten from the
-              // cached block. This 'optimization' triggers extremely rarely I'd say.
-              HFileBlock block = prefetchStreamReader.readBlock(offset, onDiskSizeOfNextBlock,
-                /* cacheBlock= */true, /* pread= */false, false, false, null, null, true);
+              HFileBlock[] blocks = readDataBlockRun(prefetchStreamReader, offset);
+              if (blocks == null) {
+                // Perhaps we got our block from cache? Unlikely as this may be, if it happens, then
+                // the internal-to-hfileblock thread local which holds the overread that gets the
+                // next header, will not have happened...so, pass in the onDiskSize gotten from the
+                // cached block. This 'optimization' triggers extremely rarely I'd say.
+                blocks =
+                  new HFileBlock[] { prefetchStreamReader.readBlock(offset, onDiskSizeOfNextBlock,
+                    /* cacheBlock= */true, /* pread= */false, false, false, null, null, true) };
+              }
               try {
-                onDiskSizeOfNextBlock = block.getNextBlockOnDiskSize();
-                offset += block.getOnDiskSizeWithHeader();
+                for (HFileBlock block : blocks) {
+                  onDiskSizeOfNextBlock = block.getNextBlockOnDiskSize();
+                  offset += block.getOnDiskSizeWithHeader();
+                  PrefetchExecutor.updateOffset(path, offset);
+                  PrefetchExecutor.throttle(block.getOnDiskSizeWithHeader());
+                }
               } finally {
                 // Ideally here the readBlock won't find the block in cache. We call this
                 // readBlock so that block data is read from FS and cached in BC. we must call
                 // returnBlock here to decrease the reference count of block.
-                block.release();
+                for (HFileBlock block : blocks) {
+                  block.release();
+                }
               }
             }
+          } catch (InterruptedException e) {
+            // Cancelled while waiting for the prefetch budget
+            LOG.trace("Prefetch interrupted {}", getPathOffsetEndStr(path, offset, end));
           } catch (IOException e) {
             // IOExceptions are probably due to region closes (relocation, etc.)
             if (LOG.isTraceEnabled()) {
@@ -93,19 +112,49 @@ public class HFilePreadReader extends HFileReaderImpl {
                 LOG.warn("Close prefetch stream reader failed, path: " + path, e);
               }
             }
-            PrefetchExecutor.complete(path);
+            if (end > 0 && offset >= end) {
+              PrefetchExecutor.complete(path);
+            } else {
+              // Keep the offset reached, the next open of the file resumes from there
+              PrefetchExecutor.stopped(path);
+            }
           }
         }
       });
     }
   }
 
+  /**
+   * Reads the run of adjacent data blocks starting at the given offset, as listed by the block
+   * index, with coalesced reads. Returns null when the offset is not the start of a data block, as
+   * for the index and Bloom blocks between the runs.
+   */
+  private static HFileBlock[] readDataBlockRun(HFile.Reader reader, long offset)
+    throws IOException {
+    long[] offsets = new long[PREFETCH_RUN_MAX_BLOCKS];
+    int[] onDiskSizes = new int[PREFETCH_RUN_MAX_BLOCKS];
+    int count = reader.getDataBlocks(offset, offsets, onDiskSizes);
+    if (count == 0 || offsets[0] != offset) {
+      return null;
+    }
+    int end = 1;
+    while (end < count && offsets[end] == offsets[end - 1] + onDiskSizes[end - 1]) {
+      end++;
+    }
+    return reader.readBlocks(Arrays.copyOf(offsets, end), Arrays.copyOf(onDiskSizes, end), true,
+      false, true, null);
+  }
+
   private static String getPathOffsetEndStr(final Path path, final long offset, final long end) {
     return "path=" + path.toString() + ", offset=" + offset + ", end=" + end;
   }
 
   public void close(boolean evictOnClose) throws IOException {
     PrefetchExecutor.cancel(path);
+    if (evictOnClose) {
+      // The blocks prefetch would resume after are gone
+      PrefetchExecutor.removePrefetchedFileWhileEvict(name);
+    }
     // Deallocate blocks in load-on-open section
     this.fileInfo.close();
     // Deallocate data blocks
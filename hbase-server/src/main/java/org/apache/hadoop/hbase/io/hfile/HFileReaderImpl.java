@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.function.IntConsumer;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
@@ -43,6 +44,7 @@ import org.apache.hadoop.hbase.SizeCachedKeyValue;
 import org.apache.hadoop.hbase.SizeCachedNoTagsByteBufferKeyValue;
 import org.apache.hadoop.hbase.SizeCachedNoTagsKeyValue;
 import org.apache.hadoop.hbase.io.HFileLink;
+import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoder;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
@@ -113,6 +115,12 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
    */
   private IdLock offsetLock = new IdLock();
 
+  /** Block zone map of this file, loaded on first use */
+  private volatile BlockZoneMap blockZoneMap;
+
+  /** Table and column family of this file in the miss ratio curve, set on first use */
+  private volatile String cacheGroup;
+
   /** Minimum minor version supported by this HFile format */
   static final int MIN_MINOR_VERSION = 0;
 
@@ -342,6 +350,11 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     private boolean providedCurrentBlockSize = false;
     // Previous blocks that were used in the course of the read
     protected final ArrayList<HFileBlock> prevBlocks = new ArrayList<>();
+    // Time range of the scan when whole data blocks out of it may be skipped, see BlockZoneMap.
+    private TimeRange blockSkipTimeRange;
+    private BlockZoneMap zoneMap;
+    // Reads the next data blocks in the background, null unless enabled with enableReadAhead
+    private BlockReadAhead readAhead;
 
     public HFileScannerImpl(final HFile.Reader reader, final boolean cacheBlocks,
       final boolean pread, final boolean isCompaction) {
@@ -418,6 +431,29 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
         reader.unbufferStream();
       }
       this.returnBlocks(true);
+      if (readAhead != null) {
+        readAhead.close();
+      }
+    }
+
+    /**
+     * Lets {@link #next()} read up to the given number of following data blocks in the background,
+     * see {@link BlockReadAhead}.
+     */
+    void enableReadAhead(ThreadPoolExecutor pool, int maxBlocks) {
+      readAhead = new BlockReadAhead(reader, pool, cacheBlocks, pread, isCompaction, maxBlocks);
+    }
+
+    @Override
+    public void setBlockSkipTimeRange(TimeRange timeRange) throws IOException {
+      BlockZoneMap zoneMap = timeRange != null ? reader.getBlockZoneMap() : BlockZoneMap.EMPTY;
+      if (zoneMap.getBlockCount() > 0) {
+        this.zoneMap = zoneMap;
+        this.blockSkipTimeRange = timeRange;
+      } else {
+        this.zoneMap = null;
+        this.blockSkipTimeRange = null;
+      }
     }
 
     @Override
@@ -752,11 +788,28 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
           releaseIfNotCurBlock(block);
           throw new IOException("Invalid block offset: " + block + ", path=" + reader.getPath());
         }
+        long nextBlockOffset = block.getOffset() + block.getOnDiskSizeWithHeader();
+        int nextBlockOnDiskSize = block.getNextBlockOnDiskSize();
+        if (blockSkipTimeRange != null) {
+          long offset = zoneMap.skip(nextBlockOffset, blockSkipTimeRange);
+          if (offset != nextBlockOffset) {
+            if (offset > lastDataBlockOffset) {
+              // The block is either the current block or an already released non data block
+              return null;
+            }
+            nextBlockOffset = offset;
+            nextBlockOnDiskSize = zoneMap.getOnDiskSize(offset);
+          }
+        }
         // We are reading the next block without block type validation, because
         // it might turn out to be a non-data block.
-        block = reader.readBlock(block.getOffset() + block.getOnDiskSizeWithHeader(),
-          block.getNextBlockOnDiskSize(), cacheBlocks, pread, isCompaction, true, null,
-          getEffectiveDataBlockEncoding());
+        if (readAhead != null) {
+          block = readAhead.readBlock(nextBlockOffset, nextBlockOnDiskSize,
+            getEffectiveDataBlockEncoding());
+        } else {
+          block = reader.readBlock(nextBlockOffset, nextBlockOnDiskSize, cacheBlocks, pread,
+            isCompaction, true, null, getEffectiveDataBlockEncoding());
+        }
         if (block != null && !block.getBlockType().isData()) {
           // Whatever block we read we will be returning it unless
           // it is a datablock. Just in case the blocks are non data blocks
@@ -1059,6 +1112,9 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     @Override
     public void shipped() throws IOException {
       this.returnBlocks(false);
+      if (readAhead != null) {
+        readAhead.shipped();
+      }
     }
   }
 
@@ -1095,6 +1151,15 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
    */
   public final static int KEY_VALUE_LEN_SIZE = 2 * Bytes.SIZEOF_INT;
 
+  private String getCacheGroup() {
+    String group = cacheGroup;
+    if (group == null) {
+      group = MissRatioCurve.groupOf(path);
+      cacheGroup = group;
+    }
+    return group;
+  }
+
   /**
    * Retrieve block from cache. Validates the retrieved block's type vs {@code expectedBlockType}
    * and its encoding vs. {@code expectedDataBlockEncoding}. Unpacks the block as necessary.
@@ -1105,70 +1170,118 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     // Check cache for block. If found return.
     BlockCache cache = cacheConf.getBlockCache().orElse(null);
     if (cache != null) {
+      MissRatioCurve missRatioCurve = cache.getStats().getMissRatioCurve();
+      if (missRatioCurve != null && !useLock && updateCacheMetrics) {
+        missRatioCurve.record(cacheKey, getCacheGroup());
+      }
       HFileBlock cachedBlock = (HFileBlock) cache.getBlock(cacheKey, cacheBlock, useLock,
         updateCacheMetrics, expectedBlockType);
       if (cachedBlock != null) {
-        if (cacheConf.shouldCacheCompressed(cachedBlock.getBlockType().getCategory())) {
-          HFileBlock compressedBlock = cachedBlock;
-          cachedBlock = compressedBlock.unpack(hfileContext, fsBlockReader);
-          // In case of compressed block after unpacking we can release the compressed block
-          if (compressedBlock != cachedBlock) {
-            compressedBlock.release();
-          }
-        }
-        try {
-          validateBlockType(cachedBlock, expectedBlockType);
-        } catch (IOException e) {
-          returnAndEvictBlock(cache, cacheKey, cachedBlock);
-          throw e;
-        }
-
-        if (expectedDataBlockEncoding == null) {
-          return cachedBlock;
-        }
-        DataBlockEncoding actualDataBlockEncoding = cachedBlock.getDataBlockEncoding();
-        // Block types other than data blocks always have
-        // DataBlockEncoding.NONE. To avoid false negative cache misses, only
-        // perform this check if cached block is a data block.
-        if (
-          cachedBlock.getBlockType().isData()
-            && !actualDataBlockEncoding.equals(expectedDataBlockEncoding)
-        ) {
-          // This mismatch may happen if a Scanner, which is used for say a
-          // compaction, tries to read an encoded block from the block cache.
-          // The reverse might happen when an EncodedScanner tries to read
-          // un-encoded blocks which were cached earlier.
-          //
-          // Because returning a data block with an implicit BlockType mismatch
-          // will cause the requesting scanner to throw a disk read should be
-          // forced here. This will potentially cause a significant number of
-          // cache misses, so update so we should keep track of this as it might
-          // justify the work on a CompoundScanner.
-          if (
-            !expectedDataBlockEncoding.equals(DataBlockEncoding.NONE)
-              && !actualDataBlockEncoding.equals(DataBlockEncoding.NONE)
-          ) {
-            // If the block is encoded but the encoding does not match the
-            // expected encoding it is likely the encoding was changed but the
-            // block was not yet evicted. Evictions on file close happen async
-            // so blocks with the old encoding still linger in cache for some
-            // period of time. This event should be rare as it only happens on
-            // schema definition change.
-            LOG.info(
-              "Evicting cached block with key {} because data block encoding mismatch; "
-                + "expected {}, actual {}, path={}",
-              cacheKey, actualDataBlockEncoding, expectedDataBlockEncoding, path);
-            // This is an error scenario. so here we need to release the block.
-            returnAndEvictBlock(cache, cacheKey, cachedBlock);
-          }
-          return null;
-        }
-        return cachedBlock;
+        return checkCachedBlock(cache, cacheKey, cachedBlock, expectedBlockType,
+          expectedDataBlockEncoding);
       }
     }
     return null;
   }
 
+  /**
+   * Unpacks a block found in the block cache as necessary, and validates its type vs
+   * {@code expectedBlockType} and its encoding vs. {@code expectedDataBlockEncoding}. Returns null
+   * when the encoding does not match.
+   */
+  private HFileBlock checkCachedBlock(BlockCache cache, BlockCacheKey cacheKey,
+    HFileBlock cachedBlock, BlockType expectedBlockType,
+    DataBlockEncoding expectedDataBlockEncoding) throws IOException {
+    if (
+      cacheConf.shouldCacheCompressed(cachedBlock.getBlockType().getCategory())
+        && !isPromoted(cachedBlock)
+    ) {
+      HFileBlock compressedBlock = cachedBlock;
+      cachedBlock = compressedBlock.unpack(hfileContext, fsBlockReader);
+      // In case of compressed block after unpacking we can release the compressed block
+      if (compressedBlock != cachedBlock) {
+        compressedBlock.release();
+        promoteIfHot(cache, cacheKey, cachedBlock);
+      }
+    }
+    try {
+      validateBlockType(cachedBlock, expectedBlockType);
+    } catch (IOException e) {
+      returnAndEvictBlock(cache, cacheKey, cachedBlock);
+      throw e;
+    }
+
+    if (expectedDataBlockEncoding == null) {
+      return cachedBlock;
+    }
+    DataBlockEncoding actualDataBlockEncoding = cachedBlock.getDataBlockEncoding();
+    // Block types other than data blocks always have
+    // DataBlockEncoding.NONE. To avoid false negative cache misses, only
+    // perform this check if cached block is a data block.
+    if (
+      cachedBlock.getBlockType().isData()
+        && !actualDataBlockEncoding.equals(expectedDataBlockEncoding)
+    ) {
+      // This mismatch may happen if a Scanner, which is used for say a
+      // compaction, tries to read an encoded block from the block cache.
+      // The reverse might happen when an EncodedScanner tries to read
+      // un-encoded blocks which were cached earlier.
+      //
+      // Because returning a data block with an implicit BlockType mismatch
+      // will cause the requesting scanner to throw a disk read should be
+      // forced here. This will potentially cause a significant number of
+      // cache misses, so update so we should keep track of this as it might
+      // justify the work on a CompoundScanner.
+      if (
+        !expectedDataBlockEncoding.equals(DataBlockEncoding.NONE)
+          && !actualDataBlockEncoding.equals(DataBlockEncoding.NONE)
+      ) {
+        // If the block is encoded but the encoding does not match the
+        // expected encoding it is likely the encoding was changed but the
+        // block was not yet evicted. Evictions on file close happen async
+        // so blocks with the old encoding still linger in cache for some
+        // period of time. This event should be rare as it only happens on
+        // schema definition change.
+        LOG.info(
+          "Evicting cached block with key {} because data block encoding mismatch; "
+            + "expected {}, actual {}, path={}",
+          cacheKey, actualDataBlockEncoding, expectedDataBlockEncoding, path);
+        // This is an error scenario. so here we need to release the block.
+        returnAndEvictBlock(cache, cacheKey, cachedBlock);
+      }
+      return null;
+    }
+    return cachedBlock;
+  }
+
+  /**
+   * Returns true if a data block cached in compressed form has since been promoted to its unpacked
+   * form by {@link #promoteIfHot(BlockCache, BlockCacheKey, HFileBlock)}.
+   */
+  private boolean isPromoted(HFileBlock cachedBlock) {
+    return cacheConf.getCacheDataCompressedPromoteFrequency() > 0
+      && cachedBlock.hasDistinctUnpackedSize() && cachedBlock.isUnpacked();
+  }
+
+  /**
+   * Replaces a compressed data block in the cache by its unpacked form once the cache has seen it
+   * accessed often enough, so that hot blocks are only decompressed once while cold blocks keep
+   * taking less space. The unpacked block ages out of the cache like any other block.
+   */
+  private void promoteIfHot(BlockCache cache, BlockCacheKey cacheKey, HFileBlock unpacked) {
+    int promoteFrequency = cacheConf.getCacheDataCompressedPromoteFrequency();
+    if (
+      promoteFrequency <= 0 || !unpacked.getBlockType().isData()
+        || !unpacked.hasDistinctUnpackedSize()
+        || cache.getAccessFrequency(cacheKey) < promoteFrequency
+    ) {
+      return;
+    }
+    if (cache.replaceBlock(cacheKey, unpacked, cacheConf.isInMemory())) {
+      LOG.trace("Promoted block {} to its unpacked form in the cache", cacheKey);
+    }
+  }
+
   private void returnAndEvictBlock(BlockCache cache, BlockCacheKey cacheKey, Cacheable block) {
     block.release();
     cache.evictBlock(cacheKey);
@@ -1315,23 +1428,7 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
                 Bytes.toString(cachedBlock.getHFileContext().getTableName()), cachedBlock);
             }
             span.addEvent("block cache hit", attributes);
-            assert cachedBlock.isUnpacked() : "Packed block leak.";
-            if (cachedBlock.getBlockType().isData()) {
-              if (updateCacheMetrics) {
-                HFile.DATABLOCK_READ_COUNT.increment();
-              }
-              // Validate encoding type for data blocks. We include encoding
-              // type in the cache key, and we expect it to match on a cache hit.
-              if (cachedBlock.getDataBlockEncoding() != dataBlockEncoder.getDataBlockEncoding()) {
-                // Remember to release the block when in exceptional path.
-                cacheConf.getBlockCache().ifPresent(cache -> {
-                  returnAndEvictBlock(cache, cacheKey, cachedBlock);
-                });
-                throw new IOException("Cached block under key " + cacheKey + " "
-                  + "has wrong encoding: " + cachedBlock.getDataBlockEncoding() + " (expected: "
-                  + dataBlockEncoder.getDataBlockEncoding() + "), path=" + path);
-              }
-            }
+            validateCachedBlock(cacheKey, cachedBlock, updateCacheMetrics);
             // Cache-hit. Return!
             return cachedBlock;
           }
@@ -1348,55 +1445,215 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
         // Load block from filesystem.
         HFileBlock hfileBlock = fsBlockReader.readBlockData(dataBlockOffset, onDiskBlockSize, pread,
           !isCompaction, shouldUseHeap(expectedBlockType, cacheable));
-        try {
-          validateBlockType(hfileBlock, expectedBlockType);
-        } catch (IOException e) {
-          hfileBlock.release();
-          throw e;
+        return cacheAndUnpack(hfileBlock, cacheKey, expectedBlockType, cacheable, cacheOnly,
+          updateCacheMetrics);
+      }
+    } finally {
+      if (lockEntry != null) {
+        offsetLock.releaseLockEntry(lockEntry);
+      }
+    }
+  }
+
+  @Override
+  public HFileBlock[] readBlocks(long[] offsets, int[] onDiskSizes, boolean cacheBlock,
+    boolean isCompaction, boolean cacheOnly, DataBlockEncoding expectedDataBlockEncoding)
+    throws IOException {
+    if (dataBlockIndexReader == null) {
+      throw new IOException(path + " block index not loaded");
+    }
+    boolean cacheable = cacheBlock && cacheIfCompactionsOff();
+    HFileBlock[] blocks = new HFileBlock[offsets.length];
+    BlockCacheKey[] cacheKeys = new BlockCacheKey[offsets.length];
+    Cacheable[] cachedBlocks = null;
+    int[] misses = new int[offsets.length];
+    int missCount = 0;
+    IdLock.Entry[] lockEntries = null;
+    boolean success = false;
+    try {
+      for (int i = 0; i < offsets.length; i++) {
+        if (offsets[i] < 0 || offsets[i] >= trailer.getLoadOnOpenDataOffset()) {
+          throw new IOException(
+            "Requested block is out of range: " + offsets[i] + ", trailer.getLoadOnOpenDataOffset: "
+              + trailer.getLoadOnOpenDataOffset() + ", path=" + path);
+        }
+        cacheKeys[i] = new BlockCacheKey(name, offsets[i], isPrimaryReplicaReader(), null);
+      }
+      BlockCache cache = cacheConf.getBlockCache().orElse(null);
+      boolean readFromCache = cache != null && cacheConf.shouldReadBlockFromCache(null);
+      if (readFromCache) {
+        MissRatioCurve missRatioCurve = cache.getStats().getMissRatioCurve();
+        if (missRatioCurve != null && !cacheOnly) {
+          for (BlockCacheKey cacheKey : cacheKeys) {
+            missRatioCurve.record(cacheKey, getCacheGroup());
+          }
+        }
+        // Look all the blocks up at once, which a remote cache does in a few round trips. A
+        // prefetch does it too, to skip the blocks already cached, without counting in the metrics.
+        cachedBlocks = cache.getBlocks(cacheKeys, cacheBlock, !cacheOnly);
+      }
+      for (int i = 0; i < offsets.length; i++) {
+        HFileBlock cachedBlock = null;
+        if (cachedBlocks != null && cachedBlocks[i] != null) {
+          HFileBlock found = (HFileBlock) cachedBlocks[i];
+          cachedBlocks[i] = null;
+          cachedBlock =
+            checkCachedBlock(cache, cacheKeys[i], found, null, expectedDataBlockEncoding);
+        }
+        if (cachedBlock != null) {
+          validateCachedBlock(cacheKeys[i], cachedBlock, !cacheOnly);
+          blocks[i] = cachedBlock;
+        } else {
+          misses[missCount++] = i;
+        }
+      }
+      if (missCount > 0 && readFromCache && cacheable && cacheConf.shouldLockOnCacheMiss(null)) {
+        // As in readBlock, hold the offset lock of each missing block while reading and caching
+        // it, and look it up again once locked in case a concurrent reader just cached it. The
+        // offsets are increasing, so that runs locking the same blocks can not deadlock.
+        lockEntries = new IdLock.Entry[missCount];
+        int stillMissing = 0;
+        for (int j = 0; j < missCount; j++) {
+          int i = misses[j];
+          lockEntries[j] = offsetLock.getLockEntry(offsets[i]);
+          HFileBlock cachedBlock = getCachedBlock(cacheKeys[i], cacheBlock, true, !cacheOnly, null,
+            expectedDataBlockEncoding);
+          if (cachedBlock != null) {
+            validateCachedBlock(cacheKeys[i], cachedBlock, !cacheOnly);
+            blocks[i] = cachedBlock;
+          } else {
+            misses[stillMissing++] = i;
+          }
         }
-        BlockType.BlockCategory category = hfileBlock.getBlockType().getCategory();
-        final boolean cacheCompressed = cacheConf.shouldCacheCompressed(category);
-        final boolean cacheOnRead = cacheConf.shouldCacheBlockOnRead(category);
-
-        // Don't need the unpacked block back and we're storing the block in the cache compressed
-        if (cacheOnly && cacheCompressed && cacheOnRead) {
-          LOG.debug("Skipping decompression of block {} in prefetch", cacheKey);
-          // Cache the block if necessary
-          cacheConf.getBlockCache().ifPresent(cache -> {
-            if (cacheable && cacheConf.shouldCacheBlockOnRead(category)) {
-              cache.cacheBlock(cacheKey, hfileBlock, cacheConf.isInMemory(), cacheOnly);
+        missCount = stillMissing;
+      }
+      if (missCount > 0) {
+        long[] missOffsets = new long[missCount];
+        int[] missSizes = new int[missCount];
+        for (int j = 0; j < missCount; j++) {
+          missOffsets[j] = offsets[misses[j]];
+          missSizes[j] = onDiskSizes[misses[j]];
+        }
+        HFileBlock[] read = fsBlockReader.readBlocksData(missOffsets, missSizes, !isCompaction,
+          shouldUseHeap(null, cacheable));
+        for (int j = 0; j < missCount; j++) {
+          HFileBlock block = read[j];
+          read[j] = null;
+          // Type the key like readBlock does, for the caches which admit blocks by type
+          cacheKeys[misses[j]].setBlockType(block.getBlockType());
+          try {
+            blocks[misses[j]] =
+              cacheAndUnpack(block, cacheKeys[misses[j]], null, cacheable, cacheOnly, !cacheOnly);
+          } catch (IOException e) {
+            for (int k = j + 1; k < missCount; k++) {
+              read[k].release();
             }
-          });
-
-          if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
-            HFile.DATABLOCK_READ_COUNT.increment();
+            throw e;
           }
-          return hfileBlock;
         }
-        HFileBlock unpacked = hfileBlock.unpack(hfileContext, fsBlockReader);
-        // Cache the block if necessary
-        cacheConf.getBlockCache().ifPresent(cache -> {
-          if (cacheable && cacheConf.shouldCacheBlockOnRead(category)) {
-            // Using the wait on cache during compaction and prefetching.
-            cache.cacheBlock(cacheKey, cacheCompressed ? hfileBlock : unpacked,
-              cacheConf.isInMemory(), cacheOnly);
+      }
+      success = true;
+      return blocks;
+    } finally {
+      if (lockEntries != null) {
+        for (IdLock.Entry lockEntry : lockEntries) {
+          if (lockEntry != null) {
+            offsetLock.releaseLockEntry(lockEntry);
+          }
+        }
+      }
+      if (!success) {
+        for (HFileBlock block : blocks) {
+          if (block != null) {
+            block.release();
           }
-        });
-        if (unpacked != hfileBlock) {
-          // End of life here if hfileBlock is an independent block.
-          hfileBlock.release();
         }
-        if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
-          HFile.DATABLOCK_READ_COUNT.increment();
+        if (cachedBlocks != null) {
+          for (Cacheable block : cachedBlocks) {
+            if (block != null) {
+              block.release();
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks the encoding of a data block found in the block cache, and releases and evicts it if it
+   * does not match the encoding of this file.
+   */
+  private void validateCachedBlock(BlockCacheKey cacheKey, HFileBlock cachedBlock,
+    boolean updateCacheMetrics) throws IOException {
+    assert cachedBlock.isUnpacked() : "Packed block leak.";
+    if (cachedBlock.getBlockType().isData()) {
+      if (updateCacheMetrics) {
+        HFile.DATABLOCK_READ_COUNT.increment();
+      }
+      // Validate encoding type for data blocks. We include encoding
+      // type in the cache key, and we expect it to match on a cache hit.
+      if (cachedBlock.getDataBlockEncoding() != dataBlockEncoder.getDataBlockEncoding()) {
+        // Remember to release the block when in exceptional path.
+        cacheConf.getBlockCache().ifPresent(cache -> {
+          returnAndEvictBlock(cache, cacheKey, cachedBlock);
+        });
+        throw new IOException("Cached block under key " + cacheKey + " " + "has wrong encoding: "
+          + cachedBlock.getDataBlockEncoding() + " (expected: "
+          + dataBlockEncoder.getDataBlockEncoding() + "), path=" + path);
+      }
+    }
+  }
+
+  /**
+   * Caches a block just read from the file system if necessary, and returns it unpacked, or as read
+   * when only caching it compressed. Releases the block on failure.
+   */
+  private HFileBlock cacheAndUnpack(HFileBlock hfileBlock, BlockCacheKey cacheKey,
+    BlockType expectedBlockType, boolean cacheable, boolean cacheOnly, boolean updateCacheMetrics)
+    throws IOException {
+    try {
+      validateBlockType(hfileBlock, expectedBlockType);
+    } catch (IOException e) {
+      hfileBlock.release();
+      throw e;
+    }
+    BlockType.BlockCategory category = hfileBlock.getBlockType().getCategory();
+    final boolean cacheCompressed = cacheConf.shouldCacheCompressed(category);
+    final boolean cacheOnRead = cacheConf.shouldCacheBlockOnRead(category);
+
+    // Don't need the unpacked block back and we're storing the block in the cache compressed
+    if (cacheOnly && cacheCompressed && cacheOnRead) {
+      LOG.debug("Skipping decompression of block {} in prefetch", cacheKey);
+      // Cache the block if necessary
+      cacheConf.getBlockCache().ifPresent(cache -> {
+        if (cacheable && cacheConf.shouldCacheBlockOnRead(category)) {
+          cache.cacheBlock(cacheKey, hfileBlock, cacheConf.isInMemory(), cacheOnly);
         }
+      });
 
-        return unpacked;
+      if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
+        HFile.DATABLOCK_READ_COUNT.increment();
       }
-    } finally {
-      if (lockEntry != null) {
-        offsetLock.releaseLockEntry(lockEntry);
+      return hfileBlock;
+    }
+    HFileBlock unpacked = hfileBlock.unpack(hfileContext, fsBlockReader);
+    // Cache the block if necessary
+    cacheConf.getBlockCache().ifPresent(cache -> {
+      if (cacheable && cacheConf.shouldCacheBlockOnRead(category)) {
+        // Using the wait on cache during compaction and prefetching.
+        cache.cacheBlock(cacheKey, cacheCompressed ? hfileBlock : unpacked, cacheConf.isInMemory(),
+          cacheOnly);
       }
+    });
+    if (unpacked != hfileBlock) {
+      // End of life here if hfileBlock is an independent block.
+      hfileBlock.release();
+    }
+    if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
+      HFile.DATABLOCK_READ_COUNT.increment();
     }
+
+    return unpacked;
   }
 
   @Override
@@ -1611,6 +1868,36 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     }
   }
 
+  @Override
+  public int getDataBlocks(long fromOffset, long[] offsets, int[] onDiskSizes)
+    throws IOException {
+    return dataBlockIndexReader.getDataBlocks(fromOffset, offsets, onDiskSizes, this);
+  }
+
+  @Override
+  public BlockZoneMap getBlockZoneMap() throws IOException {
+    BlockZoneMap zoneMap = blockZoneMap;
+    if (zoneMap == null) {
+      synchronized (this) {
+        zoneMap = blockZoneMap;
+        if (zoneMap == null) {
+          HFileBlock block = getMetaBlock(BlockZoneMap.META_BLOCK_NAME, false);
+          if (block == null) {
+            zoneMap = BlockZoneMap.EMPTY;
+          } else {
+            try {
+              zoneMap = BlockZoneMap.read(block.getByteStream());
+            } finally {
+              block.release();
+            }
+          }
+          blockZoneMap = zoneMap;
+        }
+      }
+    }
+    return zoneMap;
+  }
+
   /**
    * Returns a buffer with the Bloom filter metadata. The caller takes ownership of the buffer.
    */
@@ -1689,10 +1976,16 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
   @Override
   public HFileScanner getScanner(Configuration conf, boolean cacheBlocks, final boolean pread,
     final boolean isCompaction) {
-    if (dataBlockEncoder.useEncodedScanner()) {
-      return new EncodedScanner(this, cacheBlocks, pread, isCompaction, this.hfileContext, conf);
-    }
-    return new HFileScannerImpl(this, cacheBlocks, pread, isCompaction);
+    HFileScannerImpl scanner = dataBlockEncoder.useEncodedScanner()
+      ? new EncodedScanner(this, cacheBlocks, pread, isCompaction, this.hfileContext, conf)
+      : new HFileScannerImpl(this, cacheBlocks, pread, isCompaction);
+    int readAheadBlocks = conf != null
+      ? conf.getInt(BlockReadAhead.MAX_BLOCKS_KEY, BlockReadAhead.MAX_BLOCKS_DEFAULT)
+      : BlockReadAhead.MAX_BLOCKS_DEFAULT;
+    if (readAheadBlocks > 0) {
+      scanner.enableReadAhead(BlockReadAhead.getPool(conf, cacheConf), readAheadBlocks);
+    }
+    return scanner;
   }
 
   public int getMajorVersion() {
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.function.IntConsumer;
 import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.regionserver.Shipper;
 import org.apache.yetus.audience.InterfaceAudience;
 
@@ -148,4 +149,12 @@ public interface HFileScanner extends Shipper, Closeable {
    * @param blockSizeConsumer to be called with block size in bytes, once per block.
    */
   void recordBlockSize(IntConsumer blockSizeConsumer);
+
+  /**
+   * Lets {@link #next()} skip the data blocks holding no cell of the given time range, according to
+   * the {@link BlockZoneMap} of the file. Seeks are not affected. Does nothing if the file has no
+   * zone map.
+   * @param timeRange the time range of the scan, or null to read all data blocks
+   */
+  void setBlockSkipTimeRange(TimeRange timeRange) throws IOException;
 }
@@ -170,6 +170,14 @@ public class HFileWriterImpl implements HFile.Writer {
 
   protected long maxMemstoreTS = 0;
 
+  /** Per data block statistics, null unless {@link BlockZoneMap#ENABLED_KEY} is set. */
+  private BlockZoneMap.Writer zoneMapWriter;
+
+  /**
+   * Compresses data blocks in the background, null unless {@link BlockCompressionPipeline} applies.
+   */
+  private BlockCompressionPipeline compressionPipeline;
+
   public HFileWriterImpl(final Configuration conf, CacheConfig cacheConf, Path path,
     FSDataOutputStream outputStream, HFileContext fileContext) {
     this.outputStream = outputStream;
@@ -322,6 +330,11 @@ public class HFileWriterImpl implements HFile.Writer {
 
     // Meta data block index writer
     metaBlockIndexWriter = new HFileBlockIndex.BlockIndexWriter();
+    if (conf.getBoolean(BlockZoneMap.ENABLED_KEY, BlockZoneMap.ENABLED_DEFAULT)) {
+      zoneMapWriter = new BlockZoneMap.Writer();
+    }
+    compressionPipeline =
+      BlockCompressionPipeline.create(conf, hFileContext, cacheConf, blockWriter, outputStream);
     LOG.trace("Initialized with {}", cacheConf);
   }
 
@@ -351,6 +364,10 @@ public class HFileWriterImpl implements HFile.Writer {
     if (!blockWriter.isWriting() || blockWriter.blockSizeWritten() == 0) {
       return;
     }
+    if (compressionPipeline != null) {
+      finishBlockInPipeline();
+      return;
+    }
 
     // Update the first data block offset if UNSET; used scanning.
     if (firstDataBlockOffset == UNSET) {
@@ -364,12 +381,41 @@ public class HFileWriterImpl implements HFile.Writer {
       getMidpoint(this.hFileContext.getCellComparator(), lastCellOfPreviousBlock, firstCellInBlock);
     dataBlockIndexWriter.addEntry(PrivateCellUtil.getCellKeySerializedAsKeyValueKey(indexEntry),
       lastDataBlockOffset, onDiskSize);
+    if (zoneMapWriter != null) {
+      zoneMapWriter.finishBlock(lastDataBlockOffset, onDiskSize);
+    }
     totalUncompressedBytes += blockWriter.getUncompressedSizeWithHeader();
     if (cacheConf.shouldCacheDataOnWrite()) {
       doCacheOnWrite(lastDataBlockOffset);
     }
   }
 
+  /**
+   * Hands the data block that is being written to the compression pipeline. Its index and zone map
+   * entries are added right away, so that the inline blocks are written at the same places as
+   * without the pipeline, and get the location of the block once it has been written.
+   */
+  private void finishBlockInPipeline() throws IOException {
+    Cell indexEntry =
+      getMidpoint(this.hFileContext.getCellComparator(), lastCellOfPreviousBlock, firstCellInBlock);
+    int indexEntryPos = dataBlockIndexWriter
+      .addPendingEntry(PrivateCellUtil.getCellKeySerializedAsKeyValueKey(indexEntry));
+    int zoneMapEntryPos = zoneMapWriter != null ? zoneMapWriter.getBlockCount() : -1;
+    if (zoneMapWriter != null) {
+      zoneMapWriter.finishBlock(UNSET, 0);
+    }
+    totalUncompressedBytes += compressionPipeline.add((offset, onDiskSize) -> {
+      if (firstDataBlockOffset == UNSET) {
+        firstDataBlockOffset = offset;
+      }
+      lastDataBlockOffset = offset;
+      dataBlockIndexWriter.setEntryLocation(indexEntryPos, offset, onDiskSize);
+      if (zoneMapEntryPos >= 0) {
+        zoneMapWriter.setBlockLocation(zoneMapEntryPos, offset, onDiskSize);
+      }
+    });
+  }
+
   /**
    * Try to return a Cell that falls between <code>left</code> and <code>right</code> but that is
    * shorter; i.e. takes up less space. This trick is used building HFile block index. Its an
@@ -533,6 +579,10 @@ public class HFileWriterImpl implements HFile.Writer {
   private void writeInlineBlocks(boolean closing) throws IOException {
     for (InlineBlockWriter ibw : inlineBlockWriters) {
       while (ibw.shouldWriteBlock(closing)) {
+        if (compressionPipeline != null) {
+          // the inline block may refer to data blocks still in the pipeline
+          compressionPipeline.flush();
+        }
         long offset = outputStream.getPos();
         boolean cacheThisBlock = ibw.getCacheOnWrite();
         ibw.writeInlineBlock(blockWriter.startWriting(ibw.getInlineBlockType()));
@@ -612,7 +662,13 @@ public class HFileWriterImpl implements HFile.Writer {
     // followed by fileinfo, data block index and meta block index.
 
     finishBlock();
+    if (compressionPipeline != null) {
+      compressionPipeline.flush();
+    }
     writeInlineBlocks(true);
+    if (zoneMapWriter != null && zoneMapWriter.getBlockCount() > 0) {
+      appendMetaBlock(BlockZoneMap.META_BLOCK_NAME, zoneMapWriter.getMetaWriter());
+    }
 
     FixedFileTrailer trailer = new FixedFileTrailer(getMajorVersion(), getMinorVersion());
 
@@ -679,6 +735,9 @@ public class HFileWriterImpl implements HFile.Writer {
     finishClose(trailer);
 
     blockWriter.release();
+    if (compressionPipeline != null) {
+      compressionPipeline.close();
+    }
   }
 
   @Override
@@ -745,6 +804,9 @@ public class HFileWriterImpl implements HFile.Writer {
     }
 
     blockWriter.write(cell);
+    if (zoneMapWriter != null) {
+      zoneMapWriter.append(cell);
+    }
 
     totalKeyLength += PrivateCellUtil.estimatedSerializedSizeOfKey(cell);
     totalValueLength += cell.getValueLength();
@@ -35,6 +35,29 @@ public class InclusiveCombinedBlockCache extends CombinedBlockCache {
     return l1Cache.getBlock(cacheKey, caching, repeat, updateCacheMetrics);
   }
 
+  @Override
+  public Cacheable[] getBlocks(BlockCacheKey[] cacheKeys, boolean caching,
+    boolean updateCacheMetrics) {
+    Cacheable[] blocks = new Cacheable[cacheKeys.length];
+    int[] misses = getBlocksFromL1(cacheKeys, blocks, caching, updateCacheMetrics);
+    if (misses.length > 0) {
+      // Look the lru misses up in the l2 block cache together rather than one by one through the
+      // victimHandler, promoting the blocks found like the lru does.
+      BlockCacheKey[] missKeys = new BlockCacheKey[misses.length];
+      for (int i = 0; i < misses.length; i++) {
+        missKeys[i] = cacheKeys[misses[i]];
+      }
+      Cacheable[] l2Blocks = l2Cache.getBlocks(missKeys, caching, updateCacheMetrics);
+      for (int i = 0; i < misses.length; i++) {
+        if (l2Blocks[i] != null && caching) {
+          l1Cache.cacheBlock(missKeys[i], l2Blocks[i], false);
+        }
+        blocks[misses[i]] = l2Blocks[i];
+      }
+    }
+    return blocks;
+  }
+
   /**
    * @param cacheKey The block's cache key.
    * @param buf      The block contents wrapped in a ByteBuffer.
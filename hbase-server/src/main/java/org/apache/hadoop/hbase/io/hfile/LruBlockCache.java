@@ -236,6 +236,12 @@ public class LruBlockCache implements FirstLevelBlockCache {
    */
   private transient BlockCache victimHandler = null;
 
+  /**
+   * Recent access frequency of blocks, only tracked when compressed data blocks may be promoted.
+   * See {@link CacheConfig#CACHE_DATA_BLOCKS_COMPRESSED_PROMOTE_FREQUENCY_KEY}.
+   */
+  private transient BlockFrequencySketch frequencySketch = null;
+
   /**
    * Default constructor. Specify maximum size and expected average block size (approximation is
    * fine).
@@ -269,6 +275,12 @@ public class LruBlockCache implements FirstLevelBlockCache {
       conf.getFloat(LRU_HARD_CAPACITY_LIMIT_FACTOR_CONFIG_NAME, DEFAULT_HARD_CAPACITY_LIMIT_FACTOR),
       conf.getBoolean(LRU_IN_MEMORY_FORCE_MODE_CONFIG_NAME, DEFAULT_IN_MEMORY_FORCE_MODE),
       conf.getLong(LRU_MAX_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE));
+    if (
+      conf.getInt(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_PROMOTE_FREQUENCY_KEY,
+        CacheConfig.DEFAULT_CACHE_DATA_COMPRESSED_PROMOTE_FREQUENCY) > 0
+    ) {
+      this.frequencySketch = new BlockFrequencySketch(maxSize / blockSize);
+    }
   }
 
   public LruBlockCache(long maxSize, long blockSize, Configuration conf) {
@@ -511,6 +523,9 @@ public class LruBlockCache implements FirstLevelBlockCache {
   @Override
   public Cacheable getBlock(BlockCacheKey cacheKey, boolean caching, boolean repeat,
     boolean updateCacheMetrics) {
+    if (frequencySketch != null && !repeat) {
+      frequencySketch.increment(cacheKey.hashCode());
+    }
     LruCachedBlock cb = map.computeIfPresent(cacheKey, (key, val) -> {
       // It will be referenced by RPC path, so increase here. NOTICE: Must do the retain inside
       // this block. because if retain outside the map#computeIfPresent, the evictBlock may remove
@@ -546,6 +561,11 @@ public class LruBlockCache implements FirstLevelBlockCache {
     return cb.getBuffer();
   }
 
+  @Override
+  public int getAccessFrequency(BlockCacheKey cacheKey) {
+    return frequencySketch == null ? -1 : frequencySketch.frequency(cacheKey.hashCode());
+  }
+
   /**
    * Whether the cache contains block with specified cacheKey
    * @return true if contains the block
@@ -555,6 +575,36 @@ public class LruBlockCache implements FirstLevelBlockCache {
     return map.containsKey(cacheKey);
   }
 
+  @Override
+  public boolean replaceBlock(BlockCacheKey cacheKey, Cacheable buf, boolean inMemory) {
+    LruCachedBlock previous = map.get(cacheKey);
+    if (previous == null) {
+      return false;
+    }
+    long currentAcceptableSize = acceptableSize();
+    if (
+      buf.heapSize() > maxBlockSize
+        || size.get() >= (long) (hardCapacityLimitFactor * currentAcceptableSize)
+    ) {
+      stats.failInsert();
+      return false;
+    }
+    buf = asReferencedHeapBlock(buf);
+    LruCachedBlock cb = new LruCachedBlock(cacheKey, buf, count.incrementAndGet(), inMemory);
+    if (!map.replace(cacheKey, previous, cb)) {
+      // Evicted or replaced concurrently
+      buf.release();
+      return false;
+    }
+    updateSizeMetrics(previous, true);
+    long newSize = updateSizeMetrics(cb, false);
+    previous.getBuffer().release();
+    if (newSize > currentAcceptableSize && !evictionInProgress) {
+      runEviction();
+    }
+    return true;
+  }
+
   @Override
   public boolean evictBlock(BlockCacheKey cacheKey) {
     LruCachedBlock cb = map.get(cacheKey);
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Estimates the hit ratio the block cache would have at other sizes, from the stream of block
+ * requests it sees, so that the block cache can be sized from the workload rather than guessed.
+ * <p>
+ * Follows SHARDS: only the requests for a fixed, hash selected fraction of the blocks
+ * ({@link #SAMPLING_RATE_KEY}) are tracked. For each of those blocks it remembers when it was last
+ * requested, including long after an actual cache would have evicted it, like a ghost cache. The
+ * number of distinct sampled blocks requested in between is the reuse distance of a request, which
+ * scaled by the sampling rate estimates the size, in blocks, an LRU cache needs to have for the
+ * request to hit. A histogram of the reuse distances then gives the hit ratio at any cache size,
+ * for all the requests and separately for the blocks of each table and column family.
+ * <p>
+ * At most {@link #MAX_KEYS_KEY} blocks are remembered, which bounds both the memory used and the
+ * largest cache size estimated, {@link #getMaxBlocks()}. Blocks requested once only count as misses
+ * at every size.
+ */
+@InterfaceAudience.Private
+public class MissRatioCurve {
+
+  /** Whether the top level block cache estimates its miss ratio curve */
+  public static final String ENABLED_KEY = "hbase.blockcache.mrc.enabled";
+  public static final boolean ENABLED_DEFAULT = false;
+
+  /** Fraction of the blocks whose requests are tracked */
+  public static final String SAMPLING_RATE_KEY = "hbase.blockcache.mrc.sampling.rate";
+  public static final float SAMPLING_RATE_DEFAULT = 0.01f;
+
+  /** Maximum number of sampled blocks remembered */
+  public static final String MAX_KEYS_KEY = "hbase.blockcache.mrc.max.keys";
+  public static final int MAX_KEYS_DEFAULT = 16384;
+
+  /** Cache sizes, relative to the current one, reported by the UI and the metrics */
+  public static final double[] SIZE_MULTIPLIERS = { 0.25, 0.5, 1, 2, 4 };
+
+  static final int BUCKETS = 128;
+
+  private static final int SAMPLE_BITS = 24;
+
+  private static final class Histogram {
+    private final long[] hits = new long[BUCKETS];
+    private long requests;
+  }
+
+  private final long sampleThreshold;
+  private final double samplingRate;
+  private final int maxKeys;
+  /** Width, in blocks, of a histogram bucket */
+  private final long bucketWidth;
+
+  /** Time of the last request of each remembered block, oldest request first */
+  private final LinkedHashMap<Long, Integer> lastRequests = new LinkedHashMap<>(16, 0.75f, true);
+  /** Fenwick tree counting the remembered blocks by time of last request */
+  private final int[] tree;
+  private int now = 0;
+
+  private final Histogram all = new Histogram();
+  private final Map<String, Histogram> groups = new HashMap<>();
+
+  public MissRatioCurve(Configuration conf) {
+    this(conf.getFloat(SAMPLING_RATE_KEY, SAMPLING_RATE_DEFAULT),
+      conf.getInt(MAX_KEYS_KEY, MAX_KEYS_DEFAULT));
+  }
+
+  MissRatioCurve(double samplingRate, int maxKeys) {
+    if (samplingRate <= 0 || samplingRate > 1) {
+      throw new IllegalArgumentException(SAMPLING_RATE_KEY + " must be in (0, 1]");
+    }
+    this.sampleThreshold = Math.max(1, (long) (samplingRate * (1L << SAMPLE_BITS)));
+    this.samplingRate = (double) sampleThreshold / (1L << SAMPLE_BITS);
+    this.maxKeys = maxKeys;
+    this.bucketWidth = Math.max(1, (long) Math.ceil(maxKeys / this.samplingRate / BUCKETS));
+    this.tree = new int[2 * maxKeys + 1];
+  }
+
+  /**
+   * Returns the table and column family of the HFile at the given path, which the curve of its
+   * blocks is kept under.
+   */
+  public static String groupOf(Path path) {
+    Path family = path.getParent();
+    Path region = family == null ? null : family.getParent();
+    Path table = region == null ? null : region.getParent();
+    if (table == null || table.getParent() == null) {
+      return family == null ? "" : family.getName();
+    }
+    return table.getParent().getName() + ":" + table.getName() + "/" + family.getName();
+  }
+
+  private static long mix(long h) {
+    h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+    h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+
+  /**
+   * Records a request for the given block, made by a reader of a file of the given group.
+   */
+  public void record(BlockCacheKey key, String group) {
+    long hash = mix(mix(key.getHfileName().hashCode()) + key.getOffset());
+    if ((hash & ((1L << SAMPLE_BITS) - 1)) >= sampleThreshold) {
+      return;
+    }
+    recordSampled(hash, group);
+  }
+
+  private synchronized void recordSampled(long hash, String group) {
+    Histogram histogram = groups.computeIfAbsent(group, g -> new Histogram());
+    all.requests++;
+    histogram.requests++;
+    Integer last = lastRequests.get(hash);
+    if (last != null) {
+      // Blocks requested since the previous request of this one
+      long distance = count(now) - count(last + 1);
+      add(last, -1);
+      int bucket = (int) Math.min(BUCKETS - 1, (long) (distance / samplingRate) / bucketWidth);
+      all.hits[bucket]++;
+      histogram.hits[bucket]++;
+    }
+    lastRequests.put(hash, now);
+    add(now, 1);
+    now++;
+    if (lastRequests.size() > maxKeys) {
+      Iterator<Map.Entry<Long, Integer>> oldest = lastRequests.entrySet().iterator();
+      add(oldest.next().getValue(), -1);
+      oldest.remove();
+    }
+    if (now == tree.length - 1) {
+      renumber();
+    }
+  }
+
+  /** Gives the remembered blocks consecutive times again, keeping their order */
+  private void renumber() {
+    now = 0;
+    Arrays.fill(tree, 0);
+    for (Map.Entry<Long, Integer> entry : lastRequests.entrySet()) {
+      entry.setValue(now);
+      add(now, 1);
+      now++;
+    }
+  }
+
+  private void add(int time, int delta) {
+    for (int i = time + 1; i < tree.length; i += i & -i) {
+      tree[i] += delta;
+    }
+  }
+
+  /** Returns the number of remembered blocks last requested before the given time */
+  private long count(int time) {
+    long count = 0;
+    for (int i = time; i > 0; i -= i & -i) {
+      count += tree[i];
+    }
+    return count;
+  }
+
+  /** Returns the largest cache size, in blocks, the hit ratio can be estimated for */
+  public long getMaxBlocks() {
+    return bucketWidth * BUCKETS;
+  }
+
+  /** Returns the estimated hit ratio of an LRU cache of the given number of blocks */
+  public synchronized double getHitRatio(long blocks) {
+    return getHitRatio(all, blocks);
+  }
+
+  /**
+   * Returns the estimated hit ratio of the requests for the blocks of the given group, when the
+   * whole cache has the given number of blocks.
+   */
+  public synchronized double getHitRatio(String group, long blocks) {
+    Histogram histogram = groups.get(group);
+    return histogram == null ? 0 : getHitRatio(histogram, blocks);
+  }
+
+  private double getHitRatio(Histogram histogram, long blocks) {
+    if (histogram.requests == 0) {
+      return 0;
+    }
+    blocks = Math.min(blocks, getMaxBlocks());
+    int full = (int) (blocks / bucketWidth);
+    double hits = 0;
+    for (int i = 0; i < full; i++) {
+      hits += histogram.hits[i];
+    }
+    if (full < BUCKETS) {
+      hits += histogram.hits[full] * (double) (blocks - full * bucketWidth) / bucketWidth;
+    }
+    return hits / histogram.requests;
+  }
+
+  /**
+   * Returns the number of blocks the given cache would hold at the given multiple of its maximum
+   * size, going by the average size of the blocks it holds now.
+   */
+  public static long getBlocks(BlockCache cache, double sizeMultiplier) {
+    long blockCount = cache.getBlockCount();
+    long blockSize = blockCount > 0
+      ? Math.max(1, cache.getCurrentSize() / blockCount)
+      : HConstants.DEFAULT_BLOCKSIZE;
+    return (long) (cache.getMaxSize() * sizeMultiplier / blockSize);
+  }
+
+  /**
+   * Returns the estimated hit ratios of the given cache at the {@link #SIZE_MULTIPLIERS} of its
+   * size, for each group, as in "default:t1/f: 0.25x=10.0%, 0.5x=20.0%, ...; default:t2/f: ...".
+   */
+  public String getSummary(BlockCache cache) {
+    StringBuilder sb = new StringBuilder();
+    for (String group : getGroups()) {
+      if (sb.length() > 0) {
+        sb.append("; ");
+      }
+      sb.append(group).append(':');
+      for (int i = 0; i < SIZE_MULTIPLIERS.length; i++) {
+        sb.append(i == 0 ? " " : ", ").append(SIZE_MULTIPLIERS[i]).append("x=").append(
+          String.format("%.1f%%", getHitRatio(group, getBlocks(cache, SIZE_MULTIPLIERS[i])) * 100));
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Returns the groups that requested blocks, sorted */
+  public synchronized List<String> getGroups() {
+    List<String> names = new ArrayList<>(groups.keySet());
+    Collections.sort(names);
+    return names;
+  }
+
+  /** Returns the number of sampled requests */
+  public synchronized long getSampledRequests() {
+    return all.requests;
+  }
+}
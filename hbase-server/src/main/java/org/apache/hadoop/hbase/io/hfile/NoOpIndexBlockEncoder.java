@@ -408,6 +408,16 @@ public class NoOpIndexBlockEncoder implements HFileIndexBlockEncoder {
       return new BlockWithScanInfo(block, nextIndexedKey);
     }
 
+    @Override
+    public HFileBlockIndex.IndexEntries getRootEntries() {
+      return new HFileBlockIndex.IndexEntries(blockOffsets, blockDataSizes, rootCount);
+    }
+
+    @Override
+    public HFileBlockIndex.IndexEntries getNonRootEntries(ByteBuff nonRootIndex) {
+      return HFileBlockIndex.IndexEntries.readNonRoot(nonRootIndex);
+    }
+
     @Override
     public int rootBlockContainingKey(Cell key) {
       // Here the comparator should not be null as this happens for the root-level block
@@ -21,16 +21,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 import java.util.regex.Pattern;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -44,16 +49,38 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.hadoop.hbase.shaded.protobuf.generated.PersistentPrefetchProtos;
 
+/**
+ * Runs the prefetch of HFiles into the block cache, see {@link CacheConfig#shouldPrefetchOnOpen()}.
+ * <p>
+ * Files are not prefetched in the order they were opened. Once its delay has elapsed a file waits
+ * until a prefetch thread is free, and a free thread picks the waiting file of the region with the
+ * most read requests at that time, so that after a restart the regions clients actually read are
+ * warmed first. Regions register their read request counter with
+ * {@link #registerRegion(String, LongSupplier)}. All the prefetch threads share a byte rate budget,
+ * see {@link PrefetchThrottle}.
+ * <p>
+ * The offset prefetch reached in a file is kept when it is cancelled, so that prefetch resumes from
+ * there if the file is opened again while its blocks are still cached, for instance when its region
+ * moves back to this server or after a restart with a persistent cache.
+ */
 @InterfaceAudience.Private
 public final class PrefetchExecutor {
 
   private static final Logger LOG = LoggerFactory.getLogger(PrefetchExecutor.class);
 
   /** Futures for tracking block prefetch activity */
-  private static final Map<Path, Future<?>> prefetchFutures = new ConcurrentSkipListMap<>();
+  private static final Map<Path, PrefetchTask> prefetchFutures = new ConcurrentSkipListMap<>();
   /** Set of files for which prefetch is completed */
   @edu.umd.cs.findbugs.annotations.SuppressWarnings(value = "MS_SHOULD_BE_FINAL")
   private static HashMap<String, Boolean> prefetchCompleted = new HashMap<>();
+  /** Offset prefetch stopped at, for the files whose prefetch did not complete */
+  private static final Map<String, Long> prefetchOffsets = new ConcurrentHashMap<>();
+  /** Files whose delay has elapsed or not, waiting for a prefetch thread. Guarded by itself. */
+  private static final List<PrefetchTask> pendingTasks = new ArrayList<>();
+  /** Read request counters of the online regions, by encoded region name */
+  private static final Map<String, LongSupplier> regionReadRequests = new ConcurrentHashMap<>();
+  /** Budget shared by all the prefetch threads */
+  private static final PrefetchThrottle throttle;
   /** Executor pool shared among all HFiles for block prefetch */
   private static final ScheduledExecutorService prefetchExecutorPool;
   /** Delay before beginning prefetch */
@@ -70,6 +97,7 @@ public final class PrefetchExecutor {
     prefetchDelayMillis = conf.getInt("hbase.hfile.prefetch.delay", 1000);
     prefetchDelayVariation = conf.getFloat("hbase.hfile.prefetch.delay.variation", 0.2f);
     int prefetchThreads = conf.getInt("hbase.hfile.thread.prefetch", 4);
+    throttle = PrefetchThrottle.create(conf);
     prefetchExecutorPool = new ScheduledThreadPoolExecutor(prefetchThreads, new ThreadFactory() {
       @Override
       public Thread newThread(Runnable r) {
@@ -106,32 +134,131 @@ public final class PrefetchExecutor {
       } else {
         delay = 0;
       }
+      PrefetchTask task = null;
       try {
         LOG.debug("Prefetch requested for {}, delay={} ms", path, delay);
         final Runnable tracedRunnable =
           TraceUtil.tracedRunnable(runnable, "PrefetchExecutor.request");
-        final Future<?> future =
-          prefetchExecutorPool.schedule(tracedRunnable, delay, TimeUnit.MILLISECONDS);
-        prefetchFutures.put(path, future);
+        task = new PrefetchTask(path, tracedRunnable,
+          System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+        prefetchFutures.put(path, task);
+        synchronized (pendingTasks) {
+          pendingTasks.add(task);
+        }
+        // Every request schedules one run of the hottest ready task, which may not be this one
+        prefetchExecutorPool.schedule(PrefetchExecutor::runHottest, delay, TimeUnit.MILLISECONDS);
       } catch (RejectedExecutionException e) {
         prefetchFutures.remove(path);
+        removePending(task);
         LOG.warn("Prefetch request rejected for {}", path);
       }
     }
   }
 
+  private static void runHottest() {
+    PrefetchTask hottest = null;
+    long hottestReadRequests = -1;
+    synchronized (pendingTasks) {
+      long now = System.nanoTime();
+      for (PrefetchTask task : pendingTasks) {
+        if (task.readyNanos - now > 0) {
+          continue;
+        }
+        long readRequests = getReadRequests(task.path);
+        // On ties the file requested first wins
+        if (readRequests > hottestReadRequests) {
+          hottest = task;
+          hottestReadRequests = readRequests;
+        }
+      }
+      if (hottest != null) {
+        pendingTasks.remove(hottest);
+      }
+    }
+    // Nothing is ready when the tasks this run was scheduled for have been cancelled
+    if (hottest != null) {
+      LOG.debug("Prefetch starting for {}, readRequests={}", hottest.path, hottestReadRequests);
+      hottest.run();
+    }
+  }
+
+  private static void removePending(PrefetchTask task) {
+    if (task != null) {
+      synchronized (pendingTasks) {
+        pendingTasks.remove(task);
+      }
+    }
+  }
+
+  /** Returns the read requests of the region of a store file, 0 if it is not known */
+  private static long getReadRequests(Path path) {
+    Path storeDir = path.getParent();
+    Path regionDir = storeDir == null ? null : storeDir.getParent();
+    LongSupplier readRequests =
+      regionDir == null ? null : regionReadRequests.get(regionDir.getName());
+    return readRequests == null ? 0 : readRequests.getAsLong();
+  }
+
+  /**
+   * Makes the read requests of a region available to order the prefetch of its files. Must be
+   * called before the stores of the region are opened.
+   */
+  public static void registerRegion(String encodedRegionName, LongSupplier readRequests) {
+    regionReadRequests.put(encodedRegionName, readRequests);
+  }
+
+  public static void unregisterRegion(String encodedRegionName) {
+    regionReadRequests.remove(encodedRegionName);
+  }
+
+  /**
+   * Waits until the prefetch of the given number of bytes fits in the byte rate budget.
+   * @throws InterruptedException if the prefetch was cancelled while waiting
+   */
+  static void throttle(long bytes) throws InterruptedException {
+    throttle.acquire(bytes);
+  }
+
+  /** Records the latency of a pread of an RPC handler, to back off prefetch when it rises */
+  static void updateForegroundReadLatency(long latencyMillis) {
+    if (throttle.isEnabled()) {
+      throttle.updateForegroundLatency(latencyMillis);
+    }
+  }
+
+  /** Returns the offset to resume the prefetch of the given file from, 0 to start over */
+  static long getResumeOffset(String hfileName) {
+    return prefetchOffsets.getOrDefault(hfileName, 0L);
+  }
+
+  /** Records the offset of the first block of a file not prefetched yet */
+  static void updateOffset(Path path, long offset) {
+    // Not once cancelled, the blocks may be evicted with the file
+    if (prefetchFutures.containsKey(path)) {
+      prefetchOffsets.put(path.getName(), offset);
+    }
+  }
+
   public static void complete(Path path) {
     prefetchFutures.remove(path);
+    prefetchOffsets.remove(path.getName());
     prefetchCompleted.put(path.getName(), true);
     LOG.debug("Prefetch completed for {}", path);
   }
 
+  /** Called when the prefetch of a file ends before the end of the file */
+  public static void stopped(Path path) {
+    prefetchFutures.remove(path);
+    LOG.debug("Prefetch stopped for {} at offset {}", path, getResumeOffset(path.getName()));
+  }
+
   public static void cancel(Path path) {
-    Future<?> future = prefetchFutures.get(path);
+    PrefetchTask future = prefetchFutures.get(path);
     if (future != null) {
       // ok to race with other cancellation attempts
       future.cancel(true);
       prefetchFutures.remove(path);
+      removePending(future);
       LOG.debug("Prefetch cancelled for {}", path);
     }
     prefetchCompleted.remove(path.getName());
@@ -153,9 +280,9 @@ public final class PrefetchExecutor {
       LOG.info("Exception while persisting prefetch!");
       throw new IOException("Error persisting prefetched HFiles set!");
     }
-    if (!prefetchCompleted.isEmpty()) {
+    if (!prefetchCompleted.isEmpty() || !prefetchOffsets.isEmpty()) {
       try (FileOutputStream fos = new FileOutputStream(prefetchedFileListPath, false)) {
-        PrefetchProtoUtils.toPB(prefetchCompleted).writeDelimitedTo(fos);
+        PrefetchProtoUtils.toPB(prefetchCompleted, prefetchOffsets).writeDelimitedTo(fos);
       }
     }
   }
@@ -174,6 +301,7 @@ public final class PrefetchExecutor {
         PersistentPrefetchProtos.PrefetchedHfileName.parseDelimitedFrom(fis);
       Map<String, Boolean> protoPrefetchedFilesMap = proto.getPrefetchedFilesMap();
       prefetchCompleted.putAll(protoPrefetchedFilesMap);
+      prefetchOffsets.putAll(proto.getPrefetchedOffsetsMap());
     }
   }
 
@@ -203,6 +331,7 @@ public final class PrefetchExecutor {
 
   public static void removePrefetchedFileWhileEvict(String hfileName) {
     prefetchCompleted.remove(hfileName);
+    prefetchOffsets.remove(hfileName);
   }
 
   public static boolean isFilePrefetched(String hfileName) {
@@ -211,4 +340,16 @@ public final class PrefetchExecutor {
 
   private PrefetchExecutor() {
   }
+
+  /** A file waiting for, or being, prefetched */
+  private static final class PrefetchTask extends FutureTask<Void> {
+    private final Path path;
+    private final long readyNanos;
+
+    PrefetchTask(Path path, Runnable runnable, long readyNanos) {
+      super(runnable, null);
+      this.path = path;
+      this.readyNanos = readyNanos;
+    }
+  }
 }
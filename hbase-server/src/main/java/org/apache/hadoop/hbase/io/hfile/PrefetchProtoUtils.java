@@ -26,8 +26,9 @@ final class PrefetchProtoUtils {
   }
 
   static PersistentPrefetchProtos.PrefetchedHfileName
-    toPB(Map<String, Boolean> prefetchedHfileNames) {
+    toPB(Map<String, Boolean> prefetchedHfileNames, Map<String, Long> prefetchedOffsets) {
     return PersistentPrefetchProtos.PrefetchedHfileName.newBuilder()
-      .putAllPrefetchedFiles(prefetchedHfileNames).build();
+      .putAllPrefetchedFiles(prefetchedHfileNames).putAllPrefetchedOffsets(prefetchedOffsets)
+      .build();
   }
 }
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Global byte rate budget shared by all the prefetch threads, see {@link PrefetchExecutor}.
+ * <p>
+ * The budget starts at {@link #MAX_BYTES_PER_SECOND_KEY}. When a foreground read latency target is
+ * set with {@link #LATENCY_TARGET_MS_KEY}, the rate is halved every adjustment period the average
+ * latency of foreground preads is above the target, down to a sixteenth of the maximum, and grows
+ * back by a sixteenth of the maximum every period it is below. Only the single block preads of the
+ * RPC handlers make the foreground latency, see {@link HFile#updateReadLatency(long, boolean, int)},
+ * so the reads of the prefetch and read-ahead threads do not feed the latency prefetch is throttled
+ * on.
+ */
+@InterfaceAudience.Private
+class PrefetchThrottle {
+
+  /** Maximum rate, in bytes per second, prefetch reads blocks at. 0 means no limit. */
+  static final String MAX_BYTES_PER_SECOND_KEY = "hbase.hfile.prefetch.max.bytes.per.second";
+  static final long MAX_BYTES_PER_SECOND_DEFAULT = 0;
+
+  /**
+   * Average foreground pread latency above which prefetch backs off. 0 disables the back off. Only
+   * used with {@link #MAX_BYTES_PER_SECOND_KEY}.
+   */
+  static final String LATENCY_TARGET_MS_KEY = "hbase.hfile.prefetch.latency.target.ms";
+  static final long LATENCY_TARGET_MS_DEFAULT = 0;
+
+  static final long ADJUST_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final int STEPS = 16;
+  /** Weight of a new latency sample in the moving average */
+  private static final double LATENCY_ALPHA = 0.125;
+
+  private final long maxRate;
+  private final long minRate;
+  private final long latencyTargetMs;
+
+  // Guarded by this
+  private long rate;
+  private long nextFreeNanos;
+  private long lastAdjustNanos;
+
+  // Updated without locking from the read path, a lost sample does not matter
+  private volatile double foregroundLatencyMs;
+
+  PrefetchThrottle(long maxRate, long latencyTargetMs) {
+    this.maxRate = maxRate;
+    this.minRate = Math.max(1, maxRate / STEPS);
+    this.latencyTargetMs = latencyTargetMs;
+    this.rate = maxRate;
+    this.lastAdjustNanos = System.nanoTime();
+    this.nextFreeNanos = lastAdjustNanos;
+  }
+
+  static PrefetchThrottle create(Configuration conf) {
+    return new PrefetchThrottle(
+      conf.getLong(MAX_BYTES_PER_SECOND_KEY, MAX_BYTES_PER_SECOND_DEFAULT),
+      conf.getLong(LATENCY_TARGET_MS_KEY, LATENCY_TARGET_MS_DEFAULT));
+  }
+
+  boolean isEnabled() {
+    return maxRate > 0;
+  }
+
+  /** Records the latency of a foreground read */
+  void updateForegroundLatency(long latencyMs) {
+    double current = foregroundLatencyMs;
+    foregroundLatencyMs = current + LATENCY_ALPHA * (latencyMs - current);
+  }
+
+  double getForegroundLatency() {
+    return foregroundLatencyMs;
+  }
+
+  synchronized long getRate() {
+    return rate;
+  }
+
+  /**
+   * Waits until the given number of bytes fit in the budget.
+   * @throws InterruptedException if the prefetch was cancelled while waiting
+   */
+  void acquire(long bytes) throws InterruptedException {
+    if (!isEnabled()) {
+      return;
+    }
+    long waitNanos;
+    synchronized (this) {
+      long now = System.nanoTime();
+      if (now - lastAdjustNanos >= ADJUST_PERIOD_NANOS) {
+        adjustRate();
+        lastAdjustNanos = now;
+      }
+      if (now - nextFreeNanos > 0) {
+        nextFreeNanos = now;
+      }
+      waitNanos = nextFreeNanos - now;
+      nextFreeNanos += bytes * TimeUnit.SECONDS.toNanos(1) / rate;
+    }
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /** Applies one step of back off or recovery depending on the foreground latency */
+  synchronized void adjustRate() {
+    if (latencyTargetMs <= 0) {
+      return;
+    }
+    if (foregroundLatencyMs > latencyTargetMs) {
+      rate = Math.max(minRate, rate / 2);
+    } else {
+      rate = Math.min(maxRate, rate + minRate);
+    }
+  }
+}
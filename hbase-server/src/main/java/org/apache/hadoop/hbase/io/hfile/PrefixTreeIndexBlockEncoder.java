@@ -0,0 +1,592 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.apache.hadoop.hbase.io.hfile.HFileBlockIndex.MID_KEY_METADATA_SIZE;
+import static org.apache.hadoop.hbase.io.hfile.HFileBlockIndex.SECONDARY_INDEX_ENTRY_OVERHEAD;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hadoop.hbase.ByteBufferKeyOnlyKeyValue;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.hbase.util.ObjectIntPair;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Index block encoder for {@link IndexBlockEncoding#PREFIX_TREE}.
+ * <p>
+ * Root, intermediate and leaf index blocks share one format. Keys are front coded, each entry only
+ * stores the bytes following the prefix it shares with the key of the previous entry. Every
+ * {@link #RESTART_INTERVAL} entries a restart entry stores its whole key, and the offsets of the
+ * restart entries are written ahead of the entries. A lookup binary searches the restart keys in
+ * place, then decodes at most one run of entries, comparing against the encoded bytes through
+ * reused key-only cells instead of creating a cell per probe. The root level is kept in memory in
+ * its encoded form rather than as one key object per entry.
+ *
+ * <pre>
+ * int numEntries
+ * int restartInterval
+ * int maxKeyLength
+ * int[numRestarts] restart entry offsets, relative to the first entry
+ * int size of the entries
+ * entries: long blockOffset, int onDiskDataSize, vint sharedLength, vint suffixLength, suffix
+ * </pre>
+ *
+ * As with {@link NoOpIndexBlockEncoder}, the root block is followed by the mid-key metadata.
+ */
+@InterfaceAudience.Private
+public class PrefixTreeIndexBlockEncoder implements HFileIndexBlockEncoder {
+
+  public static final PrefixTreeIndexBlockEncoder INSTANCE = new PrefixTreeIndexBlockEncoder();
+
+  /** Number of entries between two keys stored in full */
+  static final int RESTART_INTERVAL = 16;
+
+  private static final int HEADER_SIZE = 3 * Bytes.SIZEOF_INT;
+
+  /** Cannot be instantiated. Use {@link #INSTANCE} instead. */
+  private PrefixTreeIndexBlockEncoder() {
+  }
+
+  @Override
+  public void saveMetadata(HFile.Writer writer) throws IOException {
+    writer.appendFileInfo(INDEX_BLOCK_ENCODING, getIndexBlockEncoding().getNameInBytes());
+  }
+
+  @Override
+  public void encode(BlockIndexChunk blockIndexChunk, boolean rootIndexBlock, DataOutput out)
+    throws IOException {
+    int numEntries = blockIndexChunk.getNumEntries();
+    int[] restarts = new int[numRestarts(numEntries, RESTART_INTERVAL)];
+    int maxKeyLength = 0;
+    ByteArrayOutputStream entriesBytes = new ByteArrayOutputStream();
+    DataOutputStream entries = new DataOutputStream(entriesBytes);
+    byte[] previousKey = null;
+    for (int i = 0; i < numEntries; ++i) {
+      byte[] key = blockIndexChunk.getBlockKey(i);
+      int shared = 0;
+      if (i % RESTART_INTERVAL == 0) {
+        restarts[i / RESTART_INTERVAL] = entries.size();
+      } else {
+        shared = Bytes.findCommonPrefix(previousKey, key, previousKey.length, key.length, 0, 0);
+      }
+      entries.writeLong(blockIndexChunk.getBlockOffset(i));
+      entries.writeInt(blockIndexChunk.getOnDiskDataSize(i));
+      writeVInt(entries, shared);
+      writeVInt(entries, key.length - shared);
+      entries.write(key, shared, key.length - shared);
+      maxKeyLength = Math.max(maxKeyLength, key.length);
+      previousKey = key;
+    }
+
+    out.writeInt(numEntries);
+    out.writeInt(RESTART_INTERVAL);
+    out.writeInt(maxKeyLength);
+    for (int restart : restarts) {
+      out.writeInt(restart);
+    }
+    out.writeInt(entries.size());
+    out.write(entriesBytes.toByteArray());
+  }
+
+  @Override
+  public IndexBlockEncoding getIndexBlockEncoding() {
+    return IndexBlockEncoding.PREFIX_TREE;
+  }
+
+  @Override
+  public EncodedSeeker createSeeker() {
+    return new PrefixTreeEncodedSeeker();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
+  private static int numRestarts(int numEntries, int restartInterval) {
+    return (numEntries + restartInterval - 1) / restartInterval;
+  }
+
+  /** Returns the size of the encoded index block at the start of the given buffer */
+  static int getEncodedSize(ByteBuff buf) {
+    int sizeOffset =
+      HEADER_SIZE + numRestarts(buf.getInt(0), buf.getInt(Bytes.SIZEOF_INT)) * Bytes.SIZEOF_INT;
+    return sizeOffset + Bytes.SIZEOF_INT + buf.getInt(sizeOffset);
+  }
+
+  private static void writeVInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /**
+   * Compares a searched key with an indexed key. The root level compares like
+   * {@link Bytes#binarySearch(Cell[], Cell, CellComparator)} and the other levels ignore the mvcc
+   * like {@link HFileBlockIndex.BlockIndexReader#locateNonRootIndexEntry}.
+   */
+  private static int compare(CellComparator comparator, Cell key, Cell indexedKey,
+    boolean ignoreMvcc) {
+    // we have to compare in this order, because the comparator order
+    // has special logic when the 'left side' is a special key.
+    return ignoreMvcc
+      ? PrivateCellUtil.compareKeyIgnoresMvcc(comparator, key, indexedKey)
+      : comparator.compare(key, indexedKey);
+  }
+
+  /**
+   * Walks the entries of one encoded index block. Holds the decoded key of the current entry in a
+   * buffer sized for the longest key of the block, so decoding an entry does not allocate.
+   */
+  private static final class EntryCursor {
+    private final ByteBuff buf;
+    private final int numEntries;
+    private final int restartInterval;
+    private final int numRestarts;
+    private final int entriesOffset;
+
+    // The current entry
+    private int index = -1;
+    private long blockOffset;
+    private int onDiskDataSize;
+    private final byte[] key;
+    private int keyLength;
+    private int nextEntryPosition;
+
+    // The entry found by the last seek
+    private int foundIndex = -1;
+    private long foundBlockOffset;
+    private int foundOnDiskDataSize;
+
+    private int position;
+    private final KeyValue.KeyOnlyKeyValue keyOnlyKV = new KeyValue.KeyOnlyKeyValue();
+
+    EntryCursor(ByteBuff buf) {
+      this.buf = buf;
+      this.numEntries = buf.getInt(0);
+      this.restartInterval = buf.getInt(Bytes.SIZEOF_INT);
+      this.key = new byte[buf.getInt(2 * Bytes.SIZEOF_INT)];
+      this.numRestarts = numRestarts(numEntries, restartInterval);
+      this.entriesOffset = HEADER_SIZE + (numRestarts + 1) * Bytes.SIZEOF_INT;
+    }
+
+    private int restartPosition(int restart) {
+      return entriesOffset + buf.getInt(HEADER_SIZE + restart * Bytes.SIZEOF_INT);
+    }
+
+    private int readVInt() {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = buf.get(position++);
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return value;
+    }
+
+    private void seekToRestart(int restart) {
+      index = restart * restartInterval - 1;
+      nextEntryPosition = restartPosition(restart);
+      next();
+    }
+
+    /** Moves to the next entry, returns false if the current entry is the last one. */
+    private boolean next() {
+      if (index + 1 >= numEntries) {
+        return false;
+      }
+      position = nextEntryPosition;
+      blockOffset = buf.getLong(position);
+      onDiskDataSize = buf.getInt(position + Bytes.SIZEOF_LONG);
+      position += SECONDARY_INDEX_ENTRY_OVERHEAD;
+      int shared = readVInt();
+      int suffixLength = readVInt();
+      // The shared prefix is still in the key buffer from the previous entry
+      buf.get(position, key, shared, suffixLength);
+      keyLength = shared + suffixLength;
+      nextEntryPosition = position + suffixLength;
+      index++;
+      return true;
+    }
+
+    void seekToEntry(int i) {
+      if (i < 0 || i >= numEntries) {
+        throw new IllegalArgumentException(
+          "Index block entry " + i + " out of range, numEntries=" + numEntries);
+      }
+      seekToRestart(i / restartInterval);
+      while (index < i) {
+        next();
+      }
+    }
+
+    /**
+     * Finds the last entry not greater than the given key. Afterwards the cursor is on the entry
+     * following it, if any.
+     * @return the index of the entry, or -1 if the key is before the first entry
+     */
+    int seek(Cell searchKey, CellComparator comparator, boolean ignoreMvcc) {
+      // Binary search the keys of the restart entries, in place. If we imagine that
+      // restartKeys[-1] = -Infinity and restartKeys[numRestarts] = Infinity, the search maintains
+      // restartKeys[low - 1] <= key < restartKeys[high + 1].
+      ByteBufferKeyOnlyKeyValue restartKV = new ByteBufferKeyOnlyKeyValue();
+      ObjectIntPair<ByteBuffer> pair = new ObjectIntPair<>();
+      int low = 0;
+      int high = numRestarts - 1;
+      while (low <= high) {
+        int mid = low + ((high - low) >> 1);
+        position = restartPosition(mid) + SECONDARY_INDEX_ENTRY_OVERHEAD;
+        // A restart entry shares nothing with the previous entry
+        readVInt();
+        int length = readVInt();
+        buf.asSubByteBuffer(position, length, pair);
+        restartKV.setKey(pair.getFirst(), pair.getSecond(), length);
+        int cmp = compare(comparator, searchKey, restartKV, ignoreMvcc);
+        if (cmp > 0) {
+          low = mid + 1;
+        } else if (cmp < 0) {
+          high = mid - 1;
+        } else {
+          low = mid + 1;
+          break;
+        }
+      }
+      int restart = low - 1;
+      foundIndex = -1;
+      if (restart < 0) {
+        return foundIndex;
+      }
+
+      // The key is in the run of entries starting at the restart entry, which is not greater
+      // than the key, and it is before the next restart entry.
+      seekToRestart(restart);
+      do {
+        foundIndex = index;
+        foundBlockOffset = blockOffset;
+        foundOnDiskDataSize = onDiskDataSize;
+        if (!next()) {
+          break;
+        }
+        keyOnlyKV.setKey(key, 0, keyLength);
+      } while (compare(comparator, searchKey, keyOnlyKV, ignoreMvcc) >= 0);
+      return foundIndex;
+    }
+
+    /** Returns true if the last seek found an entry and it is not the last one. */
+    boolean hasNextEntry() {
+      return foundIndex >= 0 && index > foundIndex;
+    }
+
+    byte[] copyKey() {
+      return Arrays.copyOf(key, keyLength);
+    }
+
+    /** Returns the block offsets and on-disk sizes of all the entries */
+    HFileBlockIndex.IndexEntries readEntries() {
+      long[] offsets = new long[numEntries];
+      int[] onDiskSizes = new int[numEntries];
+      if (numEntries > 0) {
+        seekToRestart(0);
+        do {
+          offsets[index] = blockOffset;
+          onDiskSizes[index] = onDiskDataSize;
+        } while (next());
+      }
+      return new HFileBlockIndex.IndexEntries(offsets, onDiskSizes, numEntries);
+    }
+  }
+
+  protected static class PrefixTreeEncodedSeeker implements EncodedSeeker {
+
+    /** The encoded root index block, without the mid-key metadata */
+    private byte[] rootBytes;
+    private ByteBuff root;
+    protected int rootCount = 0;
+
+    // Mid-key metadata.
+    protected long midLeafBlockOffset = -1;
+    protected int midLeafBlockOnDiskSize = -1;
+    protected int midKeyEntry = -1;
+
+    private CellComparator comparator;
+    protected int searchTreeLevel;
+
+    /** Pre-computed mid-key */
+    private AtomicReference<Cell> midKey = new AtomicReference<>();
+
+    @Override
+    public long heapSize() {
+      long heapSize = ClassSize.align(ClassSize.OBJECT);
+
+      // Mid-key metadata.
+      heapSize += MID_KEY_METADATA_SIZE;
+
+      if (rootBytes != null) {
+        heapSize += ClassSize.align(ClassSize.ARRAY + rootBytes.length);
+        // The buffer wrapping the root bytes
+        heapSize += ClassSize.align(ClassSize.OBJECT + 2 * ClassSize.REFERENCE);
+        heapSize += ClassSize.BYTE_BUFFER;
+      }
+      // Add rootBytes, root, comparator and the midkey atomicreference
+      heapSize += 4 * ClassSize.REFERENCE;
+      // Add rootCount and searchTreeLevel
+      heapSize += 2 * Bytes.SIZEOF_INT;
+
+      return ClassSize.align(heapSize);
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return rootCount == 0;
+    }
+
+    @Override
+    public Cell getRootBlockKey(int i) {
+      EntryCursor cursor = new EntryCursor(root);
+      cursor.seekToEntry(i);
+      return new KeyValue.KeyOnlyKeyValue(cursor.copyKey());
+    }
+
+    @Override
+    public int getRootBlockCount() {
+      return rootCount;
+    }
+
+    @Override
+    public void initRootIndex(HFileBlock blk, int numEntries, CellComparator comparator,
+      int treeLevel) throws IOException {
+      this.comparator = comparator;
+      this.searchTreeLevel = treeLevel;
+      ByteBuff buf = blk.getBufferWithoutHeader();
+      if (buf.getInt(0) != numEntries) {
+        throw new IOException("Root index block has " + buf.getInt(0)
+          + " entries but the trailer expects " + numEntries);
+      }
+      int rootSize = getEncodedSize(buf);
+      rootBytes = buf.toBytes(0, rootSize);
+      root = ByteBuff.wrap(ByteBuffer.wrap(rootBytes));
+      rootCount = numEntries;
+
+      // the checksum bytes have to be subtracted to know if the mid key exists.
+      if (buf.limit() - rootSize - blk.totalChecksumBytes() < MID_KEY_METADATA_SIZE) {
+        // No mid-key metadata available.
+        return;
+      }
+      midLeafBlockOffset = buf.getLong(rootSize);
+      midLeafBlockOnDiskSize = buf.getInt(rootSize + Bytes.SIZEOF_LONG);
+      midKeyEntry = buf.getInt(rootSize + Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT);
+    }
+
+    @Override
+    public Cell midkey(HFile.CachingBlockReader cachingBlockReader) throws IOException {
+      if (rootCount == 0) throw new IOException("HFile empty");
+
+      Cell targetMidKey = this.midKey.get();
+      if (targetMidKey != null) {
+        return targetMidKey;
+      }
+
+      if (midLeafBlockOffset >= 0) {
+        if (cachingBlockReader == null) {
+          throw new IOException(
+            "Have to read the middle leaf block but " + "no block reader available");
+        }
+
+        // Caching, using pread, assuming this is not a compaction.
+        HFileBlock midLeafBlock = cachingBlockReader.readBlock(midLeafBlockOffset,
+          midLeafBlockOnDiskSize, true, true, false, true, BlockType.LEAF_INDEX, null);
+        try {
+          EntryCursor cursor = new EntryCursor(midLeafBlock.getBufferWithoutHeader());
+          cursor.seekToEntry(midKeyEntry);
+          targetMidKey = new KeyValue.KeyOnlyKeyValue(cursor.copyKey());
+        } finally {
+          midLeafBlock.release();
+        }
+      } else {
+        // The middle of the root-level index.
+        targetMidKey = getRootBlockKey(rootCount / 2);
+      }
+
+      this.midKey.set(targetMidKey);
+      return targetMidKey;
+    }
+
+    @Override
+    public BlockWithScanInfo loadDataBlockWithScanInfo(Cell key, HFileBlock currentBlock,
+      boolean cacheBlocks, boolean pread, boolean isCompaction,
+      DataBlockEncoding expectedDataBlockEncoding, HFile.CachingBlockReader cachingBlockReader)
+      throws IOException {
+      EntryCursor rootCursor = new EntryCursor(root);
+      int rootLevelIndex = rootCursor.seek(key, comparator, false);
+      if (rootLevelIndex < 0) {
+        return null;
+      }
+
+      // Read the next-level (intermediate or leaf) index block.
+      long currentOffset = rootCursor.foundBlockOffset;
+      int currentOnDiskSize = rootCursor.foundOnDiskDataSize;
+
+      // the next indexed key
+      Cell nextIndexedKey;
+      KeyValue.KeyOnlyKeyValue tmpNextIndexKV = new KeyValue.KeyOnlyKeyValue();
+      if (rootCursor.hasNextEntry()) {
+        tmpNextIndexKV.setKey(rootCursor.key, 0, rootCursor.keyLength);
+        nextIndexedKey = tmpNextIndexKV;
+      } else {
+        nextIndexedKey = KeyValueScanner.NO_NEXT_INDEXED_KEY;
+      }
+
+      int lookupLevel = 1; // How many levels deep we are in our lookup.
+
+      HFileBlock block = null;
+      while (true) {
+        try {
+          // Must initialize it with null here, because if don't and once an exception happen in
+          // readBlock, then we'll release the previous assigned block twice in the finally block.
+          // (See HBASE-22422)
+          block = null;
+          if (currentBlock != null && currentBlock.getOffset() == currentOffset) {
+            // Avoid reading the same block again, even with caching turned off.
+            block = currentBlock;
+          } else {
+            // Call HFile's caching block reader API. We always cache index
+            // blocks, otherwise we might get terrible performance.
+            boolean shouldCache = cacheBlocks || (lookupLevel < searchTreeLevel);
+            BlockType expectedBlockType;
+            if (lookupLevel < searchTreeLevel - 1) {
+              expectedBlockType = BlockType.INTERMEDIATE_INDEX;
+            } else if (lookupLevel == searchTreeLevel - 1) {
+              expectedBlockType = BlockType.LEAF_INDEX;
+            } else {
+              // this also accounts for ENCODED_DATA
+              expectedBlockType = BlockType.DATA;
+            }
+            block = cachingBlockReader.readBlock(currentOffset, currentOnDiskSize, shouldCache,
+              pread, isCompaction, true, expectedBlockType, expectedDataBlockEncoding);
+          }
+
+          if (block == null) {
+            throw new IOException("Failed to read block at offset " + currentOffset
+              + ", onDiskSize=" + currentOnDiskSize);
+          }
+
+          // Found a data block, break the loop and check our level in the tree.
+          if (block.getBlockType().isData()) {
+            break;
+          }
+
+          // Not a data block. This must be a leaf-level or intermediate-level
+          // index block. We don't allow going deeper than searchTreeLevel.
+          if (++lookupLevel > searchTreeLevel) {
+            throw new IOException("Search Tree Level overflow: lookupLevel=" + lookupLevel
+              + ", searchTreeLevel=" + searchTreeLevel);
+          }
+
+          // Locate the entry corresponding to the given key in the non-root
+          // (leaf or intermediate-level) index block.
+          EntryCursor cursor = new EntryCursor(block.getBufferWithoutHeader());
+          if (cursor.seek(key, comparator, true) == -1) {
+            throw new IOException("The key " + CellUtil.getCellKeyAsString(key) + " is before the"
+              + " first key of the non-root index block " + block);
+          }
+
+          currentOffset = cursor.foundBlockOffset;
+          currentOnDiskSize = cursor.foundOnDiskDataSize;
+
+          // Only update next indexed key if there is a next indexed key in the current level
+          if (cursor.hasNextEntry()) {
+            byte[] nonRootIndexedKey = cursor.copyKey();
+            tmpNextIndexKV.setKey(nonRootIndexedKey, 0, nonRootIndexedKey.length);
+            nextIndexedKey = tmpNextIndexKV;
+          }
+        } finally {
+          if (block != null && !block.getBlockType().isData()) {
+            // Release the block immediately if it is not the data block
+            block.release();
+          }
+        }
+      }
+
+      if (lookupLevel != searchTreeLevel) {
+        assert block.getBlockType().isData();
+        // Though we have retrieved a data block we have found an issue
+        // in the retrieved data block. Hence returned the block so that
+        // the ref count can be decremented
+        if (block != null) {
+          block.release();
+        }
+        throw new IOException("Reached a data block at level " + lookupLevel
+          + " but the number of levels is " + searchTreeLevel);
+      }
+
+      // set the next indexed key for the current block.
+      return new BlockWithScanInfo(block, nextIndexedKey);
+    }
+
+    @Override
+    public int rootBlockContainingKey(Cell key) {
+      return new EntryCursor(root).seek(key, comparator, false);
+    }
+
+    @Override
+    public HFileBlockIndex.IndexEntries getRootEntries() {
+      return new EntryCursor(root).readEntries();
+    }
+
+    @Override
+    public HFileBlockIndex.IndexEntries getNonRootEntries(ByteBuff nonRootIndex) {
+      return new EntryCursor(nonRootIndex).readEntries();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("size=" + rootCount).append("\n");
+      if (rootCount > 0) {
+        EntryCursor cursor = new EntryCursor(root);
+        cursor.seekToEntry(0);
+        do {
+          sb.append("key=").append(Bytes.toStringBinary(cursor.key, 0, cursor.keyLength))
+            .append("\n  offset=").append(cursor.blockOffset)
+            .append(", dataSize=" + cursor.onDiskDataSize).append("\n");
+        } while (cursor.next());
+      }
+      return sb.toString();
+    }
+  }
+}
@@ -18,12 +18,15 @@
 package org.apache.hadoop.hbase.io.hfile.bucket;
 
 import static org.apache.hadoop.hbase.io.hfile.CacheConfig.BUCKETCACHE_PERSIST_INTERVAL_KEY;
+import static org.apache.hadoop.hbase.io.hfile.CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_PROMOTE_FREQUENCY_KEY;
+import static org.apache.hadoop.hbase.io.hfile.CacheConfig.DEFAULT_CACHE_DATA_COMPRESSED_PROMOTE_FREQUENCY;
 import static org.apache.hadoop.hbase.io.hfile.CacheConfig.PREFETCH_PERSISTENCE_PATH_KEY;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -39,7 +42,10 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -60,6 +66,7 @@ import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
 import org.apache.hadoop.hbase.io.hfile.BlockCacheUtil;
+import org.apache.hadoop.hbase.io.hfile.BlockFrequencySketch;
 import org.apache.hadoop.hbase.io.hfile.BlockPriority;
 import org.apache.hadoop.hbase.io.hfile.BlockType;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
@@ -116,6 +123,35 @@ public class BucketCache implements BlockCache, HeapSize {
   static final String ACCEPT_FACTOR_CONFIG_NAME = "hbase.bucketcache.acceptfactor";
   static final String MIN_FACTOR_CONFIG_NAME = "hbase.bucketcache.minfactor";
 
+  /**
+   * Put a TinyLFU admission filter in front of the writer queues. Once the cache is full, a data
+   * block is only admitted if it has been requested more often recently than the block the eviction
+   * would make room for it with, which keeps one-hit-wonders (typically from scans) from being
+   * written out and pushing hot blocks out of the cache.
+   */
+  static final String ADMISSION_FILTER_ENABLED_KEY = "hbase.bucketcache.admission.filter.enabled";
+  static final boolean ADMISSION_FILTER_ENABLED_DEFAULT = false;
+
+  /**
+   * Checkpoint a persistent cache by appending the changes since the previous checkpoint to a
+   * {@link BucketCacheJournal} next to the persistence file, and only write a full snapshot once
+   * the journal holds more than {@link #JOURNAL_COMPACTION_RATIO_KEY} records per cached block. The
+   * snapshot is then written in the background, the checkpoints skipped until it is done.
+   */
+  static final String JOURNAL_ENABLED_KEY = "hbase.bucketcache.persist.journal.enabled";
+  static final boolean JOURNAL_ENABLED_DEFAULT = false;
+  static final String JOURNAL_COMPACTION_RATIO_KEY =
+    "hbase.bucketcache.persist.journal.compaction.ratio";
+  static final float JOURNAL_COMPACTION_RATIO_DEFAULT = 0.5f;
+  static final String JOURNAL_SUFFIX = ".journal";
+
+  /**
+   * Number of recent hits in the lower tier after which a block is promoted back into this cache,
+   * when this cache has a lower tier, see {@link #setVictimCache(BucketCache)}.
+   */
+  static final String TIER_PROMOTION_MIN_HITS_KEY = "hbase.bucketcache.tier.promotion.min.hits";
+  static final int TIER_PROMOTION_MIN_HITS_DEFAULT = 2;
+
   /** Use strong reference for offsetLock or not */
   private static final String STRONG_REF_KEY = "hbase.bucketcache.offsetlock.usestrongref";
   private static final boolean STRONG_REF_DEFAULT = false;
@@ -178,7 +214,19 @@ public class BucketCache implements BlockCache, HeapSize {
 
   private final BucketCacheStats cacheStats = new BucketCacheStats();
 
+  /** Lower tier the blocks evicted from this cache are demoted to, null if there is none */
+  private transient BucketCache victimCache;
+  /** Recent hits of the blocks of the lower tier, deciding their promotion */
+  private transient BlockFrequencySketch lowerTierHits;
+  private final int promotionMinHits;
+
   private final String persistencePath;
+  /** Journal of the backing map changes since the last snapshot, null if not enabled */
+  transient final BucketCacheJournal journal;
+  /** Writes the full snapshots compacting the journal, null if not enabled */
+  private transient final ExecutorService journalSnapshotter;
+  /** The full snapshot being written by journalSnapshotter, if any, guarded by this */
+  private transient Future<?> journalSnapshot;
   static AtomicBoolean isCacheInconsistent = new AtomicBoolean(false);
   private final long cacheCapacity;
   /** Approximate block size */
@@ -208,6 +256,18 @@ public class BucketCache implements BlockCache, HeapSize {
     return Long.compare(a.getOffset(), b.getOffset());
   });
 
+  /**
+   * Recent access frequency of blocks, null if neither the admission filter nor the promotion of
+   * compressed blocks need it
+   */
+  transient final BlockFrequencySketch frequencySketch;
+  private final boolean admissionFilterEnabled;
+  /**
+   * The block the last {@link #freeSpace(String)} would evict next, which new blocks have to beat
+   * to be admitted, null until the first eviction.
+   */
+  volatile BlockCacheKey admissionVictim;
+
   /** Statistics thread schedule pool (for heavy debugging, could remove) */
   private transient final ScheduledExecutorService scheduleThreadPool =
     Executors.newScheduledThreadPool(1,
@@ -291,6 +351,8 @@ public class BucketCache implements BlockCache, HeapSize {
     this.memoryFactor = conf.getFloat(MEMORY_FACTOR_CONFIG_NAME, DEFAULT_MEMORY_FACTOR);
     this.queueAdditionWaitTime =
       conf.getLong(QUEUE_ADDITION_WAIT_TIME, DEFAULT_QUEUE_ADDITION_WAIT_TIME);
+    this.promotionMinHits =
+      conf.getInt(TIER_PROMOTION_MIN_HITS_KEY, TIER_PROMOTION_MIN_HITS_DEFAULT);
     this.prefetchedFileListPath = conf.get(PREFETCH_PERSISTENCE_PATH_KEY);
     this.bucketcachePersistInterval = conf.getLong(BUCKETCACHE_PERSIST_INTERVAL_KEY, 1000);
 
@@ -299,7 +361,8 @@ public class BucketCache implements BlockCache, HeapSize {
     LOG.info("Instantiating BucketCache with acceptableFactor: " + acceptableFactor
       + ", minFactor: " + minFactor + ", extraFreeFactor: " + extraFreeFactor + ", singleFactor: "
       + singleFactor + ", multiFactor: " + multiFactor + ", memoryFactor: " + memoryFactor
-      + ", useStrongRef: " + useStrongRef);
+      + ", useStrongRef: " + useStrongRef + ", admissionFilter: "
+      + conf.getBoolean(ADMISSION_FILTER_ENABLED_KEY, ADMISSION_FILTER_ENABLED_DEFAULT));
 
     this.cacheCapacity = capacity;
     this.persistencePath = persistencePath;
@@ -317,6 +380,23 @@ public class BucketCache implements BlockCache, HeapSize {
     this.ramCache = new RAMCache();
 
     this.backingMap = new ConcurrentHashMap<>((int) blockNumCapacity);
+    this.admissionFilterEnabled =
+      conf.getBoolean(ADMISSION_FILTER_ENABLED_KEY, ADMISSION_FILTER_ENABLED_DEFAULT);
+    this.frequencySketch =
+      admissionFilterEnabled || conf.getInt(CACHE_DATA_BLOCKS_COMPRESSED_PROMOTE_FREQUENCY_KEY,
+        DEFAULT_CACHE_DATA_COMPRESSED_PROMOTE_FREQUENCY) > 0
+          ? new BlockFrequencySketch(blockNumCapacity)
+          : null;
+
+    this.journal = ioEngine.isPersistent() && persistencePath != null
+      && conf.getBoolean(JOURNAL_ENABLED_KEY, JOURNAL_ENABLED_DEFAULT)
+        ? new BucketCacheJournal(persistencePath + JOURNAL_SUFFIX,
+          conf.getFloat(JOURNAL_COMPACTION_RATIO_KEY, JOURNAL_COMPACTION_RATIO_DEFAULT))
+        : null;
+    this.journalSnapshotter = journal != null
+      ? Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("BucketCacheSnapshotter").setDaemon(true).build())
+      : null;
 
     if (ioEngine.isPersistent() && persistencePath != null) {
       startBucketCachePersisterThread();
@@ -497,6 +577,41 @@ public class BucketCache implements BlockCache, HeapSize {
     if (cacheKey.getBlockType() == null && cachedItem.getBlockType() != null) {
       cacheKey.setBlockType(cachedItem.getBlockType());
     }
+    if (!shouldAdmit(cacheKey, inMemory)) {
+      cacheStats.rejectAdmission();
+      return;
+    }
+    enqueueBlock(cacheKey, cachedItem, inMemory, wait);
+  }
+
+  /**
+   * Queues the new form of a block already written to the IOEngine. The previous bucket entry keeps
+   * serving reads, and is only freed once the new form has been written in its place, see
+   * {@link #putIntoBackingMap(BlockCacheKey, BucketEntry)}.
+   */
+  @Override
+  public boolean replaceBlock(BlockCacheKey cacheKey, Cacheable cachedItem, boolean inMemory) {
+    if (!cacheEnabled) {
+      return false;
+    }
+    BucketEntry bucketEntry = backingMap.get(cacheKey);
+    if (bucketEntry == null) {
+      return victimCache != null && victimCache.replaceBlock(cacheKey, cachedItem, inMemory);
+    }
+    if (bucketEntry.isRpcRef()) {
+      // avoid replace when there are RPC refs for the bucket entry in bucket cache
+      return false;
+    }
+    return enqueueBlock(cacheKey, cachedItem, inMemory, false);
+  }
+
+  /**
+   * Puts the block into the RAM cache and the writer queue which drains it into the IOEngine,
+   * whether or not the admission filter would let it in.
+   * @return true if the block was queued
+   */
+  private boolean enqueueBlock(BlockCacheKey cacheKey, Cacheable cachedItem, boolean inMemory,
+    boolean wait) {
     LOG.trace("Caching key={}, item={}", cacheKey, cachedItem);
     // Stuff the entry into the RAM cache so it can get drained to the persistent store
     RAMQueueEntry re =
@@ -509,7 +624,7 @@ public class BucketCache implements BlockCache, HeapSize {
      * one, then the heap size will mess up (HBASE-20789)
      */
     if (ramCache.putIfAbsent(cacheKey, re) != null) {
-      return;
+      return false;
     }
     int queueNum = (cacheKey.hashCode() & 0x7FFFFFFF) % writerQueues.size();
     BlockingQueue<RAMQueueEntry> bq = writerQueues.get(queueNum);
@@ -526,10 +641,38 @@ public class BucketCache implements BlockCache, HeapSize {
     if (!successfulAddition) {
       ramCache.remove(cacheKey);
       cacheStats.failInsert();
-    } else {
-      this.blockNumber.increment();
-      this.heapSize.add(cachedItem.heapSize());
+      return false;
     }
+    this.blockNumber.increment();
+    this.heapSize.add(cachedItem.heapSize());
+    return true;
+  }
+
+  /**
+   * Decide whether a new block should go through the admission filter into the cache. In-memory and
+   * non data blocks are always admitted, as is everything while the cache still has room or before
+   * anything was evicted. Otherwise the block has to be more frequently requested than the victim
+   * of the eviction, as in TinyLFU.
+   */
+  private boolean shouldAdmit(BlockCacheKey cacheKey, boolean inMemory) {
+    if (!admissionFilterEnabled || inMemory) {
+      return true;
+    }
+    BlockType blockType = cacheKey.getBlockType();
+    if (blockType != null && !blockType.isData()) {
+      return true;
+    }
+    BlockCacheKey victim = admissionVictim;
+    if (victim == null || bucketAllocator.getUsedSize() < acceptableSize()) {
+      return true;
+    }
+    return frequencySketch.frequency(cacheKey.hashCode())
+      > frequencySketch.frequency(victim.hashCode());
+  }
+
+  @Override
+  public int getAccessFrequency(BlockCacheKey cacheKey) {
+    return frequencySketch == null ? -1 : frequencySketch.frequency(cacheKey.hashCode());
   }
 
   /**
@@ -546,6 +689,9 @@ public class BucketCache implements BlockCache, HeapSize {
     if (!cacheEnabled) {
       return null;
     }
+    if (frequencySketch != null && !repeat) {
+      frequencySketch.increment(key.hashCode());
+    }
     RAMQueueEntry re = ramCache.get(key);
     if (re != null) {
       if (updateCacheMetrics) {
@@ -594,15 +740,46 @@ public class BucketCache implements BlockCache, HeapSize {
     if (!repeat && updateCacheMetrics) {
       cacheStats.miss(caching, key.isPrimary(), key.getBlockType());
     }
+    if (victimCache != null && !repeat) {
+      return getBlockFromLowerTier(key, caching, updateCacheMetrics);
+    }
     return null;
   }
 
+  /**
+   * Looks the block up in the lower tier, and promotes it into this cache once it has been hit
+   * there {@link #TIER_PROMOTION_MIN_HITS_KEY} times recently. The block is then served from this
+   * cache, and the copy of the lower tier is dropped to leave room for the blocks demoted to it.
+   */
+  private Cacheable getBlockFromLowerTier(BlockCacheKey key, boolean caching,
+    boolean updateCacheMetrics) {
+    BucketEntry lowerEntry = victimCache.backingMap.get(key);
+    Cacheable block = victimCache.getBlock(key, caching, false, updateCacheMetrics);
+    if (block == null || !caching) {
+      return block;
+    }
+    int hash = key.hashCode();
+    lowerTierHits.increment(hash);
+    if (lowerTierHits.frequency(hash) >= promotionMinHits) {
+      boolean inMemory = lowerEntry != null && lowerEntry.getPriority() == BlockPriority.MEMORY;
+      cacheBlockWithWait(key, block, inMemory, false);
+      if (ramCache.containsKey(key) || backingMap.containsKey(key)) {
+        victimCache.evictBlock(key);
+        cacheStats.promoted();
+      }
+    }
+    return block;
+  }
+
   /**
    * This method is invoked after the bucketEntry is removed from {@link BucketCache#backingMap}
    */
   void blockEvicted(BlockCacheKey cacheKey, BucketEntry bucketEntry, boolean decrementBlockNumber,
     boolean evictedByEvictionProcess) {
     bucketEntry.markAsEvicted();
+    if (journal != null) {
+      journal.logEvict(cacheKey, bucketEntry);
+    }
     blocksByHFile.remove(cacheKey);
     if (decrementBlockNumber) {
       this.blockNumber.decrement();
@@ -645,7 +822,11 @@ public class BucketCache implements BlockCache, HeapSize {
    */
   @Override
   public boolean evictBlock(BlockCacheKey cacheKey) {
-    return doEvictBlock(cacheKey, null, false);
+    boolean evicted = doEvictBlock(cacheKey, null, false);
+    if (victimCache != null) {
+      evicted |= victimCache.evictBlock(cacheKey);
+    }
+    return evicted;
   }
 
   /**
@@ -674,16 +855,79 @@ public class BucketCache implements BlockCache, HeapSize {
       }
       return existedInRamCache;
     } else {
-      return bucketEntryToUse.withWriteLock(offsetLock, () -> {
+      boolean demote = evictedByEvictionProcess && victimCache != null;
+      boolean evicted = bucketEntryToUse.withWriteLock(offsetLock, () -> {
         if (backingMap.remove(cacheKey, bucketEntryToUse)) {
+          if (demote) {
+            // Keep the memory of the entry until it is read for the lower tier, off the lock
+            bucketEntryToUse.retain();
+          }
           blockEvicted(cacheKey, bucketEntryToUse, !existedInRamCache, evictedByEvictionProcess);
           return true;
         }
         return false;
       });
+      if (evicted && demote) {
+        Cacheable block = readForDemotion(cacheKey, bucketEntryToUse);
+        if (block != null) {
+          demote(cacheKey, bucketEntryToUse, block);
+        }
+      }
+      return evicted;
     }
   }
 
+  /**
+   * Reads an evicted block for the lower tier, releasing the reference to the entry that
+   * {@link #doEvictBlock(BlockCacheKey, BucketEntry, boolean)} kept for it, or handing it over to
+   * the block when it shares the memory of the entry.
+   */
+  private Cacheable readForDemotion(BlockCacheKey cacheKey, BucketEntry bucketEntry) {
+    Cacheable block = null;
+    try {
+      block = ioEngine.read(bucketEntry);
+    } catch (IOException e) {
+      LOG.warn("Failed reading block {} to demote it, dropping it", cacheKey, e);
+    } finally {
+      if (block == null || !ioEngine.usesSharedMemory()) {
+        bucketEntry.release();
+      }
+    }
+    return block;
+  }
+
+  /**
+   * Moves a block evicted to make room into the lower tier. It does not wait for room in the writer
+   * queues of the lower tier, a block that does not fit there is dropped as if there was no tier.
+   */
+  private void demote(BlockCacheKey cacheKey, BucketEntry bucketEntry, Cacheable block) {
+    try {
+      victimCache.cacheDemotedBlock(cacheKey, block,
+        bucketEntry.getPriority() == BlockPriority.MEMORY);
+      if (
+        victimCache.ramCache.containsKey(cacheKey) || victimCache.backingMap.containsKey(cacheKey)
+      ) {
+        cacheStats.demoted();
+      }
+    } finally {
+      block.release();
+    }
+  }
+
+  /**
+   * Caches a block demoted from the upper tier. The admission filter of this tier is skipped, the
+   * block having already earned its place in the upper one.
+   */
+  private void cacheDemotedBlock(BlockCacheKey cacheKey, Cacheable block, boolean inMemory) {
+    if (!cacheEnabled || backingMap.containsKey(cacheKey) || ramCache.containsKey(cacheKey)) {
+      return;
+    }
+    if (cacheKey.getBlockType() == null && block.getBlockType() != null) {
+      cacheKey.setBlockType(block.getBlockType());
+    }
+    enqueueBlock(cacheKey, block, inMemory, false);
+  }
+
   /**
    * <pre>
    * Create the {@link Recycler} for {@link BucketEntry#refCnt},which would be used as
@@ -767,6 +1011,10 @@ public class BucketCache implements BlockCache, HeapSize {
   }
 
   public void logStats() {
+    if (victimCache != null) {
+      LOG.info("promotedBlocks={}, demotedBlocks={}", cacheStats.getPromotedCount(),
+        cacheStats.getDemotedCount());
+    }
     long totalSize = bucketAllocator.getTotalSize();
     long usedSize = bucketAllocator.getUsedSize();
     long freeSize = totalSize - usedSize;
@@ -788,7 +1036,8 @@ public class BucketCache implements BlockCache, HeapSize {
         : (StringUtils.formatPercent(cacheStats.getHitCachingRatio(), 2) + ", "))
       + "evictions=" + cacheStats.getEvictionCount() + ", " + "evicted="
       + cacheStats.getEvictedCount() + ", " + "evictedPerRun=" + cacheStats.evictedPerEviction()
-      + ", " + "allocationFailCount=" + cacheStats.getAllocationFailCount());
+      + ", " + "allocationFailCount=" + cacheStats.getAllocationFailCount() + ", "
+      + "rejectedAdmissions=" + cacheStats.getRejectedAdmissions());
     cacheStats.reset();
 
     bucketAllocator.logDebugStatistics();
@@ -970,6 +1219,21 @@ public class BucketCache implements BlockCache, HeapSize {
       // of the buckets, we do this by evicting the buckets that are least fulled
       freeEntireBuckets(DEFAULT_FREE_ENTIRE_BLOCK_FACTOR * bucketSizesAboveThresholdCount(1.0f));
 
+      if (admissionFilterEnabled) {
+        // The group most over its share is the one the next eviction takes from first
+        BucketEntryGroup victimGroup = bucketSingle;
+        if (bucketMulti.overflow() > victimGroup.overflow()) {
+          victimGroup = bucketMulti;
+        }
+        if (bucketMemory.overflow() > victimGroup.overflow()) {
+          victimGroup = bucketMemory;
+        }
+        BlockCacheKey victim = victimGroup.nextVictim();
+        if (victim != null) {
+          admissionVictim = victim;
+        }
+      }
+
       if (LOG.isDebugEnabled()) {
         long single = bucketSingle.totalSize();
         long multi = bucketMulti.totalSize();
@@ -1046,6 +1310,10 @@ public class BucketCache implements BlockCache, HeapSize {
    * @param bucketEntry Bucket entry to put into backingMap.
    */
   protected void putIntoBackingMap(BlockCacheKey key, BucketEntry bucketEntry) {
+    if (journal != null) {
+      // Log before publishing, so an eviction of the new entry is always journaled after it.
+      journal.logAdd(key, bucketEntry);
+    }
     BucketEntry previousEntry = backingMap.put(key, bucketEntry);
     if (previousEntry != null && previousEntry != bucketEntry) {
       previousEntry.withWriteLock(offsetLock, () -> {
@@ -1242,6 +1510,9 @@ public class BucketCache implements BlockCache, HeapSize {
   }
 
   /**
+   * Writes a full snapshot of the backing map. Only called by one thread at a time, the one
+   * checkpointing or, with a journal, the journal snapshotter, so that a checkpoint does not hold the
+   * cache lock while the whole backing map is written.
    * @see #retrieveFromFile(int[])
    */
   @edu.umd.cs.findbugs.annotations.SuppressWarnings(value = "OBL_UNSATISFIED_OBLIGATION",
@@ -1250,15 +1521,86 @@ public class BucketCache implements BlockCache, HeapSize {
     if (!ioEngine.isPersistent()) {
       throw new IOException("Attempt to persist non-persistent cache mappings!");
     }
+    long journalGeneration = journal != null ? journal.getGeneration() + 1 : 0;
     try (FileOutputStream fos = new FileOutputStream(persistencePath, false)) {
       fos.write(ProtobufMagic.PB_MAGIC);
-      BucketProtoUtils.toPB(this).writeDelimitedTo(fos);
+      BucketProtoUtils.toPB(this, journalGeneration).writeDelimitedTo(fos);
+    }
+    if (journal != null) {
+      journal.reset(journalGeneration);
     }
     if (prefetchedFileListPath != null) {
       PrefetchExecutor.persistToFile(prefetchedFileListPath);
     }
   }
 
+  /**
+   * Persist the changes made to the cache since the last checkpoint. Without a journal this writes
+   * a full snapshot with {@link #persistToFile()}. With a journal only the changes are appended to
+   * it, and a full snapshot is written in the background when the journal has grown too large
+   * compared to the cache. The changes made meanwhile stay queued for the journal it starts.
+   */
+  synchronized void checkpoint() throws IOException {
+    checkpoint(false);
+  }
+
+  private synchronized void checkpoint(boolean waitForSnapshot) throws IOException {
+    if (journal == null) {
+      persistToFile();
+      return;
+    }
+    if (journalSnapshot != null) {
+      if (!waitForSnapshot && !journalSnapshot.isDone()) {
+        LOG.debug("Bucket cache snapshot to {} still being written, skipping checkpoint",
+          persistencePath);
+        return;
+      }
+      awaitJournalSnapshot();
+    }
+    if (journal.needsCompaction(backingMap.size())) {
+      if (waitForSnapshot) {
+        persistToFile();
+      } else {
+        journalSnapshot = journalSnapshotter.submit(this::writeJournalSnapshot);
+      }
+      return;
+    }
+    int changes = journal.flush(((PersistentIOEngine) ioEngine).calculateChecksum(getAlgorithm()));
+    LOG.debug("Journaled {} bucket cache changes to {}", changes, journal.getPath());
+    if (prefetchedFileListPath != null) {
+      PrefetchExecutor.persistToFile(prefetchedFileListPath);
+    }
+  }
+
+  private void writeJournalSnapshot() {
+    try {
+      persistToFile();
+    } catch (IOException e) {
+      // the journal was not reset, the next checkpoint writes the snapshot again
+      LOG.warn("Failed to write bucket cache snapshot to {}", persistencePath, e);
+    } finally {
+      // the next checkpoint journals the changes made while the snapshot was written
+      setCacheInconsistent(true);
+    }
+  }
+
+  /** Waits for the full snapshot being written in the background, if any */
+  synchronized void awaitJournalSnapshot() throws IOException {
+    if (journalSnapshot == null) {
+      return;
+    }
+    try {
+      journalSnapshot.get();
+    } catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException().initCause(e);
+    } catch (ExecutionException e) {
+      LOG.warn("Failed to write bucket cache snapshot to {}", persistencePath, e.getCause());
+      setCacheInconsistent(true);
+    } finally {
+      journalSnapshot = null;
+    }
+  }
+
   /**
    * @see #persistToFile()
    */
@@ -1286,7 +1628,7 @@ public class BucketCache implements BlockCache, HeapSize {
         throw new IOException(
           "Persistence file does not start with protobuf magic number. " + persistencePath);
       }
-      parsePB(BucketCacheProtos.BucketCacheEntry.parseDelimitedFrom(in));
+      parsePB(BucketCacheProtos.BucketCacheEntry.parseDelimitedFrom(in), retrieveJournal());
       bucketAllocator = new BucketAllocator(cacheCapacity, bucketSizes, backingMap, realCacheSize);
       blockNumber.add(backingMap.size());
     }
@@ -1352,8 +1694,40 @@ public class BucketCache implements BlockCache, HeapSize {
     }
   }
 
-  private void parsePB(BucketCacheProtos.BucketCacheEntry proto) throws IOException {
-    if (proto.hasChecksum()) {
+  /**
+   * Read the journal left by the previous instance, if any, and delete it. Returns null if there is
+   * no usable journal.
+   */
+  private BucketCacheJournal.Replay retrieveJournal() {
+    if (journal == null) {
+      return null;
+    }
+    File journalFile = new File(journal.getPath());
+    if (!journalFile.exists()) {
+      return null;
+    }
+    try (FileInputStream in = deleteFileOnClose(journalFile)) {
+      return BucketCacheJournal.read(in);
+    } catch (IOException e) {
+      LOG.warn("Can't read bucket cache journal " + journalFile + ", ignoring it", e);
+      return null;
+    }
+  }
+
+  private void parsePB(BucketCacheProtos.BucketCacheEntry proto, BucketCacheJournal.Replay replay)
+    throws IOException {
+    if (
+      replay != null
+        && (!proto.hasJournalGeneration() || proto.getJournalGeneration() != replay.getGeneration())
+    ) {
+      LOG.info("Ignoring bucket cache journal of generation " + replay.getGeneration()
+        + ", it does not match the persistence file");
+      replay = null;
+    }
+    if (replay != null && replay.getChecksum() != null) {
+      // The IOEngine has been written to since the snapshot, check it against the last checkpoint
+      ((PersistentIOEngine) ioEngine).verifyFileIntegrity(replay.getChecksum(), algorithm);
+    } else if (proto.hasChecksum()) {
       ((PersistentIOEngine) ioEngine).verifyFileIntegrity(proto.getChecksum().toByteArray(),
         algorithm);
     } else {
@@ -1363,6 +1737,10 @@ public class BucketCache implements BlockCache, HeapSize {
     verifyCapacityAndClasses(proto.getCacheCapacity(), proto.getIoClass(), proto.getMapClass());
     backingMap = BucketProtoUtils.fromPB(proto.getDeserializersMap(), proto.getBackingMap(),
       this::createRecycler);
+    if (replay != null) {
+      replay.apply(backingMap, proto.getDeserializersMap(), this::createRecycler);
+      LOG.info("Replayed " + replay.size() + " bucket cache journal records");
+    }
   }
 
   /**
@@ -1408,17 +1786,25 @@ public class BucketCache implements BlockCache, HeapSize {
 
   @Override
   public void shutdown() {
+    if (victimCache != null) {
+      victimCache.shutdown();
+    }
     disableCache();
     LOG.info("Shutdown bucket cache: IO persistent=" + ioEngine.isPersistent() + "; path to write="
       + persistencePath);
     if (ioEngine.isPersistent() && persistencePath != null) {
       try {
         join();
-        persistToFile();
+        checkpoint(true);
       } catch (IOException ex) {
         LOG.error("Unable to persist data on exit: " + ex.toString(), ex);
       } catch (InterruptedException e) {
         LOG.warn("Failed to persist data on exit", e);
+      } finally {
+        if (journal != null) {
+          journalSnapshotter.shutdown();
+          journal.close();
+        }
       }
     }
   }
@@ -1480,12 +1866,12 @@ public class BucketCache implements BlockCache, HeapSize {
   @Override
   public int evictBlocksByHfileName(String hfileName) {
     PrefetchExecutor.removePrefetchedFileWhileEvict(hfileName);
+    int numEvicted = victimCache == null ? 0 : victimCache.evictBlocksByHfileName(hfileName);
     Set<BlockCacheKey> keySet = blocksByHFile.subSet(new BlockCacheKey(hfileName, Long.MIN_VALUE),
       true, new BlockCacheKey(hfileName, Long.MAX_VALUE), true);
 
-    int numEvicted = 0;
     for (BlockCacheKey key : keySet) {
-      if (evictBlock(key)) {
+      if (doEvictBlock(key, null, false)) {
         ++numEvicted;
       }
     }
@@ -1503,6 +1889,7 @@ public class BucketCache implements BlockCache, HeapSize {
     private CachedEntryQueue queue;
     private long totalSize = 0;
     private long bucketSize;
+    private BlockCacheKey lastEvicted;
 
     public BucketEntryGroup(long bytesToFree, long blockSize, long bucketSize) {
       this.bucketSize = bucketSize;
@@ -1525,6 +1912,7 @@ public class BucketCache implements BlockCache, HeapSize {
         BucketEntry be = entry.getValue();
         if (evictBucketEntryIfNoRpcReferenced(blockCacheKey, be)) {
           freedBytes += be.getLength();
+          lastEvicted = blockCacheKey;
         }
         if (freedBytes >= toFree) {
           return freedBytes;
@@ -1537,6 +1925,15 @@ public class BucketCache implements BlockCache, HeapSize {
       return totalSize - bucketSize;
     }
 
+    /**
+     * Returns the block this group would evict next, or the last one it evicted if nothing is left
+     * to evict, or null if it never evicted anything
+     */
+    public BlockCacheKey nextVictim() {
+      Map.Entry<BlockCacheKey, BucketEntry> next = queue.pollLast();
+      return next != null ? next.getKey() : lastEvicted;
+    }
+
     public long totalSize() {
       return totalSize;
     }
@@ -1719,7 +2116,25 @@ public class BucketCache implements BlockCache, HeapSize {
 
   @Override
   public BlockCache[] getBlockCaches() {
-    return null;
+    return victimCache == null ? null : new BlockCache[] { this, victimCache };
+  }
+
+  /**
+   * Sets the lower tier of this cache, typically a larger cache on a slower {@link IOEngine}, such
+   * as a file on local SSD under an off-heap cache. The blocks this cache evicts to make room are
+   * demoted to it instead of being dropped, and the blocks hit there repeatedly are promoted back.
+   * Each tier keeps its own allocator and statistics.
+   */
+  public void setVictimCache(BucketCache victimCache) {
+    if (this.victimCache != null) {
+      throw new IllegalArgumentException("The victim cache has already been set");
+    }
+    this.lowerTierHits = new BlockFrequencySketch(victimCache.getMaxSize() / blockSize);
+    this.victimCache = victimCache;
+  }
+
+  BucketCache getVictimCache() {
+    return victimCache;
   }
 
   public int getRpcRefCount(BlockCacheKey cacheKey) {
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator.Recycler;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.protobuf.ByteString;
+import org.apache.hbase.thirdparty.com.google.protobuf.InvalidProtocolBufferException;
+
+import org.apache.hadoop.hbase.shaded.protobuf.generated.BucketCacheProtos.BucketCacheJournalEntry;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.BucketCacheProtos.JournalOp;
+
+/**
+ * Append-only journal of the changes made to the {@link BucketCache} backing map since the last
+ * full snapshot written by {@link BucketCache#persistToFile()}. Checkpointing with the journal only
+ * costs as much as the number of blocks added or evicted since the previous checkpoint, instead of
+ * the size of the whole cache.
+ * <p>
+ * The journal starts with a header naming the generation of the snapshot it applies to. Each
+ * {@link #flush(byte[])} appends the queued add/evict records followed by a checkpoint record with
+ * the IOEngine checksum, and syncs the file. On restart only the records up to the last checkpoint
+ * are replayed on top of the snapshot, and the checkpoint checksum is verified instead of the one
+ * in the snapshot. Once the journal grows past a fraction of the number of cached blocks the caller
+ * writes a new snapshot and {@link #reset(long)}s the journal, which keeps restart time bounded.
+ * <p>
+ * Evict records carry the bucket offset of the evicted entry and are only applied if it still
+ * matches, so replaying records that raced with the snapshot is harmless.
+ */
+@InterfaceAudience.Private
+class BucketCacheJournal {
+  private static final Logger LOG = LoggerFactory.getLogger(BucketCacheJournal.class);
+
+  private final String path;
+  private final float compactionRatio;
+  private final ConcurrentLinkedQueue<Event> pending = new ConcurrentLinkedQueue<>();
+
+  // Guarded by this
+  private FileOutputStream out;
+  private long generation;
+  private long records;
+
+  BucketCacheJournal(String path, float compactionRatio) {
+    this.path = path;
+    this.compactionRatio = compactionRatio;
+  }
+
+  String getPath() {
+    return path;
+  }
+
+  void logAdd(BlockCacheKey key, BucketEntry entry) {
+    pending.add(new Event(JournalOp.add, key, entry));
+  }
+
+  void logEvict(BlockCacheKey key, BucketEntry entry) {
+    pending.add(new Event(JournalOp.evict, key, entry));
+  }
+
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  /** Returns the number of add and evict records written since the last reset */
+  synchronized long getRecords() {
+    return records;
+  }
+
+  /**
+   * Returns true if a full snapshot should be written instead of appending to the journal, either
+   * because there is no journal yet or because replaying it would cost too much compared to the
+   * number of live entries.
+   */
+  synchronized boolean needsCompaction(long liveEntries) {
+    return out == null || records > compactionRatio * liveEntries;
+  }
+
+  /**
+   * Appends all the queued changes and a checkpoint with the given IOEngine checksum, then syncs.
+   * @return the number of changes written
+   */
+  synchronized int flush(byte[] checksum) throws IOException {
+    if (out == null) {
+      throw new IOException("Journal " + path + " has not been started");
+    }
+    int written = 0;
+    Event event;
+    while ((event = pending.poll()) != null) {
+      event.toPB().writeDelimitedTo(out);
+      written++;
+    }
+    BucketCacheJournalEntry.newBuilder().setOp(JournalOp.checkpoint)
+      .setChecksum(ByteString.copyFrom(checksum)).build().writeDelimitedTo(out);
+    out.flush();
+    out.getChannel().force(false);
+    records += written;
+    return written;
+  }
+
+  /**
+   * Truncates the journal and starts a new one on top of the snapshot of the given generation. The
+   * changes still queued are kept, they will be written by the next {@link #flush(byte[])}.
+   */
+  synchronized void reset(long newGeneration) throws IOException {
+    close();
+    out = new FileOutputStream(path, false);
+    BucketCacheJournalEntry.newBuilder().setOp(JournalOp.header).setGeneration(newGeneration)
+      .build().writeDelimitedTo(out);
+    out.flush();
+    out.getChannel().force(false);
+    generation = newGeneration;
+    records = 0;
+  }
+
+  synchronized void close() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        LOG.warn("Failed closing journal {}", path, e);
+      }
+      out = null;
+    }
+  }
+
+  /**
+   * Reads a journal written by a previous instance. Records after the last checkpoint, including a
+   * torn record at the end of the file, are dropped.
+   */
+  static Replay read(InputStream in) throws IOException {
+    BucketCacheJournalEntry header = BucketCacheJournalEntry.parseDelimitedFrom(in);
+    if (header == null || header.getOp() != JournalOp.header) {
+      throw new IOException("Journal does not start with a header");
+    }
+    List<BucketCacheJournalEntry> entries = new ArrayList<>();
+    List<BucketCacheJournalEntry> uncommitted = new ArrayList<>();
+    byte[] checksum = null;
+    try {
+      BucketCacheJournalEntry entry;
+      while ((entry = BucketCacheJournalEntry.parseDelimitedFrom(in)) != null) {
+        if (entry.getOp() == JournalOp.checkpoint) {
+          entries.addAll(uncommitted);
+          uncommitted.clear();
+          checksum = entry.getChecksum().toByteArray();
+        } else {
+          uncommitted.add(entry);
+        }
+      }
+    } catch (InvalidProtocolBufferException e) {
+      LOG.warn("Journal ends with a partial record, ignoring it", e);
+    }
+    if (!uncommitted.isEmpty()) {
+      LOG.info("Dropping {} journal records written after the last checkpoint", uncommitted.size());
+    }
+    return new Replay(header.getGeneration(), entries, checksum);
+  }
+
+  /**
+   * The committed content of a journal, see {@link BucketCacheJournal#read(InputStream)}.
+   */
+  static final class Replay {
+    private final long generation;
+    private final List<BucketCacheJournalEntry> entries;
+    private final byte[] checksum;
+
+    Replay(long generation, List<BucketCacheJournalEntry> entries, byte[] checksum) {
+      this.generation = generation;
+      this.entries = entries;
+      this.checksum = checksum;
+    }
+
+    long getGeneration() {
+      return generation;
+    }
+
+    int size() {
+      return entries.size();
+    }
+
+    /** Returns the IOEngine checksum of the last checkpoint, or null if there was none */
+    byte[] getChecksum() {
+      return checksum;
+    }
+
+    /**
+     * Applies the journal records, in order, to a backing map restored from the snapshot.
+     */
+    void apply(Map<BlockCacheKey, BucketEntry> backingMap, Map<Integer, String> deserializers,
+      Function<BucketEntry, Recycler> createRecycler) throws IOException {
+      for (BucketCacheJournalEntry entry : entries) {
+        BlockCacheKey key = BucketProtoUtils.fromPB(entry.getKey());
+        switch (entry.getOp()) {
+          case add:
+            backingMap.put(key,
+              BucketProtoUtils.fromPB(deserializers, entry.getValue(), createRecycler));
+            break;
+          case evict:
+            BucketEntry current = backingMap.get(key);
+            if (current != null && current.offset() == entry.getOffset()) {
+              backingMap.remove(key);
+            }
+            break;
+          default:
+            throw new IOException("Unexpected journal record " + entry.getOp());
+        }
+      }
+    }
+  }
+
+  private static final class Event {
+    private final JournalOp op;
+    private final BlockCacheKey key;
+    private final BucketEntry entry;
+
+    Event(JournalOp op, BlockCacheKey key, BucketEntry entry) {
+      this.op = op;
+      this.key = key;
+      this.entry = entry;
+    }
+
+    BucketCacheJournalEntry toPB() {
+      BucketCacheJournalEntry.Builder builder =
+        BucketCacheJournalEntry.newBuilder().setOp(op).setKey(BucketProtoUtils.toPB(key));
+      if (op == JournalOp.add) {
+        builder.setValue(BucketProtoUtils.toPB(entry));
+      } else {
+        builder.setOffset(entry.offset());
+      }
+      return builder.build();
+    }
+  }
+}
@@ -41,7 +41,7 @@ public class BucketCachePersister extends Thread {
         Thread.sleep(intervalMillis);
         if (cache.isCacheInconsistent()) {
           LOG.debug("Cache is inconsistent, persisting to disk");
-          cache.persistToFile();
+          cache.checkpoint();
           cache.setCacheInconsistent(false);
         }
       } catch (IOException | InterruptedException e) {
@@ -36,6 +36,10 @@ public class BucketCacheStats extends CacheStats {
   /* Tracing failed Bucket Cache allocations. */
   private LongAdder allocationFailCount = new LongAdder();
 
+  /* Blocks moved up from and down to the lower tier, when the cache has one. */
+  private final LongAdder promotedCount = new LongAdder();
+  private final LongAdder demotedCount = new LongAdder();
+
   BucketCacheStats() {
     super("BucketCache");
 
@@ -45,7 +49,8 @@ public class BucketCacheStats extends CacheStats {
   @Override
   public String toString() {
     return super.toString() + ", ioHitsPerSecond=" + getIOHitsPerSecond() + ", ioTimePerHit="
-      + getIOTimePerHit() + ", allocationFailCount=" + getAllocationFailCount();
+      + getIOTimePerHit() + ", allocationFailCount=" + getAllocationFailCount() + ", promotedCount="
+      + getPromotedCount() + ", demotedCount=" + getDemotedCount();
   }
 
   public void ioHit(long time) {
@@ -79,4 +84,20 @@ public class BucketCacheStats extends CacheStats {
   public void allocationFailed() {
     allocationFailCount.increment();
   }
+
+  public long getPromotedCount() {
+    return promotedCount.sum();
+  }
+
+  public void promoted() {
+    promotedCount.increment();
+  }
+
+  public long getDemotedCount() {
+    return demotedCount.sum();
+  }
+
+  public void demoted() {
+    demotedCount.increment();
+  }
 }
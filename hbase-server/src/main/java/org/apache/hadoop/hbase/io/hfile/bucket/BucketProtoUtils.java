@@ -40,7 +40,7 @@ final class BucketProtoUtils {
 
   }
 
-  static BucketCacheProtos.BucketCacheEntry toPB(BucketCache cache) {
+  static BucketCacheProtos.BucketCacheEntry toPB(BucketCache cache, long journalGeneration) {
     return BucketCacheProtos.BucketCacheEntry.newBuilder().setCacheCapacity(cache.getMaxSize())
       .setIoClass(cache.ioEngine.getClass().getName())
       .setMapClass(cache.backingMap.getClass().getName())
@@ -48,7 +48,7 @@ final class BucketProtoUtils {
       .setBackingMap(BucketProtoUtils.toPB(cache.backingMap))
       .setChecksum(ByteString
         .copyFrom(((PersistentIOEngine) cache.ioEngine).calculateChecksum(cache.getAlgorithm())))
-      .build();
+      .setJournalGeneration(journalGeneration).build();
   }
 
   private static BucketCacheProtos.BackingMap toPB(Map<BlockCacheKey, BucketEntry> backingMap) {
@@ -60,7 +60,7 @@ final class BucketProtoUtils {
     return builder.build();
   }
 
-  private static BucketCacheProtos.BlockCacheKey toPB(BlockCacheKey key) {
+  static BucketCacheProtos.BlockCacheKey toPB(BlockCacheKey key) {
     return BucketCacheProtos.BlockCacheKey.newBuilder().setHfilename(key.getHfileName())
       .setOffset(key.getOffset()).setPrimaryReplicaBlock(key.isPrimary())
       .setBlockType(toPB(key.getBlockType())).build();
@@ -97,7 +97,7 @@ final class BucketProtoUtils {
     }
   }
 
-  private static BucketCacheProtos.BucketEntry toPB(BucketEntry entry) {
+  static BucketCacheProtos.BucketEntry toPB(BucketEntry entry) {
     return BucketCacheProtos.BucketEntry.newBuilder().setOffset(entry.offset())
       .setLength(entry.getLength()).setDeserialiserIndex(entry.deserializerIndex)
       .setAccessCounter(entry.getAccessCounter()).setPriority(toPB(entry.getPriority())).build();
@@ -121,34 +121,41 @@ final class BucketProtoUtils {
     throws IOException {
     ConcurrentHashMap<BlockCacheKey, BucketEntry> result = new ConcurrentHashMap<>();
     for (BucketCacheProtos.BackingMapEntry entry : backingMap.getEntryList()) {
-      BucketCacheProtos.BlockCacheKey protoKey = entry.getKey();
-      BlockCacheKey key = new BlockCacheKey(protoKey.getHfilename(), protoKey.getOffset(),
-        protoKey.getPrimaryReplicaBlock(), fromPb(protoKey.getBlockType()));
-      BucketCacheProtos.BucketEntry protoValue = entry.getValue();
-      // TODO:We use ByteBuffAllocator.HEAP here, because we could not get the ByteBuffAllocator
-      // which created by RpcServer elegantly.
-      BucketEntry value = new BucketEntry(protoValue.getOffset(), protoValue.getLength(),
-        protoValue.getAccessCounter(),
+      result.put(fromPB(entry.getKey()), fromPB(deserializers, entry.getValue(), createRecycler));
+    }
+    return result;
+  }
+
+  static BlockCacheKey fromPB(BucketCacheProtos.BlockCacheKey protoKey) {
+    return new BlockCacheKey(protoKey.getHfilename(), protoKey.getOffset(),
+      protoKey.getPrimaryReplicaBlock(), fromPb(protoKey.getBlockType()));
+  }
+
+  static BucketEntry fromPB(Map<Integer, String> deserializers,
+    BucketCacheProtos.BucketEntry protoValue, Function<BucketEntry, Recycler> createRecycler)
+    throws IOException {
+    // TODO:We use ByteBuffAllocator.HEAP here, because we could not get the ByteBuffAllocator
+    // which created by RpcServer elegantly.
+    BucketEntry value =
+      new BucketEntry(protoValue.getOffset(), protoValue.getLength(), protoValue.getAccessCounter(),
         protoValue.getPriority() == BucketCacheProtos.BlockPriority.memory, createRecycler,
         ByteBuffAllocator.HEAP);
-      // This is the deserializer that we stored
-      int oldIndex = protoValue.getDeserialiserIndex();
-      String deserializerClass = deserializers.get(oldIndex);
-      if (deserializerClass == null) {
-        throw new IOException("Found deserializer index without matching entry.");
-      }
-      // Convert it to the identifier for the deserializer that we have in this runtime
-      if (deserializerClass.equals(HFileBlock.BlockDeserializer.class.getName())) {
-        int actualIndex = HFileBlock.BLOCK_DESERIALIZER.getDeserializerIdentifier();
-        value.deserializerIndex = (byte) actualIndex;
-      } else {
-        // We could make this more plugable, but right now HFileBlock is the only implementation
-        // of Cacheable outside of tests, so this might not ever matter.
-        throw new IOException("Unknown deserializer class found: " + deserializerClass);
-      }
-      result.put(key, value);
+    // This is the deserializer that we stored
+    int oldIndex = protoValue.getDeserialiserIndex();
+    String deserializerClass = deserializers.get(oldIndex);
+    if (deserializerClass == null) {
+      throw new IOException("Found deserializer index without matching entry.");
     }
-    return result;
+    // Convert it to the identifier for the deserializer that we have in this runtime
+    if (deserializerClass.equals(HFileBlock.BlockDeserializer.class.getName())) {
+      int actualIndex = HFileBlock.BLOCK_DESERIALIZER.getDeserializerIdentifier();
+      value.deserializerIndex = (byte) actualIndex;
+    } else {
+      // We could make this more plugable, but right now HFileBlock is the only implementation
+      // of Cacheable outside of tests, so this might not ever matter.
+      throw new IOException("Unknown deserializer class found: " + deserializerClass);
+    }
+    return value;
   }
 
   private static BlockType fromPb(BucketCacheProtos.BlockType blockType) {
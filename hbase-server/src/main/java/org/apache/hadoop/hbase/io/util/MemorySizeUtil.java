@@ -23,6 +23,7 @@ import java.lang.management.MemoryUsage;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.regionserver.MemStoreLAB;
+import org.apache.hadoop.hbase.regionserver.RowCache;
 import org.apache.hadoop.hbase.util.Pair;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
@@ -87,20 +88,31 @@ public class MemorySizeUtil {
     int gml = (int) (globalMemstoreSize * CONVERT_TO_PERCENTAGE);
     float blockCacheUpperLimit = getBlockCacheHeapPercent(conf);
     int bcul = (int) (blockCacheUpperLimit * CONVERT_TO_PERCENTAGE);
+    float rowCacheSize = getRowCacheHeapPercent(conf);
+    int rcl = (int) (rowCacheSize * CONVERT_TO_PERCENTAGE);
     if (
-      CONVERT_TO_PERCENTAGE - (gml + bcul)
+      CONVERT_TO_PERCENTAGE - (gml + bcul + rcl)
           < (int) (CONVERT_TO_PERCENTAGE * HConstants.HBASE_CLUSTER_MINIMUM_MEMORY_THRESHOLD)
     ) {
-      throw new RuntimeException("Current heap configuration for MemStore and BlockCache exceeds "
-        + "the threshold required for successful cluster operation. "
+      throw new RuntimeException("Current heap configuration for MemStore, BlockCache and RowCache "
+        + "exceeds the threshold required for successful cluster operation. "
         + "The combined value cannot exceed 0.8. Please check "
-        + "the settings for hbase.regionserver.global.memstore.size and "
-        + "hfile.block.cache.size in your configuration. "
+        + "the settings for hbase.regionserver.global.memstore.size, "
+        + "hfile.block.cache.size and " + RowCache.ROW_CACHE_SIZE_KEY + " in your configuration. "
         + "hbase.regionserver.global.memstore.size is " + globalMemstoreSize
-        + " hfile.block.cache.size is " + blockCacheUpperLimit);
+        + " hfile.block.cache.size is " + blockCacheUpperLimit + " "
+        + RowCache.ROW_CACHE_SIZE_KEY + " is " + rowCacheSize);
     }
   }
 
+  /**
+   * Retrieve configured size of the row cache as percentage of total heap, 0 when it is disabled.
+   */
+  public static float getRowCacheHeapPercent(final Configuration conf) {
+    float fraction = conf.getFloat(RowCache.ROW_CACHE_SIZE_KEY, RowCache.ROW_CACHE_SIZE_DEFAULT);
+    return fraction > 0 && fraction < 1 ? fraction : 0;
+  }
+
   /**
    * Retrieve global memstore configured size as percentage of total heap.
    */
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.master.cleaner;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.regionserver.wal.WALValueDictionaries;
+import org.apache.hadoop.hbase.util.CommonFSUtils;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WAL cleaner that deletes the WAL value dictionaries, see {@link WALValueDictionaries}, that none
+ * of the WALs, live or archived, is compressed with any more. It reads the dictionary of each WAL
+ * from its header, once, before every clean, and never keeps a WAL itself. A dictionary is kept
+ * for {@value #DEFAULT_TTL} ms by default after a new WAL was last compressed with it, so that the
+ * WALs whose header is not written yet keep their dictionary.
+ */
+@InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.CONFIG)
+public class WALValueDictionaryCleaner extends BaseLogCleanerDelegate {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WALValueDictionaryCleaner.class);
+
+  public static final String TTL_CONF_KEY = "hbase.master.walvaluedictionarycleaner.ttl";
+
+  // default ttl = 1 hour
+  public static final long DEFAULT_TTL = 3_600_000L;
+
+  private FileSystem fs;
+  private Path walRootDir;
+  private Path dictionaryDir;
+  private long ttlMs;
+
+  // the dictionary, or null, of the WALs seen by the last clean, by WAL name
+  private Map<String, String> walDictionaries = new HashMap<>();
+
+  private volatile boolean stopped = false;
+
+  @Override
+  public void setConf(Configuration conf) {
+    super.setConf(conf);
+    this.ttlMs = conf.getLong(TTL_CONF_KEY, DEFAULT_TTL);
+    try {
+      this.walRootDir = CommonFSUtils.getWALRootDir(conf);
+      this.fs = walRootDir.getFileSystem(conf);
+      this.dictionaryDir = WALValueDictionaries.getDictionaryDir(conf);
+    } catch (IOException e) {
+      LOG.error("Failed to get the WAL value dictionary directory, not cleaning it", e);
+    }
+  }
+
+  @Override
+  public boolean isFileDeletable(FileStatus fStat) {
+    return true;
+  }
+
+  @Override
+  public void preClean() {
+    if (dictionaryDir == null || stopped) {
+      return;
+    }
+    try {
+      FileStatus[] dictionaries = CommonFSUtils.listStatus(fs, dictionaryDir);
+      if (dictionaries == null) {
+        walDictionaries = new HashMap<>();
+        return;
+      }
+      Map<String, String> seen = new HashMap<>();
+      // The WALs are archived from WALs to oldWALs, so listing them in this order sees every WAL
+      // at least once, unless it is moved while its directory is listed or its header read. Then
+      // nothing is deleted, the next clean finds it in its new place.
+      Path walDir = new Path(walRootDir, HConstants.HREGION_LOGDIR_NAME);
+      Path oldWalDir = new Path(walRootDir, HConstants.HREGION_OLDLOGDIR_NAME);
+      boolean complete = !fs.exists(walDir) || readDictionaries(walDir, seen);
+      complete &= !fs.exists(oldWalDir) || readDictionaries(oldWalDir, seen);
+      walDictionaries = seen;
+      if (!complete) {
+        return;
+      }
+      Set<String> used = new HashSet<>(seen.values());
+      long currentTime = EnvironmentEdgeManager.currentTime();
+      for (FileStatus dictionary : dictionaries) {
+        Path path = dictionary.getPath();
+        if (
+          used.contains(path.getName()) || currentTime - dictionary.getModificationTime() <= ttlMs
+        ) {
+          continue;
+        }
+        if (fs.delete(path, false)) {
+          LOG.info("Deleted WAL value dictionary {} no WAL is compressed with", path);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to clean the WAL value dictionaries in {}", dictionaryDir, e);
+    }
+  }
+
+  /**
+   * Reads the dictionary of every WAL under the given directory into <code>seen</code>, by name.
+   * @return false if a WAL, or a directory of WALs, was moved before it could be read
+   */
+  private boolean readDictionaries(Path dir, Map<String, String> seen) throws IOException {
+    FileStatus[] files;
+    try {
+      files = fs.listStatus(dir);
+    } catch (FileNotFoundException e) {
+      LOG.debug("{} was moved before it was listed", dir, e);
+      return false;
+    }
+    boolean complete = true;
+    for (FileStatus file : files) {
+      if (file.isDirectory()) {
+        complete &= readDictionaries(file.getPath(), seen);
+        continue;
+      }
+      String name = file.getPath().getName();
+      if (walDictionaries.containsKey(name)) {
+        seen.put(name, walDictionaries.get(name));
+        continue;
+      }
+      try {
+        Path dictionary = WALValueDictionaries.readDictionary(fs, file.getPath());
+        seen.put(name, dictionary != null ? dictionary.getName() : null);
+      } catch (FileNotFoundException e) {
+        LOG.debug("{} was moved before its header was read", file.getPath(), e);
+        complete = false;
+      } catch (IOException e) {
+        // not a WAL, or its header is not written yet, which the ttl covers
+        LOG.debug("Failed to read the header of {}", file.getPath(), e);
+      }
+    }
+    return complete;
+  }
+
+  @Override
+  public void stop(String why) {
+    this.stopped = true;
+  }
+
+  @Override
+  public boolean isStopped() {
+    return this.stopped;
+  }
+}
@@ -63,10 +63,9 @@ public class CellArrayImmutableSegment extends ImmutableSegment {
     // build the new CellSet based on CellChunkMap and update the CellSet of this Segment
     reinitializeCellSet(numOfCells, segment.getScanner(Long.MAX_VALUE), segment.getCellSet(),
       action);
-    // arrange the meta-data size, decrease all meta-data sizes related to SkipList;
+    // arrange the meta-data size, decrease all meta-data sizes related to SkipList (or B-tree);
     // add sizes of CellArrayMap entry (reinitializeCellSet doesn't take the care for the sizes)
-    long newSegmentSizeDelta =
-      numOfCells * (indexEntrySize() - ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY);
+    long newSegmentSizeDelta = numOfCells * (indexEntrySize() - segment.indexEntrySize());
     incMemStoreSize(0, newSegmentSizeDelta, 0, 0);
     mss.incMemStoreSize(0, newSegmentSizeDelta, 0, 0);
   }
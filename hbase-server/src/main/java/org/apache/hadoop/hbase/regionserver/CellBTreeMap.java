@@ -0,0 +1,827 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * CellBTreeMap is a concurrent NavigableMap of cells mapped to themselves, to be used as the index
+ * of a {@link MutableSegment} instead of a ConcurrentSkipListMap. The cells are kept sorted in
+ * leaves, which are small arrays of references, so a cell costs a few bytes of index instead of a
+ * skip list node and its index levels, and a scan reads consecutive references instead of chasing a
+ * pointer per cell.
+ * <p>
+ * The leaves are linked B-link tree style: a leaf covers the cells from its low key (included) to
+ * the low key of the next leaf (excluded). A full leaf is split by moving its upper half into a new
+ * leaf linked after it, then the new leaf is added to a ConcurrentSkipListMap indexing the leaves
+ * by low key. A thread looking a cell up in the index may thus land on a leaf on the left of the
+ * right one, and moves right along the links until it gets there.
+ * <p>
+ * Each leaf is guarded by a StampedLock. Writers lock the leaf they change, readers read it
+ * optimistically and only take the read lock if a writer changed it meanwhile. For optimistic
+ * readers never to see a null reference, the slots after the last cell of a leaf are never
+ * cleared. Empty leaves are not merged, as the segment goes away once flushed.
+ * <p>
+ * Like CellFlatMap, an instance is either the whole map or a view of a range of it, possibly in
+ * descending order. Iterators are weakly consistent, as those of ConcurrentSkipListMap.
+ */
+@InterfaceAudience.Private
+public class CellBTreeMap extends AbstractMap<Cell, Cell> implements NavigableMap<Cell, Cell> {
+
+  // Maximum number of cells of a leaf
+  static final int MAX_LEAF_SIZE = 64;
+  private static final int INITIAL_LEAF_SIZE = 8;
+
+  /** Heap size of a leaf without its cells, including its entry in the index of the leaves */
+  private static final long LEAF_OVERHEAD = ClassSize.align(ClassSize.OBJECT
+    + 4 * ClassSize.REFERENCE + Bytes.SIZEOF_INT) // low key, lock, cells, next and count
+    + ClassSize.align(ClassSize.OBJECT + 2 * ClassSize.REFERENCE + Bytes.SIZEOF_LONG) // lock
+    + ClassSize.align(ClassSize.ARRAY) + ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY;
+
+  /**
+   * Upper bound of the heap size of the index per cell: a leaf holding at least half of its
+   * maximum number of cells, a cell takes two of its slots and its share of the leaf overhead.
+   */
+  public static final long ENTRY_SIZE =
+    2 * ClassSize.REFERENCE + LEAF_OVERHEAD / (MAX_LEAF_SIZE / 2);
+
+  // relations of findNear
+  private static final int EQ = 1;
+  private static final int LT = 2;
+  private static final int GT = 4;
+  private static final int LE = LT | EQ;
+  private static final int GE = GT | EQ;
+
+  /** A sorted array of cells */
+  private static final class Leaf {
+    // the lowest cell this leaf may hold, null for the first leaf
+    private final Cell lowKey;
+    private final StampedLock lock = new StampedLock();
+    // the slots from count on are never cleared, see the class comment
+    private Cell[] cells;
+    private int count;
+    private volatile Leaf next;
+
+    Leaf(Cell lowKey, Cell[] cells, int count) {
+      this.lowKey = lowKey;
+      this.cells = cells;
+      this.count = count;
+    }
+  }
+
+  /** The leaves and index shared by the map and its views */
+  private static final class Tree {
+    private final Comparator<? super Cell> comparator;
+    private final Leaf head = new Leaf(null, new Cell[INITIAL_LEAF_SIZE], 0);
+    private final ConcurrentSkipListMap<Cell, Leaf> index;
+    private final LongAdder size = new LongAdder();
+
+    Tree(Comparator<? super Cell> comparator) {
+      this.comparator = comparator;
+      this.index = new ConcurrentSkipListMap<>(comparator);
+    }
+  }
+
+  private final Tree tree;
+  // bounds of this view, null for none
+  private final Cell lo;
+  private final boolean loInclusive;
+  private final Cell hi;
+  private final boolean hiInclusive;
+  private final boolean descending;
+
+  public CellBTreeMap(Comparator<? super Cell> comparator) {
+    this(new Tree(comparator), null, false, null, false, false);
+  }
+
+  private CellBTreeMap(Tree tree, Cell lo, boolean loInclusive, Cell hi, boolean hiInclusive,
+    boolean descending) {
+    this.tree = tree;
+    this.lo = lo;
+    this.loInclusive = loInclusive;
+    this.hi = hi;
+    this.hiInclusive = hiInclusive;
+    this.descending = descending;
+  }
+
+  /////////////////////// the tree ///////////////////////
+
+  private int compare(Cell a, Cell b) {
+    return tree.comparator.compare(a, b);
+  }
+
+  // Returns true if the key belongs to a leaf after the given one
+  private boolean isRightOf(Cell key, Leaf leaf) {
+    Leaf next = leaf.next;
+    return next != null && compare(key, next.lowKey) >= 0;
+  }
+
+  // Returns the last leaf whose cells may be lower than the key
+  private Leaf findLeafBefore(Cell key) {
+    Map.Entry<Cell, Leaf> e = tree.index.lowerEntry(key);
+    Leaf leaf = e == null ? tree.head : e.getValue();
+    Leaf next;
+    while ((next = leaf.next) != null && compare(next.lowKey, key) < 0) {
+      leaf = next;
+    }
+    return leaf;
+  }
+
+  // Returns the leaf covering the key, or one of the leaves on its left
+  private Leaf findLeaf(Cell key) {
+    Map.Entry<Cell, Leaf> e = tree.index.floorEntry(key);
+    Leaf leaf = e == null ? tree.head : e.getValue();
+    while (isRightOf(key, leaf)) {
+      leaf = leaf.next;
+    }
+    return leaf;
+  }
+
+  // Returns the leaf covering the key, write locked, with its stamp
+  private Leaf lockLeaf(Cell key, long[] stamp) {
+    Leaf leaf = findLeaf(key);
+    stamp[0] = leaf.lock.writeLock();
+    while (isRightOf(key, leaf)) { // split meanwhile
+      Leaf next = leaf.next;
+      leaf.lock.unlockWrite(stamp[0]);
+      leaf = next;
+      stamp[0] = leaf.lock.writeLock();
+    }
+    return leaf;
+  }
+
+  // Same result as Arrays.binarySearch on the first n cells
+  private int search(Cell[] cells, int n, Cell key) {
+    int low = 0;
+    int high = n - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = compare(cells[mid], key);
+      if (c < 0) {
+        low = mid + 1;
+      } else if (c > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private Cell treePut(Cell key, Cell value) {
+    long[] stamp = new long[1];
+    Leaf leaf = lockLeaf(key, stamp);
+    Leaf right = null;
+    try {
+      int i = search(leaf.cells, leaf.count, key);
+      if (i >= 0) {
+        Cell old = leaf.cells[i];
+        leaf.cells[i] = value;
+        return old;
+      }
+      i = -(i + 1);
+      if (leaf.count < leaf.cells.length) {
+        insertAt(leaf, i, value);
+      } else if (leaf.count < MAX_LEAF_SIZE) {
+        leaf.cells = Arrays.copyOf(leaf.cells, Math.min(MAX_LEAF_SIZE, 2 * leaf.cells.length));
+        insertAt(leaf, i, value);
+      } else if (i == leaf.count) {
+        // appending, which is the common case of increasing keys: keep this leaf full
+        Cell[] cells = new Cell[INITIAL_LEAF_SIZE];
+        cells[0] = value;
+        right = new Leaf(value, cells, 1);
+      } else {
+        // move the upper half to a new leaf, with room for one more cell
+        int mid = leaf.count / 2;
+        Cell[] cells = Arrays.copyOfRange(leaf.cells, mid, leaf.count + 1);
+        right = new Leaf(cells[0], cells, leaf.count - mid);
+        leaf.count = mid;
+        if (i <= mid) {
+          insertAt(leaf, i, value);
+        } else {
+          insertAt(right, i - mid, value);
+        }
+      }
+      if (right != null) {
+        right.next = leaf.next;
+        leaf.next = right; // publishes the new leaf
+      }
+      tree.size.increment();
+      return null;
+    } finally {
+      leaf.lock.unlockWrite(stamp[0]);
+      if (right != null) {
+        tree.index.put(right.lowKey, right);
+      }
+    }
+  }
+
+  private static void insertAt(Leaf leaf, int i, Cell value) {
+    System.arraycopy(leaf.cells, i, leaf.cells, i + 1, leaf.count - i);
+    leaf.cells[i] = value;
+    leaf.count++;
+  }
+
+  private Cell treeRemove(Cell key) {
+    long[] stamp = new long[1];
+    Leaf leaf = lockLeaf(key, stamp);
+    try {
+      int i = search(leaf.cells, leaf.count, key);
+      if (i < 0) {
+        return null;
+      }
+      Cell old = leaf.cells[i];
+      // the last slot keeps its reference, see the class comment
+      System.arraycopy(leaf.cells, i + 1, leaf.cells, i, leaf.count - i - 1);
+      leaf.count--;
+      tree.size.decrement();
+      return old;
+    } finally {
+      leaf.lock.unlockWrite(stamp[0]);
+    }
+  }
+
+  /**
+   * Returns the cell of the tree in the given relation with the key, or null. The key is null for
+   * the first cell (GE), or the last one (LT).
+   */
+  private Cell findNear(Cell key, int rel) {
+    Leaf leaf;
+    if (key == null) {
+      leaf = rel == GE ? tree.head : lastLeaf();
+    } else {
+      leaf = rel == LT ? findLeafBefore(key) : findLeaf(key);
+    }
+    while (true) {
+      Object found = findInLeaf(leaf, key, rel);
+      if (found == null || found instanceof Cell) {
+        return (Cell) found;
+      }
+      if (found == leaf) {
+        // nothing in this leaf, look in the neighbour
+        if ((rel & LT) != 0) {
+          if (leaf.lowKey == null) {
+            return null;
+          }
+          // all the cells of the leaves before are lower than the low key of this one
+          key = leaf.lowKey;
+          rel = LT;
+          leaf = findLeafBefore(key);
+        } else {
+          leaf = leaf.next;
+          if (leaf == null) {
+            return null;
+          }
+        }
+      } else {
+        leaf = (Leaf) found; // split meanwhile, the key is further right
+      }
+    }
+  }
+
+  private Leaf lastLeaf() {
+    Map.Entry<Cell, Leaf> e = tree.index.lastEntry();
+    Leaf leaf = e == null ? tree.head : e.getValue();
+    while (leaf.next != null) {
+      leaf = leaf.next;
+    }
+    return leaf;
+  }
+
+  /**
+   * Looks for the cell in the given relation with the key in a leaf. Returns the cell, or the leaf
+   * itself if it has no such cell, or the leaf to move to if the key belongs to a leaf on its right.
+   */
+  private Object findInLeaf(Leaf leaf, Cell key, int rel) {
+    long stamp = leaf.lock.tryOptimisticRead();
+    if (stamp != 0) {
+      Cell[] cells = leaf.cells;
+      int count = leaf.count;
+      if (count <= cells.length) {
+        try {
+          Object found = findInCells(leaf, cells, count, key, rel);
+          if (leaf.lock.validate(stamp)) {
+            return found;
+          }
+        } catch (RuntimeException e) {
+          // read while being changed, see below
+        }
+      }
+    }
+    stamp = leaf.lock.readLock();
+    try {
+      return findInCells(leaf, leaf.cells, leaf.count, key, rel);
+    } finally {
+      leaf.lock.unlockRead(stamp);
+    }
+  }
+
+  private Object findInCells(Leaf leaf, Cell[] cells, int count, Cell key, int rel) {
+    if (key != null) {
+      Leaf next = leaf.next;
+      if (next != null) {
+        // lower cells may be in this leaf when the key is the low key of the next one
+        int c = compare(key, next.lowKey);
+        if (rel == LT ? c > 0 : c >= 0) {
+          return next;
+        }
+      }
+    }
+    int i;
+    if (key == null) {
+      i = rel == GE ? 0 : count - 1;
+    } else {
+      i = search(cells, count, key);
+      if (i >= 0) {
+        if ((rel & EQ) == 0) {
+          i = (rel & LT) != 0 ? i - 1 : i + 1;
+        }
+      } else {
+        i = -(i + 1); // the first cell greater than the key
+        if ((rel & LT) != 0) {
+          i--;
+        }
+      }
+    }
+    if (i < 0 || i >= count) {
+      return rel == EQ ? null : leaf;
+    }
+    return rel == EQ && compare(cells[i], key) != 0 ? null : cells[i];
+  }
+
+  /////////////////////// the bounds of the view ///////////////////////
+
+  private boolean tooLow(Cell key) {
+    if (lo == null) {
+      return false;
+    }
+    int c = compare(key, lo);
+    return c < 0 || (c == 0 && !loInclusive);
+  }
+
+  private boolean tooHigh(Cell key) {
+    if (hi == null) {
+      return false;
+    }
+    int c = compare(key, hi);
+    return c > 0 || (c == 0 && !hiInclusive);
+  }
+
+  private boolean inRange(Cell key) {
+    return !tooLow(key) && !tooHigh(key);
+  }
+
+  // the lowest cell of the view, in ascending order
+  private Cell lowest() {
+    Cell c = findNear(lo, lo == null ? GE : (loInclusive ? GE : GT));
+    return c == null || tooHigh(c) ? null : c;
+  }
+
+  // the highest cell of the view, in ascending order
+  private Cell highest() {
+    Cell c = findNear(hi, hi == null ? LT : (hiInclusive ? LE : LT));
+    return c == null || tooLow(c) ? null : c;
+  }
+
+  // the cell of the view in the given relation with the key, in ascending order
+  private Cell relative(Cell key, int rel) {
+    if (descending) {
+      rel ^= LT | GT; // swap less and greater
+    }
+    if ((rel & LT) == 0) {
+      if (tooLow(key)) {
+        return lowest();
+      }
+      Cell c = findNear(key, rel);
+      return c == null || tooHigh(c) ? null : c;
+    } else {
+      if (tooHigh(key)) {
+        return highest();
+      }
+      Cell c = findNear(key, rel);
+      return c == null || tooLow(c) ? null : c;
+    }
+  }
+
+  private Cell first() {
+    return descending ? highest() : lowest();
+  }
+
+  private Cell last() {
+    return descending ? lowest() : highest();
+  }
+
+  private static Map.Entry<Cell, Cell> entry(Cell c) {
+    return c == null ? null : new AbstractMap.SimpleImmutableEntry<>(c, c);
+  }
+
+  private static Cell key(Cell c) {
+    if (c == null) {
+      throw new NoSuchElementException();
+    }
+    return c;
+  }
+
+  // Creates a view of this view, the new bounds being given in ascending order and clamped to
+  // those of this view
+  private CellBTreeMap createSubMap(Cell fromKey, boolean fromInclusive, Cell toKey,
+    boolean toInclusive, boolean descending) {
+    Cell newLo = lo;
+    boolean newLoInclusive = loInclusive;
+    if (fromKey != null) {
+      int c = lo == null ? 1 : compare(fromKey, lo);
+      if (c > 0) {
+        newLo = fromKey;
+        newLoInclusive = fromInclusive;
+      } else if (c == 0) {
+        newLoInclusive = loInclusive && fromInclusive;
+      }
+    }
+    Cell newHi = hi;
+    boolean newHiInclusive = hiInclusive;
+    if (toKey != null) {
+      int c = hi == null ? -1 : compare(toKey, hi);
+      if (c < 0) {
+        newHi = toKey;
+        newHiInclusive = toInclusive;
+      } else if (c == 0) {
+        newHiInclusive = hiInclusive && toInclusive;
+      }
+    }
+    return new CellBTreeMap(tree, newLo, newLoInclusive, newHi, newHiInclusive, descending);
+  }
+
+  /////////////////////// NavigableMap ///////////////////////
+
+  @Override
+  public Comparator<? super Cell> comparator() {
+    return descending ? tree.comparator.reversed() : tree.comparator;
+  }
+
+  @Override
+  public int size() {
+    if (lo == null && hi == null) {
+      return (int) Math.min(Integer.MAX_VALUE, tree.size.sum());
+    }
+    int size = 0;
+    for (Iterator<Cell> it = new CellIterator(); it.hasNext(); it.next()) {
+      size++;
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return first() == null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public Cell get(Object key) {
+    Cell c = (Cell) key;
+    return inRange(c) ? findNear(c, EQ) : null;
+  }
+
+  @Override
+  public Cell put(Cell key, Cell value) {
+    if (!inRange(key)) {
+      throw new IllegalArgumentException("key out of range");
+    }
+    return treePut(key, value);
+  }
+
+  @Override
+  public Cell remove(Object key) {
+    Cell c = (Cell) key;
+    return inRange(c) ? treeRemove(c) : null;
+  }
+
+  @Override
+  public void clear() {
+    for (Iterator<Cell> it = new CellIterator(); it.hasNext();) {
+      it.next();
+      it.remove();
+    }
+  }
+
+  @Override
+  public Entry<Cell, Cell> lowerEntry(Cell key) {
+    return entry(relative(key, LT));
+  }
+
+  @Override
+  public Cell lowerKey(Cell key) {
+    return relative(key, LT);
+  }
+
+  @Override
+  public Entry<Cell, Cell> floorEntry(Cell key) {
+    return entry(relative(key, LE));
+  }
+
+  @Override
+  public Cell floorKey(Cell key) {
+    return relative(key, LE);
+  }
+
+  @Override
+  public Entry<Cell, Cell> ceilingEntry(Cell key) {
+    return entry(relative(key, GE));
+  }
+
+  @Override
+  public Cell ceilingKey(Cell key) {
+    return relative(key, GE);
+  }
+
+  @Override
+  public Entry<Cell, Cell> higherEntry(Cell key) {
+    return entry(relative(key, GT));
+  }
+
+  @Override
+  public Cell higherKey(Cell key) {
+    return relative(key, GT);
+  }
+
+  @Override
+  public Entry<Cell, Cell> firstEntry() {
+    return entry(first());
+  }
+
+  @Override
+  public Entry<Cell, Cell> lastEntry() {
+    return entry(last());
+  }
+
+  @Override
+  public Cell firstKey() {
+    return key(first());
+  }
+
+  @Override
+  public Cell lastKey() {
+    return key(last());
+  }
+
+  @Override
+  public Entry<Cell, Cell> pollFirstEntry() {
+    while (true) {
+      Cell c = first();
+      if (c == null) {
+        return null;
+      }
+      if (treeRemove(c) != null) {
+        return entry(c);
+      }
+    }
+  }
+
+  @Override
+  public Entry<Cell, Cell> pollLastEntry() {
+    while (true) {
+      Cell c = last();
+      if (c == null) {
+        return null;
+      }
+      if (treeRemove(c) != null) {
+        return entry(c);
+      }
+    }
+  }
+
+  @Override
+  public NavigableMap<Cell, Cell> descendingMap() {
+    return new CellBTreeMap(tree, lo, loInclusive, hi, hiInclusive, !descending);
+  }
+
+  @Override
+  public NavigableSet<Cell> navigableKeySet() {
+    return new CellSet(this);
+  }
+
+  @Override
+  public NavigableSet<Cell> keySet() {
+    return navigableKeySet();
+  }
+
+  @Override
+  public NavigableSet<Cell> descendingKeySet() {
+    return new CellSet(descendingMap());
+  }
+
+  @Override
+  public NavigableMap<Cell, Cell> subMap(Cell fromKey, boolean fromInclusive, Cell toKey,
+    boolean toInclusive) {
+    if (descending) {
+      return createSubMap(toKey, toInclusive, fromKey, fromInclusive, true);
+    }
+    return createSubMap(fromKey, fromInclusive, toKey, toInclusive, false);
+  }
+
+  @Override
+  public NavigableMap<Cell, Cell> headMap(Cell toKey, boolean inclusive) {
+    if (descending) {
+      return createSubMap(toKey, inclusive, null, false, true);
+    }
+    return createSubMap(null, false, toKey, inclusive, false);
+  }
+
+  @Override
+  public NavigableMap<Cell, Cell> tailMap(Cell fromKey, boolean inclusive) {
+    if (descending) {
+      return createSubMap(null, false, fromKey, inclusive, true);
+    }
+    return createSubMap(fromKey, inclusive, null, false, false);
+  }
+
+  @Override
+  public NavigableMap<Cell, Cell> subMap(Cell fromKey, Cell toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public NavigableMap<Cell, Cell> headMap(Cell toKey) {
+    return headMap(toKey, false);
+  }
+
+  @Override
+  public NavigableMap<Cell, Cell> tailMap(Cell fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  @Override
+  public Set<Entry<Cell, Cell>> entrySet() {
+    return new AbstractSet<Entry<Cell, Cell>>() {
+      @Override
+      public Iterator<Entry<Cell, Cell>> iterator() {
+        Iterator<Cell> cells = new CellIterator();
+        return new Iterator<Entry<Cell, Cell>>() {
+          @Override
+          public boolean hasNext() {
+            return cells.hasNext();
+          }
+
+          @Override
+          public Entry<Cell, Cell> next() {
+            return entry(cells.next());
+          }
+
+          @Override
+          public void remove() {
+            cells.remove();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return CellBTreeMap.this.size();
+      }
+    };
+  }
+
+  @Override
+  public Collection<Cell> values() {
+    return new AbstractSet<Cell>() {
+      @Override
+      public Iterator<Cell> iterator() {
+        return new CellIterator();
+      }
+
+      @Override
+      public int size() {
+        return CellBTreeMap.this.size();
+      }
+    };
+  }
+
+  /**
+   * Iterates over the cells of the view. In ascending order, it copies the cells of a leaf at a
+   * time, after the last cell returned, so going through a leaf costs a single lookup.
+   */
+  private final class CellIterator implements Iterator<Cell> {
+    private Cell[] buffer = new Cell[MAX_LEAF_SIZE];
+    private int bufferCount;
+    private int bufferPos;
+    private Leaf nextLeaf;
+    private Cell nextCell;
+    private Cell lastReturned;
+
+    CellIterator() {
+      nextCell = first();
+      if (nextCell != null && !descending) {
+        nextLeaf = findLeaf(nextCell);
+        fill(nextCell);
+      }
+    }
+
+    // Copies the cells of nextLeaf greater than the given one, and moves nextLeaf to the next leaf
+    private void fill(Cell after) {
+      Leaf leaf = nextLeaf;
+      long stamp = leaf.lock.tryOptimisticRead();
+      try {
+        if (stamp != 0 && copyLeaf(leaf, after) && leaf.lock.validate(stamp)) {
+          return;
+        }
+      } catch (RuntimeException e) {
+        // read while being changed, see below
+      }
+      stamp = leaf.lock.readLock();
+      try {
+        copyLeaf(leaf, after);
+      } finally {
+        leaf.lock.unlockRead(stamp);
+      }
+    }
+
+    private boolean copyLeaf(Leaf leaf, Cell after) {
+      Cell[] cells = leaf.cells;
+      int count = leaf.count;
+      if (count > cells.length) {
+        return false;
+      }
+      int i = search(cells, count, after);
+      i = i >= 0 ? i + 1 : -(i + 1);
+      bufferCount = count - i;
+      System.arraycopy(cells, i, buffer, 0, bufferCount);
+      bufferPos = 0;
+      nextLeaf = leaf.next;
+      return true;
+    }
+
+    private Cell advance() {
+      if (descending) {
+        Cell c = findNear(lastReturned, LT);
+        return c == null || tooLow(c) ? null : c;
+      }
+      while (bufferPos == bufferCount) {
+        if (nextLeaf == null) {
+          return null;
+        }
+        fill(lastReturned);
+      }
+      Cell c = buffer[bufferPos++];
+      return tooHigh(c) ? null : c;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextCell != null;
+    }
+
+    @Override
+    public Cell next() {
+      if (nextCell == null) {
+        throw new NoSuchElementException();
+      }
+      lastReturned = nextCell;
+      nextCell = advance();
+      return lastReturned;
+    }
+
+    @Override
+    public void remove() {
+      if (lastReturned == null) {
+        throw new IllegalStateException();
+      }
+      treeRemove(lastReturned);
+    }
+  }
+}
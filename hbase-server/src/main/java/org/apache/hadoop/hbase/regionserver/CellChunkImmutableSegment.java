@@ -19,20 +19,39 @@ package org.apache.hadoop.hbase.regionserver;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.ByteBufferKeyValue;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellComparator;
 import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.ExtendedCell;
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.util.ByteBufferUtils;
 import org.apache.hadoop.hbase.util.ClassSize;
 import org.apache.yetus.audience.InterfaceAudience;
 
+import org.apache.hbase.thirdparty.com.google.common.base.Throwables;
+
 /**
  * CellChunkImmutableSegment extends the API supported by a {@link Segment}, and
  * {@link ImmutableSegment}. This immutable segment is working with CellSet with CellChunkMap
  * delegatee.
+ * <p>
+ * A large segment can be flattened or merged by several threads, see
+ * {@link CompactingMemStore#IN_MEMORY_COMPACTION_INDEX_PARALLELISM_KEY}. The cells are split into
+ * key ranges, and as the position of the first cell of each range in the CellChunkMap is known
+ * beforehand, each range is indexed independently by a thread of a pool shared by all the stores,
+ * see {@link RegionServicesForStores#getInMemoryCompactionIndexPool()}.
  */
 @InterfaceAudience.Private
 public class CellChunkImmutableSegment extends ImmutableSegment {
@@ -41,6 +60,40 @@ public class CellChunkImmutableSegment extends ImmutableSegment {
     ImmutableSegment.DEEP_OVERHEAD + ClassSize.CELL_CHUNK_MAP;
   public static final float INDEX_CHUNK_UNUSED_SPACE_PRECENTAGE = 0.1f;
 
+  /** The cells of a key range indexed by one task, and what they add to the segment */
+  private static final class Range {
+    private int cellsCount;
+    private long dataSize;
+    private long heapSize;
+    private long offHeapSize;
+    private long minSequenceId = Long.MAX_VALUE;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+    private boolean tagsPresent;
+    private int numUniqueKeys;
+    private Cell first;
+    private Cell last;
+    /** Sizes of the cells copied into MSLAB while flattening */
+    private final MemStoreSizing copiedSizing = new NonThreadSafeMemStoreSizing();
+  }
+
+  /** The next cell of a segment taking part in the merge of a key range */
+  private static final class MergeSource {
+    private final Iterator<Cell> cells;
+    private final int order;
+    private Cell cell;
+
+    MergeSource(Iterator<Cell> cells, int order) {
+      this.cells = cells;
+      this.order = order;
+    }
+
+    boolean advance() {
+      cell = cells.hasNext() ? cells.next() : null;
+      return cell != null;
+    }
+  }
+
   ///////////////////// CONSTRUCTORS /////////////////////
   /**
    * ------------------------------------------------------------------------ C-tor to be used when
@@ -63,6 +116,28 @@ public class CellChunkImmutableSegment extends ImmutableSegment {
     initializeCellSet(numOfCells, iterator, action);
   }
 
+  /**
+   * ------------------------------------------------------------------------ C-tor to be used when
+   * new CellChunkImmutableSegment is built as a result of merge of a list of older
+   * ImmutableSegments, at least one of them flat (see {@link #canMergeInRanges(List)}). The cells
+   * are split into the given number of key ranges, merged in parallel on the given pool.
+   */
+  protected CellChunkImmutableSegment(CellComparator comparator, List<ImmutableSegment> segments,
+    MemStoreLAB memStoreLAB, MemStoreCompactionStrategy.Action action, int ranges,
+    ThreadPoolExecutor pool) {
+    super(null, comparator, memStoreLAB); // initialize the CellSet with NULL
+    long indexOverhead = DEEP_OVERHEAD_CCM;
+    // memStoreLAB cannot be null in this class
+    boolean onHeap = getMemStoreLAB().isOnHeap();
+    // initiate the heapSize with the size of the segment metadata
+    if (onHeap) {
+      incMemStoreSize(0, indexOverhead, 0, 0);
+    } else {
+      incMemStoreSize(0, 0, indexOverhead, 0);
+    }
+    mergeCellSetInRanges(segments, action, ranges, pool);
+  }
+
   /**
    * ------------------------------------------------------------------------ C-tor to be used when
    * new CellChunkImmutableSegment is built as a result of flattening of CSLMImmutableSegment The
@@ -70,6 +145,16 @@ public class CellChunkImmutableSegment extends ImmutableSegment {
    */
   protected CellChunkImmutableSegment(CSLMImmutableSegment segment, MemStoreSizing memstoreSizing,
     MemStoreCompactionStrategy.Action action) {
+    this(segment, memstoreSizing, action, 1, null);
+  }
+
+  /**
+   * ------------------------------------------------------------------------ C-tor to be used when
+   * new CellChunkImmutableSegment is built as a result of flattening of CSLMImmutableSegment, the
+   * cells being split into the given number of key ranges, flattened in parallel on the given pool.
+   */
+  protected CellChunkImmutableSegment(CSLMImmutableSegment segment, MemStoreSizing memstoreSizing,
+    MemStoreCompactionStrategy.Action action, int ranges, ThreadPoolExecutor pool) {
     super(segment); // initiailize the upper class
     long indexOverhead = -CSLMImmutableSegment.DEEP_OVERHEAD_CSLM + DEEP_OVERHEAD_CCM;
     // memStoreLAB cannot be null in this class
@@ -85,13 +170,17 @@ public class CellChunkImmutableSegment extends ImmutableSegment {
     }
     int numOfCells = segment.getCellsCount();
     // build the new CellSet based on CellChunkMap
-    reinitializeCellSet(numOfCells, segment.getScanner(Long.MAX_VALUE), segment.getCellSet(),
-      memstoreSizing, action);
-    // arrange the meta-data size, decrease all meta-data sizes related to SkipList;
+    if (ranges > 1) {
+      reinitializeCellSetInRanges(numOfCells, segment.getCellSet(), memstoreSizing, action, ranges,
+        pool);
+    } else {
+      reinitializeCellSet(numOfCells, segment.getScanner(Long.MAX_VALUE), segment.getCellSet(),
+        memstoreSizing, action);
+    }
+    // arrange the meta-data size, decrease all meta-data sizes related to SkipList (or B-tree);
     // add sizes of CellChunkMap entry, decrease also Cell object sizes
     // (reinitializeCellSet doesn't take the care for the sizes)
-    long newSegmentSizeDelta =
-      numOfCells * (indexEntrySize() - ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY);
+    long newSegmentSizeDelta = numOfCells * (indexEntrySize() - segment.indexEntrySize());
     if (onHeap) {
       incMemStoreSize(0, newSegmentSizeDelta, 0, 0);
       memstoreSizing.incMemStoreSize(0, newSegmentSizeDelta, 0, 0);
@@ -102,6 +191,43 @@ public class CellChunkImmutableSegment extends ImmutableSegment {
     }
   }
 
+  /**
+   * Returns the number of key ranges to split the given number of cells into, to flatten or merge
+   * them in parallel, or 1 to do it in the calling thread.
+   * @param conf the configuration of the store, or null
+   */
+  static int getIndexRanges(Configuration conf, int numOfCells) {
+    if (conf == null) {
+      return 1;
+    }
+    int parallelism = conf.getInt(CompactingMemStore.IN_MEMORY_COMPACTION_INDEX_PARALLELISM_KEY,
+      CompactingMemStore.IN_MEMORY_COMPACTION_INDEX_PARALLELISM_DEFAULT);
+    int minCells =
+      Math.max(1, conf.getInt(CompactingMemStore.IN_MEMORY_COMPACTION_INDEX_MIN_CELLS_KEY,
+        CompactingMemStore.IN_MEMORY_COMPACTION_INDEX_MIN_CELLS_DEFAULT));
+    return Math.max(1, Math.min(parallelism, numOfCells / minCells));
+  }
+
+  /**
+   * Returns true if the given segments can be merged in key ranges. The ranges are split at cells
+   * of the largest flat segment, which has an index to pick them from without going through all its
+   * cells.
+   */
+  static boolean canMergeInRanges(List<ImmutableSegment> segments) {
+    return getLargestFlatMap(segments) != null;
+  }
+
+  private static CellFlatMap getLargestFlatMap(List<ImmutableSegment> segments) {
+    CellFlatMap largest = null;
+    for (ImmutableSegment segment : segments) {
+      NavigableMap<Cell, Cell> map = segment.getCellSet().getDelegatee();
+      if (map instanceof CellFlatMap && (largest == null || map.size() > largest.size())) {
+        largest = (CellFlatMap) map;
+      }
+    }
+    return largest;
+  }
+
   @Override
   protected long indexEntryOnHeapSize(boolean onHeap) {
     if (onHeap) {
@@ -251,6 +377,237 @@ public class CellChunkImmutableSegment extends ImmutableSegment {
     this.setCellSet(oldCellSet, new CellSet(ccm, numUniqueKeys));
   }
 
+  /*------------------------------------------------------------------------*/
+  // Create CellSet based on CellChunkMap by merging the given segments, split into key ranges
+  // merged in parallel
+  private void mergeCellSetInRanges(List<ImmutableSegment> segments,
+    MemStoreCompactionStrategy.Action action, int ranges, ThreadPoolExecutor pool) {
+    CellFlatMap splitMap = getLargestFlatMap(segments);
+    Cell[] splitCells = new Cell[ranges - 1];
+    for (int i = 1; i < ranges; i++) {
+      splitCells[i - 1] =
+        splitMap.getCell(splitMap.minCellIdx + (int) ((long) i * splitMap.size() / ranges));
+    }
+    // the cells of each segment in each key range
+    List<List<NavigableMap<Cell, Cell>>> rangeMaps = new ArrayList<>(ranges);
+    for (int i = 0; i < ranges; i++) {
+      List<NavigableMap<Cell, Cell>> maps = new ArrayList<>(segments.size());
+      for (ImmutableSegment segment : segments) {
+        NavigableMap<Cell, Cell> map = segment.getCellSet().getDelegatee();
+        if (i > 0) {
+          map = map.tailMap(splitCells[i - 1], true);
+        }
+        if (i < ranges - 1) {
+          map = map.headMap(splitCells[i], false);
+        }
+        maps.add(map);
+      }
+      rangeMaps.add(maps);
+    }
+    // count the cells of each range first, to know where its cells go in the index
+    List<Callable<Integer>> countTasks = new ArrayList<>(ranges);
+    for (List<NavigableMap<Cell, Cell>> maps : rangeMaps) {
+      countTasks.add(() -> {
+        int count = 0;
+        for (NavigableMap<Cell, Cell> map : maps) {
+          count += map.size();
+        }
+        return count;
+      });
+    }
+    List<Integer> counts = runInPool(pool, countTasks);
+    int numOfCells = 0;
+    for (int count : counts) {
+      numOfCells += count;
+    }
+    Chunk[] chunks = allocIndexChunks(numOfCells);
+    List<Callable<Range>> mergeTasks = new ArrayList<>(ranges);
+    int position = 0;
+    for (int i = 0; i < ranges; i++) {
+      List<NavigableMap<Cell, Cell>> maps = rangeMaps.get(i);
+      int start = position;
+      mergeTasks.add(() -> mergeRange(maps, chunks, start, action));
+      position += counts.get(i);
+    }
+    int numUniqueKeys = 0;
+    Cell prevLast = null;
+    for (Range range : runInPool(pool, mergeTasks)) {
+      if (range.cellsCount == 0) {
+        continue;
+      }
+      // what updateMetaInfo does for each cell
+      incMemStoreSize(range.dataSize, range.heapSize, range.offHeapSize, range.cellsCount);
+      timeRangeTracker.includeTimestamp(range.minTimestamp);
+      timeRangeTracker.includeTimestamp(range.maxTimestamp);
+      minSequenceId = Math.min(minSequenceId, range.minSequenceId);
+      if (range.tagsPresent) {
+        tagsPresent = true;
+      }
+      numUniqueKeys += range.numUniqueKeys;
+      if (prevLast != null && CellUtil.matchingRowColumnBytes(prevLast, range.first)) {
+        numUniqueKeys--; // the key was counted by both ranges
+      }
+      prevLast = range.last;
+    }
+    if (action != MemStoreCompactionStrategy.Action.MERGE_COUNT_UNIQUE_KEYS) {
+      numUniqueKeys = CellSet.UNKNOWN_NUM_UNIQUES;
+    }
+    CellChunkMap ccm = new CellChunkMap(getComparator(), chunks, 0, numOfCells, false);
+    this.setCellSet(null, new CellSet(ccm, numUniqueKeys)); // update the CellSet of this Segment
+  }
+
+  // Merge the cells of a key range of the segments into the index, starting at the given position
+  private Range mergeRange(List<NavigableMap<Cell, Cell>> maps, Chunk[] chunks, int position,
+    MemStoreCompactionStrategy.Action action) {
+    // the cells of the earlier segments go first among equal cells
+    PriorityQueue<MergeSource> heap = new PriorityQueue<>(Math.max(1, maps.size()), (a, b) -> {
+      int c = getComparator().compare(a.cell, b.cell);
+      return c != 0 ? c : Integer.compare(a.order, b.order);
+    });
+    for (int i = 0; i < maps.size(); i++) {
+      MergeSource source = new MergeSource(maps.get(i).values().iterator(), i);
+      if (source.advance()) {
+        heap.add(source);
+      }
+    }
+    Range range = new Range();
+    while (!heap.isEmpty()) {
+      MergeSource source = heap.poll();
+      Cell c = source.cell;
+      if (source.advance()) {
+        heap.add(source);
+      }
+      assert (c instanceof ExtendedCell);
+      if (((ExtendedCell) c).getChunkId() == ExtendedCell.CELL_NOT_BASED_ON_CHUNK) {
+        // CellChunkMap assumes all cells are allocated on MSLAB.
+        c = copyCellIntoMSLAB(c, null); // no memstore sizing object to update
+      }
+      writeCellReference((ByteBufferKeyValue) c, chunks, position++);
+      range.cellsCount++;
+      range.dataSize += getCellLength(c);
+      range.heapSize += heapSizeChange(c, true);
+      range.offHeapSize += offHeapSizeChange(c, true);
+      range.minSequenceId = Math.min(range.minSequenceId, c.getSequenceId());
+      range.minTimestamp = Math.min(range.minTimestamp,
+        PrivateCellUtil.isDeleteColumnOrFamily(c) ? 0 : c.getTimestamp());
+      range.maxTimestamp = Math.max(range.maxTimestamp, c.getTimestamp());
+      if (c.getTagsLength() > 0) {
+        range.tagsPresent = true;
+      }
+      if (
+        action == MemStoreCompactionStrategy.Action.MERGE_COUNT_UNIQUE_KEYS
+          && (range.last == null || !CellUtil.matchingRowColumnBytes(range.last, c))
+      ) {
+        range.numUniqueKeys++;
+      }
+      if (range.first == null) {
+        range.first = c;
+      }
+      range.last = c;
+    }
+    return range;
+  }
+
+  /*------------------------------------------------------------------------*/
+  // Create CellSet based on CellChunkMap from current ConcurrentSkipListMap based CellSet, the
+  // cells being split into key ranges indexed in parallel
+  private void reinitializeCellSetInRanges(int numOfCells, CellSet oldCellSet,
+    MemStoreSizing memstoreSizing, MemStoreCompactionStrategy.Action action, int ranges,
+    ThreadPoolExecutor pool) {
+    // going through the skip list is sequential, so collect the cells first and then copy them
+    // into MSLAB as needed and write their references in parallel
+    List<Cell> cells = new ArrayList<>(numOfCells);
+    for (Cell c : oldCellSet) {
+      cells.add(c);
+    }
+    Chunk[] chunks = allocIndexChunks(cells.size());
+    List<Callable<Range>> tasks = new ArrayList<>(ranges);
+    for (int i = 0; i < ranges; i++) {
+      int start = (int) ((long) i * cells.size() / ranges);
+      int end = (int) ((long) (i + 1) * cells.size() / ranges);
+      tasks.add(() -> flattenRange(cells, start, end, chunks, action));
+    }
+    int numUniqueKeys = 0;
+    Cell prevLast = null;
+    for (Range range : runInPool(pool, tasks)) {
+      memstoreSizing.incMemStoreSize(range.copiedSizing.getMemStoreSize());
+      if (range.cellsCount == 0) {
+        continue;
+      }
+      numUniqueKeys += range.numUniqueKeys;
+      if (prevLast != null && CellUtil.matchingRowColumn(prevLast, range.first)) {
+        numUniqueKeys--; // the key was counted by both ranges
+      }
+      prevLast = range.last;
+    }
+    if (action != MemStoreCompactionStrategy.Action.FLATTEN_COUNT_UNIQUE_KEYS) {
+      numUniqueKeys = CellSet.UNKNOWN_NUM_UNIQUES;
+    }
+    CellChunkMap ccm = new CellChunkMap(getComparator(), chunks, 0, cells.size(), false);
+    // update the CellSet of this Segment
+    this.setCellSet(oldCellSet, new CellSet(ccm, numUniqueKeys));
+  }
+
+  // Write the references of the given cells into the index, at their positions in the list
+  private Range flattenRange(List<Cell> cells, int start, int end, Chunk[] chunks,
+    MemStoreCompactionStrategy.Action action) {
+    Range range = new Range();
+    for (int i = start; i < end; i++) {
+      Cell c = cells.get(i);
+      assert (c instanceof ExtendedCell);
+      if (((ExtendedCell) c).getChunkId() == ExtendedCell.CELL_NOT_BASED_ON_CHUNK) {
+        // CellChunkMap assumes all cells are allocated on MSLAB.
+        c = copyCellIntoMSLAB(c, range.copiedSizing);
+      }
+      writeCellReference((ByteBufferKeyValue) c, chunks, i);
+      range.cellsCount++;
+      if (
+        action == MemStoreCompactionStrategy.Action.FLATTEN_COUNT_UNIQUE_KEYS
+          && (range.last == null || !CellUtil.matchingRowColumn(range.last, c))
+      ) {
+        range.numUniqueKeys++;
+      }
+      if (range.first == null) {
+        range.first = c;
+      }
+      range.last = c;
+    }
+    return range;
+  }
+
+  // Run the given tasks in the given pool, and return their results in the same order
+  private static <T> List<T> runInPool(ThreadPoolExecutor pool, List<Callable<T>> tasks) {
+    List<Future<T>> futures = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(pool.submit(task));
+    }
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      for (Future<T> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return results;
+  }
+
+  // for a cell at the given position of the index, write its representation on the index chunk
+  private void writeCellReference(ByteBufferKeyValue cell, Chunk[] chunks, int position) {
+    int cellsInChunk = calcNumOfCellsInChunk(chunks[0].size);
+    int chunkIdx = position / cellsInChunk;
+    createCellReference(cell, chunks[chunkIdx].getData(), ChunkCreator.SIZEOF_CHUNK_HEADER
+      + (position - chunkIdx * cellsInChunk) * ClassSize.CELL_CHUNK_MAP_ENTRY);
+  }
+
   /*------------------------------------------------------------------------*/
   // for a given cell, write the cell representation on the index chunk
   private int createCellReference(ByteBufferKeyValue cell, ByteBuffer idxBuffer, int idxOffset) {
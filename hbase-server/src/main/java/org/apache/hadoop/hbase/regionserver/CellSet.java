@@ -39,7 +39,8 @@ import org.apache.yetus.audience.InterfaceAudience;
 public class CellSet implements NavigableSet<Cell> {
 
   public static final int UNKNOWN_NUM_UNIQUES = -1;
-  // Implemented on top of a {@link java.util.concurrent.ConcurrentSkipListMap}
+  // Implemented on top of a {@link java.util.concurrent.ConcurrentSkipListMap}, or of a
+  // {@link CellBTreeMap} for an active segment, see SegmentFactory#MUTABLE_SEGMENT_INDEX_KEY
   // Differ from CSLS in one respect, where CSLS does "Adds the specified element to this set if it
   // is not already present.", this implementation "Adds the specified element to this set EVEN
   // if it is already present overwriting what was there previous".
@@ -80,6 +80,12 @@ public class ChunkCreator {
   private int indexChunkSize;
   private MemStoreChunkPool indexChunksPool;
 
+  // MSLAB allocation statistics, over all the MSLABs
+  private final LongAdder allocationCount = new LongAdder();
+  private final LongAdder allocationRetryCount = new LongAdder();
+  private final LongAdder retiredChunkBytes = new LongAdder();
+  private final LongAdder wastedChunkBytes = new LongAdder();
+
   ChunkCreator(int chunkSize, boolean offheap, long globalMemStoreSize, float poolSizePercentage,
     float initialCountPercentage, HeapMemoryManager heapMemoryManager,
     float indexChunkSizePercentage) {
@@ -621,6 +627,46 @@ public class ChunkCreator {
     return;
   }
 
+  /**
+   * Records an MSLAB allocation
+   * @param retries the number of times the allocation was retried, because the current chunk was
+   *                full or being replaced by another handler
+   */
+  void recordAllocation(int retries) {
+    allocationCount.increment();
+    if (retries > 0) {
+      allocationRetryCount.add(retries);
+    }
+  }
+
+  /**
+   * Records a chunk no longer used for MSLAB allocations, and the space left unused at its end
+   */
+  void recordRetiredChunk(Chunk chunk) {
+    int used = chunk.getNextFreeOffset();
+    if (used < 0) {
+      return; // never initialized, or out of memory
+    }
+    retiredChunkBytes.add(chunk.size);
+    wastedChunkBytes.add(Math.max(0, chunk.size - used));
+  }
+
+  /** Returns the number of MSLAB allocations */
+  long getAllocationCount() {
+    return allocationCount.sum();
+  }
+
+  /** Returns the number of times MSLAB allocations were retried */
+  public long getAllocationRetryCount() {
+    return allocationRetryCount.sum();
+  }
+
+  /** Returns the percent of the space of the retired MSLAB chunks left unused */
+  public double getWastePercent() {
+    long retired = retiredChunkBytes.sum();
+    return retired == 0 ? 0 : wastedChunkBytes.sum() * 100.0 / retired;
+  }
+
   MemStoreChunkPool getIndexChunksPool() {
     return this.indexChunksPool;
   }
@@ -63,6 +63,19 @@ public class CompactingMemStore extends AbstractMemStore {
   public static final String IN_MEMORY_CONPACTION_POOL_SIZE_KEY =
     "hbase.regionserver.inmemory.compaction.pool.size";
   public static final int IN_MEMORY_CONPACTION_POOL_SIZE_DEFAULT = 10;
+  // Maximum number of key ranges the cells of a segment flattened or merged into a CellChunkMap are
+  // split into, the ranges being indexed in parallel
+  public static final String IN_MEMORY_COMPACTION_INDEX_PARALLELISM_KEY =
+    "hbase.hregion.compacting.memstore.index.parallelism";
+  public static final int IN_MEMORY_COMPACTION_INDEX_PARALLELISM_DEFAULT = 1;
+  // Minimum number of cells of a key range indexed in parallel
+  public static final String IN_MEMORY_COMPACTION_INDEX_MIN_CELLS_KEY =
+    "hbase.hregion.compacting.memstore.index.min.cells";
+  public static final int IN_MEMORY_COMPACTION_INDEX_MIN_CELLS_DEFAULT = 65536;
+  // Size of the pool indexing key ranges, shared by all the stores
+  public static final String IN_MEMORY_COMPACTION_INDEX_POOL_SIZE_KEY =
+    "hbase.regionserver.inmemory.compaction.index.pool.size";
+  public static final int IN_MEMORY_COMPACTION_INDEX_POOL_SIZE_DEFAULT = 8;
 
   private static final Logger LOG = LoggerFactory.getLogger(CompactingMemStore.class);
   private HStore store;
@@ -356,7 +369,8 @@ public class CompactingMemStore extends AbstractMemStore {
    *                         flattening happens only if versions match.
    */
   public void flattenOneSegment(long requesterVersion, MemStoreCompactionStrategy.Action action) {
-    pipeline.flattenOneSegment(requesterVersion, indexType, action);
+    pipeline.flattenOneSegment(requesterVersion, indexType, action, getConfiguration(),
+      getIndexPool());
   }
 
   // setter is used only for testability
@@ -525,6 +539,13 @@ public class CompactingMemStore extends AbstractMemStore {
     return getRegionServices().getInMemoryCompactionPool();
   }
 
+  /** Returns the pool indexing the key ranges of a flat segment, null if there is none */
+  ThreadPoolExecutor getIndexPool() {
+    return getRegionServices() != null
+      ? getRegionServices().getInMemoryCompactionIndexPool()
+      : null;
+  }
+
   /**
    * The request to cancel the compaction asynchronous task (caused by in-memory flush) The
    * compaction may still happen if the request was sent too late Non-blocking request
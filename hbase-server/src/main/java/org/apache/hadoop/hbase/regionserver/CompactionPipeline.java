@@ -22,6 +22,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -207,10 +209,13 @@ public class CompactionPipeline {
    * segment. Flattening is replacing the ConcurrentSkipListMap based CellSet to CellArrayMap based.
    * Flattening of the segment that initially is not based on ConcurrentSkipListMap has no effect.
    * Return after one segment is successfully flatten.
+   * @param conf      the configuration of the store, telling whether the segment is flattened by
+   *                  several threads, or null
+   * @param indexPool the pool of these threads, or null to flatten in the calling thread
    * @return true iff a segment was successfully flattened
    */
   public boolean flattenOneSegment(long requesterVersion, CompactingMemStore.IndexType idxType,
-    MemStoreCompactionStrategy.Action action) {
+    MemStoreCompactionStrategy.Action action, Configuration conf, ThreadPoolExecutor indexPool) {
 
     if (requesterVersion != version) {
       LOG.warn("Segment flattening failed, because versions do not match. Requester version: "
@@ -235,8 +240,8 @@ public class CompactionPipeline {
           }
           // size to be updated
           MemStoreSizing newMemstoreAccounting = new NonThreadSafeMemStoreSizing();
-          ImmutableSegment newS = SegmentFactory.instance().createImmutableSegmentByFlattening(
-            (CSLMImmutableSegment) s, idxType, newMemstoreAccounting, action);
+          ImmutableSegment newS = SegmentFactory.instance().createImmutableSegmentByFlattening(conf,
+            (CSLMImmutableSegment) s, idxType, newMemstoreAccounting, action, indexPool);
           replaceAtIndex(i, newS);
           if (region != null) {
             // Update the global memstore size counter upon flattening there is no change in the
@@ -26,6 +26,7 @@ import static org.apache.hadoop.hbase.util.ConcurrentMapUtils.computeIfAbsent;
 import com.google.errorprone.annotations.RestrictedApi;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import io.opentelemetry.api.trace.Span;
+import java.io.Closeable;
 import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -128,6 +129,8 @@ import org.apache.hadoop.hbase.errorhandling.ForeignExceptionSnare;
 import org.apache.hadoop.hbase.exceptions.FailedSanityCheckException;
 import org.apache.hadoop.hbase.exceptions.TimeoutIOException;
 import org.apache.hadoop.hbase.exceptions.UnknownProtocolException;
+import org.apache.hadoop.hbase.executor.ExecutorService;
+import org.apache.hadoop.hbase.executor.ExecutorType;
 import org.apache.hadoop.hbase.filter.BinaryComparator;
 import org.apache.hadoop.hbase.filter.ByteArrayComparable;
 import org.apache.hadoop.hbase.filter.Filter;
@@ -136,6 +139,7 @@ import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.PrefetchExecutor;
 import org.apache.hadoop.hbase.ipc.CoprocessorRpcUtils;
 import org.apache.hadoop.hbase.ipc.RpcCall;
 import org.apache.hadoop.hbase.ipc.RpcServer;
@@ -156,6 +160,8 @@ import org.apache.hadoop.hbase.regionserver.throttle.StoreHotnessProtector;
 import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
 import org.apache.hadoop.hbase.regionserver.wal.WALSyncTimeoutIOException;
 import org.apache.hadoop.hbase.regionserver.wal.WALUtil;
+import org.apache.hadoop.hbase.replication.ReplicationPeerImpl;
+import org.apache.hadoop.hbase.replication.ReplicationPeers;
 import org.apache.hadoop.hbase.replication.ReplicationUtils;
 import org.apache.hadoop.hbase.replication.regionserver.ReplicationObserver;
 import org.apache.hadoop.hbase.security.User;
@@ -175,6 +181,7 @@ import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.hbase.util.ServerRegionReplicaUtil;
 import org.apache.hadoop.hbase.util.TableDescriptorChecker;
 import org.apache.hadoop.hbase.util.Threads;
+import org.apache.hadoop.hbase.wal.LoadAwareGroupingStrategy;
 import org.apache.hadoop.hbase.wal.WAL;
 import org.apache.hadoop.hbase.wal.WALEdit;
 import org.apache.hadoop.hbase.wal.WALFactory;
@@ -366,7 +373,12 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
 
   private BlockCache blockCache;
   private MobFileCache mobFileCache;
-  private final WAL wal;
+  private RegionRowCache rowCache;
+  // only changes when the region moves to another WAL group, see getMovedToWAL
+  private volatile WAL wal;
+  // the WAL the region moved from, which tracks the edits written to it until a flush of all the
+  // families of the region commits them
+  private volatile WAL previousWAL;
   private final HRegionFileSystem fs;
   protected final Configuration conf;
   private final Configuration baseConf;
@@ -700,6 +712,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   private long flushCheckInterval;
   // flushPerChanges is to prevent too many changes in memstore
   private long flushPerChanges;
+  // number of stores whose snapshots are written in parallel during a flush
   private long blockingMemStoreSize;
   // Used to guard closes
   final ReentrantReadWriteLock lock;
@@ -835,6 +848,11 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     if (this.rsServices != null) {
       this.blockCache = rsServices.getBlockCache().orElse(null);
       this.mobFileCache = rsServices.getMobFileCache().orElse(null);
+      // Secondary replicas pick up store files from the primary behind the row cache's back
+      RowCache serverRowCache = rsServices.getRowCache().orElse(null);
+      if (serverRowCache != null && RegionReplicaUtil.isDefaultReplica(getRegionInfo())) {
+        this.rowCache = serverRowCache.forRegion(htd);
+      }
     }
     this.regionServicesForStores = new RegionServicesForStores(this, rsServices);
 
@@ -982,6 +1000,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       if (metricsTableRequests != null) {
         metricsTableRequests.removeRegistry();
       }
+      PrefetchExecutor.unregisterRegion(getRegionInfo().getEncodedName());
       throw e;
     } finally {
       // nextSeqid will be -1 if the initialization fails.
@@ -1015,6 +1034,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       fs.checkRegionInfoOnFilesystem();
     }
 
+    // Order the prefetch of the store files by the read requests of the region
+    PrefetchExecutor.registerRegion(getRegionInfo().getEncodedName(), this::getReadRequestsCount);
+
     // Initialize all the HStores
     status.setStatus("Initializing all the Stores");
     long maxSeqId = initializeStores(reporter, status);
@@ -1585,6 +1607,31 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
    */
   public static final long MAX_FLUSH_PER_CHANGES = 1000000000; // 1G
 
+  /**
+   * Conf key for the number of store snapshots written out in parallel during flushes, on the
+   * {@link ExecutorType#RS_FLUSH_STORES} pool shared by the regions of the region server. The flush
+   * of a region is still committed for all its stores at once. As the pool is shared, this is only
+   * read from the region server configuration, a value set on a table is ignored.
+   */
+  public static final String FLUSH_STORES_PARALLELISM = "hbase.hregion.flush.stores.parallelism";
+  public static final int DEFAULT_FLUSH_STORES_PARALLELISM = 1;
+
+  /**
+   * Conf key for the number of stores of one region the recovered edits are applied to in parallel
+   * when the region opens. The edits are still read and filtered by a single thread.
+   */
+  public static final String REPLAY_RECOVERED_EDITS_PARALLELISM =
+    "hbase.hregion.replay.recovered.edits.parallelism";
+  public static final int DEFAULT_REPLAY_RECOVERED_EDITS_PARALLELISM = 1;
+
+  /**
+   * Conf key for the heap size of the recovered edits gathered before applying them to the stores
+   * in parallel, see {@link #REPLAY_RECOVERED_EDITS_PARALLELISM}.
+   */
+  public static final String REPLAY_RECOVERED_EDITS_BATCH_SIZE =
+    "hbase.hregion.replay.recovered.edits.batch.size";
+  public static final long DEFAULT_REPLAY_RECOVERED_EDITS_BATCH_SIZE = 4L * 1024 * 1024;
+
   public static final String CLOSE_WAIT_ABORT = "hbase.regionserver.close.wait.abort";
   public static final boolean DEFAULT_CLOSE_WAIT_ABORT = true;
   public static final String CLOSE_WAIT_TIME = "hbase.regionserver.close.wait.time.ms";
@@ -1898,6 +1945,10 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         writeRegionCloseMarker(wal);
       }
       this.closed.set(true);
+      if (rowCache != null) {
+        rowCache.close();
+      }
+      PrefetchExecutor.unregisterRegion(getRegionInfo().getEncodedName());
 
       // Decrease refCount of table latency metric registry.
       // Do this after closed#set to make sure only -1.
@@ -2174,7 +2225,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     byte[] encodedRegionName = this.getRegionInfo().getEncodedNameAsBytes();
     regionLoadBldr.clearStoreCompleteSequenceId();
     for (byte[] familyName : this.stores.keySet()) {
-      long earliest = this.wal.getEarliestMemStoreSeqNum(encodedRegionName, familyName);
+      long earliest = getEarliestMemStoreSeqNum(familyName);
       // Subtract - 1 to go earlier than the current oldest, unflushed edit in memstore; this will
       // give us a sequence id that is for sure flushed. We want edit replay to start after this
       // sequence id in this region. If NO_SEQNUM, use the regions maximum flush id.
@@ -2573,8 +2624,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
    * make a lot of flush requests.
    */
   boolean shouldFlushStore(HStore store) {
-    long earliest = this.wal.getEarliestMemStoreSeqNum(getRegionInfo().getEncodedNameAsBytes(),
-      store.getColumnFamilyDescriptor().getName()) - 1;
+    long earliest = getEarliestMemStoreSeqNum(store.getColumnFamilyDescriptor().getName()) - 1;
     if (earliest > 0 && earliest + flushPerChanges < mvcc.getReadPoint()) {
       if (LOG.isDebugEnabled()) {
         LOG.debug("Flush column family " + store.getColumnFamilyName() + " of "
@@ -2742,6 +2792,12 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     // allow updates again so its value will represent the size of the updates received
     // during flush
 
+    // The WAL the region moved from, when an earlier flush moved it but did not commit
+    WAL previous = getPreviousWAL(wal);
+    // Looked up before blocking the updates, as it may have to create the WAL
+    WAL movedToWAL = wal == this.wal && previous == null && isAllFamilies(storesToFlush)
+      ? getMovedToWAL()
+      : null;
     // We have to take an update lock during snapshot, or else a write could end up in both snapshot
     // and memstore (makes it difficult to do atomic rows then)
     status.setStatus("Obtaining lock to block concurrent updates");
@@ -2771,6 +2827,15 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       if (wal != null) {
         Long earliestUnflushedSequenceIdForTheRegion =
           wal.startCacheFlush(encodedRegionName, flushedFamilyNamesToSeq);
+        if (earliestUnflushedSequenceIdForTheRegion != null && previous != null) {
+          Long earliestInPrevious =
+            previous.startCacheFlush(encodedRegionName, flushedFamilyNamesToSeq);
+          if (earliestInPrevious == null) {
+            wal.abortCacheFlush(encodedRegionName);
+          }
+          earliestUnflushedSequenceIdForTheRegion =
+            getEarliest(earliestUnflushedSequenceIdForTheRegion, earliestInPrevious);
+        }
         if (earliestUnflushedSequenceIdForTheRegion == null) {
           // This should never happen. This is how startCacheFlush signals flush cannot proceed.
           String msg = this.getRegionInfo().getEncodedName() + " flush aborted; WAL closing.";
@@ -2810,8 +2875,19 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         totalSizeOfFlushableStores.incMemStoreSize(snapshotSize);
         storeFlushableSize.put(name, snapshotSize);
       });
+
+      if (movedToWAL != null) {
+        // All the edits of the region in its WAL are in the snapshot, which that WAL goes on
+        // tracking until a flush commits it, so the edits after it can go to the new one.
+        LOG.info("Moving {} from WAL {} to {}", this, wal, movedToWAL);
+        this.previousWAL = wal;
+        this.wal = movedToWAL;
+      }
     } catch (IOException ex) {
       doAbortFlushToWAL(wal, flushOpSeqId, committedFiles);
+      if (previous != null) {
+        previous.abortCacheFlush(encodedRegionName);
+      }
       throw ex;
     } finally {
       this.updatesLock.writeLock().unlock();
@@ -2819,11 +2895,77 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     String s = "Finished memstore snapshotting " + this + ", syncing WAL and waiting on mvcc, "
       + "flushsize=" + totalSizeOfFlushableStores;
     status.setStatus(s);
-    doSyncOfUnflushedWALChanges(wal, getRegionInfo());
+    try {
+      doSyncOfUnflushedWALChanges(wal, getRegionInfo());
+    } catch (IOException e) {
+      if (previous != null) {
+        previous.abortCacheFlush(encodedRegionName);
+      }
+      throw e;
+    }
     return new PrepareFlushResult(storeFlushCtxs, committedFiles, storeFlushableSize, startTime,
       flushOpSeqId, flushedSeqId, totalSizeOfFlushableStores);
   }
 
+  /**
+   * Returns the WAL the region moved from if the given WAL is the one the region writes to and no
+   * flush of all its families has committed since, null otherwise. The edits of the region in the
+   * returned WAL are flushed together with the ones in the given WAL.
+   */
+  private WAL getPreviousWAL(WAL wal) {
+    return wal != null && wal == this.wal ? previousWAL : null;
+  }
+
+  /** Returns the earliest of two sequence ids returned by startCacheFlush */
+  private static Long getEarliest(Long a, Long b) {
+    if (a == null || b == null) {
+      return null;
+    }
+    if (a.longValue() == HConstants.NO_SEQNUM) {
+      return b;
+    }
+    return b.longValue() == HConstants.NO_SEQNUM || a.longValue() <= b.longValue() ? a : b;
+  }
+
+  /**
+   * Returns the WAL the region server now assigns this region to if it is not the one the region
+   * writes to, which only happens with {@link LoadAwareGroupingStrategy}, null otherwise. A region
+   * replicated to a serial peer never moves while open, as its edits would then be shipped by the
+   * sources of two WALs in no particular order. It moves when next reopened instead.
+   */
+  private WAL getMovedToWAL() throws IOException {
+    if (
+      rsServices == null || wal == null || !LoadAwareGroupingStrategy.isConfigured(conf)
+        || !RegionReplicaUtil.isDefaultReplica(getRegionInfo()) || isSeriallyReplicated()
+    ) {
+      return null;
+    }
+    WAL assigned = rsServices.getWAL(getRegionInfo());
+    return assigned != null && assigned != wal ? assigned : null;
+  }
+
+  /** Returns true if the edits of this region are replicated to a serial peer */
+  private boolean isSeriallyReplicated() {
+    if (!htableDescriptor.hasGlobalReplicationScope()) {
+      return false;
+    }
+    ReplicationSourceService replication = rsServices.getReplicationSourceService();
+    if (replication == null) {
+      return false;
+    }
+    ReplicationPeers peers = replication.getReplicationPeers();
+    for (String peerId : peers.getAllPeerIds()) {
+      ReplicationPeerImpl peer = peers.getPeer(peerId);
+      if (
+        peer != null && peer.getPeerConfig().isSerial()
+          && peer.getPeerConfig().needToReplicate(htableDescriptor.getTableName())
+      ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Utility method broken out of internalPrepareFlushCache so that method is smaller.
    */
@@ -2954,6 +3096,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     long startTime = prepareResult.startTime;
     long flushOpSeqId = prepareResult.flushOpSeqId;
     long flushedSeqId = prepareResult.flushedSeqId;
+    // The WAL the region moved from, which internalPrepareFlushCache started the flush in too
+    WAL previous = getPreviousWAL(wal);
 
     String s = "Flushing stores of " + this;
     status.setStatus(s);
@@ -2971,9 +3115,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       // just-made new flush store file. The new flushed file is still in the
       // tmp directory.
 
-      for (StoreFlushContext flush : storeFlushCtxs.values()) {
-        flush.flushCache(status);
-      }
+      flushStores(storeFlushCtxs.values(), status);
 
       // Switch snapshot (in memstore) -> new hfile (thus causing
       // all the store scanners to reset/reseek).
@@ -2994,6 +3136,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         flushedOutputFileSize += sfc.getOutputFileSize();
       }
       storeFlushCtxs.clear();
+      if (rowCache != null) {
+        rowCache.invalidateAll();
+      }
 
       // Set down the memstore size by amount of flush.
       MemStoreSize mss = prepareResult.totalFlushableSize.getMemStoreSize();
@@ -3036,6 +3181,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
           // ignore this since we will be aborting the RS with DSE.
         }
         wal.abortCacheFlush(this.getRegionInfo().getEncodedNameAsBytes());
+        if (previous != null) {
+          previous.abortCacheFlush(this.getRegionInfo().getEncodedNameAsBytes());
+        }
       }
       DroppedSnapshotException dse = new DroppedSnapshotException(
         "region: " + Bytes.toStringBinary(getRegionInfo().getRegionName()), t);
@@ -3058,6 +3206,13 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     // If we get to here, the HStores have been written.
     if (wal != null) {
       wal.completeCacheFlush(this.getRegionInfo().getEncodedNameAsBytes(), flushedSeqId);
+      if (previous != null) {
+        previous.completeCacheFlush(this.getRegionInfo().getEncodedNameAsBytes(), flushedSeqId);
+      }
+      if ((previous != null || wal == previousWAL) && isAllFamilies(storesToFlush)) {
+        // The WAL the region moved from has no edits of the region left
+        previousWAL = null;
+      }
     }
 
     // Record latest flush time
@@ -3096,6 +3251,84 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       : FlushResult.Result.FLUSHED_NO_COMPACTION_NEEDED, flushOpSeqId);
   }
 
+  /**
+   * Writes the snapshot of each store to a new file in the store's tmp directory. The stores are
+   * written one after another, or on the {@link ExecutorType#RS_FLUSH_STORES} pool of the region
+   * server when {@link #FLUSH_STORES_PARALLELISM} is above 1. Nothing is committed here, so a
+   * failure of any store fails the whole flush as before.
+   */
+  private void flushStores(Collection<StoreFlushContext> flushCtxs, MonitoredTask status)
+    throws IOException {
+    ThreadPoolExecutor storeFlusherThreadPool =
+      flushCtxs.size() > 1 ? getStoreFlusherThreadPool() : null;
+    if (storeFlusherThreadPool == null) {
+      for (StoreFlushContext flush : flushCtxs) {
+        flushStore(flush, status);
+      }
+      return;
+    }
+    CompletionService<Void> completionService =
+      new ExecutorCompletionService<>(storeFlusherThreadPool);
+    List<Future<Void>> futures = new ArrayList<>(flushCtxs.size());
+    IOException failure = null;
+    try {
+      for (StoreFlushContext flush : flushCtxs) {
+        futures.add(completionService.submit(() -> {
+          flushStore(flush, status);
+          return null;
+        }));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          completionService.take().get();
+        } catch (ExecutionException e) {
+          // wait for the other stores anyway, a retry of the flush must not race their writes
+          if (failure == null) {
+            failure = new IOException(e.getCause());
+          } else {
+            failure.addSuppressed(e.getCause());
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      // the pool outlives the flush, do not leave its writes running
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+      throw throwOnInterrupt(e);
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Returns the pool of the region server writing store snapshots, or null if they are to be
+   * written one after another, as when not running in a region server.
+   */
+  private ThreadPoolExecutor getStoreFlusherThreadPool() {
+    if (rsServices == null || rsServices.getConfiguration() == null) {
+      return null;
+    }
+    int flushStoresParallelism = rsServices.getConfiguration().getInt(FLUSH_STORES_PARALLELISM,
+      DEFAULT_FLUSH_STORES_PARALLELISM);
+    ExecutorService executorService = rsServices.getExecutorService();
+    if (flushStoresParallelism <= 1 || executorService == null) {
+      return null;
+    }
+    return executorService.getExecutorLazily(executorService.new ExecutorConfig()
+      .setExecutorType(ExecutorType.RS_FLUSH_STORES).setCorePoolSize(flushStoresParallelism)
+      .setAllowCoreThreadTimeout(true));
+  }
+
+  private void flushStore(StoreFlushContext flush, MonitoredTask status) throws IOException {
+    long start = EnvironmentEdgeManager.currentTime();
+    flush.flushCache(status);
+    if (rsServices != null && rsServices.getMetrics() != null) {
+      rsServices.getMetrics().updateStoreFlush(EnvironmentEdgeManager.currentTime() - start);
+    }
+  }
+
   /**
    * Method to safely get the next sequence number.
    * @return Next sequence number unassociated with any actual edit.
@@ -4814,6 +5047,14 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       // Call complete rather than completeAndWait because we probably had error if walKey != null
       if (writeEntry != null) mvcc.complete(writeEntry);
 
+      // The mutations are visible now, invalidate their rows while still holding the row locks
+      if (rowCache != null && miniBatchOp != null) {
+        batchOp.visitBatchOperations(true, miniBatchOp.getLastIndexExclusive(), (int i) -> {
+          rowCache.invalidate(batchOp.getMutation(i).getRow());
+          return true;
+        });
+      }
+
       if (locked) {
         this.updatesLock.readLock().unlock();
       }
@@ -5382,6 +5623,15 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
    */
   long replayRecoveredEditsIfAny(Map<byte[], Long> maxSeqIdInStores,
     final CancelableProgressable reporter, final MonitoredTask status) throws IOException {
+    // one pool applies the edits of all the recovered edits files
+    try (RecoveredEditsApplier applier = new RecoveredEditsApplier()) {
+      return replayRecoveredEditsIfAny(maxSeqIdInStores, reporter, status, applier);
+    }
+  }
+
+  private long replayRecoveredEditsIfAny(Map<byte[], Long> maxSeqIdInStores,
+    final CancelableProgressable reporter, final MonitoredTask status,
+    final RecoveredEditsApplier applier) throws IOException {
     long minSeqIdForTheRegion = -1;
     for (Long maxSeqIdInStore : maxSeqIdInStores.values()) {
       if (maxSeqIdInStore < minSeqIdForTheRegion || minSeqIdForTheRegion == -1) {
@@ -5403,19 +5653,19 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       NavigableSet<Path> filesUnderWrongRegionWALDir =
         WALSplitUtil.getSplitEditFilesSorted(walFS, wrongRegionWALDir);
       seqId = Math.max(seqId, replayRecoveredEditsForPaths(minSeqIdForTheRegion, walFS,
-        filesUnderWrongRegionWALDir, reporter, regionDir));
+        filesUnderWrongRegionWALDir, reporter, regionDir, applier));
       // This is to ensure backwards compatability with HBASE-20723 where recovered edits can appear
       // under the root dir even if walDir is set.
       NavigableSet<Path> filesUnderRootDir = Collections.emptyNavigableSet();
       if (!regionWALDir.equals(regionDir)) {
         filesUnderRootDir = WALSplitUtil.getSplitEditFilesSorted(rootFS, regionDir);
         seqId = Math.max(seqId, replayRecoveredEditsForPaths(minSeqIdForTheRegion, rootFS,
-          filesUnderRootDir, reporter, regionDir));
+          filesUnderRootDir, reporter, regionDir, applier));
       }
 
       NavigableSet<Path> files = WALSplitUtil.getSplitEditFilesSorted(walFS, regionWALDir);
-      seqId = Math.max(seqId,
-        replayRecoveredEditsForPaths(minSeqIdForTheRegion, walFS, files, reporter, regionWALDir));
+      seqId = Math.max(seqId, replayRecoveredEditsForPaths(minSeqIdForTheRegion, walFS, files,
+        reporter, regionWALDir, applier));
       if (seqId > minSeqIdForTheRegion) {
         // Then we added some edits to memory. Flush and cleanup split edit files.
         internalFlushcache(null, seqId, stores.values(), status, false,
@@ -5450,8 +5700,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
           if (isZeroLengthThenDelete(fs, file, file.getPath())) {
             continue;
           }
-          seqId =
-            Math.max(seqId, replayRecoveredEdits(file.getPath(), maxSeqIdInStores, reporter, fs));
+          seqId = Math.max(seqId,
+            replayRecoveredEdits(file.getPath(), maxSeqIdInStores, reporter, fs, applier));
         }
       }
       if (seqId > minSeqIdForTheRegion) {
@@ -5467,8 +5717,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   }
 
   private long replayRecoveredEditsForPaths(long minSeqIdForTheRegion, FileSystem fs,
-    final NavigableSet<Path> files, final CancelableProgressable reporter, final Path regionDir)
-    throws IOException {
+    final NavigableSet<Path> files, final CancelableProgressable reporter, final Path regionDir,
+    final RecoveredEditsApplier applier) throws IOException {
     long seqid = minSeqIdForTheRegion;
     if (LOG.isDebugEnabled()) {
       LOG.debug("Found " + (files == null ? 0 : files.size()) + " recovered edits file(s) under "
@@ -5504,7 +5754,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       try {
         // replay the edits. Replay can return -1 if everything is skipped, only update
         // if seqId is greater
-        seqid = Math.max(seqid, replayRecoveredEdits(edits, maxSeqIdInStores, reporter, fs));
+        seqid =
+          Math.max(seqid, replayRecoveredEdits(edits, maxSeqIdInStores, reporter, fs, applier));
       } catch (IOException e) {
         handleException(fs, edits, e);
       }
@@ -5532,11 +5783,13 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
    * @param edits            File of recovered edits.
    * @param maxSeqIdInStores Maximum sequenceid found in each store. Edits in wal must be larger
    *                         than this to be replayed for each store.
+   * @param applier          Applies the edits read to the stores.
    * @return the sequence id of the last edit added to this region out of the recovered edits log or
    *         <code>minSeqId</code> if nothing added from editlogs.
    */
   private long replayRecoveredEdits(final Path edits, Map<byte[], Long> maxSeqIdInStores,
-    final CancelableProgressable reporter, FileSystem fs) throws IOException {
+    final CancelableProgressable reporter, FileSystem fs, RecoveredEditsApplier applier)
+    throws IOException {
     String msg = "Replaying edits from " + edits;
     LOG.info(msg);
     MonitoredTask status = TaskMonitor.get().createStatus(msg);
@@ -5676,21 +5929,21 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
             }
             PrivateCellUtil.setSequenceId(cell, currentReplaySeqId);
 
-            restoreEdit(store, cell, memStoreSizing);
+            applier.restoreEdit(store, cell, memStoreSizing);
             editsCount++;
           }
           MemStoreSize mss = memStoreSizing.getMemStoreSize();
           incMemStoreSize(mss);
           flush = isFlushSize(this.memStoreSizing.getMemStoreSize());
           if (flush) {
+            applier.apply();
             internalFlushcache(null, currentEditSeqId, stores.values(), status, false,
               FlushLifeCycleTracker.DUMMY);
           }
 
-          if (coprocessorHost != null) {
-            coprocessorHost.postWALRestore(this.getRegionInfo(), key, val);
-          }
+          applier.restored(key, val);
         }
+        applier.apply();
 
         if (coprocessorHost != null) {
           coprocessorHost.postReplayWALs(this.getRegionInfo(), edits);
@@ -5723,6 +5976,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
           throw ioe;
         }
       }
+      // the edits read before an error are applied too, as when they are applied one by one
+      applier.apply();
       if (reporter != null && !reported_once) {
         reporter.progress();
       }
@@ -5736,6 +5991,118 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     }
   }
 
+  /**
+   * Applies the cells of the recovered edits to the stores. They are applied as they are read, or,
+   * with {@link #REPLAY_RECOVERED_EDITS_PARALLELISM} above 1, gathered by store and applied to
+   * several stores at once when {@link #REPLAY_RECOVERED_EDITS_BATCH_SIZE} is reached, before a
+   * flush and at the end of each file. The cells of a store are applied in the order they were
+   * read, on one pool for all the recovered edits files of the region. A coprocessor implementing
+   * postWALRestore keeps the edits applied one by one, the hook running right after each edit.
+   */
+  private final class RecoveredEditsApplier implements Closeable {
+
+    // null to apply the cells as they are read
+    private final ThreadPoolExecutor pool;
+    private final long batchSize;
+    private final Map<HStore, List<Cell>> pendingCells = new HashMap<>();
+    private final List<Pair<WALKey, WALEdit>> pendingEdits = new ArrayList<>();
+    private long pendingSize;
+
+    RecoveredEditsApplier() {
+      int parallelism = Math.min(stores.size(), conf.getInt(REPLAY_RECOVERED_EDITS_PARALLELISM,
+        DEFAULT_REPLAY_RECOVERED_EDITS_PARALLELISM));
+      this.pool = parallelism > 1
+        && (coprocessorHost == null || !coprocessorHost.hasCustomPostWALRestore())
+        ? getOpenAndCloseThreadPool(parallelism,
+          "RecoveredEditsReplayer-" + getRegionInfo().getShortNameToLog())
+        : null;
+      this.batchSize =
+        conf.getLong(REPLAY_RECOVERED_EDITS_BATCH_SIZE, DEFAULT_REPLAY_RECOVERED_EDITS_BATCH_SIZE);
+    }
+
+    void restoreEdit(HStore store, Cell cell, MemStoreSizing memStoreSizing) {
+      if (pool == null) {
+        HRegion.this.restoreEdit(store, cell, memStoreSizing);
+      } else {
+        pendingCells.computeIfAbsent(store, s -> new ArrayList<>()).add(cell);
+      }
+    }
+
+    /** Called once all the cells of the given edit went through {@link #restoreEdit} */
+    void restored(WALKey key, WALEdit val) throws IOException {
+      if (pool == null) {
+        if (coprocessorHost != null) {
+          coprocessorHost.postWALRestore(getRegionInfo(), key, val);
+        }
+        return;
+      }
+      pendingEdits.add(new Pair<>(key, val));
+      pendingSize += val.heapSize();
+      if (pendingSize >= batchSize) {
+        apply();
+      }
+    }
+
+    /** Applies all the cells gathered, and waits for them to be in the stores */
+    void apply() throws IOException {
+      if (pool == null || (pendingCells.isEmpty() && pendingEdits.isEmpty())) {
+        return;
+      }
+      CompletionService<MemStoreSize> completionService = new ExecutorCompletionService<>(pool);
+      List<Future<MemStoreSize>> futures = new ArrayList<>(pendingCells.size());
+      IOException failure = null;
+      try {
+        for (Map.Entry<HStore, List<Cell>> entry : pendingCells.entrySet()) {
+          futures.add(completionService.submit(() -> {
+            MemStoreSizing memStoreSizing = new NonThreadSafeMemStoreSizing();
+            for (Cell cell : entry.getValue()) {
+              HRegion.this.restoreEdit(entry.getKey(), cell, memStoreSizing);
+            }
+            return memStoreSizing.getMemStoreSize();
+          }));
+        }
+        // wait for every store even if one failed, the cells the others added must be accounted
+        for (int i = 0; i < futures.size(); i++) {
+          try {
+            incMemStoreSize(completionService.take().get());
+          } catch (ExecutionException e) {
+            if (failure == null) {
+              failure = new IOException(e.getCause());
+            } else {
+              failure.addSuppressed(e.getCause());
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        for (Future<MemStoreSize> future : futures) {
+          future.cancel(true);
+        }
+        throw throwOnInterrupt(e);
+      } finally {
+        pendingCells.clear();
+      }
+      if (failure != null) {
+        pendingEdits.clear();
+        pendingSize = 0;
+        throw failure;
+      }
+      if (coprocessorHost != null) {
+        for (Pair<WALKey, WALEdit> edit : pendingEdits) {
+          coprocessorHost.postWALRestore(getRegionInfo(), edit.getFirst(), edit.getSecond());
+        }
+      }
+      pendingEdits.clear();
+      pendingSize = 0;
+    }
+
+    @Override
+    public void close() {
+      if (pool != null) {
+        pool.shutdownNow();
+      }
+    }
+  }
+
   /**
    * Call to complete a compaction. Its for the case where we find in the WAL a compaction that was
    * not finished. We could find one recovering a WAL after a regionserver crash. See HBASE-2331.
@@ -7405,6 +7772,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         });
       }
     } finally {
+      if (rowCache != null && !storeFiles.isEmpty()) {
+        rowCache.invalidateAll();
+      }
       if (wal != null && !storeFiles.isEmpty()) {
         // Write a bulk load event for hfiles that are loaded
         try {
@@ -7884,34 +8254,327 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         return results;
       }
     }
+    readRowToHeap(get, results, nonceGroup, nonce);
+
+    // post-get CP hook
+    if (withCoprocessor && (coprocessorHost != null)) {
+      coprocessorHost.postGet(get, results);
+    }
+
+    metricsUpdateForGet(results, before);
+
+    return results;
+  }
+
+  /** Adds the cells of the given Get to results, copied to heap, see {@link #readRow}. */
+  private void readRowToHeap(Get get, List<Cell> results, long nonceGroup, long nonce)
+    throws IOException {
+    int cellsBefore = results.size();
+    try (RegionScanner scanner = readRow(get, results, nonceGroup, nonce)) {
+      if (scanner != null) {
+        // Copy EC to heap, then close the scanner.
+        // This can be an EXPENSIVE call. It may make an extra copy from offheap to onheap buffers.
+        // See more details in HBASE-26036.
+        for (int i = cellsBefore; i < results.size(); i++) {
+          results.set(i, CellUtil.cloneIfNecessary(results.get(i)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the cells of the given Get to results, from the row cache if they are cached there.
+   * Otherwise they are read with a region scanner, and cached if the Get can be.
+   * @return the scanner the cells were read with, which the caller closes once done with the cells
+   *         as they may be backed by its blocks, or null if they came from the row cache
+   */
+  RegionScannerImpl readRow(Get get, List<Cell> results, long nonceGroup, long nonce)
+    throws IOException {
+    boolean useRowCache = rowCache != null && results.isEmpty() && rowCache.isCacheable(get);
+    List<Cell> cached = useRowCache ? rowCache.get(get) : null;
+    if (cached != null) {
+      results.addAll(cached);
+      addReadRequestsCount(1);
+      return null;
+    }
+    long rowVersion = useRowCache ? rowCache.getVersion(get.getRow()) : 0;
     Scan scan = new Scan(get);
     if (scan.getLoadColumnFamiliesOnDemandValue() == null) {
       scan.setLoadColumnFamiliesOnDemand(isLoadingCfsOnDemandDefault());
     }
-    try (RegionScanner scanner = getScanner(scan, null, nonceGroup, nonce)) {
-      List<Cell> tmp = new ArrayList<>();
-      scanner.next(tmp);
-      // Copy EC to heap, then close the scanner.
-      // This can be an EXPENSIVE call. It may make an extra copy from offheap to onheap buffers.
-      // See more details in HBASE-26036.
-      for (Cell cell : tmp) {
-        results.add(CellUtil.cloneIfNecessary(cell));
+    RegionScannerImpl scanner = getScanner(scan, null, nonceGroup, nonce);
+    try {
+      scanner.next(results);
+      if (useRowCache) {
+        rowCache.cache(get, rowVersion, results);
       }
+    } catch (IOException | RuntimeException e) {
+      scanner.close();
+      throw e;
     }
+    return scanner;
+  }
 
-    // post-get CP hook
-    if (withCoprocessor && (coprocessorHost != null)) {
-      coprocessorHost.postGet(get, results);
+  /**
+   * Runs several Gets on this region and returns their results in the same order. The Gets that ask
+   * for the same columns, versions, time range and attributes as the first one, with no filter, are
+   * read with a single region scanner walking forward through their sorted rows: every store file
+   * scanner reseeks from its current position, reusing its current block when the next row is in
+   * it, instead of seeking from the block index for each Get. A Get only joins the shared scanner
+   * if the key range and Bloom filter of one of its store files let its row through, as the scanner
+   * would otherwise read blocks its Bloom filters spare it. The other Gets run one by one. The Gets
+   * must have been checked with {@link #prepareGet(Get)}.
+   */
+  List<Result> get(List<Get> gets) throws IOException {
+    return get(gets, Long.MAX_VALUE);
+  }
+
+  /**
+   * Same as {@link #get(List)}, but stops reading rows once the cells read plus the block bytes
+   * scanned reach the given size. The Gets left unread then have a null result. The coprocessor
+   * pre get hooks of all the Gets run before any row is read, and their post get hooks only for the
+   * Gets read, so the Gets must not be run again if this throws.
+   */
+  List<Result> get(List<Get> gets, long maxResultSize) throws IOException {
+    return TraceUtil.trace(() -> getInternal(gets, maxResultSize),
+      () -> createRegionSpan("Region.getBatch"));
+  }
+
+  private List<Result> getInternal(List<Get> gets, long maxResultSize) throws IOException {
+    List<List<Cell>> results = new ArrayList<>(gets.size());
+    boolean[] bypassed = new boolean[gets.size()];
+    boolean[] read = new boolean[gets.size()];
+    List<Integer> single = new ArrayList<>();
+    List<Integer> shared = new ArrayList<>(gets.size());
+    Get template = null;
+    for (int i = 0; i < gets.size(); i++) {
+      Get get = gets.get(i);
+      List<Cell> cells = new ArrayList<>();
+      results.add(cells);
+      // pre-get CP hook
+      if (coprocessorHost != null && coprocessorHost.preGet(get, cells)) {
+        bypassed[i] = true;
+        metricsUpdateForGet(0);
+        continue;
+      }
+      if (
+        cells.isEmpty() && (rowCache == null || !rowCache.isCacheable(get))
+          && mayBeInStoreFiles(get)
+      ) {
+        if (template == null && get.getFilter() == null) {
+          template = get;
+        }
+        if (template != null && canShareScanner(template, get)) {
+          shared.add(i);
+          continue;
+        }
+      }
+      single.add(i);
+    }
+    if (shared.size() == 1) {
+      single.addAll(shared);
+      shared.clear();
+    }
+    GetBatchSize size = new GetBatchSize(maxResultSize);
+    for (int i : single) {
+      if (size.isExceeded()) {
+        break;
+      }
+      long before = EnvironmentEdgeManager.currentTime();
+      readRowToHeap(gets.get(i), results.get(i), HConstants.NO_NONCE, HConstants.NO_NONCE);
+      read[i] = true;
+      size.add(results.get(i));
+      metricsUpdateForGet(EnvironmentEdgeManager.currentTime() - before);
+    }
+    if (!shared.isEmpty() && !size.isExceeded()) {
+      long before = EnvironmentEdgeManager.currentTime();
+      int rows = readRows(template, gets, shared, results, read, size);
+      // the Gets read together share the time of the scan
+      long time = (EnvironmentEdgeManager.currentTime() - before) / Math.max(1, rows);
+      for (int i = 0; i < rows; i++) {
+        metricsUpdateForGet(time);
+      }
     }
 
-    metricsUpdateForGet(results, before);
+    boolean stale = this.getRegionInfo().getReplicaId() != 0;
+    List<Result> ret = new ArrayList<>(gets.size());
+    for (int i = 0; i < gets.size(); i++) {
+      Get get = gets.get(i);
+      List<Cell> cells = results.get(i);
+      if (!bypassed[i] && !read[i]) {
+        ret.add(null);
+        continue;
+      }
+      // post-get CP hook
+      if (!bypassed[i] && coprocessorHost != null) {
+        coprocessorHost.postGet(get, cells);
+      }
+      ret.add(Result.create(cells, get.isCheckExistenceOnly() ? !cells.isEmpty() : null, stale));
+    }
+    return ret;
+  }
 
-    return results;
+  /** The size of the cells read by a batch of Gets and of the blocks they scanned */
+  private static final class GetBatchSize {
+    private final long maxResultSize;
+    private final RpcCall call;
+    private final long blockBytesScannedBefore;
+    private long cellSize;
+
+    GetBatchSize(long maxResultSize) {
+      this.maxResultSize = maxResultSize;
+      this.call = RpcServer.getCurrentCall().orElse(null);
+      this.blockBytesScannedBefore = call != null ? call.getBlockBytesScanned() : 0;
+    }
+
+    void add(List<Cell> cells) {
+      for (Cell cell : cells) {
+        cellSize += PrivateCellUtil.estimatedSerializedSizeOf(cell);
+      }
+    }
+
+    boolean isExceeded() {
+      long blockBytesScanned =
+        call != null ? call.getBlockBytesScanned() - blockBytesScannedBefore : 0;
+      return cellSize > maxResultSize || blockBytesScanned > maxResultSize;
+    }
+  }
+
+  /**
+   * Returns true if the given Get reads the same cells of its row as the template Get does of its
+   * own, so both can be served by one scanner over the range of their rows.
+   */
+  private static boolean canShareScanner(Get template, Get get) {
+    if (
+      get.getFilter() != null || get.getMaxVersions() != template.getMaxVersions()
+        || get.getMaxResultsPerColumnFamily() != template.getMaxResultsPerColumnFamily()
+        || get.getRowOffsetPerColumnFamily() != template.getRowOffsetPerColumnFamily()
+        || get.getCacheBlocks() != template.getCacheBlocks()
+        || get.getIsolationLevel() != template.getIsolationLevel()
+        || get.getTimeRange().getMin() != template.getTimeRange().getMin()
+        || get.getTimeRange().getMax() != template.getTimeRange().getMax()
+        || !get.getColumnFamilyTimeRange().isEmpty()
+        || !sameAttributes(template.getAttributesMap(), get.getAttributesMap())
+    ) {
+      return false;
+    }
+    Map<byte[], NavigableSet<byte[]>> families = get.getFamilyMap();
+    Map<byte[], NavigableSet<byte[]>> templateFamilies = template.getFamilyMap();
+    if (families.size() != templateFamilies.size()) {
+      return false;
+    }
+    for (Map.Entry<byte[], NavigableSet<byte[]>> entry : families.entrySet()) {
+      if (!templateFamilies.containsKey(entry.getKey())) {
+        return false;
+      }
+      NavigableSet<byte[]> columns = entry.getValue();
+      NavigableSet<byte[]> templateColumns = templateFamilies.get(entry.getKey());
+      if (columns == null || templateColumns == null) {
+        if (columns != templateColumns) {
+          return false;
+        }
+      } else
+        if (columns.size() != templateColumns.size() || !columns.containsAll(templateColumns)) {
+          return false;
+        }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if both Gets have the same attributes. The shared scanner carries the attributes
+   * of the template, and some of them, such as the authorizations, change what it may return.
+   */
+  private static boolean sameAttributes(Map<String, byte[]> template, Map<String, byte[]> get) {
+    if (get.size() != template.size()) {
+      return false;
+    }
+    for (Map.Entry<String, byte[]> entry : get.entrySet()) {
+      if (!Bytes.equals(entry.getValue(), template.get(entry.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if the row of the given Get may be in one of the store files of its families, as
+   * told by their key ranges and ROW or ROWCOL Bloom filters. A Get that fails this reads no block
+   * on its own, so it is kept out of the shared scanner of {@link #get(List)}.
+   */
+  private boolean mayBeInStoreFiles(Get get) {
+    Scan scan = new Scan(get);
+    for (Map.Entry<byte[], NavigableSet<byte[]>> entry : get.getFamilyMap().entrySet()) {
+      for (HStoreFile file : getStore(entry.getKey()).getStorefiles()) {
+        StoreFileReader reader = file.getReader();
+        if (
+          reader == null || (reader.passesKeyRangeFilter(scan)
+            && reader.passesBloomFilter(scan, entry.getValue()))
+        ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads the rows of the Gets at the given indexes, which all share the template's columns, with
+   * one scanner from the lowest to the highest of their rows, until the given size is exceeded.
+   * @return the number of Gets read, which are flagged in read
+   */
+  private int readRows(Get template, List<Get> gets, List<Integer> indexes,
+    List<List<Cell>> results, boolean[] read, GetBatchSize size) throws IOException {
+    // The scanner only moves forward, so visit the rows in order
+    indexes.sort((a, b) -> Bytes.compareTo(gets.get(a).getRow(), gets.get(b).getRow()));
+    byte[] startRow = gets.get(indexes.get(0)).getRow();
+    byte[] stopRow = gets.get(indexes.get(indexes.size() - 1)).getRow();
+    Scan scan = new Scan(template).withStartRow(startRow, true).withStopRow(stopRow, true);
+    if (scan.getLoadColumnFamiliesOnDemandValue() == null) {
+      scan.setLoadColumnFamiliesOnDemand(isLoadingCfsOnDemandDefault());
+    }
+    CellComparator comparator = getCellComparator();
+    try (RegionScannerImpl scanner =
+      getScanner(scan, null, HConstants.NO_NONCE, HConstants.NO_NONCE)) {
+      // The cells of the last row read. As rows with no cells are skipped by the scanner, this may
+      // be a row after the one asked for, which is then kept for the next Gets.
+      List<Cell> current = new ArrayList<>();
+      boolean moreRows = true;
+      int rows = 0;
+      for (int i : indexes) {
+        if (size.isExceeded()) {
+          break;
+        }
+        byte[] row = gets.get(i).getRow();
+        if (current.isEmpty() || comparator.compareRows(current.get(0), row, 0, row.length) < 0) {
+          current.clear();
+          if (moreRows) {
+            scanner.reseekForward(row);
+            moreRows = scanner.next(current);
+          }
+        }
+        if (!current.isEmpty() && CellUtil.matchingRows(current.get(0), row)) {
+          List<Cell> cells = results.get(i);
+          // Copy EC to heap before the scanner is closed, see readRowToHeap.
+          for (Cell cell : current) {
+            cells.add(CellUtil.cloneIfNecessary(cell));
+          }
+          size.add(cells);
+        }
+        read[i] = true;
+        rows++;
+      }
+      return rows;
+    }
   }
 
   void metricsUpdateForGet(List<Cell> results, long before) {
+    metricsUpdateForGet(EnvironmentEdgeManager.currentTime() - before);
+  }
+
+  private void metricsUpdateForGet(long time) {
     if (this.metricsRegion != null) {
-      this.metricsRegion.updateGet(EnvironmentEdgeManager.currentTime() - before);
+      this.metricsRegion.updateGet(time);
     }
     if (this.rsServices != null && this.rsServices.getMetrics() != null) {
       rsServices.getMetrics().updateReadQueryMeter(this, 1);
@@ -8570,7 +9233,28 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   }
 
   public long getOldestSeqIdOfStore(byte[] familyName) {
-    return wal.getEarliestMemStoreSeqNum(getRegionInfo().getEncodedNameAsBytes(), familyName);
+    return getEarliestMemStoreSeqNum(familyName);
+  }
+
+  /**
+   * Returns the earliest sequence id of the edits of the given family not flushed yet, looking in
+   * the WAL the region moved from too until a flush commits the edits written to it.
+   */
+  private long getEarliestMemStoreSeqNum(byte[] familyName) {
+    byte[] encodedRegionName = getRegionInfo().getEncodedNameAsBytes();
+    // previousWAL is set before wal when the region moves, so read it last
+    long earliest = wal.getEarliestMemStoreSeqNum(encodedRegionName, familyName);
+    WAL previous = previousWAL;
+    if (previous != null) {
+      long previousEarliest = previous.getEarliestMemStoreSeqNum(encodedRegionName, familyName);
+      if (
+        previousEarliest != HConstants.NO_SEQNUM
+          && (earliest == HConstants.NO_SEQNUM || previousEarliest < earliest)
+      ) {
+        earliest = previousEarliest;
+      }
+    }
+    return earliest;
   }
 
   @Override
@@ -387,6 +387,8 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
   // The cache for mob files
   private MobFileCache mobFileCache;
 
+  private RowCache rowCache;
+
   /** The health check chore. */
   private HealthCheckChore healthCheckChore;
 
@@ -525,6 +527,7 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
 
       blockCache = BlockCacheFactory.createBlockCache(conf);
       mobFileCache = new MobFileCache(conf);
+      rowCache = RowCache.create(conf);
 
       rsSnapshotVerifier = new RSSnapshotVerifier(conf);
 
@@ -3315,6 +3318,15 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
     return Optional.ofNullable(this.mobFileCache);
   }
 
+  /**
+   * May be null if this is a master which not carry table, or if the row cache is disabled.
+   * @return The cache of point Get results used by the regionserver.
+   */
+  @Override
+  public Optional<RowCache> getRowCache() {
+    return Optional.ofNullable(this.rowCache);
+  }
+
   /** Returns : Returns the ConfigurationManager object for testing purposes. */
   ConfigurationManager getConfigurationManager() {
     return configurationManager;
@@ -387,7 +387,8 @@ public class HStore
    */
   protected CacheConfig createCacheConf(final ColumnFamilyDescriptor family) {
     CacheConfig cacheConf = new CacheConfig(conf, family, region.getBlockCache(),
-      region.getRegionServicesForStores().getByteBuffAllocator());
+      region.getRegionServicesForStores().getByteBuffAllocator(),
+      region.getRegionServicesForStores().getExecutorService());
     LOG.info("Created cacheConfig: {}, for column family {} of region {} ", cacheConf,
       family.getNameAsString(), region.getRegionInfo().getEncodedName());
     return cacheConf;
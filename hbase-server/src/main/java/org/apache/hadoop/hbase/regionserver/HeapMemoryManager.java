@@ -71,6 +71,9 @@ public class HeapMemoryManager {
   private float blockCachePercentMinRange;
   private float blockCachePercentMaxRange;
 
+  // The row cache is not tuned, but takes its share of the heap
+  private float rowCachePercent;
+
   private float heapOccupancyPercent;
 
   private final ResizableBlockCache blockCache;
@@ -130,6 +133,7 @@ public class HeapMemoryManager {
     globalMemStorePercent = MemorySizeUtil.getGlobalMemStoreHeapPercent(conf, false);
     blockCachePercent =
       conf.getFloat(HFILE_BLOCK_CACHE_SIZE_KEY, HConstants.HFILE_BLOCK_CACHE_SIZE_DEFAULT);
+    rowCachePercent = MemorySizeUtil.getRowCacheHeapPercent(conf);
     MemorySizeUtil.checkForClusterFreeHeapMemoryLimit(conf);
     // Initialize max and min range for memstore heap space
     globalMemStorePercentMinRange =
@@ -180,27 +184,30 @@ public class HeapMemoryManager {
       tuningEnabled = false;
     }
 
+    int rcl = (int) (rowCachePercent * CONVERT_TO_PERCENTAGE);
     int gml = (int) (globalMemStorePercentMaxRange * CONVERT_TO_PERCENTAGE);
     int bcul = (int) ((blockCachePercentMinRange) * CONVERT_TO_PERCENTAGE);
-    if (CONVERT_TO_PERCENTAGE - (gml + bcul) < CLUSTER_MINIMUM_MEMORY_THRESHOLD) {
-      throw new RuntimeException("Current heap configuration for MemStore and BlockCache exceeds "
-        + "the threshold required for successful cluster operation. "
+    if (CONVERT_TO_PERCENTAGE - (gml + bcul + rcl) < CLUSTER_MINIMUM_MEMORY_THRESHOLD) {
+      throw new RuntimeException("Current heap configuration for MemStore, BlockCache and RowCache "
+        + "exceeds the threshold required for successful cluster operation. "
         + "The combined value cannot exceed 0.8. Please check the settings for "
-        + MEMSTORE_SIZE_MAX_RANGE_KEY + " and " + BLOCK_CACHE_SIZE_MIN_RANGE_KEY
-        + " in your configuration. " + MEMSTORE_SIZE_MAX_RANGE_KEY + " is "
-        + globalMemStorePercentMaxRange + " and " + BLOCK_CACHE_SIZE_MIN_RANGE_KEY + " is "
-        + blockCachePercentMinRange);
+        + MEMSTORE_SIZE_MAX_RANGE_KEY + ", " + BLOCK_CACHE_SIZE_MIN_RANGE_KEY + " and "
+        + RowCache.ROW_CACHE_SIZE_KEY + " in your configuration. " + MEMSTORE_SIZE_MAX_RANGE_KEY
+        + " is " + globalMemStorePercentMaxRange + ", " + BLOCK_CACHE_SIZE_MIN_RANGE_KEY + " is "
+        + blockCachePercentMinRange + " and " + RowCache.ROW_CACHE_SIZE_KEY + " is "
+        + rowCachePercent);
     }
     gml = (int) (globalMemStorePercentMinRange * CONVERT_TO_PERCENTAGE);
     bcul = (int) ((blockCachePercentMaxRange) * CONVERT_TO_PERCENTAGE);
-    if (CONVERT_TO_PERCENTAGE - (gml + bcul) < CLUSTER_MINIMUM_MEMORY_THRESHOLD) {
-      throw new RuntimeException("Current heap configuration for MemStore and BlockCache exceeds "
-        + "the threshold required for successful cluster operation. "
+    if (CONVERT_TO_PERCENTAGE - (gml + bcul + rcl) < CLUSTER_MINIMUM_MEMORY_THRESHOLD) {
+      throw new RuntimeException("Current heap configuration for MemStore, BlockCache and RowCache "
+        + "exceeds the threshold required for successful cluster operation. "
         + "The combined value cannot exceed 0.8. Please check the settings for "
-        + MEMSTORE_SIZE_MIN_RANGE_KEY + " and " + BLOCK_CACHE_SIZE_MAX_RANGE_KEY
-        + " in your configuration. " + MEMSTORE_SIZE_MIN_RANGE_KEY + " is "
-        + globalMemStorePercentMinRange + " and " + BLOCK_CACHE_SIZE_MAX_RANGE_KEY + " is "
-        + blockCachePercentMaxRange);
+        + MEMSTORE_SIZE_MIN_RANGE_KEY + ", " + BLOCK_CACHE_SIZE_MAX_RANGE_KEY + " and "
+        + RowCache.ROW_CACHE_SIZE_KEY + " in your configuration. " + MEMSTORE_SIZE_MIN_RANGE_KEY
+        + " is " + globalMemStorePercentMinRange + ", " + BLOCK_CACHE_SIZE_MAX_RANGE_KEY + " is "
+        + blockCachePercentMaxRange + " and " + RowCache.ROW_CACHE_SIZE_KEY + " is "
+        + rowCachePercent);
     }
     return tuningEnabled;
   }
@@ -356,13 +363,15 @@ public class HeapMemoryManager {
               + blockCachePercentMaxRange + ". Resetting blockCacheSize to min size");
           blockCacheSize = blockCachePercentMaxRange;
         }
+        int rcl = (int) (rowCachePercent * CONVERT_TO_PERCENTAGE);
         int gml = (int) (memstoreSize * CONVERT_TO_PERCENTAGE);
         int bcul = (int) ((blockCacheSize) * CONVERT_TO_PERCENTAGE);
-        if (CONVERT_TO_PERCENTAGE - (gml + bcul) < CLUSTER_MINIMUM_MEMORY_THRESHOLD) {
+        if (CONVERT_TO_PERCENTAGE - (gml + bcul + rcl) < CLUSTER_MINIMUM_MEMORY_THRESHOLD) {
           LOG.info("Current heap configuration from HeapMemoryTuner exceeds "
             + "the threshold required for successful cluster operation. "
             + "The combined value cannot exceed 0.8. " + MemorySizeUtil.MEMSTORE_SIZE_KEY + " is "
-            + memstoreSize + " and " + HFILE_BLOCK_CACHE_SIZE_KEY + " is " + blockCacheSize);
+            + memstoreSize + ", " + HFILE_BLOCK_CACHE_SIZE_KEY + " is " + blockCacheSize + " and "
+            + RowCache.ROW_CACHE_SIZE_KEY + " is " + rowCachePercent);
           // TODO can adjust the value so as not exceed 80%. Is that correct? may be.
         } else {
           int memStoreDeltaSize =
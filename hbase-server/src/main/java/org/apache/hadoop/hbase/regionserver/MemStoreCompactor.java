@@ -227,7 +227,8 @@ public class MemStoreCompactor {
 
         result = SegmentFactory.instance().createImmutableSegmentByMerge(
           compactingMemStore.getConfiguration(), compactingMemStore.getComparator(), iterator,
-          versionedList.getNumOfCells(), segments, compactingMemStore.getIndexType(), action);
+          versionedList.getNumOfCells(), segments, compactingMemStore.getIndexType(), action,
+          compactingMemStore.getIndexPool());
         iterator.close();
         break;
       default:
@@ -57,6 +57,10 @@ public interface MemStoreLAB {
   String MAX_ALLOC_KEY = "hbase.hregion.memstore.mslab.max.allocation";
   int MAX_ALLOC_DEFAULT = 256 * 1024; // allocs bigger than this don't go through
                                       // allocator
+  // number of current chunks the allocations of an MSLAB are spread over, by handler thread,
+  // bounded by the capacity of the data chunk pool
+  String MSLAB_STRIPES_KEY = "hbase.hregion.memstore.mslab.stripes";
+  int MSLAB_STRIPES_DEFAULT = 1;
 
   // MSLAB pool related configs
   String CHUNK_POOL_MAXSIZE_KEY = "hbase.hregion.memstore.chunkpool.maxsize";
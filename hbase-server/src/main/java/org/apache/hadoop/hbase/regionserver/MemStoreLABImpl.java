@@ -64,15 +64,35 @@ import org.apache.hbase.thirdparty.com.google.common.base.Preconditions;
  * {@link CompactingMemStore} ctor, the {@link CompactingMemStore#indexType} could only be
  * {@link IndexType#CHUNK_MAP},that is to say the immutable segments using MSLABs are going to use
  * {@link CellChunkMap} as their index.
+ * <p>
+ * When many handlers write to the same store, they all bump the offset of the same current chunk
+ * and race for its replacement. With {@link #MSLAB_STRIPES_KEY} set above 1, the allocations are
+ * spread over several stripes, each with its own current chunk and lock, a handler always using
+ * the stripe picked by its thread id. A stripe gets its first chunk on its first allocation, so an
+ * idle stripe holds no chunk.
+ * <p>
+ * Every busy stripe keeps a partly filled current chunk, so an MSLAB with n stripes retains up to
+ * n - 1 more chunks than an unstriped one until it is closed, per store being written to. The
+ * stripes are therefore taken out of the data chunk pool: an MSLAB never has more stripes than
+ * 1/{@value #POOL_CHUNKS_PER_STRIPE} of the chunks the pool may hold, and is not striped at all
+ * when there is no pool.
  */
 @InterfaceAudience.Private
 public class MemStoreLABImpl implements MemStoreLAB {
 
   static final Logger LOG = LoggerFactory.getLogger(MemStoreLABImpl.class);
 
-  private AtomicReference<Chunk> currChunk = new AtomicReference<>();
-  // Lock to manage multiple handlers requesting for a chunk
-  private ReentrantLock lock = new ReentrantLock();
+  // the chunks of the data chunk pool it takes to allow one more stripe per MSLAB
+  static final int POOL_CHUNKS_PER_STRIPE = 100;
+
+  /** A current chunk, used by the handlers whose thread id maps to it */
+  private static final class Stripe {
+    private final AtomicReference<Chunk> currChunk = new AtomicReference<>();
+    // Lock to manage multiple handlers requesting for a chunk
+    private final ReentrantLock lock = new ReentrantLock();
+  }
+
+  private final Stripe[] stripes;
 
   // A set of chunks contained by this memstore LAB
   Set<Integer> chunks = new ConcurrentSkipListSet<Integer>();
@@ -101,6 +121,14 @@ public class MemStoreLABImpl implements MemStoreLAB {
     dataChunkSize = conf.getInt(CHUNK_SIZE_KEY, CHUNK_SIZE_DEFAULT);
     maxAlloc = conf.getInt(MAX_ALLOC_KEY, MAX_ALLOC_DEFAULT);
     this.chunkCreator = ChunkCreator.getInstance();
+    int numStripes = conf.getInt(MSLAB_STRIPES_KEY, MSLAB_STRIPES_DEFAULT);
+    if (numStripes > 1) {
+      numStripes = Math.min(numStripes, chunkCreator.getMaxCount() / POOL_CHUNKS_PER_STRIPE);
+    }
+    stripes = new Stripe[Math.max(1, numStripes)];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new Stripe();
+    }
     // if we don't exclude allocations >CHUNK_SIZE, we'd infiniteloop on one!
     Preconditions.checkArgument(maxAlloc <= dataChunkSize,
       MAX_ALLOC_KEY + " must be less than " + CHUNK_SIZE_KEY);
@@ -152,11 +180,13 @@ public class MemStoreLABImpl implements MemStoreLAB {
     if (size > maxAlloc) {
       return null;
     }
+    Stripe stripe = getStripe();
     Chunk c = null;
     int allocOffset = 0;
+    int retries = 0;
     while (true) {
       // Try to get the chunk
-      c = getOrMakeChunk();
+      c = getOrMakeChunk(stripe);
       // We may get null because the some other thread succeeded in getting the lock
       // and so the current thread has to try again to make its chunk or grab the chunk
       // that the other thread created
@@ -170,9 +200,11 @@ public class MemStoreLABImpl implements MemStoreLAB {
         }
         // not enough space!
         // try to retire this chunk
-        tryRetireChunk(c);
+        tryRetireChunk(stripe, c);
       }
+      retries++;
     }
+    chunkCreator.recordAllocation(retries);
     return copyBBECToChunkCell(cell, c.getData(), allocOffset, size);
   }
 
@@ -187,11 +219,13 @@ public class MemStoreLABImpl implements MemStoreLAB {
     if (size > maxAlloc) {
       return null;
     }
+    Stripe stripe = getStripe();
     Chunk c = null;
     int allocOffset = 0;
+    int retries = 0;
     while (true) {
       // Try to get the chunk
-      c = getOrMakeChunk();
+      c = getOrMakeChunk(stripe);
       // we may get null because the some other thread succeeded in getting the lock
       // and so the current thread has to try again to make its chunk or grab the chunk
       // that the other thread created
@@ -205,9 +239,11 @@ public class MemStoreLABImpl implements MemStoreLAB {
         }
         // not enough space!
         // try to retire this chunk
-        tryRetireChunk(c);
+        tryRetireChunk(stripe, c);
       }
+      retries++;
     }
+    chunkCreator.recordAllocation(retries);
     return copyToChunkCell(cell, c.getData(), allocOffset, size);
   }
 
@@ -303,44 +339,55 @@ public class MemStoreLABImpl implements MemStoreLAB {
    * curChunk.get() != c
    * @param c the chunk to retire
    */
-  private void tryRetireChunk(Chunk c) {
-    currChunk.compareAndSet(c, null);
-    // If the CAS succeeds, that means that we won the race
-    // to retire the chunk. We could use this opportunity to
-    // update metrics on external fragmentation.
-    //
+  private void tryRetireChunk(Stripe stripe, Chunk c) {
+    if (stripe.currChunk.compareAndSet(c, null)) {
+      // If the CAS succeeds, that means that we won the race
+      // to retire the chunk, so we account for the space left unused at its end.
+      chunkCreator.recordRetiredChunk(c);
+    }
     // If the CAS fails, that means that someone else already
     // retired the chunk for us.
   }
 
   /**
-   * Get the current chunk, or, if there is no current chunk, allocate a new one from the JVM.
+   * Returns the stripe of the calling thread.
    */
-  private Chunk getOrMakeChunk() {
+  private Stripe getStripe() {
+    if (stripes.length == 1) {
+      return stripes[0];
+    }
+    return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+  }
+
+  /**
+   * Get the current chunk of the stripe, or, if there is no current chunk, allocate a new one from
+   * the JVM.
+   */
+  private Chunk getOrMakeChunk(Stripe stripe) {
     // Try to get the chunk
-    Chunk c = currChunk.get();
+    Chunk c = stripe.currChunk.get();
     if (c != null) {
       return c;
     }
     // No current chunk, so we want to allocate one. We race
     // against other allocators to CAS in an uninitialized chunk
     // (which is cheap to allocate)
-    if (lock.tryLock()) {
+    if (stripe.lock.tryLock()) {
       try {
         // once again check inside the lock
-        c = currChunk.get();
+        c = stripe.currChunk.get();
         if (c != null) {
           return c;
         }
         c = this.chunkCreator.getChunk();
         if (c != null) {
           // set the curChunk. No need of CAS as only one thread will be here
-          currChunk.set(c);
+          stripe.currChunk.set(c);
           chunks.add(c.getId());
           return c;
         }
       } finally {
-        lock.unlock();
+        stripe.lock.unlock();
       }
     }
     return null;
@@ -393,8 +440,15 @@ public class MemStoreLABImpl implements MemStoreLAB {
     return this.chunkCreator.isOffheap();
   }
 
+  int getNumStripes() {
+    return stripes.length;
+  }
+
+  /**
+   * Returns the current chunk of the stripe of the calling thread.
+   */
   Chunk getCurrentChunk() {
-    return currChunk.get();
+    return getStripe().currChunk.get();
   }
 
   BlockingQueue<Chunk> getPooledChunks() {
@@ -229,6 +229,10 @@ public class MetricsRegionServer {
 
   }
 
+  public void updateStoreFlush(long t) {
+    serverSource.updateStoreFlushTime(t);
+  }
+
   public void updateCompaction(String table, boolean isMajor, long t, int inputFileCount,
     int outputFileCount, long inputBytes, long outputBytes) {
     serverSource.updateCompactionTime(isMajor, t);
@@ -41,6 +41,7 @@ import org.apache.hadoop.hbase.io.asyncfs.monitor.ExcludeDatanodeManager;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
 import org.apache.hadoop.hbase.io.hfile.CombinedBlockCache;
+import org.apache.hadoop.hbase.io.hfile.MissRatioCurve;
 import org.apache.hadoop.hbase.mob.MobFileCache;
 import org.apache.hadoop.hbase.regionserver.wal.MetricsWALSource;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
@@ -68,10 +69,12 @@ class MetricsRegionServerWrapperImpl implements MetricsRegionServerWrapper {
   private BlockCache blockCache;
   private BlockCache l1Cache = null;
   private BlockCache l2Cache = null;
+  private BlockCache l3Cache = null;
   private MobFileCache mobFileCache;
   private CacheStats cacheStats;
   private CacheStats l1Stats = null;
   private CacheStats l2Stats = null;
+  private CacheStats l3Stats = null;
 
   private volatile long numStores = 0;
   private volatile long numWALFiles = 0;
@@ -186,6 +189,12 @@ class MetricsRegionServerWrapperImpl implements MetricsRegionServerWrapper {
       } else {
         l1Cache = this.blockCache;
       }
+      // the lower tier of the L2 cache, with its own stats
+      BlockCache[] caches = this.blockCache.getBlockCaches();
+      if (caches != null && caches.length > 2) {
+        l3Cache = caches[2];
+        l3Stats = l3Cache.getStats();
+      }
     }
   }
 
@@ -378,11 +387,31 @@ class MetricsRegionServerWrapperImpl implements MetricsRegionServerWrapper {
     return (ratio * 100);
   }
 
+  @Override
+  public double getBlockCacheEstimatedHitPercent(double sizeMultiplier) {
+    MissRatioCurve curve = this.cacheStats != null ? this.cacheStats.getMissRatioCurve() : null;
+    if (curve == null) {
+      return 0;
+    }
+    return curve.getHitRatio(MissRatioCurve.getBlocks(this.blockCache, sizeMultiplier)) * 100;
+  }
+
+  @Override
+  public String getBlockCacheMissRatioCurve() {
+    MissRatioCurve curve = this.cacheStats != null ? this.cacheStats.getMissRatioCurve() : null;
+    return curve != null ? curve.getSummary(this.blockCache) : "";
+  }
+
   @Override
   public long getBlockCacheFailedInsertions() {
     return this.cacheStats != null ? this.cacheStats.getFailedInserts() : 0L;
   }
 
+  @Override
+  public long getBlockCacheRejectedAdmissions() {
+    return this.cacheStats != null ? this.cacheStats.getRejectedAdmissions() : 0L;
+  }
+
   public long getL1CacheSize() {
     return this.l1Cache != null ? this.l1Cache.getCurrentSize() : 0L;
   }
@@ -455,6 +484,46 @@ class MetricsRegionServerWrapperImpl implements MetricsRegionServerWrapper {
     return this.l2Stats != null ? this.l2Stats.getMissRatio() : 0.0;
   }
 
+  @Override
+  public long getL3CacheSize() {
+    return this.l3Cache != null ? this.l3Cache.getCurrentSize() : 0L;
+  }
+
+  @Override
+  public long getL3CacheFreeSize() {
+    return this.l3Cache != null ? this.l3Cache.getFreeSize() : 0L;
+  }
+
+  @Override
+  public long getL3CacheCount() {
+    return this.l3Cache != null ? this.l3Cache.getBlockCount() : 0L;
+  }
+
+  @Override
+  public long getL3CacheEvictedCount() {
+    return this.l3Stats != null ? this.l3Stats.getEvictedCount() : 0L;
+  }
+
+  @Override
+  public long getL3CacheHitCount() {
+    return this.l3Stats != null ? this.l3Stats.getHitCount() : 0L;
+  }
+
+  @Override
+  public long getL3CacheMissCount() {
+    return this.l3Stats != null ? this.l3Stats.getMissCount() : 0L;
+  }
+
+  @Override
+  public double getL3CacheHitRatio() {
+    return this.l3Stats != null ? this.l3Stats.getHitRatio() : 0.0;
+  }
+
+  @Override
+  public double getL3CacheMissRatio() {
+    return this.l3Stats != null ? this.l3Stats.getMissRatio() : 0.0;
+  }
+
   @Override
   public void forceRecompute() {
     this.runnable.run();
@@ -534,6 +603,18 @@ class MetricsRegionServerWrapperImpl implements MetricsRegionServerWrapper {
     return offHeapMemstoreSize;
   }
 
+  @Override
+  public long getMemStoreLABAllocationRetryCount() {
+    ChunkCreator chunkCreator = ChunkCreator.getInstance();
+    return chunkCreator != null ? chunkCreator.getAllocationRetryCount() : 0L;
+  }
+
+  @Override
+  public double getMemStoreLABWastePercent() {
+    ChunkCreator chunkCreator = ChunkCreator.getInstance();
+    return chunkCreator != null ? chunkCreator.getWastePercent() : 0;
+  }
+
   @Override
   public long getStoreFileSize() {
     return storeFileSize;
@@ -124,6 +124,16 @@ public class MutableSegment extends Segment {
 
   @Override
   protected long indexEntrySize() {
-    return ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY;
+    return indexEntrySize(getCellSet());
+  }
+
+  /**
+   * Returns the heap size of an index entry of a mutable segment, or of the not flat immutable
+   * segment it became, with the given cells
+   */
+  static long indexEntrySize(CellSet cellSet) {
+    return cellSet.getDelegatee() instanceof CellBTreeMap
+      ? CellBTreeMap.ENTRY_SIZE
+      : ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY;
   }
 }
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -278,6 +279,17 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
    */
   private static final boolean DEFAULT_REJECT_BATCH_ROWS_OVER_THRESHOLD = false;
 
+  /**
+   * Whether the contiguous Gets of a multi request for one region are read together, sharing one
+   * region scanner, see {@link HRegion#get(List)}. Off by default: the shared scanner is a range
+   * scan, so the rows it reads lose the lazy seek and the Bloom filter check of each store file a
+   * Get does on its own. It pays off for batches of existing rows close to each other.
+   */
+  static final String MULTI_GET_COALESCE_ENABLED_KEY =
+    "hbase.regionserver.multiget.coalesce.enabled";
+
+  static final boolean DEFAULT_MULTI_GET_COALESCE_ENABLED = false;
+
   // Request counter. (Includes requests that are not serviced by regions.)
   // Count only once for requests with multiple actions like multi/caching-scan/replayBatch
   final LongAdder requestCount = new LongAdder();
@@ -299,6 +311,8 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
 
   private volatile long maxScannerResultSize;
 
+  private volatile boolean multiGetCoalesceEnabled;
+
   private ScannerIdGenerator scannerIdGenerator;
   private final ConcurrentMap<String, RegionScannerHolder> scanners = new ConcurrentHashMap<>();
   // Hold the name of a closed scanner for a while. This is used to keep compatible for old clients
@@ -717,7 +731,17 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
     ClientProtos.ResultOrException.Builder resultOrExceptionBuilder =
       ResultOrException.newBuilder();
     boolean hasResultOrException = false;
-    for (ClientProtos.Action action : actions.getActionList()) {
+    // Results of the run of contiguous Gets read together, see coalesceGets, with the error reading
+    // them and the time and block bytes of each
+    Map<ClientProtos.Action, Result> coalescedGets = Collections.emptyMap();
+    IOException coalescedError = null;
+    long coalescedGetTime = 0;
+    long coalescedGetBlockBytes = 0;
+    int coalescedUntil = 0;
+    int position = -1;
+    List<ClientProtos.Action> actionList = actions.getActionList();
+    for (ClientProtos.Action action : actionList) {
+      position++;
       hasResultOrException = false;
       resultOrExceptionBuilder.clear();
       try {
@@ -768,20 +792,56 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
               + "Client is invoking getClosestRowBefore removed in hbase-2.0.0 replaced by "
               + "reverse Scan.");
           }
+          boolean coalesced = false;
           try {
-            Get get = ProtobufUtil.toGet(pbGet);
-            if (context != null) {
-              r = get(get, (region), closeCallBack, context);
-            } else {
-              r = region.get(get);
+            if (multiGetCoalesceEnabled && position >= coalescedUntil) {
+              coalescedUntil = getGetRunEnd(actionList, position);
+              coalescedError = null;
+              try {
+                coalescedGets = coalesceGets(region, actionList, position, coalescedUntil,
+                  getRemainingResultSize(context, maxQuotaResultSize));
+              } catch (IOException e) {
+                // the coprocessor hooks of the Gets may have run, so they are not run again
+                coalescedGets = Collections.emptyMap();
+                coalescedError = e;
+              }
+              if (coalescedError != null || !coalescedGets.isEmpty()) {
+                // charge each Get its share of the batch
+                int count = coalescedUntil - position;
+                coalescedGetTime = (EnvironmentEdgeManager.currentTime() - before) / count;
+                coalescedGetBlockBytes = context != null
+                  ? (context.getBlockBytesScanned() - blockBytesScannedBefore) / count
+                  : 0;
+              }
+            }
+            if (coalescedError != null && position < coalescedUntil) {
+              coalesced = true;
+              throw coalescedError;
+            }
+            coalesced = coalescedGets.containsKey(action);
+            r = coalescedGets.remove(action);
+            if (coalesced && r == null) {
+              throw new MultiActionResultTooLarge("Max size exceeded reading the Gets together");
+            }
+            if (r == null) {
+              Get get = ProtobufUtil.toGet(pbGet);
+              if (context != null) {
+                r = get(get, (region), closeCallBack, context);
+              } else {
+                r = region.get(get);
+              }
             }
           } finally {
             final MetricsRegionServer metricsRegionServer = server.getMetrics();
             if (metricsRegionServer != null) {
-              long blockBytesScanned =
-                context != null ? context.getBlockBytesScanned() - blockBytesScannedBefore : 0;
-              metricsRegionServer.updateGet(region, EnvironmentEdgeManager.currentTime() - before,
-                blockBytesScanned);
+              if (coalesced) {
+                metricsRegionServer.updateGet(region, coalescedGetTime, coalescedGetBlockBytes);
+              } else {
+                long blockBytesScanned =
+                  context != null ? context.getBlockBytesScanned() - blockBytesScannedBefore : 0;
+                metricsRegionServer.updateGet(region,
+                  EnvironmentEdgeManager.currentTime() - before, blockBytesScanned);
+              }
             }
           }
         } else if (action.hasServiceCall()) {
@@ -867,6 +927,62 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
     return cellsToReturn;
   }
 
+  /** Returns the end of the run of contiguous Gets starting at the given position */
+  private static int getGetRunEnd(List<ClientProtos.Action> actionList, int start) {
+    int end = start;
+    while (end < actionList.size() && actionList.get(end).hasGet()) {
+      ClientProtos.Get pbGet = actionList.get(end).getGet();
+      if (pbGet.hasClosestRowBefore() && pbGet.getClosestRowBefore()) {
+        break;
+      }
+      end++;
+    }
+    return end;
+  }
+
+  /** Returns how much more can be read before the response is too large, see multi */
+  private static long getRemainingResultSize(RpcCallContext context, long maxQuotaResultSize) {
+    if (context == null || !context.isRetryImmediatelySupported()) {
+      return Long.MAX_VALUE;
+    }
+    return Math.min(maxQuotaResultSize - context.getResponseCellSize(),
+      maxQuotaResultSize - context.getBlockBytesScanned() - context.getResponseExceptionSize());
+  }
+
+  /**
+   * Reads the Gets between the given positions of the action list together with
+   * {@link HRegion#get(List, long)}, so that a multi-get of clustered rows costs about as much as a
+   * short scan. Stops reading once maxResultSize is reached, leaving the remaining Gets with a null
+   * result. Returns the results by action, or an empty map if there are too few Gets or one of them
+   * is invalid, in which case every Get runs on its own and reports its own error. An error reading
+   * the Gets is thrown, and then applies to all of them, as their coprocessor hooks may have run.
+   */
+  private Map<ClientProtos.Action, Result> coalesceGets(HRegion region,
+    List<ClientProtos.Action> actionList, int start, int end, long maxResultSize)
+    throws IOException {
+    if (end - start < 2) {
+      return Collections.emptyMap();
+    }
+    List<Get> gets = new ArrayList<>(end - start);
+    try {
+      for (int i = start; i < end; i++) {
+        Get get = ProtobufUtil.toGet(actionList.get(i).getGet());
+        region.prepareGet(get);
+        gets.add(get);
+      }
+    } catch (IOException e) {
+      LOG.debug("Invalid get in the {} gets of region {}, reading them one by one", end - start,
+        region.getRegionInfo().getEncodedName(), e);
+      return Collections.emptyMap();
+    }
+    List<Result> results = region.get(gets, maxResultSize);
+    Map<ClientProtos.Action, Result> coalesced = new IdentityHashMap<>(gets.size());
+    for (int i = start; i < end; i++) {
+      coalesced.put(actionList.get(i), results.get(i - start));
+    }
+    return coalesced;
+  }
+
   private void checkCellSizeLimit(final HRegion r, final Mutation m) throws IOException {
     if (r.maxCellSize > 0) {
       CellScanner cells = m.cellScanner();
@@ -2527,29 +2643,21 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
           stale);
       }
     }
-    Scan scan = new Scan(get);
-    if (scan.getLoadColumnFamiliesOnDemandValue() == null) {
-      scan.setLoadColumnFamiliesOnDemand(region.isLoadingCfsOnDemandDefault());
-    }
-    RegionScannerImpl scanner = null;
-    try {
-      scanner = region.getScanner(scan);
-      scanner.next(results);
-    } finally {
-      if (scanner != null) {
-        if (closeCallBack == null) {
-          // If there is a context then the scanner can be added to the current
-          // RpcCallContext. The rpc callback will take care of closing the
-          // scanner, for eg in case
-          // of get()
-          context.setCallBack(scanner);
-        } else {
-          // The call is from multi() where the results from the get() are
-          // aggregated and then send out to the
-          // rpc. The rpccall back will close all such scanners created as part
-          // of multi().
-          closeCallBack.addScanner(scanner);
-        }
+    RegionScannerImpl scanner =
+      region.readRow(get, results, HConstants.NO_NONCE, HConstants.NO_NONCE);
+    if (scanner != null) {
+      if (closeCallBack == null) {
+        // If there is a context then the scanner can be added to the current
+        // RpcCallContext. The rpc callback will take care of closing the
+        // scanner, for eg in case
+        // of get()
+        context.setCallBack(scanner);
+      } else {
+        // The call is from multi() where the results from the get() are
+        // aggregated and then send out to the
+        // rpc. The rpccall back will close all such scanners created as part
+        // of multi().
+        closeCallBack.addScanner(scanner);
       }
     }
 
@@ -3926,6 +4034,8 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
       conf.getBoolean(REJECT_BATCH_ROWS_OVER_THRESHOLD, DEFAULT_REJECT_BATCH_ROWS_OVER_THRESHOLD);
     maxScannerResultSize = conf.getLong(HConstants.HBASE_SERVER_SCANNER_MAX_RESULT_SIZE_KEY,
       HConstants.DEFAULT_HBASE_SERVER_SCANNER_MAX_RESULT_SIZE);
+    multiGetCoalesceEnabled =
+      conf.getBoolean(MULTI_GET_COALESCE_ENABLED_KEY, DEFAULT_MULTI_GET_COALESCE_ENABLED);
   }
 
   @Override
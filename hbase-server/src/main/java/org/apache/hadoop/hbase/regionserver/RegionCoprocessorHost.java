@@ -107,6 +107,17 @@ public class RegionCoprocessorHost
     return hasCustomPostScannerFilterRow;
   }
 
+  // optimization: the recovered edits can be applied in batches, if no coprocessor implements
+  // postWALRestore, which is to run once the cells of each edit are applied
+  private final boolean hasCustomPostWALRestore;
+
+  /*
+   * Whether any configured CPs override postWALRestore hook
+   */
+  public boolean hasCustomPostWALRestore() {
+    return hasCustomPostWALRestore;
+  }
+
   /**
    * Encapsulation of the environment of each coprocessor
    */
@@ -307,6 +318,26 @@ public class RegionCoprocessorHost
       }
     }
     this.hasCustomPostScannerFilterRow = hasCustomPostScannerFilterRow;
+    this.hasCustomPostWALRestore = hasCustomRegionObserverMethod("postWALRestore",
+      ObserverContext.class, RegionInfo.class, WALKey.class, WALEdit.class);
+  }
+
+  /** Returns whether any of the region observers loaded declares the given method */
+  private boolean hasCustomRegionObserverMethod(String name, Class<?>... parameterTypes) {
+    for (RegionCoprocessorEnvironment env : coprocEnvironments) {
+      if (!(env.getInstance() instanceof RegionObserver)) {
+        continue;
+      }
+      for (Class<?> clazz = env.getInstance().getClass(); clazz != Object.class;
+        clazz = clazz.getSuperclass()) {
+        try {
+          clazz.getDeclaredMethod(name, parameterTypes);
+          return true;
+        } catch (NoSuchMethodException ignore) {
+        }
+      }
+    }
+    return false;
   }
 
   static List<TableCoprocessorAttribute> getTableCoprocessorAttrsFromSchema(Configuration conf,
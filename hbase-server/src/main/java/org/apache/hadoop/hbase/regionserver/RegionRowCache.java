@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.TagType;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.IsolationLevel;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * The view of the {@link RowCache} of one opened region.
+ * <p>
+ * Rows are not removed from the cache when they change. Instead every row hashes to one of a fixed
+ * number of version counters, which the mutation path bumps once the mutation is visible to
+ * readers, and a cached row is only served if it was loaded under the current version of its
+ * counter. A Get reads the version before it opens its scanner, so a row loaded concurrently with a
+ * mutation is stamped with the old version and never served. Bulk loads and flushes bump all the
+ * counters. Stale entries are dropped when next looked up, or evicted like any other entry.
+ * <p>
+ * Each opened region gets its own id, so entries left by a previous open of the same region on this
+ * server can not be served either.
+ * <p>
+ * Rows with cells carrying a TTL tag are not cached, as nothing would expire them.
+ */
+@InterfaceAudience.Private
+class RegionRowCache {
+  private static final int VERSION_STRIPES = 1024;
+
+  private final RowCache rowCache;
+  private final long regionId;
+  private final Set<byte[]> families;
+  private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+  RegionRowCache(RowCache rowCache, long regionId, Set<byte[]> families) {
+    this.rowCache = rowCache;
+    this.regionId = regionId;
+    this.families = families;
+  }
+
+  /**
+   * Returns true if the result of the given Get can be served from, and stored in, the row cache.
+   * Only Gets for the latest version of whole families or explicit columns of families that use the
+   * row cache qualify. Gets with a filter, which includes the ones rewritten by the access control
+   * and visibility label coprocessors, are never cached.
+   */
+  boolean isCacheable(Get get) {
+    if (
+      get.getFilter() != null || get.getMaxVersions() != 1 || !get.getTimeRange().isAllTime()
+        || !get.getColumnFamilyTimeRange().isEmpty() || get.getMaxResultsPerColumnFamily() >= 0
+        || get.getRowOffsetPerColumnFamily() > 0 || !get.getCacheBlocks()
+        || get.getIsolationLevel() != IsolationLevel.READ_COMMITTED || !get.hasFamilies()
+    ) {
+      return false;
+    }
+    for (byte[] family : get.familySet()) {
+      if (!families.contains(family)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the current version of the given row, to be passed to {@link #cache(Get, long, List)}
+   * once the row has been read.
+   */
+  long getVersion(byte[] row) {
+    return versions.get(stripe(row));
+  }
+
+  /**
+   * Returns the cached cells for the given Get, or null on a miss.
+   */
+  List<Cell> get(Get get) {
+    byte[] row = get.getRow();
+    return rowCache.get(regionId, row, shapeOf(get), getVersion(row));
+  }
+
+  /**
+   * Caches the cells read for the given Get, unless one of them carries a TTL tag.
+   * @param version the version of the row returned by {@link #getVersion(byte[])} before it was
+   *                read
+   */
+  void cache(Get get, long version, List<Cell> cells) {
+    List<Cell> copy = new ArrayList<>(cells.size());
+    for (Cell cell : cells) {
+      if (hasTTL(cell)) {
+        return;
+      }
+      // Detach the cells from the blocks they were read from
+      copy.add(KeyValueUtil.copyToNewKeyValue(cell));
+    }
+    rowCache.put(regionId, get.getRow(), shapeOf(get), version, Collections.unmodifiableList(copy));
+  }
+
+  /**
+   * Invalidates the cached results of the given row. Must be called after the change to the row is
+   * visible to readers.
+   */
+  void invalidate(byte[] row) {
+    versions.incrementAndGet(stripe(row));
+  }
+
+  /** Invalidates the cached results of all the rows of the region */
+  void invalidateAll() {
+    for (int i = 0; i < VERSION_STRIPES; i++) {
+      versions.incrementAndGet(i);
+    }
+  }
+
+  /** Drops all the cached results of the region, once it is closed */
+  void close() {
+    invalidateAll();
+    rowCache.removeRegion(regionId);
+  }
+
+  private static boolean hasTTL(Cell cell) {
+    return cell.getTagsLength() > 0
+      && PrivateCellUtil.getTag(cell, TagType.TTL_TAG_TYPE).isPresent();
+  }
+
+  private static int stripe(byte[] row) {
+    int h = Bytes.hashCode(row) * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & (VERSION_STRIPES - 1);
+  }
+
+  /**
+   * Encodes the columns read by a Get, so that Gets on the same row for different columns are
+   * cached separately.
+   */
+  private static byte[] shapeOf(Get get) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (Map.Entry<byte[], NavigableSet<byte[]>> entry : get.getFamilyMap().entrySet()) {
+      writeBytes(out, entry.getKey());
+      NavigableSet<byte[]> qualifiers = entry.getValue();
+      if (qualifiers == null) {
+        writeInt(out, -1);
+      } else {
+        writeInt(out, qualifiers.size());
+        for (byte[] qualifier : qualifiers) {
+          writeBytes(out, qualifier);
+        }
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+    writeInt(out, bytes.length);
+    out.write(bytes, 0, bytes.length);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    out.write(Bytes.toBytes(value), 0, Bytes.SIZEOF_INT);
+  }
+}
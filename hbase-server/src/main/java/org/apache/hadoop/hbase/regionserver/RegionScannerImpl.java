@@ -790,6 +790,17 @@ class RegionScannerImpl implements RegionScanner, Shipper, RpcCallback {
     }, () -> region.createRegionSpan("RegionScanner.reseek"));
   }
 
+  /**
+   * Reseeks to the given row unless the scanner is already at it or past it. Lets the Gets of a
+   * batch share this scanner, see HRegion#get(List).
+   */
+  synchronized void reseekForward(byte[] row) throws IOException {
+    Cell current = storeHeap.peek();
+    if (current != null && comparator.compareRows(current, row, 0, row.length) < 0) {
+      reseek(row);
+    }
+  }
+
   @Override
   public void shipped() throws IOException {
     if (storeHeap != null) {
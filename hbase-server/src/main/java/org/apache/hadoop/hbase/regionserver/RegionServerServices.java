@@ -274,6 +274,9 @@ public interface RegionServerServices extends Server, MutableOnlineRegions, Favo
   /** Returns The cache for mob files. */
   Optional<MobFileCache> getMobFileCache();
 
+  /** Returns The cache of point Get results, empty if it is disabled. */
+  Optional<RowCache> getRowCache();
+
   /** Returns the {@link AccessChecker} */
   AccessChecker getAccessChecker();
 
@@ -42,6 +42,7 @@ public class RegionServicesForStores {
   private final HRegion region;
   private final RegionServerServices rsServices;
   private int inMemoryPoolSize;
+  private int inMemoryIndexPoolSize;
 
   public RegionServicesForStores(HRegion region, RegionServerServices rsServices) {
     this.region = region;
@@ -50,6 +51,9 @@ public class RegionServicesForStores {
       this.inMemoryPoolSize =
         rsServices.getConfiguration().getInt(CompactingMemStore.IN_MEMORY_CONPACTION_POOL_SIZE_KEY,
           CompactingMemStore.IN_MEMORY_CONPACTION_POOL_SIZE_DEFAULT);
+      this.inMemoryIndexPoolSize = rsServices.getConfiguration().getInt(
+        CompactingMemStore.IN_MEMORY_COMPACTION_INDEX_POOL_SIZE_KEY,
+        CompactingMemStore.IN_MEMORY_COMPACTION_INDEX_POOL_SIZE_DEFAULT);
     }
   }
 
@@ -83,6 +87,11 @@ public class RegionServicesForStores {
     }
   }
 
+  /** Returns the executors of the region server, or null when not running in one */
+  ExecutorService getExecutorService() {
+    return rsServices != null ? rsServices.getExecutorService() : null;
+  }
+
   private static ThreadPoolExecutor INMEMORY_COMPACTION_POOL_FOR_TEST;
 
   private static synchronized ThreadPoolExecutor getInMemoryCompactionPoolForTest() {
@@ -106,6 +115,22 @@ public class RegionServicesForStores {
     }
   }
 
+  /**
+   * Returns the pool indexing the key ranges of the segments flattened or merged into a
+   * CellChunkMap, shared by all the stores, or null when not running in a region server, the
+   * segments being then indexed by the calling thread.
+   */
+  ThreadPoolExecutor getInMemoryCompactionIndexPool() {
+    if (rsServices == null) {
+      return null;
+    }
+    ExecutorService executorService = rsServices.getExecutorService();
+    ExecutorConfig config = executorService.new ExecutorConfig()
+      .setExecutorType(ExecutorType.RS_IN_MEMORY_COMPACTION_INDEX)
+      .setCorePoolSize(inMemoryIndexPoolSize).setAllowCoreThreadTimeout(true);
+    return executorService.getExecutorLazily(config);
+  }
+
   public long getMemStoreFlushSize() {
     return region.getMemStoreFlushSize();
   }
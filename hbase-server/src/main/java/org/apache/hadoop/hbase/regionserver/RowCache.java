@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.io.util.MemorySizeUtil;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A region server wide cache of the merged results of point
+ * {@link org.apache.hadoop.hbase.client.Get}s, keyed by region, row and the columns asked for. A
+ * hit is served without opening any store scanner, which saves the memstore and store file seeks
+ * and the block decoding a Get on a hot row otherwise pays every time.
+ * <p>
+ * The cache is sized as a fraction of the heap with {@link #ROW_CACHE_SIZE_KEY}, like the on heap
+ * block cache, and evicts with the W-TinyLFU policy of Caffeine, like
+ * {@link org.apache.hadoop.hbase.io.hfile.TinyLfuBlockCache}. It is disabled by default. Column
+ * families opt in by setting {@link #ROW_CACHE_ENABLED_KEY} to true in their configuration, and a
+ * Get is only cached if all the families it reads have opted in. Families with a TTL never use the
+ * row cache, since cells could expire while their row is cached.
+ * <p>
+ * Each region reads and invalidates the cache through its own {@link RegionRowCache}.
+ */
+@InterfaceAudience.Private
+public class RowCache {
+  private static final Logger LOG = LoggerFactory.getLogger(RowCache.class);
+
+  /** Fraction of the heap given to the row cache, 0 disables it */
+  public static final String ROW_CACHE_SIZE_KEY = "hbase.regionserver.row.cache.size";
+  public static final float ROW_CACHE_SIZE_DEFAULT = 0f;
+
+  /** Rows larger than this, in bytes, are never cached */
+  public static final String ROW_CACHE_MAX_ROW_SIZE_KEY =
+    "hbase.regionserver.row.cache.max.row.size";
+  public static final long ROW_CACHE_MAX_ROW_SIZE_DEFAULT = 128 * 1024;
+
+  /** Column family configuration key to cache the rows of the family */
+  public static final String ROW_CACHE_ENABLED_KEY = "hbase.row.cache.enabled";
+
+  private final Cache<Key, Entry> cache;
+  private final long maxSize;
+  private final long maxRowSize;
+  private final AtomicLong nextRegionId = new AtomicLong();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+
+  RowCache(long maxSize, long maxRowSize) {
+    this.maxSize = maxSize;
+    this.maxRowSize = maxRowSize;
+    this.cache = Caffeine.newBuilder().maximumWeight(maxSize)
+      .weigher((Key key, Entry entry) -> (int) Math.min(entry.heapSize, Integer.MAX_VALUE)).build();
+  }
+
+  /**
+   * Creates the row cache of a region server.
+   * @return the row cache, or null if it is disabled
+   */
+  public static RowCache create(Configuration conf) {
+    float fraction = conf.getFloat(ROW_CACHE_SIZE_KEY, ROW_CACHE_SIZE_DEFAULT);
+    if (fraction <= 0) {
+      return null;
+    }
+    if (fraction >= 1) {
+      throw new IllegalArgumentException(ROW_CACHE_SIZE_KEY + " must be between 0.0 and 1.0");
+    }
+    MemoryUsage usage = MemorySizeUtil.safeGetHeapMemoryUsage();
+    if (usage == null || usage.getMax() <= 0) {
+      LOG.warn("Can not get the max heap size, row cache is disabled");
+      return null;
+    }
+    long maxSize = (long) (usage.getMax() * fraction);
+    long maxRowSize = conf.getLong(ROW_CACHE_MAX_ROW_SIZE_KEY, ROW_CACHE_MAX_ROW_SIZE_DEFAULT);
+    LOG.info("Allocating row cache size={}, maxRowSize={}", StringUtils.byteDesc(maxSize),
+      StringUtils.byteDesc(maxRowSize));
+    return new RowCache(maxSize, maxRowSize);
+  }
+
+  /** Returns true if the rows of the given family may be cached */
+  static boolean isEnabled(ColumnFamilyDescriptor family) {
+    return Boolean.parseBoolean(family.getConfigurationValue(ROW_CACHE_ENABLED_KEY))
+      && family.getTimeToLive() == HConstants.FOREVER;
+  }
+
+  /**
+   * Returns the view of the cache for a newly opened region of the given table, or null if none of
+   * the families of the table use the row cache.
+   */
+  RegionRowCache forRegion(TableDescriptor htd) {
+    Set<byte[]> families = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+    for (ColumnFamilyDescriptor family : htd.getColumnFamilies()) {
+      if (isEnabled(family)) {
+        families.add(family.getName());
+      }
+    }
+    return families.isEmpty()
+      ? null
+      : new RegionRowCache(this, nextRegionId.incrementAndGet(), families);
+  }
+
+  List<Cell> get(long regionId, byte[] row, byte[] shape, long version) {
+    Key key = new Key(regionId, row, shape);
+    Entry entry = cache.getIfPresent(key);
+    if (entry == null) {
+      missCount.increment();
+      return null;
+    }
+    if (entry.version != version) {
+      // The row was changed after this entry was loaded
+      cache.asMap().remove(key, entry);
+      missCount.increment();
+      return null;
+    }
+    hitCount.increment();
+    return entry.cells;
+  }
+
+  void put(long regionId, byte[] row, byte[] shape, long version, List<Cell> cells) {
+    long heapSize = Entry.FIXED_OVERHEAD + ClassSize.align(ClassSize.ARRAY + row.length)
+      + ClassSize.align(ClassSize.ARRAY + shape.length)
+      + ClassSize.align(ClassSize.ARRAY + (long) cells.size() * ClassSize.REFERENCE);
+    for (Cell cell : cells) {
+      heapSize += cell.heapSize();
+    }
+    if (heapSize > maxRowSize) {
+      return;
+    }
+    cache.put(new Key(regionId, row, shape), new Entry(cells, version, heapSize));
+  }
+
+  /** Drops all the entries of a closed region */
+  void removeRegion(long regionId) {
+    cache.asMap().keySet().removeIf(key -> key.regionId == regionId);
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  public long getCurrentSize() {
+    return cache.policy().eviction().get().weightedSize().getAsLong();
+  }
+
+  public long getEntryCount() {
+    return cache.estimatedSize();
+  }
+
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /** Waits for pending evictions, for tests */
+  void cleanUp() {
+    cache.cleanUp();
+  }
+
+  private static final class Key {
+    private final long regionId;
+    private final byte[] row;
+    private final byte[] shape;
+    private final int hashCode;
+
+    Key(long regionId, byte[] row, byte[] shape) {
+      this.regionId = regionId;
+      this.row = row;
+      this.shape = shape;
+      this.hashCode =
+        31 * (31 * Long.hashCode(regionId) + Bytes.hashCode(row)) + Bytes.hashCode(shape);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return regionId == other.regionId && hashCode == other.hashCode
+        && Arrays.equals(row, other.row) && Arrays.equals(shape, other.shape);
+    }
+  }
+
+  private static final class Entry {
+    static final long FIXED_OVERHEAD = ClassSize
+      .align(2 * ClassSize.OBJECT + 3 * ClassSize.REFERENCE + 3 * Long.BYTES + Integer.BYTES);
+
+    private final List<Cell> cells;
+    private final long version;
+    private final long heapSize;
+
+    Entry(List<Cell> cells, long version, long heapSize) {
+      this.cells = cells;
+      this.version = version;
+      this.heapSize = heapSize;
+    }
+  }
+}
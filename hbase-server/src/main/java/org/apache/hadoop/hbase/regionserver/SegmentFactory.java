@@ -20,6 +20,8 @@ package org.apache.hadoop.hbase.regionserver;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadPoolExecutor;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.CellComparator;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -30,6 +32,18 @@ import org.apache.yetus.audience.InterfaceAudience;
 @InterfaceAudience.Private
 public final class SegmentFactory {
 
+  // The index of the active segment of the memstore, which may be set per column family
+  public static final String MUTABLE_SEGMENT_INDEX_KEY = "hbase.hregion.memstore.mutable.index";
+  public static final String MUTABLE_SEGMENT_INDEX_DEFAULT = String.valueOf(MutableIndexType.CSLM);
+
+  /**
+   * Types of indexes of the active (mutable) segment
+   */
+  public enum MutableIndexType {
+    CSLM, // ConcurrentSkipListMap
+    BTREE // CellBTreeMap, smaller index and faster scans for small cells
+  }
+
   private SegmentFactory() {
   }
 
@@ -87,23 +101,35 @@ public final class SegmentFactory {
   public ImmutableSegment createImmutableSegmentByMerge(final Configuration conf,
     final CellComparator comparator, MemStoreSegmentsIterator iterator, int numOfCells,
     List<ImmutableSegment> segments, CompactingMemStore.IndexType idxType,
-    MemStoreCompactionStrategy.Action action) throws IOException {
+    MemStoreCompactionStrategy.Action action, ThreadPoolExecutor indexPool) throws IOException {
 
     MemStoreLAB memStoreLAB = getMergedMemStoreLAB(conf, segments);
+    if (idxType == CompactingMemStore.IndexType.CHUNK_MAP && indexPool != null) {
+      int ranges = CellChunkImmutableSegment.getIndexRanges(conf, numOfCells);
+      if (ranges > 1 && CellChunkImmutableSegment.canMergeInRanges(segments)) {
+        // merge key ranges of the segments in parallel, instead of going through the iterator
+        return new CellChunkImmutableSegment(comparator, segments, memStoreLAB, action, ranges,
+          indexPool);
+      }
+    }
     return createImmutableSegment(conf, comparator, iterator, memStoreLAB, numOfCells, action,
       idxType);
 
   }
 
   // create flat immutable segment from non-flat immutable segment
-  // for flattening
-  public ImmutableSegment createImmutableSegmentByFlattening(CSLMImmutableSegment segment,
-    CompactingMemStore.IndexType idxType, MemStoreSizing memstoreSizing,
-    MemStoreCompactionStrategy.Action action) {
+  // for flattening, by several threads of the index pool if the configuration allows it
+  public ImmutableSegment createImmutableSegmentByFlattening(final Configuration conf,
+    CSLMImmutableSegment segment, CompactingMemStore.IndexType idxType,
+    MemStoreSizing memstoreSizing, MemStoreCompactionStrategy.Action action,
+    ThreadPoolExecutor indexPool) {
     ImmutableSegment res = null;
     switch (idxType) {
       case CHUNK_MAP:
-        res = new CellChunkImmutableSegment(segment, memstoreSizing, action);
+        int ranges = indexPool != null
+          ? CellChunkImmutableSegment.getIndexRanges(conf, segment.getCellsCount())
+          : 1;
+        res = new CellChunkImmutableSegment(segment, memstoreSizing, action, ranges, indexPool);
         break;
       case CSLM_MAP:
         assert false; // non-flat segment can not be the result of flattening
@@ -138,11 +164,23 @@ public final class SegmentFactory {
 
   private MutableSegment generateMutableSegment(final Configuration conf, CellComparator comparator,
     MemStoreLAB memStoreLAB, MemStoreSizing memstoreSizing) {
-    // TBD use configuration to set type of segment
-    CellSet set = new CellSet(comparator);
+    CellSet set;
+    if (getMutableIndexType(conf) == MutableIndexType.BTREE) {
+      set = new CellSet(new CellBTreeMap(comparator.getSimpleComparator()));
+    } else {
+      set = new CellSet(comparator);
+    }
     return new MutableSegment(set, comparator, memStoreLAB, memstoreSizing);
   }
 
+  private static MutableIndexType getMutableIndexType(Configuration conf) {
+    if (conf == null) {
+      return MutableIndexType.CSLM;
+    }
+    return MutableIndexType.valueOf(
+      conf.get(MUTABLE_SEGMENT_INDEX_KEY, MUTABLE_SEGMENT_INDEX_DEFAULT).toUpperCase(Locale.ROOT));
+  }
+
   private MemStoreLAB getMergedMemStoreLAB(Configuration conf, List<ImmutableSegment> segments) {
     List<MemStoreLAB> mslabs = new ArrayList<>();
     if (!conf.getBoolean(MemStoreLAB.USEMSLAB_KEY, MemStoreLAB.USEMSLAB_DEFAULT)) {
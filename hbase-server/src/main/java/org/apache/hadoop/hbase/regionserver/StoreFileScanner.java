@@ -118,6 +118,8 @@ public class StoreFileScanner implements KeyValueScanner {
     }
     List<StoreFileScanner> scanners = new ArrayList<>(files.size());
     boolean canOptimizeForNonNullColumn = matcher != null ? !matcher.hasNullColumnInQuery() : false;
+    TimeRange blockSkipTimeRange =
+      matcher != null && !isCompaction ? matcher.getBlockSkipTimeRange() : null;
     PriorityQueue<HStoreFile> sortedFiles =
       new PriorityQueue<>(files.size(), StoreFileComparators.SEQ_ID);
     for (HStoreFile file : files) {
@@ -137,6 +139,9 @@ public class StoreFileScanner implements KeyValueScanner {
             canOptimizeForNonNullColumn);
         }
         scanners.add(scanner);
+        if (blockSkipTimeRange != null) {
+          scanner.hfs.setBlockSkipTimeRange(blockSkipTimeRange);
+        }
       }
       succ = true;
     } finally {
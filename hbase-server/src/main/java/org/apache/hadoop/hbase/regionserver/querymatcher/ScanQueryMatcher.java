@@ -33,6 +33,7 @@ import org.apache.hadoop.hbase.Tag;
 import org.apache.hadoop.hbase.TagType;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.regionserver.RegionCoprocessorHost;
 import org.apache.hadoop.hbase.regionserver.ScanInfo;
 import org.apache.hadoop.hbase.regionserver.ShipperListener;
@@ -332,6 +333,14 @@ public abstract class ScanQueryMatcher implements ShipperListener {
   /** Returns the Filter */
   public abstract Filter getFilter();
 
+  /**
+   * Returns the time range out of which the store files may skip whole data blocks, or null if all
+   * data blocks have to be read.
+   */
+  public TimeRange getBlockSkipTimeRange() {
+    return null;
+  }
+
   /**
    * Delegate to {@link Filter#getNextCellHint(Cell)}. If no filter, return {@code null}.
    */
@@ -103,6 +103,12 @@ public abstract class UserScanQueryMatcher extends ScanQueryMatcher {
     return filter;
   }
 
+  @Override
+  public TimeRange getBlockSkipTimeRange() {
+    // Filters may keep state across the rows they see, so all rows are read when there is one
+    return filter == null && !tr.isAllTime() ? tr : null;
+  }
+
   @Override
   public Cell getNextKeyHint(Cell cell) throws IOException {
     if (filter == null) {
@@ -72,6 +72,9 @@ public abstract class AbstractProtobufLogWriter {
 
   protected AtomicLong length = new AtomicLong();
 
+  // the dictionary the values are compressed with, if any
+  private Path valueCompressionDictionary;
+
   private WALCellCodec getCodec(Configuration conf, CompressionContext compressionContext)
     throws IOException {
     return WALCellCodec.create(conf, null, compressionContext);
@@ -144,9 +147,19 @@ public abstract class AbstractProtobufLogWriter {
             path, CommonFSUtils.isRecoveredEdits(path), useTagCompression, useValueCompression,
             valueCompressionType);
         }
-        this.compressionContext =
-          new CompressionContext(LRUDictionary.class, CommonFSUtils.isRecoveredEdits(path),
-            useTagCompression, useValueCompression, valueCompressionType);
+        // recovered edits live in the region directories, out of reach of the dictionary cleaner
+        WALValueDictionaries valueDictionaries =
+          useValueCompression && !CommonFSUtils.isRecoveredEdits(path)
+            ? WALValueDictionaries.get(conf)
+            : null;
+        Path valueDictionary = valueDictionaries != null ? valueDictionaries.getDictionary() : null;
+        this.compressionContext = new CompressionContext(LRUDictionary.class,
+          CommonFSUtils.isRecoveredEdits(path), useTagCompression, useValueCompression,
+          valueCompressionType, valueDictionary != null
+            ? WALValueDictionaries.getDictionaryConf(conf, valueDictionary)
+            : null);
+        this.compressionContext.setValueSampler(valueDictionaries);
+        this.valueCompressionDictionary = valueDictionary;
       } catch (Exception e) {
         throw new IOException("Failed to initiate CompressionContext", e);
       }
@@ -175,6 +188,11 @@ public abstract class AbstractProtobufLogWriter {
       if (doValueCompress) {
         headerBuilder.setValueCompressionAlgorithm(
           CompressionContext.getValueCompressionAlgorithm(conf).ordinal());
+        if (valueCompressionDictionary != null) {
+          headerBuilder.setValueCompressionDictionaryId(
+            WALValueDictionaries.getDictionaryId(valueCompressionDictionary));
+          headerBuilder.setValueCompressionDictionaryPath(valueCompressionDictionary.toString());
+        }
       }
       if (conf.getBoolean(HConstants.ENABLE_WAL_ENCRYPTION, false)) {
         length.set(writeMagicAndWALHeader(PB_WAL_MAGIC, buildSecureWALHeader(conf, headerBuilder)));
@@ -189,7 +207,8 @@ public abstract class AbstractProtobufLogWriter {
 
       if (LOG.isTraceEnabled()) {
         LOG.trace("Initialized protobuf WAL={}, compression={}, tagCompression={}"
-          + ", valueCompression={}", path, doCompress, doTagCompress, doValueCompress);
+          + ", valueCompression={}, valueCompressionDictionary={}", path, doCompress,
+          doTagCompress, doValueCompress, valueCompressionDictionary);
       }
     } catch (Exception e) {
       LOG.warn("Init output failed, path={}", path, e);
@@ -317,17 +317,23 @@ public abstract class AbstractProtobufWALReader
         throw new IOException("Invalid compression type", e);
       }
     }
+    Path valueDictionary =
+      hasValueCompression ? WALValueDictionaries.getDictionary(conf, header) : null;
+    Configuration valueDictionaryConf = valueDictionary != null
+      ? WALValueDictionaries.getDictionaryConf(conf, valueDictionary)
+      : null;
     if (LOG.isDebugEnabled()) {
       LOG.debug(
         "Initializing compression context for {}: isRecoveredEdits={}"
-          + ", hasTagCompression={}, hasValueCompression={}, valueCompressionType={}",
+          + ", hasTagCompression={}, hasValueCompression={}, valueCompressionType={}"
+          + ", valueCompressionDictionary={}",
         path, CommonFSUtils.isRecoveredEdits(path), hasTagCompression, hasValueCompression,
-        valueCompressionType);
+        valueCompressionType, valueDictionary);
     }
     try {
-      compressionCtx =
-        new CompressionContext(LRUDictionary.class, CommonFSUtils.isRecoveredEdits(path),
-          hasTagCompression, hasValueCompression, valueCompressionType);
+      compressionCtx = new CompressionContext(LRUDictionary.class,
+        CommonFSUtils.isRecoveredEdits(path), hasTagCompression, hasValueCompression,
+        valueCompressionType, valueDictionaryConf);
     } catch (Exception e) {
       throw new IOException("Failed to initialize CompressionContext", e);
     }
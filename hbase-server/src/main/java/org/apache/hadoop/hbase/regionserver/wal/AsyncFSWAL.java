@@ -135,6 +135,21 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
   public static final String WAL_BATCH_SIZE = "hbase.wal.batch.size";
   public static final long DEFAULT_WAL_BATCH_SIZE = 64L * 1024;
 
+  /**
+   * The 99th percentile of the sync latency, in microseconds, to aim for when holding the sync
+   * requests to sync more data at once, see {@link SyncBatchController}. 0, the default, syncs as
+   * soon as requested. The requests forcing an hsync, all of them with hbase.wal.hsync, are never
+   * held.
+   */
+  public static final String WAL_SYNC_BATCH_TARGET_LATENCY_US =
+    "hbase.wal.async.sync.batch.target.latency.us";
+  public static final long DEFAULT_WAL_SYNC_BATCH_TARGET_LATENCY_US = 0;
+
+  /** The longest time, in microseconds, to hold the sync requests */
+  public static final String WAL_SYNC_BATCH_MAX_WINDOW_US =
+    "hbase.wal.async.sync.batch.max.window.us";
+  public static final long DEFAULT_WAL_SYNC_BATCH_MAX_WINDOW_US = 2000;
+
   public static final String ASYNC_WAL_USE_SHARED_EVENT_LOOP =
     "hbase.wal.async.use-shared-event-loop";
   public static final boolean DEFAULT_ASYNC_WAL_USE_SHARED_EVENT_LOOP = false;
@@ -178,6 +193,11 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
 
   private final long batchSize;
 
+  private final SyncBatchController syncBatchController;
+
+  // whether the consumer is to be scheduled again at the end of the batch window of a held sync
+  private final AtomicBoolean syncBatchTimerScheduled = new AtomicBoolean(false);
+
   private volatile AsyncFSOutput fsOut;
 
   private final Deque<FSWALEntry> toWriteAppends = new ArrayDeque<>();
@@ -256,6 +276,11 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
     waitingConsumePayloadsGatingSequence.set(waitingConsumePayloads.getCursor());
 
     batchSize = conf.getLong(WAL_BATCH_SIZE, DEFAULT_WAL_BATCH_SIZE);
+    syncBatchController = new SyncBatchController(
+      TimeUnit.MICROSECONDS.toNanos(
+        conf.getLong(WAL_SYNC_BATCH_TARGET_LATENCY_US, DEFAULT_WAL_SYNC_BATCH_TARGET_LATENCY_US)),
+      TimeUnit.MICROSECONDS.toNanos(
+        conf.getLong(WAL_SYNC_BATCH_MAX_WINDOW_US, DEFAULT_WAL_SYNC_BATCH_MAX_WINDOW_US)));
     waitOnShutdownInSeconds = conf.getInt(ASYNC_WAL_WAIT_ON_SHUTDOWN_IN_SECONDS,
       DEFAULT_ASYNC_WAL_WAIT_ON_SHUTDOWN_IN_SECONDS);
   }
@@ -338,7 +363,7 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
   }
 
   private void syncCompleted(long epochWhenSync, AsyncWriter writer, long processedTxid,
-    long startTimeNs) {
+    long startTimeNs, long syncedBytes) {
     // Please see the last several comments on HBASE-22761, it is possible that we get a
     // syncCompleted which acks a previous sync request after we received a syncFailed on the same
     // writer. So here we will also check on the epoch and state, if the epoch has already been
@@ -379,7 +404,15 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
         break;
       }
     }
-    postSync(System.nanoTime() - startTimeNs, finishSync());
+    // the sync requests are ordered by txid, so the first one finished is the one waiting longest
+    long oldestRequestNs = syncFutures.isEmpty() ? 0L : syncFutures.first().getStartTimeNs();
+    int finished = finishSync();
+    long nowNs = System.nanoTime();
+    if (finished > 0) {
+      syncBatchController.syncCompleted(nowNs - oldestRequestNs);
+    }
+    postSync(nowNs - startTimeNs, finished);
+    postSyncBatch(syncBatchController.getWindowNs(), syncedBytes);
     if (trySetReadyForRolling()) {
       // we have just finished a roll, then do not need to check for log rolling, the writer will be
       // closed soon.
@@ -412,6 +445,7 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
   }
 
   private void sync(AsyncWriter writer) {
+    final long syncedBytes = writer.getLength() - fileLengthAtLastSync;
     fileLengthAtLastSync = writer.getLength();
     long currentHighestProcessedAppendTxid = highestProcessedAppendTxid;
     boolean shouldUseHsync =
@@ -423,7 +457,7 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
       if (error != null) {
         syncFailed(epoch, error);
       } else {
-        syncCompleted(epoch, writer, currentHighestProcessedAppendTxid, startTimeNs);
+        syncCompleted(epoch, writer, currentHighestProcessedAppendTxid, startTimeNs, syncedBytes);
       }
     }, consumeExecutor);
   }
@@ -663,8 +697,11 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
             writer.getLength() > fileLengthAtLastSync && !syncFutures.isEmpty()
               && syncFutures.last().getTxid() > highestProcessedAppendTxidAtLastSync
           ) {
-            // no new data in the ringbuffer and we have at least one sync request
-            sync(writer);
+            // no new data in the ringbuffer and we have at least one sync request, sync unless we
+            // wait for more data in the batch window
+            if (!holdSync()) {
+              sync(writer);
+            }
           }
           return;
         } else {
@@ -679,6 +716,43 @@ public class AsyncFSWAL extends AbstractFSWAL<AsyncWriter> {
     consumeExecutor.execute(consumer);
   }
 
+  // Returns whether to wait for more data before syncing, to sync more at once. If so, the consumer
+  // will be scheduled again when the batch window of the oldest sync request not being synced ends.
+  private boolean holdSync() {
+    if (!syncBatchController.isEnabled()) {
+      return false;
+    }
+    // the requests up to highestProcessedAppendTxidAtLastSync are served by an outgoing sync
+    long oldestRequestNs = 0L;
+    boolean forceSync = false;
+    for (SyncFuture future : syncFutures) {
+      if (future.getTxid() <= highestProcessedAppendTxidAtLastSync) {
+        continue;
+      }
+      if (oldestRequestNs == 0L) {
+        oldestRequestNs = future.getStartTimeNs();
+      }
+      if (future.isForceSync()) {
+        forceSync = true;
+        break;
+      }
+    }
+    long remainingNs =
+      syncBatchController.getRemainingNs(oldestRequestNs, System.nanoTime(), forceSync);
+    if (remainingNs <= 0) {
+      return false;
+    }
+    if (syncBatchTimerScheduled.compareAndSet(false, true)) {
+      eventLoopGroup.next().schedule(() -> {
+        syncBatchTimerScheduled.set(false);
+        if (shouldScheduleConsumer()) {
+          consumeExecutor.execute(consumer);
+        }
+      }, remainingNs, TimeUnit.NANOSECONDS);
+    }
+    return true;
+  }
+
   private boolean shouldScheduleConsumer() {
     int currentEpochAndState = epochAndState;
     if (writerBroken(currentEpochAndState) || waitingRoll(currentEpochAndState)) {
@@ -30,6 +30,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.io.BoundedDelegatingInputStream;
 import org.apache.hadoop.hbase.io.TagCompressionContext;
+import org.apache.hadoop.hbase.io.compress.CanReinit;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.util.Dictionary;
 import org.apache.hadoop.io.compress.Compressor;
@@ -58,6 +59,33 @@ public class CompressionContext {
   public static final String WAL_VALUE_COMPRESSION_TYPE =
     "hbase.regionserver.wal.value.compression.type";
 
+  /**
+   * Whether to compress the WAL values with dictionaries trained from recent values. Requires the
+   * value compression type to be zstd, from hbase-compression-zstd.
+   */
+  public static final String ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY =
+    "hbase.regionserver.wal.value.compression.dictionary.enabled";
+
+  /** Directory of the value dictionaries, defaults to walValueDictionaries under the WAL root */
+  public static final String WAL_VALUE_COMPRESSION_DICTIONARY_DIR =
+    "hbase.regionserver.wal.value.compression.dictionary.dir";
+
+  /** Maximum size of a value dictionary, in bytes */
+  public static final String WAL_VALUE_COMPRESSION_DICTIONARY_SIZE =
+    "hbase.regionserver.wal.value.compression.dictionary.size";
+
+  /** Size of the value samples a dictionary is trained from, in bytes */
+  public static final String WAL_VALUE_COMPRESSION_DICTIONARY_SAMPLES_SIZE =
+    "hbase.regionserver.wal.value.compression.dictionary.samples.size";
+
+  /** Interval between the trainings of value dictionaries in ms, 0 to train only one */
+  public static final String WAL_VALUE_COMPRESSION_DICTIONARY_RETRAIN_INTERVAL =
+    "hbase.regionserver.wal.value.compression.dictionary.retrain.interval";
+
+  /** Class of the DictionaryTrainer training the value dictionaries */
+  public static final String WAL_VALUE_COMPRESSION_DICTIONARY_TRAINER =
+    "hbase.regionserver.wal.value.compression.dictionary.trainer";
+
   public enum DictionaryIndex {
     REGION,
     TABLE,
@@ -75,6 +103,9 @@ public class CompressionContext {
     static final int IO_BUFFER_SIZE = 64 * 1024; // bigger buffer improves large edit compress ratio
 
     private final Compression.Algorithm algorithm;
+    // configuration the codec loads the dictionary from, null if there is no dictionary
+    private final Configuration dictionaryConf;
+    private WALValueDictionaries sampler;
     private Compressor compressor;
     private Decompressor decompressor;
     private BoundedDelegatingInputStream lowerIn;
@@ -83,22 +114,49 @@ public class CompressionContext {
     private OutputStream compressedOut;
 
     public ValueCompressor(Compression.Algorithm algorithm) {
+      this(algorithm, null);
+    }
+
+    public ValueCompressor(Compression.Algorithm algorithm, Configuration dictionaryConf) {
       this.algorithm = algorithm;
+      this.dictionaryConf = dictionaryConf;
     }
 
     public Compression.Algorithm getAlgorithm() {
       return algorithm;
     }
 
+    public boolean hasDictionary() {
+      return dictionaryConf != null;
+    }
+
+    private void loadDictionary(Object compressor) throws IOException {
+      if (dictionaryConf == null) {
+        return;
+      }
+      if (!(compressor instanceof CanReinit)) {
+        throw new IOException("The " + algorithm + " codec can not load dictionaries");
+      }
+      try {
+        ((CanReinit) compressor).reinit(dictionaryConf);
+      } catch (RuntimeException e) {
+        throw new IOException("Failed to load the value compression dictionary", e);
+      }
+    }
+
     public byte[] compress(byte[] valueArray, int valueOffset, int valueLength) throws IOException {
       if (compressedOut == null) {
         // Create the output streams here the first time around.
         lowerOut = new ByteArrayOutputStream();
         if (compressor == null) {
           compressor = algorithm.getCompressor();
+          loadDictionary(compressor);
         }
         compressedOut = algorithm.createCompressionStream(lowerOut, compressor, IO_BUFFER_SIZE);
       }
+      if (sampler != null) {
+        sampler.sample(valueArray, valueOffset, valueLength);
+      }
       compressedOut.write(valueArray, valueOffset, valueLength);
       compressedOut.flush();
       final byte[] compressed = lowerOut.toByteArray();
@@ -118,6 +176,7 @@ public class CompressionContext {
         lowerIn = new BoundedDelegatingInputStream(in, inLength);
         if (decompressor == null) {
           decompressor = algorithm.getDecompressor();
+          loadDictionary(decompressor);
         }
         compressedIn = algorithm.createDecompressionStream(lowerIn, decompressor, IO_BUFFER_SIZE);
       } else {
@@ -188,6 +247,19 @@ public class CompressionContext {
     boolean hasTagCompression, boolean hasValueCompression,
     Compression.Algorithm valueCompressionType) throws SecurityException, NoSuchMethodException,
     InstantiationException, IllegalAccessException, InvocationTargetException, IOException {
+    this(dictType, recoveredEdits, hasTagCompression, hasValueCompression, valueCompressionType,
+      null);
+  }
+
+  /**
+   * @param valueDictionaryConf configuration the value compression codec loads its dictionary
+   *                            from, or null to compress the values without a dictionary
+   */
+  public CompressionContext(Class<? extends Dictionary> dictType, boolean recoveredEdits,
+    boolean hasTagCompression, boolean hasValueCompression,
+    Compression.Algorithm valueCompressionType, Configuration valueDictionaryConf)
+    throws SecurityException, NoSuchMethodException, InstantiationException,
+    IllegalAccessException, InvocationTargetException, IOException {
     Constructor<? extends Dictionary> dictConstructor = dictType.getConstructor();
     for (DictionaryIndex dictionaryIndex : DictionaryIndex.values()) {
       Dictionary newDictionary = dictConstructor.newInstance();
@@ -209,7 +281,7 @@ public class CompressionContext {
       tagCompressionContext = new TagCompressionContext(dictType, Short.MAX_VALUE);
     }
     if (hasValueCompression && valueCompressionType != null) {
-      valueCompressor = new ValueCompressor(valueCompressionType);
+      valueCompressor = new ValueCompressor(valueCompressionType, valueDictionaryConf);
     }
   }
 
@@ -235,6 +307,13 @@ public class CompressionContext {
     return valueCompressor;
   }
 
+  /** Samples the values compressed to train the next value dictionaries with */
+  void setValueSampler(WALValueDictionaries sampler) {
+    if (valueCompressor != null) {
+      valueCompressor.sampler = sampler;
+    }
+  }
+
   void clear() {
     for (Dictionary dictionary : dictionaries.values()) {
       dictionary.clear();
@@ -37,13 +37,24 @@ public class MetricsWAL implements WALActionsListener {
   private static final Logger LOG = LoggerFactory.getLogger(MetricsWAL.class);
 
   private final MetricsWALSource source;
+  // group of the WAL, when the region server has several WALs
+  private final String walGroup;
 
   public MetricsWAL() {
-    this(CompatibilitySingletonFactory.getInstance(MetricsWALSource.class));
+    this((String) null);
+  }
+
+  public MetricsWAL(String walGroup) {
+    this(CompatibilitySingletonFactory.getInstance(MetricsWALSource.class), walGroup);
   }
 
   MetricsWAL(MetricsWALSource s) {
+    this(s, null);
+  }
+
+  MetricsWAL(MetricsWALSource s, String walGroup) {
     this.source = s;
+    this.walGroup = walGroup;
   }
 
   @Override
@@ -51,6 +62,12 @@ public class MetricsWAL implements WALActionsListener {
     source.incrementSyncTime(timeInNanos / 1000000L);
   }
 
+  @Override
+  public void postSyncBatch(final long batchWindowNanos, final long syncedBytes) {
+    source.incrementSyncBatchWindow(batchWindowNanos / 1000L);
+    source.incrementSyncBatchSize(syncedBytes);
+  }
+
   @Override
   public void postAppend(final long size, final long time, final WALKey logkey,
     final WALEdit logEdit) throws IOException {
@@ -59,6 +76,9 @@ public class MetricsWAL implements WALActionsListener {
     source.incrementAppendTime(time);
     source.incrementAppendSize(tableName, size);
     source.incrementWrittenBytes(size);
+    if (walGroup != null) {
+      source.incrementGroupAppendSize(walGroup, size);
+    }
 
     if (time > 1000) {
       source.incrementSlowAppendCount();
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import java.util.Arrays;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Decides how long {@link AsyncFSWAL} holds the sync requests before syncing, so that more data is
+ * synced at once while the 99th percentile of the sync latency seen by the callers stays under
+ * {@link AsyncFSWAL#WAL_SYNC_BATCH_TARGET_LATENCY_US}.
+ * <p>
+ * The latency of the oldest sync request completed by each sync, from the request to its
+ * completion, is sampled. Every {@link #SAMPLES} syncs, the window is halved if the 99th percentile
+ * of these latencies is over the target, and grown by a twentieth of the maximum window, see
+ * {@link AsyncFSWAL#WAL_SYNC_BATCH_MAX_WINDOW_US}, otherwise. So the window stays 0, that is
+ * syncing as soon as requested, if the syncs alone take longer than the target.
+ * <p>
+ * Not thread safe, only used by the consumer of the WAL.
+ */
+@InterfaceAudience.Private
+class SyncBatchController {
+
+  static final int SAMPLES = 100;
+
+  private final long targetLatencyNs;
+  private final long maxWindowNs;
+  private final long[] latencies = new long[SAMPLES];
+  private int sampled;
+  private long windowNs;
+
+  /**
+   * @param targetLatencyNs the 99th percentile of the sync latency to aim for, 0 to never hold
+   * @param maxWindowNs     the longest time to hold the sync requests
+   */
+  SyncBatchController(long targetLatencyNs, long maxWindowNs) {
+    this.targetLatencyNs = targetLatencyNs;
+    this.maxWindowNs = targetLatencyNs > 0 ? maxWindowNs : 0;
+  }
+
+  /** Returns whether the sync requests may be held at all */
+  boolean isEnabled() {
+    return maxWindowNs > 0;
+  }
+
+  /** Returns the current batch window, in nanoseconds */
+  long getWindowNs() {
+    return windowNs;
+  }
+
+  /**
+   * Returns how long to still hold the sync requests, the oldest of which was issued at the given
+   * time, 0 or less to sync now. Requests forcing the sync to disk, hsync, are never held, as their
+   * callers asked for the durability rather than the throughput.
+   */
+  long getRemainingNs(long oldestRequestNs, long nowNs, boolean forceSync) {
+    if (forceSync) {
+      return 0;
+    }
+    return windowNs - (nowNs - oldestRequestNs);
+  }
+
+  /** Records the latency of the oldest sync request completed by a sync */
+  void syncCompleted(long latencyNs) {
+    if (!isEnabled()) {
+      return;
+    }
+    latencies[sampled++] = latencyNs;
+    if (sampled < SAMPLES) {
+      return;
+    }
+    sampled = 0;
+    long[] sorted = latencies.clone();
+    Arrays.sort(sorted);
+    long p99 = sorted[(int) Math.ceil(SAMPLES * 0.99) - 1];
+    if (p99 > targetLatencyNs) {
+      windowNs /= 2;
+    } else {
+      windowNs = Math.min(maxWindowNs, windowNs + maxWindowNs / 20);
+    }
+  }
+}
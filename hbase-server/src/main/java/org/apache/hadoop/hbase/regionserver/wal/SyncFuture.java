@@ -86,6 +86,11 @@ class SyncFuture {
 
   private boolean forceSync;
 
+  /**
+   * When the sync was requested, from {@link System#nanoTime()}.
+   */
+  private long startTimeNs;
+
   SyncFuture() {
     this.doneLock = new ReentrantLock();
     this.doneCondition = doneLock.newCondition();
@@ -106,6 +111,7 @@ class SyncFuture {
     this.doneTxid = NOT_DONE;
     this.forceSync = forceSync;
     this.txid = txid;
+    this.startTimeNs = System.nanoTime();
     this.throwable = null;
     return this;
   }
@@ -124,6 +130,10 @@ class SyncFuture {
     return forceSync;
   }
 
+  long getStartTimeNs() {
+    return startTimeNs;
+  }
+
   /**
    * Returns the thread that owned this sync future, use with caution as we return the reference to
    * the actual thread object.
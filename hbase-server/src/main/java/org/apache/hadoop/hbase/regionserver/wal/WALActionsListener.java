@@ -115,4 +115,13 @@ public interface WALActionsListener {
    */
   default void postSync(final long timeInNanos, final int handlerSyncs) {
   }
+
+  /**
+   * For notification post writer sync, about how the syncs are batched. Used by metrics system.
+   * @param batchWindowNanos How long the sync requests may currently be held to sync more data at
+   *                         once, in nanoseconds.
+   * @param syncedBytes      How many bytes were synced by this call to filesystem sync.
+   */
+  default void postSyncBatch(final long batchWindowNanos, final long syncedBytes) {
+  }
 }
@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.io.compress.CanReinit;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.compress.DictionaryTrainer;
+import org.apache.hadoop.hbase.master.cleaner.WALValueDictionaryCleaner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.CommonFSUtils;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ReflectionUtils;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.WALHeader;
+
+/**
+ * The dictionaries WAL values are compressed with, when
+ * {@link CompressionContext#ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY} is set.
+ * <p>
+ * The values written to the WALs are sampled until there are
+ * {@link CompressionContext#WAL_VALUE_COMPRESSION_DICTIONARY_SAMPLES_SIZE} bytes of them. The next
+ * WAL writer created then has a dictionary trained from the samples in the background, which the
+ * writers created after it compress their values with, and which is sampled for and trained again
+ * every {@link CompressionContext#WAL_VALUE_COMPRESSION_DICTIONARY_RETRAIN_INTERVAL}. The
+ * dictionaries are written to {@link CompressionContext#WAL_VALUE_COMPRESSION_DICTIONARY_DIR}
+ * under their id, and the WAL header records the path of the one its values are compressed with,
+ * so that any reader of the WAL, replication or WAL splitting, can load the dictionary back
+ * whatever its own configuration. The {@link WALValueDictionaryCleaner} of the master deletes the
+ * dictionaries no WAL, archived or not, is compressed with any more. The modification time of a
+ * dictionary is refreshed whenever a new WAL is compressed with it, so that the cleaner keeps it
+ * until the header of the WAL is written, and a dictionary deleted still is written back.
+ * Recovered edits are not compressed with dictionaries, the cleaner does not look at them.
+ * <p>
+ * The dictionaries are trained by a {@link DictionaryTrainer} of the compression module, so only
+ * work with a value compression codec whose compressor can load a dictionary, that is zstd from
+ * hbase-compression-zstd.
+ */
+@InterfaceAudience.Private
+public final class WALValueDictionaries {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WALValueDictionaries.class);
+
+  private static final String DIR_NAME = "walValueDictionaries";
+  private static final String TRAINER_DEFAULT =
+    "org.apache.hadoop.hbase.io.compress.zstd.ZstdDictionaryTrainer";
+  private static final int DICTIONARY_SIZE_DEFAULT = 16 * 1024;
+  private static final int SAMPLES_SIZE_DEFAULT = 1024 * 1024;
+  private static final long RETRAIN_INTERVAL_DEFAULT = 60 * 60 * 1000L;
+
+  // Key of ZstdCodec for the dictionary it loads, hbase-server does not depend on the zstd module
+  private static final String ZSTD_DICTIONARY_KEY = "hbase.io.compress.zstd.dictionary";
+
+  /** The dictionaries by the directory they are written to */
+  private static final ConcurrentMap<Path, WALValueDictionaries> INSTANCES =
+    new ConcurrentHashMap<>();
+
+  private static final ExecutorService TRAINER = Executors.newSingleThreadExecutor(
+    new ThreadFactoryBuilder().setNameFormat("wal-dictionary-trainer-%d").setDaemon(true).build());
+
+  private final Configuration conf;
+  private final Path dir;
+  /** Null if dictionaries can not be used with this configuration */
+  private final DictionaryTrainer trainer;
+  private final int dictionarySize;
+  private final int samplesSize;
+  private final long retrainInterval;
+
+  private volatile boolean sampling = true;
+  private List<byte[]> samples = new ArrayList<>();
+  private int sampledSize;
+  private boolean training;
+  private long trainedTime;
+  private Path current;
+  private byte[] currentDictionary;
+
+  private WALValueDictionaries(Configuration conf, Path dir) {
+    this.conf = conf;
+    this.dir = dir;
+    this.trainer = createTrainer(conf);
+    this.dictionarySize = conf.getInt(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_SIZE,
+      DICTIONARY_SIZE_DEFAULT);
+    this.samplesSize = conf.getInt(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_SAMPLES_SIZE,
+      SAMPLES_SIZE_DEFAULT);
+    this.retrainInterval = conf.getLong(
+      CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_RETRAIN_INTERVAL,
+      RETRAIN_INTERVAL_DEFAULT);
+  }
+
+  private static DictionaryTrainer createTrainer(Configuration conf) {
+    Compression.Algorithm algorithm = CompressionContext.getValueCompressionAlgorithm(conf);
+    Compressor compressor = algorithm.getCompressor();
+    try {
+      if (!(compressor instanceof CanReinit)) {
+        LOG.warn("The {} codec can not load dictionaries, WAL values will be compressed without",
+          algorithm);
+        return null;
+      }
+    } finally {
+      algorithm.returnCompressor(compressor);
+    }
+    String className =
+      conf.get(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_TRAINER, TRAINER_DEFAULT);
+    try {
+      return ReflectionUtils
+        .newInstance(conf.getClassByName(className).asSubclass(DictionaryTrainer.class));
+    } catch (ClassNotFoundException | RuntimeException e) {
+      LOG.warn("Failed to load dictionary trainer {}, WAL values will be compressed without"
+        + " dictionaries", className, e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the dictionaries of the WALs written with the given configuration, or null if they are
+   * disabled or can not be used.
+   */
+  static WALValueDictionaries get(Configuration conf) throws IOException {
+    if (!conf.getBoolean(CompressionContext.ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY, false)) {
+      return null;
+    }
+    Path dir = getDictionaryDir(conf);
+    WALValueDictionaries dictionaries =
+      INSTANCES.computeIfAbsent(dir, d -> new WALValueDictionaries(conf, d));
+    return dictionaries.trainer != null ? dictionaries : null;
+  }
+
+  public static Path getDictionaryDir(Configuration conf) throws IOException {
+    String dir = conf.get(CompressionContext.WAL_VALUE_COMPRESSION_DICTIONARY_DIR);
+    return dir != null ? new Path(dir) : new Path(CommonFSUtils.getWALRootDir(conf), DIR_NAME);
+  }
+
+  static Path getDictionaryPath(Configuration conf, int id) throws IOException {
+    return new Path(getDictionaryDir(conf), Integer.toUnsignedString(id));
+  }
+
+  static int getDictionaryId(Path dictionary) {
+    return Integer.parseUnsignedInt(dictionary.getName());
+  }
+
+  /**
+   * Returns the dictionary the values of the WAL with the given header are compressed with, or null
+   * if none. The WALs written before the header recorded the path only have the id of the
+   * dictionary, which is looked up in the dictionary directory of the given configuration.
+   */
+  static Path getDictionary(Configuration conf, WALHeader header) throws IOException {
+    if (header.hasValueCompressionDictionaryPath()) {
+      return new Path(header.getValueCompressionDictionaryPath());
+    }
+    return header.hasValueCompressionDictionaryId()
+      ? getDictionaryPath(conf, header.getValueCompressionDictionaryId())
+      : null;
+  }
+
+  /**
+   * Reads the header of the given WAL and returns the dictionary its values are compressed with, or
+   * null if none.
+   * @throws IOException if the header can not be read, e.g. the WAL is not a protobuf WAL or its
+   *                     header is not written yet
+   */
+  public static Path readDictionary(FileSystem fs, Path wal) throws IOException {
+    try (FSDataInputStream in = fs.open(wal)) {
+      byte[] magic = new byte[AbstractProtobufWALReader.PB_WAL_MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(AbstractProtobufWALReader.PB_WAL_MAGIC, magic)) {
+        throw new IOException("Invalid PB WAL magic " + Bytes.toStringBinary(magic));
+      }
+      WALHeader header = ProtobufUtil.parseDelimitedFrom(in, WALHeader.parser());
+      if (header == null) {
+        throw new IOException("EOF while reading PB header of " + wal);
+      }
+      return header.hasHasValueCompression() && header.getHasValueCompression()
+        ? getDictionary(fs.getConf(), header)
+        : null;
+    }
+  }
+
+  /** Returns the configuration to pass the compressors to load the given dictionary */
+  static Configuration getDictionaryConf(Configuration conf, Path dictionary) {
+    Configuration dictionaryConf = new Configuration(conf);
+    dictionaryConf.set(ZSTD_DICTIONARY_KEY, dictionary.toString());
+    return dictionaryConf;
+  }
+
+  /**
+   * Returns the dictionary a new WAL is to compress its values with, or null if none was trained
+   * yet. Starts training a new one if enough values were sampled.
+   */
+  Path getDictionary() {
+    Path dictionary;
+    byte[] content;
+    synchronized (this) {
+      if (!sampling && !training) {
+        if (!samples.isEmpty()) {
+          List<byte[]> toTrain = samples;
+          samples = new ArrayList<>();
+          sampledSize = 0;
+          training = true;
+          TRAINER.execute(() -> train(toTrain));
+        } else if (
+          retrainInterval > 0 && EnvironmentEdgeManager.currentTime() - trainedTime >= retrainInterval
+        ) {
+          sampling = true;
+        }
+      }
+      dictionary = current;
+      content = currentDictionary;
+    }
+    if (dictionary == null) {
+      return null;
+    }
+    try {
+      FileSystem fs = dir.getFileSystem(conf);
+      try {
+        fs.setTimes(dictionary, EnvironmentEdgeManager.currentTime(), -1);
+      } catch (FileNotFoundException e) {
+        LOG.info("WAL value dictionary {} was deleted, writing it back", dictionary);
+        write(dictionary, content);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to refresh WAL value dictionary {}, compressing without", dictionary, e);
+      return null;
+    }
+    return dictionary;
+  }
+
+  /** Keeps a copy of the given value to train the next dictionary with, if sampling */
+  void sample(byte[] value, int offset, int length) {
+    if (!sampling || length == 0) {
+      return;
+    }
+    synchronized (this) {
+      if (!sampling) {
+        return;
+      }
+      // the beginning of the large values is enough to learn their structure
+      samples.add(Arrays.copyOfRange(value, offset, offset + Math.min(length, dictionarySize)));
+      sampledSize += Math.min(length, dictionarySize);
+      if (sampledSize >= samplesSize) {
+        sampling = false;
+      }
+    }
+  }
+
+  private void train(List<byte[]> toTrain) {
+    try {
+      long start = EnvironmentEdgeManager.currentTime();
+      byte[] dictionary = trainer.train(toTrain, dictionarySize);
+      Path path = new Path(dir, Integer.toUnsignedString(trainer.getDictionaryId(dictionary)));
+      write(path, dictionary);
+      synchronized (this) {
+        current = path;
+        currentDictionary = dictionary;
+      }
+      LOG.info("Trained WAL value dictionary {} of {} bytes from {} samples in {} ms", path,
+        dictionary.length, toTrain.size(), EnvironmentEdgeManager.currentTime() - start);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Failed to train a WAL value dictionary, keeping the current one", e);
+    } finally {
+      synchronized (this) {
+        training = false;
+        trainedTime = EnvironmentEdgeManager.currentTime();
+      }
+    }
+  }
+
+  private void write(Path path, byte[] dictionary) throws IOException {
+    FileSystem fs = dir.getFileSystem(conf);
+    // the trainer derives the id from the content, the same dictionary may be there already
+    if (fs.exists(path)) {
+      return;
+    }
+    Path tmp = new Path(dir, "." + path.getName() + "." + UUID.randomUUID() + ".tmp");
+    try (FSDataOutputStream out = fs.create(tmp, false)) {
+      out.write(dictionary);
+    }
+    if (!fs.rename(tmp, path)) {
+      fs.delete(tmp, false);
+      if (!fs.exists(path)) {
+        throw new IOException("Failed to rename " + tmp + " to " + path);
+      }
+    }
+  }
+}
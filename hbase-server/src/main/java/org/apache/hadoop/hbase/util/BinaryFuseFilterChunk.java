@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A chunk of a {@link org.apache.hadoop.hbase.io.hfile.CompoundBloomFilter} stored as a 3-wise
+ * binary fuse filter (Graf and Lemire, "Binary Fuse Filters: Fast and Smaller Than Xor Filters")
+ * instead of a Bloom filter.
+ * <p>
+ * Each key is mapped to three slots in three consecutive segments of an array of fingerprints, and
+ * is deemed present if its own fingerprint equals the XOR of the three slots. A lookup always does
+ * three reads close to each other whatever the error rate, where a Bloom filter does up to one
+ * random read per hash function, and the array takes about 1.125 to 1.2 slots per key of
+ * {@code ceil(log2(1 / errorRate))} bits each, where a Bloom filter takes
+ * {@code 1.44 * log2(1 / errorRate)} bits per key.
+ * <p>
+ * The filter can only be built once all its keys are known, so the chunk keeps a 64 bit hash of
+ * each key until it is full, then builds the filter in {@link #compactBloom()}. The size of a built
+ * chunk follows its actual number of keys, so a partially filled last chunk does not need folding.
+ * The serialized chunk is:
+ *
+ * <pre>
+ * long seed
+ * int segmentLength
+ * int segmentCount
+ * int fingerprintBits
+ * fingerprints, packed little endian, padded with {@link #PADDING} bytes
+ * </pre>
+ */
+@InterfaceAudience.Private
+public class BinaryFuseFilterChunk extends BloomFilterChunk {
+
+  /** Number of slots a key maps to */
+  static final int ARITY = 3;
+
+  static final int HEADER_SIZE = Bytes.SIZEOF_LONG + 3 * Bytes.SIZEOF_INT;
+
+  /** Lets a lookup always read three bytes for a fingerprint */
+  static final int PADDING = 2;
+
+  static final int MAX_FINGERPRINT_BITS = 16;
+
+  private static final int MAX_SEGMENT_LENGTH = 1 << 18;
+
+  /** Construction fails with a small probability, it is retried with another seed */
+  private static final int MAX_ATTEMPTS = 64;
+
+  private final int fingerprintBits;
+
+  /** Hashes of the keys added so far, until the filter is built */
+  private long[] keyHashes;
+
+  public BinaryFuseFilterChunk(int byteSizeHint, double errorRate, int hashType,
+    BloomType bloomType) {
+    this(hashType, bloomType, fingerprintBits(errorRate), 0);
+    this.maxKeys = computeMaxKeys(byteSizeHint, fingerprintBits);
+    this.byteSize = serializedSize(maxKeys, fingerprintBits);
+  }
+
+  private BinaryFuseFilterChunk(int hashType, BloomType bloomType, int fingerprintBits,
+    int maxKeys) {
+    super(hashType, bloomType);
+    this.fingerprintBits = fingerprintBits;
+    this.maxKeys = maxKeys;
+    this.hashCount = ARITY;
+  }
+
+  /** Returns the fingerprint width giving an error rate not above the given one */
+  static int fingerprintBits(double errorRate) {
+    int bits = (int) Math.ceil(-Math.log(errorRate) / Math.log(2));
+    return Math.max(1, Math.min(MAX_FINGERPRINT_BITS, bits));
+  }
+
+  /** Returns the number of keys a chunk of about the given size can hold */
+  static int computeMaxKeys(int byteSizeHint, int fingerprintBits) {
+    int keys = Math.max(1, (int) (byteSizeHint * 8L / fingerprintBits / 1.125));
+    while (keys > 1 && serializedSize(keys, fingerprintBits) > byteSizeHint) {
+      keys -= Math.max(1, keys / 100);
+    }
+    return keys;
+  }
+
+  static int serializedSize(int numKeys, int fingerprintBits) {
+    return HEADER_SIZE + (int) ((new Layout(numKeys).arrayLength * (long) fingerprintBits + 7) / 8)
+      + PADDING;
+  }
+
+  public int getFingerprintBits() {
+    return fingerprintBits;
+  }
+
+  @Override
+  public BloomFilterChunk createAnother() {
+    BinaryFuseFilterChunk chunk =
+      new BinaryFuseFilterChunk(hashType, bloomType, fingerprintBits, maxKeys);
+    chunk.byteSize = byteSize;
+    return chunk;
+  }
+
+  @Override
+  public void allocBloom() {
+    if (keyHashes != null || bloom != null) {
+      throw new IllegalArgumentException("can only create bloom once.");
+    }
+    keyHashes = new long[Math.min(maxKeys, 1024)];
+  }
+
+  @Override
+  void add(byte[] buf, int offset, int len) {
+    addHash(keyHash(hash, new ByteArrayHashKey(buf, offset, len)));
+  }
+
+  @Override
+  public void add(Cell cell) {
+    HashKey<Cell> hashKey =
+      bloomType == BloomType.ROWCOL ? new RowColBloomHashKey(cell) : new RowBloomHashKey(cell);
+    addHash(keyHash(hash, hashKey));
+  }
+
+  private void addHash(long keyHash) {
+    if (keyHashes == null) {
+      throw new IllegalStateException("The filter is already built");
+    }
+    if (keyCount == keyHashes.length) {
+      keyHashes = Arrays.copyOf(keyHashes, Math.max(keyCount + 1, keyCount * 2));
+    }
+    keyHashes[keyCount++] = keyHash;
+  }
+
+  @Override
+  public double actualErrorRate() {
+    return 1.0 / (1L << fingerprintBits);
+  }
+
+  /**
+   * Builds the filter from the keys added so far. No key can be added afterwards.
+   */
+  @Override
+  public void compactBloom() {
+    if (keyHashes == null) {
+      return;
+    }
+    long[] hashes = Arrays.copyOf(keyHashes, keyCount);
+    keyHashes = null;
+    // The same key may have been added twice, which the construction does not allow
+    Arrays.sort(hashes);
+    int numKeys = 0;
+    for (int i = 0; i < hashes.length; i++) {
+      if (i == 0 || hashes[i] != hashes[i - 1]) {
+        hashes[numKeys++] = hashes[i];
+      }
+    }
+
+    Layout layout = new Layout(numKeys);
+    for (int attempt = 0;; attempt++) {
+      long seed = mix(attempt * 0x9E3779B97F4A7C15L);
+      int[] fingerprints = layout.build(hashes, seed, fingerprintBits);
+      if (fingerprints != null) {
+        serialize(layout, seed, fingerprints);
+        return;
+      }
+      if (attempt == MAX_ATTEMPTS) {
+        // Very unlikely, give the construction more room
+        layout = layout.grow();
+        attempt = 0;
+      }
+    }
+  }
+
+  private void serialize(Layout layout, long seed, int[] fingerprints) {
+    int size =
+      HEADER_SIZE + (int) ((fingerprints.length * (long) fingerprintBits + 7) / 8) + PADDING;
+    ByteBuffer buf = ByteBuffer.allocate(size);
+    buf.putLong(seed);
+    buf.putInt(layout.segmentLength);
+    buf.putInt(layout.segmentCount);
+    buf.putInt(fingerprintBits);
+    byte[] array = buf.array();
+    for (int i = 0; i < fingerprints.length; i++) {
+      long bitPos = (long) i * fingerprintBits;
+      int bytePos = HEADER_SIZE + (int) (bitPos >>> 3);
+      int value = fingerprints[i] << (bitPos & 7);
+      array[bytePos] |= (byte) value;
+      array[bytePos + 1] |= (byte) (value >>> 8);
+      array[bytePos + 2] |= (byte) (value >>> 16);
+    }
+    buf.clear();
+    this.bloom = buf;
+    this.byteSize = size;
+  }
+
+  public static boolean contains(byte[] buf, int offset, int length, ByteBuff bloomBuf,
+    int bloomOffset, Hash hash) {
+    return contains(bloomBuf, bloomOffset,
+      keyHash(hash, new ByteArrayHashKey(buf, offset, length)));
+  }
+
+  public static boolean contains(Cell cell, ByteBuff bloomBuf, int bloomOffset, Hash hash,
+    BloomType type) {
+    HashKey<Cell> hashKey =
+      type == BloomType.ROWCOL ? new RowColBloomHashKey(cell) : new RowBloomHashKey(cell);
+    return contains(bloomBuf, bloomOffset, keyHash(hash, hashKey));
+  }
+
+  private static boolean contains(ByteBuff bloomBuf, int bloomOffset, long keyHash) {
+    long seed = bloomBuf.getLong(bloomOffset);
+    int segmentLength = bloomBuf.getInt(bloomOffset + Bytes.SIZEOF_LONG);
+    int segmentCount = bloomBuf.getInt(bloomOffset + Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT);
+    int fingerprintBits = bloomBuf.getInt(bloomOffset + Bytes.SIZEOF_LONG + 2 * Bytes.SIZEOF_INT);
+    int fingerprintsOffset = bloomOffset + HEADER_SIZE;
+
+    long h = mix(keyHash + seed);
+    int xor = fingerprint(h, fingerprintBits);
+    for (int i = 0; i < ARITY; i++) {
+      int slot = slot(h, i, segmentLength, segmentCount * segmentLength);
+      xor ^= readFingerprint(bloomBuf, fingerprintsOffset, slot, fingerprintBits);
+    }
+    return xor == 0;
+  }
+
+  private static int readFingerprint(ByteBuff buf, int offset, int slot, int fingerprintBits) {
+    long bitPos = (long) slot * fingerprintBits;
+    int bytePos = offset + (int) (bitPos >>> 3);
+    int value = (buf.get(bytePos) & 0xFF) | (buf.get(bytePos + 1) & 0xFF) << 8
+      | (buf.get(bytePos + 2) & 0xFF) << 16;
+    return (value >>> (bitPos & 7)) & ((1 << fingerprintBits) - 1);
+  }
+
+  /** Combines the two 32 bit hashes the Bloom filter chunks use into one 64 bit hash */
+  static <T> long keyHash(Hash hash, HashKey<T> hashKey) {
+    int hash1 = hash.hash(hashKey, 0);
+    int hash2 = hash.hash(hashKey, hash1);
+    return ((long) hash1 << 32) | (hash2 & 0xFFFFFFFFL);
+  }
+
+  /** The 64 bit finalizer of MurmurHash3 */
+  static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static int fingerprint(long h, int fingerprintBits) {
+    return (int) (h ^ (h >>> 32)) & ((1 << fingerprintBits) - 1);
+  }
+
+  /**
+   * Returns the slot of the given key hash in the given segment of its window of three consecutive
+   * segments.
+   */
+  private static int slot(long h, int index, int segmentLength, int segmentCountLength) {
+    // The high 64 bits of the unsigned 128 bit product h * segmentCountLength pick the first
+    // segment. segmentCountLength fits in 31 bits, so two 32 bit halves are enough.
+    long hi = (h >>> 32) * segmentCountLength;
+    long lo = (h & 0xFFFFFFFFL) * segmentCountLength;
+    long start = (hi + (lo >>> 32)) >>> 32;
+    start += (long) index * segmentLength;
+    long offset = ((h & ((1L << 36) - 1)) >>> (36 - 18 * index)) & (segmentLength - 1);
+    return (int) (start ^ offset);
+  }
+
+  /** The dimensions of the fingerprint array for a number of keys */
+  private static final class Layout {
+    final int numKeys;
+    final double sizeFactor;
+    final int segmentLength;
+    final int segmentCount;
+    final int arrayLength;
+
+    Layout(int numKeys) {
+      this(numKeys, sizeFactor(numKeys));
+    }
+
+    private Layout(int numKeys, double sizeFactor) {
+      this.numKeys = numKeys;
+      this.sizeFactor = sizeFactor;
+      int size = Math.max(numKeys, 2);
+      int length = 1 << (int) Math.floor(Math.log(size) / Math.log(3.33) + 2.25);
+      this.segmentLength = Math.min(length, MAX_SEGMENT_LENGTH);
+      int capacity = (int) Math.round(size * sizeFactor);
+      int count = (capacity + segmentLength - 1) / segmentLength - (ARITY - 1);
+      this.segmentCount = Math.max(1, count);
+      this.arrayLength = (segmentCount + ARITY - 1) * segmentLength;
+    }
+
+    private static double sizeFactor(int numKeys) {
+      int size = Math.max(numKeys, 2);
+      return Math.max(1.125, 0.875 + 0.25 * Math.log(1000000) / Math.log(size));
+    }
+
+    Layout grow() {
+      return new Layout(numKeys, sizeFactor + 0.25);
+    }
+
+    /**
+     * Maps the keys to their slots and peels them off the slots only one key maps to, in the
+     * reverse order of which the fingerprints are then assigned.
+     * @return the fingerprints, or null if the keys could not all be peeled with this seed
+     */
+    int[] build(long[] keyHashes, long seed, int fingerprintBits) {
+      int segmentCountLength = segmentCount * segmentLength;
+      // Per slot, the number of keys mapped to it times 4, xor the index of the slot in each key
+      int[] counts = new int[arrayLength];
+      long[] xors = new long[arrayLength];
+      for (int k = 0; k < numKeys; k++) {
+        long h = mix(keyHashes[k] + seed);
+        for (int i = 0; i < ARITY; i++) {
+          int slot = slot(h, i, segmentLength, segmentCountLength);
+          counts[slot] = (counts[slot] + 4) ^ i;
+          xors[slot] ^= h;
+        }
+      }
+
+      int[] queue = new int[arrayLength];
+      int queueSize = 0;
+      for (int slot = 0; slot < arrayLength; slot++) {
+        if (counts[slot] >> 2 == 1) {
+          queue[queueSize++] = slot;
+        }
+      }
+      long[] peeledHashes = new long[numKeys];
+      byte[] peeledIndexes = new byte[numKeys];
+      int peeled = 0;
+      while (queueSize > 0) {
+        int slot = queue[--queueSize];
+        if (counts[slot] >> 2 != 1) {
+          continue;
+        }
+        long h = xors[slot];
+        int index = counts[slot] & 3;
+        counts[slot] = 0;
+        peeledHashes[peeled] = h;
+        peeledIndexes[peeled] = (byte) index;
+        peeled++;
+        for (int j = 1; j < ARITY; j++) {
+          int other = (index + j) % ARITY;
+          int otherSlot = slot(h, other, segmentLength, segmentCountLength);
+          counts[otherSlot] = (counts[otherSlot] - 4) ^ other;
+          xors[otherSlot] ^= h;
+          if (counts[otherSlot] >> 2 == 1) {
+            queue[queueSize++] = otherSlot;
+          }
+        }
+      }
+      if (peeled != numKeys) {
+        return null;
+      }
+
+      int[] fingerprints = new int[arrayLength];
+      for (int k = numKeys - 1; k >= 0; k--) {
+        long h = peeledHashes[k];
+        int index = peeledIndexes[k];
+        int value = fingerprint(h, fingerprintBits);
+        for (int j = 1; j < ARITY; j++) {
+          value ^= fingerprints[slot(h, (index + j) % ARITY, segmentLength, segmentCountLength)];
+        }
+        fingerprints[slot(h, index, segmentLength, segmentCountLength)] = value;
+      }
+      return fingerprints;
+    }
+  }
+}
@@ -74,6 +74,23 @@ public final class BloomFilterFactory {
    */
   public static final String IO_STOREFILE_BLOOM_BLOCK_SIZE = "io.storefile.bloom.block.size";
 
+  /**
+   * The kind of filter the chunks of general and Delete Family Bloom filters are, see
+   * {@link ChunkType}.
+   */
+  public static final String IO_STOREFILE_BLOOM_CHUNK_TYPE = "io.storefile.bloom.chunk.type";
+
+  /** The kinds of filter a compound Bloom filter can be made of */
+  public enum ChunkType {
+    /** Classic Bloom filters, see {@link BloomFilterChunk} */
+    BLOOM,
+    /**
+     * Binary fuse filters, smaller for the same error rate and probing three slots per lookup, see
+     * {@link BinaryFuseFilterChunk}. Files using them can not be read by older versions.
+     */
+    BINARY_FUSE
+  }
+
   /** Maximum number of times a Bloom filter can be "folded" if oversized */
   private static final int MAX_ALLOWED_FOLD_FACTOR = 7;
 
@@ -94,7 +111,8 @@ public final class BloomFilterFactory {
     int version = meta.readInt();
     switch (version) {
       case CompoundBloomFilterBase.VERSION:
-        return new CompoundBloomFilter(meta, reader, metrics);
+      case CompoundBloomFilterBase.BINARY_FUSE_VERSION:
+        return new CompoundBloomFilter(version, meta, reader, metrics);
 
       default:
         throw new IllegalArgumentException("Bad bloom filter format version " + version);
@@ -128,6 +146,11 @@ public final class BloomFilterFactory {
     return conf.getInt(IO_STOREFILE_BLOOM_BLOCK_SIZE, 128 * 1024);
   }
 
+  /** Returns the kind of compound Bloom filter chunks from the configuration */
+  public static ChunkType getChunkType(Configuration conf) {
+    return conf.getEnum(IO_STOREFILE_BLOOM_CHUNK_TYPE, ChunkType.BLOOM);
+  }
+
   /** Returns max key for the Bloom filter from the configuration */
   public static int getMaxKeys(Configuration conf) {
     return conf.getInt(IO_STOREFILE_BLOOM_MAX_KEYS, 128 * 1000 * 1000);
@@ -169,7 +192,8 @@ public final class BloomFilterFactory {
     // In case of compound Bloom filters we ignore the maxKeys hint.
     CompoundBloomFilterWriter bloomWriter = new CompoundBloomFilterWriter(getBloomBlockSize(conf),
       err, Hash.getHashType(conf), maxFold, cacheConf.shouldCacheBloomsOnWrite(),
-      bloomType == BloomType.ROWCOL ? CellComparatorImpl.COMPARATOR : null, bloomType);
+      bloomType == BloomType.ROWCOL ? CellComparatorImpl.COMPARATOR : null, bloomType,
+      getChunkType(conf));
     writer.addInlineBlockWriter(bloomWriter);
     return bloomWriter;
   }
@@ -197,7 +221,7 @@ public final class BloomFilterFactory {
     // In case of compound Bloom filters we ignore the maxKeys hint.
     CompoundBloomFilterWriter bloomWriter =
       new CompoundBloomFilterWriter(getBloomBlockSize(conf), err, Hash.getHashType(conf), maxFold,
-        cacheConf.shouldCacheBloomsOnWrite(), null, BloomType.ROW);
+        cacheConf.shouldCacheBloomsOnWrite(), null, BloomType.ROW, getChunkType(conf));
     writer.addInlineBlockWriter(bloomWriter);
     return bloomWriter;
   }
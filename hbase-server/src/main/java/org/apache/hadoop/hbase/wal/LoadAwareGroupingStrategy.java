@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.wal;
+
+import static org.apache.hadoop.hbase.util.ConcurrentMapUtils.computeIfAbsent;
+import static org.apache.hadoop.hbase.wal.BoundedGroupingStrategy.DEFAULT_NUM_REGION_GROUPS;
+import static org.apache.hadoop.hbase.wal.BoundedGroupingStrategy.NUM_REGION_GROUPS;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.regionserver.wal.WALActionsListener;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.wal.RegionGroupingProvider.RegionGroupingStrategy;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A WAL grouping strategy with "hbase.wal.regiongrouping.numgroups" groups, like
+ * {@link BoundedGroupingStrategy}, that moves the regions appending the most to the least loaded
+ * groups when the groups are unbalanced.
+ * <p>
+ * The bytes appended by each region are counted by a listener of each group WAL, and the groups are
+ * rebalanced when a WAL rolls, at most every {@link #REBALANCE_INTERVAL}: while the most loaded
+ * group appended more than {@link #IMBALANCE_RATIO} times the average since the last rebalance,
+ * its largest region whose move lowers the maximum is assigned to the least loaded group, up to
+ * {@link #MAX_MOVES} regions at a time. New regions go to the group least loaded at the last
+ * rebalance. A region is forgotten once its close marker is appended to its WAL.
+ * <p>
+ * An open region moves to the WAL of its new group at its next flush of all its stores, see HRegion:
+ * the edits of the snapshot stay tracked by the sequence id accounting of the old WAL until they
+ * are flushed, while the edits after the snapshot go to the new WAL. Its edits are then replicated
+ * by the source of another WAL group though, so HRegion does not move the regions replicated to a
+ * serial peer while open, they only move to their new group when reopened.
+ */
+@InterfaceAudience.Private
+public class LoadAwareGroupingStrategy implements RegionGroupingStrategy {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadAwareGroupingStrategy.class);
+
+  /** Minimum time between two rebalances of the groups, in ms */
+  static final String REBALANCE_INTERVAL =
+    "hbase.wal.regiongrouping.loadaware.rebalance.interval";
+  static final long DEFAULT_REBALANCE_INTERVAL = 5 * 60 * 1000L;
+
+  /** How many times the average load the most loaded group must reach to move regions from it */
+  static final String IMBALANCE_RATIO = "hbase.wal.regiongrouping.loadaware.imbalance.ratio";
+  static final float DEFAULT_IMBALANCE_RATIO = 1.5f;
+
+  /** Maximum number of regions moved by a rebalance */
+  static final String MAX_MOVES = "hbase.wal.regiongrouping.loadaware.max.moves";
+  static final int DEFAULT_MAX_MOVES = 2;
+
+  /** Bytes appended by a region since the last rebalance, and the group it appended them to */
+  private static final class RegionLoad {
+    private final LongAdder bytes = new LongAdder();
+    private volatile String group;
+  }
+
+  private final ConcurrentMap<String, String> assignments = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, RegionLoad> loads = new ConcurrentHashMap<>();
+  private final AtomicInteger counter = new AtomicInteger(0);
+  private String[] groupNames;
+  private long rebalanceInterval;
+  private float imbalanceRatio;
+  private int maxMoves;
+  /** Load of each group during the last rebalance interval */
+  private volatile long[] groupLoads;
+  private long lastRebalance;
+
+  /**
+   * Returns whether the WAL groups are load aware with the given configuration, so that a region
+   * may have to move to another WAL while open.
+   */
+  public static boolean isConfigured(Configuration conf) {
+    String strategy = conf.get(RegionGroupingProvider.REGION_GROUPING_STRATEGY);
+    return RegionGroupingProvider.Strategies.loadAware.name().equals(strategy)
+      || LoadAwareGroupingStrategy.class.getName().equals(strategy);
+  }
+
+  @Override
+  public void init(Configuration config, String providerId) {
+    int regionGroupNumber = config.getInt(NUM_REGION_GROUPS, DEFAULT_NUM_REGION_GROUPS);
+    groupNames = new String[regionGroupNumber];
+    for (int i = 0; i < regionGroupNumber; i++) {
+      groupNames[i] = providerId + GROUP_NAME_DELIMITER + "regiongroup-" + i;
+    }
+    groupLoads = new long[regionGroupNumber];
+    rebalanceInterval = config.getLong(REBALANCE_INTERVAL, DEFAULT_REBALANCE_INTERVAL);
+    imbalanceRatio = config.getFloat(IMBALANCE_RATIO, DEFAULT_IMBALANCE_RATIO);
+    maxMoves = config.getInt(MAX_MOVES, DEFAULT_MAX_MOVES);
+  }
+
+  @Override
+  public String group(byte[] identifier, byte[] namespace) {
+    return computeIfAbsent(assignments, Bytes.toString(identifier), this::leastLoadedGroup);
+  }
+
+  private String leastLoadedGroup() {
+    long[] loads = groupLoads;
+    // start from the next group in turn, so that the groups get the new regions in turn when idle
+    int start = counter.getAndIncrement() & Integer.MAX_VALUE;
+    int best = -1;
+    for (int i = 0; i < loads.length; i++) {
+      int index = (start + i) % loads.length;
+      if (best < 0 || loads[index] < loads[best]) {
+        best = index;
+      }
+    }
+    return groupNames[best];
+  }
+
+  /** Returns a listener counting the bytes appended to the WAL of the given group */
+  WALActionsListener createListener(String group) {
+    return new WALActionsListener() {
+      @Override
+      public void postAppend(long entryLen, long elapsedTimeMillis, WALKey logKey,
+        WALEdit logEdit) {
+        if (logEdit.isRegionCloseMarker()) {
+          closed(logKey.getEncodedRegionName());
+        } else {
+          appended(group, logKey.getEncodedRegionName(), entryLen);
+        }
+      }
+
+      @Override
+      public void postLogRoll(Path oldPath, Path newPath) {
+        rebalance();
+      }
+    };
+  }
+
+  void appended(String group, byte[] encodedRegionName, long size) {
+    RegionLoad load = computeIfAbsent(loads, Bytes.toString(encodedRegionName), RegionLoad::new);
+    load.group = group;
+    load.bytes.add(size);
+  }
+
+  /** Forgets the assignment and the load of a closed region */
+  void closed(byte[] encodedRegionName) {
+    String region = Bytes.toString(encodedRegionName);
+    assignments.remove(region);
+    loads.remove(region);
+  }
+
+  /**
+   * Moves regions out of the most loaded group if the groups are unbalanced, unless the last
+   * rebalance was less than {@link #REBALANCE_INTERVAL} ago.
+   * @return the number of regions moved
+   */
+  synchronized int rebalance() {
+    long now = EnvironmentEdgeManager.currentTime();
+    if (now - lastRebalance < rebalanceInterval) {
+      return 0;
+    }
+    lastRebalance = now;
+    Map<String, Integer> groupIndexes = new HashMap<>();
+    for (int i = 0; i < groupNames.length; i++) {
+      groupIndexes.put(groupNames[i], i);
+    }
+    long[] newGroupLoads = new long[groupNames.length];
+    Map<String, Long> regionLoads = new HashMap<>();
+    Map<String, Integer> regionGroups = new HashMap<>();
+    long total = 0;
+    for (Map.Entry<String, RegionLoad> entry : loads.entrySet()) {
+      long bytes = entry.getValue().bytes.sumThenReset();
+      Integer index = groupIndexes.get(entry.getValue().group);
+      if (bytes == 0) {
+        // idle since the last rebalance, maybe closed
+        loads.remove(entry.getKey(), entry.getValue());
+        continue;
+      }
+      if (index == null) {
+        continue;
+      }
+      newGroupLoads[index] += bytes;
+      total += bytes;
+      // regions moved but not yet in their new WAL keep counting where they are
+      if (entry.getValue().group.equals(assignments.get(entry.getKey()))) {
+        regionLoads.put(entry.getKey(), bytes);
+        regionGroups.put(entry.getKey(), index);
+      }
+    }
+    int moves = 0;
+    double average = (double) total / groupNames.length;
+    while (moves < maxMoves && total > 0) {
+      int hottest = 0;
+      int coolest = 0;
+      for (int i = 1; i < newGroupLoads.length; i++) {
+        if (newGroupLoads[i] > newGroupLoads[hottest]) {
+          hottest = i;
+        }
+        if (newGroupLoads[i] < newGroupLoads[coolest]) {
+          coolest = i;
+        }
+      }
+      if (newGroupLoads[hottest] <= average * imbalanceRatio) {
+        break;
+      }
+      // the largest region of the hottest group which is not the whole difference, otherwise
+      // moving it would only make the coolest group the hottest
+      String candidate = null;
+      long candidateLoad = 0;
+      long gap = newGroupLoads[hottest] - newGroupLoads[coolest];
+      for (Map.Entry<String, Long> entry : regionLoads.entrySet()) {
+        long bytes = entry.getValue();
+        if (
+          regionGroups.get(entry.getKey()) == hottest && bytes < gap && bytes > candidateLoad
+        ) {
+          candidate = entry.getKey();
+          candidateLoad = bytes;
+        }
+      }
+      if (candidate == null) {
+        break;
+      }
+      LOG.info("Moving region {} appending {} bytes from WAL group {} ({} bytes) to {} ({} bytes)",
+        candidate, candidateLoad, groupNames[hottest], newGroupLoads[hottest],
+        groupNames[coolest], newGroupLoads[coolest]);
+      assignments.put(candidate, groupNames[coolest]);
+      regionLoads.remove(candidate);
+      newGroupLoads[hottest] -= candidateLoad;
+      newGroupLoads[coolest] += candidateLoad;
+      moves++;
+    }
+    groupLoads = newGroupLoads;
+    return moves;
+  }
+}
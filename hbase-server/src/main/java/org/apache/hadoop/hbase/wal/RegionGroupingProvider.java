@@ -49,6 +49,8 @@ import org.slf4j.LoggerFactory;
  * "bounded".</li>
  * <li><em>identity</em> : each region belongs to its own group.</li>
  * <li><em>bounded</em> : bounded number of groups and region evenly assigned to each group.</li>
+ * <li><em>loadAware</em> : bounded number of groups, the regions appending the most being moved
+ * to the least loaded groups.</li>
  * </ul>
  * Optionally, a FQCN to a custom implementation may be given.
  */
@@ -77,7 +79,8 @@ public class RegionGroupingProvider implements WALProvider {
     defaultStrategy(BoundedGroupingStrategy.class),
     identity(IdentityGroupingStrategy.class),
     bounded(BoundedGroupingStrategy.class),
-    namespace(NamespaceGroupingStrategy.class);
+    namespace(NamespaceGroupingStrategy.class),
+    loadAware(LoadAwareGroupingStrategy.class);
 
     final Class<? extends RegionGroupingStrategy> clazz;
 
@@ -173,7 +176,10 @@ public class RegionGroupingProvider implements WALProvider {
     WALProvider provider = WALFactory.createProvider(providerClass);
     provider.init(factory, conf,
       META_WAL_PROVIDER_ID.equals(providerId) ? META_WAL_PROVIDER_ID : group, this.abortable);
-    provider.addWALActionsListener(new MetricsWAL());
+    provider.addWALActionsListener(new MetricsWAL(group));
+    if (strategy instanceof LoadAwareGroupingStrategy && !META_WAL_PROVIDER_ID.equals(providerId)) {
+      provider.addWALActionsListener(((LoadAwareGroupingStrategy) strategy).createListener(group));
+    }
     return provider;
   }
 
@@ -52,10 +52,18 @@ public class TestMetricsIO {
     metrics.updateFsWriteTime(500);
     metrics.updateFsWriteTime(600);
 
+    metrics.updateBlockReads(1);
+    metrics.updateBlockReads(4);
+    metrics.updateBlockReads(3);
+
     HELPER.assertCounter("fsChecksumFailureCount", 40, metrics.getMetricsSource());
 
     HELPER.assertCounter("fsReadTime_numOps", 2, metrics.getMetricsSource());
     HELPER.assertCounter("fsPReadTime_numOps", 1, metrics.getMetricsSource());
     HELPER.assertCounter("fsWriteTime_numOps", 3, metrics.getMetricsSource());
+
+    HELPER.assertCounter("fsSingleBlockReadCount", 1, metrics.getMetricsSource());
+    HELPER.assertCounter("fsCoalescedReadCount", 2, metrics.getMetricsSource());
+    HELPER.assertCounter("fsCoalescedReadBlockCount", 7, metrics.getMetricsSource());
   }
 }
@@ -337,6 +337,69 @@ public class TestDataBlockEncoders {
     Assert.assertEquals(expectedKV.getLength(), ((KeyValue) cell).getLength());
   }
 
+  @Test
+  public void testRowIndexFastDiffSeeks() throws IOException {
+    List<KeyValue> kvList = new ArrayList<>();
+    byte[] family = Bytes.toBytes("f");
+    for (int i = 0; i < 500; i++) {
+      byte[] row = Bytes.toBytes(String.format("row-%05d", i));
+      // Rows of 1 to 5 cells so restart points fall on varying cell counts
+      for (int j = 0; j <= i % 5; j++) {
+        byte[] qualifier = Bytes.toBytes("q" + j);
+        byte[] value = Bytes.toBytes("value-" + (i * 7 + j) % 13);
+        if (includesTags) {
+          kvList.add(new KeyValue(row, family, qualifier, 1L, value,
+            new Tag[] { new ArrayBackedTag((byte) 1, Bytes.toBytes("tag" + j)) }));
+        } else {
+          kvList.add(new KeyValue(row, family, qualifier, 1L, Type.Put, value));
+        }
+      }
+    }
+    DataBlockEncoding encoding = DataBlockEncoding.ROW_INDEX_FAST_DIFF;
+    DataBlockEncoder encoder = encoding.getEncoder();
+    ByteBuffer encodedBuffer = encodeKeyValues(encoding, kvList,
+      getEncodingContext(conf, Algorithm.NONE, encoding), this.useOffheapData);
+    // Only the restart points make it bigger than FAST_DIFF
+    ByteBuffer fastDiffBuffer = encodeKeyValues(DataBlockEncoding.FAST_DIFF, kvList,
+      getEncodingContext(conf, Algorithm.NONE, DataBlockEncoding.FAST_DIFF), false);
+    int numRestarts = encodedBuffer.getInt(encodedBuffer.limit() - Bytes.SIZEOF_INT);
+    assertTrue(numRestarts > 0);
+    assertTrue(encodedBuffer.limit() < fastDiffBuffer.limit() * 1.2);
+
+    HFileContext meta =
+      new HFileContextBuilder().withHBaseCheckSum(false).withIncludesMvcc(includesMemstoreTS)
+        .withIncludesTags(includesTags).withCompression(Compression.Algorithm.NONE).build();
+    DataBlockEncoder.EncodedSeeker seeker =
+      encoder.createSeeker(encoder.newDataBlockDecodingContext(conf, meta));
+    seeker.setCurrentBuffer(new SingleByteBuff(encodedBuffer));
+    for (int i = 0; i < kvList.size(); i++) {
+      KeyValue kv = kvList.get(i);
+      seeker.rewind();
+      assertEquals(0, seeker.seekToKeyInBlock(kv, false));
+      assertTrue(CellUtil.equals(kv, seeker.getCell()));
+      assertTrue(CellUtil.matchingValue(kv, seeker.getCell()));
+      if (i > 0) {
+        seeker.rewind();
+        assertEquals(1, seeker.seekToKeyInBlock(kv, true));
+        assertTrue(CellUtil.equals(kvList.get(i - 1), seeker.getCell()));
+        // The seeker carries on from the cell it found
+        assertTrue(seeker.next());
+        assertTrue(CellUtil.equals(kv, seeker.getCell()));
+      }
+      // A key between two rows lands on the last cell of the first one
+      Cell lastOnRow = PrivateCellUtil.createLastOnRow(kv);
+      seeker.rewind();
+      assertEquals(1, seeker.seekToKeyInBlock(lastOnRow, false));
+      assertTrue(CellUtil.matchingRows(kv, seeker.getCell()));
+    }
+    // Forward reseeks without a rewind
+    seeker.rewind();
+    for (int i = 0; i < kvList.size(); i += 3) {
+      assertEquals(0, seeker.seekToKeyInBlock(kvList.get(i), false));
+      assertTrue(CellUtil.equals(kvList.get(i), seeker.getCell()));
+    }
+  }
+
   private void checkSeekingConsistency(List<DataBlockEncoder.EncodedSeeker> encodedSeekers,
     boolean seekBefore, Cell keyValue) {
     Cell expectedKeyValue = null;
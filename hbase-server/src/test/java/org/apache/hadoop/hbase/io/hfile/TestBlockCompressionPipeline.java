@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestBlockCompressionPipeline {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBlockCompressionPipeline.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] FAM = Bytes.toBytes("f");
+  private static final byte[] QUAL = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 5000;
+
+  @Rule
+  public TestName name = new TestName();
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    // Small index blocks, so that leaf index blocks are written between the data blocks
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 512);
+    fs = FileSystem.get(conf);
+  }
+
+  private static KeyValue cell(int i) {
+    return new KeyValue(Bytes.toBytes(String.format("row-%06d", i)), FAM, QUAL, i,
+      Bytes.toBytes("value-" + (i % 97) + "-" + i));
+  }
+
+  private Path write(Compression.Algorithm compression, DataBlockEncoding encoding,
+    int maxBlocks) throws IOException {
+    Configuration writerConf = new Configuration(conf);
+    writerConf.setInt(BlockCompressionPipeline.MAX_BLOCKS_KEY, maxBlocks);
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name.getMethodName() + "-" + maxBlocks);
+    HFileContext meta = new HFileContextBuilder().withBlockSize(1024).withCompression(compression)
+      .withDataBlockEncoding(encoding).build();
+    try (HFile.Writer writer = HFile.getWriterFactory(writerConf, new CacheConfig(writerConf))
+      .withPath(fs, path).withFileContext(meta).create()) {
+      for (int i = 0; i < NUM_ROWS; i++) {
+        writer.append(cell(i));
+      }
+    }
+    return path;
+  }
+
+  private byte[] read(Path path) throws IOException {
+    byte[] bytes = new byte[(int) fs.getFileStatus(path).getLen()];
+    try (FSDataInputStream in = fs.open(path)) {
+      in.readFully(bytes);
+    }
+    return bytes;
+  }
+
+  private void assertSameFile(Compression.Algorithm compression, DataBlockEncoding encoding)
+    throws IOException {
+    byte[] expected = read(write(compression, encoding, 0));
+    for (int maxBlocks : new int[] { 1, 32 }) {
+      Path path = write(compression, encoding, maxBlocks);
+      assertArrayEquals("maxBlocks=" + maxBlocks, expected, read(path));
+    }
+    Path path = write(compression, encoding, 4);
+    assertArrayEquals(expected, read(path));
+    try (HFile.Reader reader = HFile.createReader(fs, path, new CacheConfig(conf), true, conf)) {
+      assertTrue(reader.getDataBlockIndexReader().getRootBlockCount() > 1);
+      try (HFileScanner scanner = reader.getScanner(conf, false, true)) {
+        assertTrue(scanner.seekTo());
+        int i = 0;
+        do {
+          assertEquals(0, KeyValue.COMPARATOR.compare(cell(i), scanner.getCell()));
+          i++;
+        } while (scanner.next());
+        assertEquals(NUM_ROWS, i);
+        assertEquals(0, scanner.seekTo(cell(NUM_ROWS / 3)));
+      }
+    }
+  }
+
+  @Test
+  public void testSameFile() throws IOException {
+    assertSameFile(Compression.Algorithm.GZ, DataBlockEncoding.NONE);
+  }
+
+  @Test
+  public void testSameFileWithEncoding() throws IOException {
+    assertSameFile(Compression.Algorithm.GZ, DataBlockEncoding.FAST_DIFF);
+  }
+
+  @Test
+  public void testSameFileWithZoneMap() throws IOException {
+    conf.setBoolean(BlockZoneMap.ENABLED_KEY, true);
+    assertSameFile(Compression.Algorithm.GZ, DataBlockEncoding.NONE);
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestBlockFrequencySketch {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBlockFrequencySketch.class);
+
+  @Test
+  public void testFrequency() {
+    BlockFrequencySketch sketch = new BlockFrequencySketch(1024);
+    int hot = new BlockCacheKey("hot", 0).hashCode();
+    int cold = new BlockCacheKey("cold", 0).hashCode();
+    assertEquals(0, sketch.frequency(hot));
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(hot);
+    }
+    sketch.increment(cold);
+    assertEquals(5, sketch.frequency(hot));
+    assertEquals(1, sketch.frequency(cold));
+    for (int i = 0; i < 100; i++) {
+      sketch.increment(hot);
+    }
+    assertEquals(BlockFrequencySketch.MAX_FREQUENCY, sketch.frequency(hot));
+  }
+
+  @Test
+  public void testReset() {
+    BlockFrequencySketch sketch = new BlockFrequencySketch(64);
+    int hot = new BlockCacheKey("hot", 0).hashCode();
+    for (int i = 0; i < 8; i++) {
+      sketch.increment(hot);
+    }
+    sketch.reset();
+    assertEquals(4, sketch.frequency(hot));
+
+    for (int i = 0; i < 4; i++) {
+      sketch.increment(hot);
+    }
+    assertEquals(8, sketch.frequency(hot));
+
+    // Enough additions of other keys age out the old counts by themselves
+    for (int i = 0; i < 64 * 10; i++) {
+      sketch.increment(new BlockCacheKey("f" + i, i).hashCode());
+    }
+    assertTrue(sketch.frequency(hot) < 8);
+  }
+}
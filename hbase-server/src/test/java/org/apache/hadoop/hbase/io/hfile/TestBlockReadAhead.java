@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.apache.hadoop.hbase.io.ByteBuffAllocator.BUFFER_SIZE_KEY;
+import static org.apache.hadoop.hbase.io.ByteBuffAllocator.MAX_BUFFER_COUNT_KEY;
+import static org.apache.hadoop.hbase.io.ByteBuffAllocator.MIN_ALLOCATE_SIZE_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.Waiter;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestBlockReadAhead {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBlockReadAhead.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] FAM = Bytes.toBytes("f");
+  private static final byte[] QUAL = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 3000;
+  private static final int MAX_BLOCKS = 8;
+
+  @Rule
+  public TestName name = new TestName();
+
+  private Configuration conf;
+  private FileSystem fs;
+  private ByteBuffAllocator allocator;
+  private CacheConfig cacheConf;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setInt(BlockReadAhead.MAX_BLOCKS_KEY, MAX_BLOCKS);
+    // Small index blocks, so that the data blocks are found through a multi-level index
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 256);
+    conf.setInt(HFileBlockIndex.MIN_INDEX_NUM_ENTRIES_KEY, 4);
+    // All the blocks read go to pooled buffers, so that a leaked block shows up as a missing buffer
+    conf.setInt(BUFFER_SIZE_KEY, 1024);
+    conf.setInt(MAX_BUFFER_COUNT_KEY, 4096);
+    conf.setInt(MIN_ALLOCATE_SIZE_KEY, 0);
+    allocator = ByteBuffAllocator.create(conf, true);
+    fs = FileSystem.get(conf);
+  }
+
+  @After
+  public void tearDown() {
+    allocator.clean();
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row-%06d", i));
+  }
+
+  private static KeyValue cell(int i) {
+    return new KeyValue(row(i), FAM, QUAL, i, Bytes.toBytes("value-" + i));
+  }
+
+  private HFile.Reader writeAndOpen() throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name.getMethodName());
+    HFileContext meta = new HFileContextBuilder().withBlockSize(1024).build();
+    try (HFile.Writer writer = HFile.getWriterFactory(conf, new CacheConfig(conf))
+      .withPath(fs, path).withFileContext(meta).create()) {
+      for (int i = 0; i < NUM_ROWS; i++) {
+        writer.append(cell(i));
+      }
+    }
+    cacheConf = new CacheConfig(conf, null, null, allocator);
+    HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf);
+    assertTrue(reader.getTrailer().getNumDataIndexLevels() > 1);
+    return reader;
+  }
+
+  private void assertNoLeak() throws Exception {
+    assertTrue(allocator.getUsedBufferCount() > 0);
+    Waiter.waitFor(conf, 10000,
+      () -> allocator.getFreeBufferCount() == allocator.getUsedBufferCount());
+  }
+
+  /**
+   * Reads the given number of blocks from the given offset through the read-ahead, as a scanner
+   * does, and returns the offset of the next block.
+   */
+  private static long readBlocks(HFile.Reader reader, BlockReadAhead readAhead, long offset,
+    int count, long processMillis) throws Exception {
+    long onDiskSize = -1;
+    for (int i = 0; i < count; i++) {
+      HFileBlock block = readAhead.readBlock(offset, onDiskSize, null);
+      try {
+        assertEquals(offset, block.getOffset());
+        offset += block.getOnDiskSizeWithHeader();
+        onDiskSize = block.getNextBlockOnDiskSize();
+        assertTrue(offset <= reader.getTrailer().getLastDataBlockOffset());
+        Thread.sleep(processMillis);
+      } finally {
+        block.release();
+      }
+    }
+    return offset;
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    try (HFile.Reader reader = writeAndOpen()) {
+      for (boolean pread : new boolean[] { true, false }) {
+        try (HFileScanner scanner = reader.getScanner(conf, false, pread)) {
+          assertTrue(scanner.seekTo());
+          int i = 0;
+          do {
+            assertEquals(0, KeyValue.COMPARATOR.compare(cell(i), scanner.getCell()));
+            i++;
+          } while (scanner.next());
+          assertEquals(NUM_ROWS, i);
+        }
+      }
+    }
+    assertNoLeak();
+  }
+
+  @Test
+  public void testReadsOverlapWithScanner() throws Exception {
+    try (HFile.Reader reader = writeAndOpen()) {
+      HFile.Reader spied = spy(reader);
+      CountDownLatch readStarted = new CountDownLatch(1);
+      CountDownLatch blockProcessed = new CountDownLatch(1);
+      AtomicReference<Thread> readThread = new AtomicReference<>();
+      doAnswer(invocation -> {
+        readThread.compareAndSet(null, Thread.currentThread());
+        readStarted.countDown();
+        // The next blocks are read while the scanner still processes the first one
+        blockProcessed.await(10, TimeUnit.SECONDS);
+        return invocation.callRealMethod();
+      }).when(spied).readBlocks(any(), any(), anyBoolean(), anyBoolean(), anyBoolean(), any());
+      BlockReadAhead readAhead = new BlockReadAhead(spied,
+        BlockReadAhead.getPool(conf, cacheConf), false, true, false, MAX_BLOCKS);
+      long offset = reader.getTrailer().getFirstDataBlockOffset();
+      HFileBlock first = readAhead.readBlock(offset, -1, null);
+      try {
+        assertTrue(readStarted.await(10, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), readThread.get());
+      } finally {
+        blockProcessed.countDown();
+        offset += first.getOnDiskSizeWithHeader();
+        first.release();
+      }
+      readBlocks(reader, readAhead, offset, 50, 0);
+      readAhead.close();
+    }
+    assertNoLeak();
+  }
+
+  @Test
+  public void testDepthAdapts() throws Exception {
+    try (HFile.Reader reader = writeAndOpen()) {
+      HFile.Reader spied = spy(reader);
+      AtomicLong readMillis = new AtomicLong(20);
+      doAnswer(invocation -> {
+        Thread.sleep(readMillis.get());
+        return invocation.callRealMethod();
+      }).when(spied).readBlocks(any(), any(), anyBoolean(), anyBoolean(), anyBoolean(), any());
+      BlockReadAhead readAhead = new BlockReadAhead(spied,
+        BlockReadAhead.getPool(conf, cacheConf), false, true, false, MAX_BLOCKS);
+      assertEquals(1, readAhead.getDepth());
+      // Slow reads: the scanner waits for the blocks, so more of them are read ahead
+      long offset =
+        readBlocks(reader, readAhead, reader.getTrailer().getFirstDataBlockOffset(), 30, 0);
+      assertEquals(MAX_BLOCKS, readAhead.getDepth());
+      // Fast reads: the blocks read ahead wait for the scanner, so fewer of them are read ahead
+      readMillis.set(0);
+      readBlocks(reader, readAhead, offset, 40, 10);
+      assertTrue(readAhead.getDepth() < MAX_BLOCKS);
+      readAhead.close();
+    }
+    assertNoLeak();
+  }
+
+  @Test
+  public void testSeekAndCloseWhileReadingAhead() throws Exception {
+    try (HFile.Reader reader = writeAndOpen()) {
+      try (HFileScanner scanner = reader.getScanner(conf, false, true)) {
+        assertTrue(scanner.seekTo());
+        for (int i = 0; i < 200; i++) {
+          assertTrue(scanner.next());
+        }
+        // Jump backwards and forwards, dropping the blocks read ahead
+        for (int row : new int[] { 2000, 100, 2500 }) {
+          assertEquals(0, scanner.seekTo(cell(row)));
+          for (int i = row; i < row + 150; i++) {
+            assertEquals(0, KeyValue.COMPARATOR.compare(cell(i), scanner.getCell()));
+            assertTrue(scanner.next());
+          }
+        }
+      }
+    }
+    assertNoLeak();
+  }
+
+  /**
+   * Checks whether the blocks read ahead are kept when the scanner ships its cells, by counting the
+   * blocks the scanner reads itself.
+   */
+  private void testShipped(boolean cacheBlocks, int expectedScannerReads) throws Exception {
+    try (HFile.Reader reader = writeAndOpen()) {
+      HFile.Reader spied = spy(reader);
+      Thread scannerThread = Thread.currentThread();
+      AtomicInteger scannerReads = new AtomicInteger();
+      doAnswer(invocation -> {
+        if (Thread.currentThread() == scannerThread) {
+          scannerReads.incrementAndGet();
+        }
+        return invocation.callRealMethod();
+      }).when(spied).readBlock(anyLong(), anyLong(), anyBoolean(), anyBoolean(), anyBoolean(),
+        anyBoolean(), any(), any());
+      BlockReadAhead readAhead = new BlockReadAhead(spied,
+        BlockReadAhead.getPool(conf, cacheConf), cacheBlocks, true, false, MAX_BLOCKS);
+      long offset =
+        readBlocks(reader, readAhead, reader.getTrailer().getFirstDataBlockOffset(), 1, 0);
+      // The next block is being read ahead or already read
+      readAhead.shipped();
+      readBlocks(reader, readAhead, offset, 1, 0);
+      assertEquals(expectedScannerReads, scannerReads.get());
+      readAhead.close();
+    }
+    assertNoLeak();
+  }
+
+  @Test
+  public void testShippedReleasesCachedBlocksReadAhead() throws Exception {
+    testShipped(true, 2);
+  }
+
+  @Test
+  public void testShippedKeepsUncachedBlocksReadAhead() throws Exception {
+    testShipped(false, 1);
+  }
+
+  @Test
+  public void testShippedWhileScanning() throws Exception {
+    for (boolean cacheBlocks : new boolean[] { true, false }) {
+      try (HFile.Reader reader = writeAndOpen()) {
+        try (HFileScanner scanner = reader.getScanner(conf, cacheBlocks, true)) {
+          assertTrue(scanner.seekTo());
+          int i = 0;
+          do {
+            assertEquals(0, KeyValue.COMPARATOR.compare(cell(i), scanner.getCell()));
+            if (++i % 500 == 0) {
+              scanner.shipped();
+            }
+          } while (scanner.next());
+          assertEquals(NUM_ROWS, i);
+        }
+      }
+      assertNoLeak();
+    }
+  }
+}
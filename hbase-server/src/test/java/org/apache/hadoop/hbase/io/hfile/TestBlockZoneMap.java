@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.regionserver.StoreFileWriter;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestBlockZoneMap {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBlockZoneMap.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] FAM = Bytes.toBytes("f");
+  private static final byte[] QUAL = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 2000;
+  private static final int DELETE_ROW = 1500;
+
+  @Rule
+  public TestName name = new TestName();
+
+  private Configuration conf;
+  private FileSystem fs;
+  private CacheConfig cacheConf;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    // Small leaf index and Bloom chunks, so inline blocks sit between the data blocks
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 1024);
+    fs = FileSystem.get(conf);
+    cacheConf = new CacheConfig(conf);
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row-%06d", i));
+  }
+
+  /**
+   * Writes one cell per row with the row number as timestamp, and a delete marker much newer than
+   * all the cells on {@link #DELETE_ROW}.
+   */
+  private Path writeFile(boolean zoneMap) throws IOException {
+    conf.setBoolean(BlockZoneMap.ENABLED_KEY, zoneMap);
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name.getMethodName() + "-" + zoneMap);
+    HFileContext meta = new HFileContextBuilder().withBlockSize(1024).build();
+    StoreFileWriter writer = new StoreFileWriter.Builder(conf, cacheConf, fs).withFilePath(path)
+      .withFileContext(meta).withBloomType(BloomType.ROW).build();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      if (i == DELETE_ROW) {
+        writer.append(new KeyValue(row(i), FAM, QUAL, 100 * NUM_ROWS, KeyValue.Type.DeleteColumn));
+      }
+      writer.append(new KeyValue(row(i), FAM, QUAL, i, Bytes.toBytes("value-" + i)));
+    }
+    writer.close();
+    return path;
+  }
+
+  /** Returns the rows of the cells the scanner returns, and the number of cells read */
+  private int scan(HFile.Reader reader, TimeRange timeRange, Set<Integer> rows) throws IOException {
+    int cells = 0;
+    try (HFileScanner scanner = reader.getScanner(conf, false, true)) {
+      scanner.setBlockSkipTimeRange(timeRange);
+      if (!scanner.seekTo()) {
+        return 0;
+      }
+      do {
+        Cell cell = scanner.getCell();
+        cells++;
+        if (timeRange.withinTimeRange(cell.getTimestamp()) || CellUtil.isDelete(cell)) {
+          rows.add(Integer.parseInt(Bytes.toString(CellUtil.cloneRow(cell)).substring(4)));
+        }
+      } while (scanner.next());
+    }
+    return cells;
+  }
+
+  @Test
+  public void testSkipBlocksOutOfTimeRange() throws IOException {
+    Path path = writeFile(true);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      BlockZoneMap zoneMap = reader.getBlockZoneMap();
+      assertTrue(zoneMap.getBlockCount() > 10);
+
+      TimeRange timeRange = TimeRange.between(1000, 1100);
+      Set<Integer> rows = new HashSet<>();
+      int cells = scan(reader, timeRange, rows);
+      for (int i = 1000; i < 1100; i++) {
+        assertTrue("row " + i, rows.contains(i));
+      }
+      // The block with the newer delete marker is still read
+      assertTrue(rows.contains(DELETE_ROW));
+      // The first block is read by the seek, then the blocks older than the range are skipped
+      assertTrue("read " + cells + " cells", cells < NUM_ROWS / 4);
+
+      // Reading everything when the time range covers all the cells
+      rows.clear();
+      assertEquals(NUM_ROWS + 1, scan(reader, TimeRange.allTime(), rows));
+    }
+  }
+
+  @Test
+  public void testSkipToEndOfFile() throws IOException {
+    Path path = writeFile(true);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      Set<Integer> rows = new HashSet<>();
+      int cells = scan(reader, TimeRange.between(0, 10), rows);
+      for (int i = 0; i < 10; i++) {
+        assertTrue("row " + i, rows.contains(i));
+      }
+      assertTrue(rows.contains(DELETE_ROW));
+      assertTrue("read " + cells + " cells", cells < NUM_ROWS / 4);
+    }
+  }
+
+  @Test
+  public void testNoZoneMap() throws IOException {
+    Path path = writeFile(false);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      assertEquals(0, reader.getBlockZoneMap().getBlockCount());
+      Set<Integer> rows = new HashSet<>();
+      assertEquals(NUM_ROWS + 1, scan(reader, TimeRange.between(1000, 1100), rows));
+      assertEquals(101, rows.size());
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.CompatibilityFactory;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.MetricsIOSource;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.test.MetricsAssertHelper;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestCoalescedBlockReads {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestCoalescedBlockReads.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final MetricsAssertHelper HELPER =
+    CompatibilityFactory.getInstance(MetricsAssertHelper.class);
+
+  private static final byte[] FAM = Bytes.toBytes("f");
+  private static final byte[] QUAL = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 2000;
+
+  @Rule
+  public TestName name = new TestName();
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setBoolean(BlockZoneMap.ENABLED_KEY, true);
+    // Small leaf index chunks, so inline blocks sit between some of the data blocks
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 1024);
+    fs = FileSystem.get(conf);
+  }
+
+  @Test
+  public void testPlanRead() {
+    long[] offsets = { 0, 100, 200, 500, 600, 10000 };
+    int[] sizes = { 100, 100, 100, 100, 100, 100 };
+    // Adjacent blocks only
+    assertEquals(3, HFileBlock.FSReaderImpl.planRead(offsets, sizes, 0, 0, 1 << 20));
+    assertEquals(5, HFileBlock.FSReaderImpl.planRead(offsets, sizes, 3, 0, 1 << 20));
+    assertEquals(6, HFileBlock.FSReaderImpl.planRead(offsets, sizes, 5, 0, 1 << 20));
+    // Reading over a small gap
+    assertEquals(5, HFileBlock.FSReaderImpl.planRead(offsets, sizes, 0, 200, 1 << 20));
+    // Bounded by the size of the read
+    assertEquals(2, HFileBlock.FSReaderImpl.planRead(offsets, sizes, 0, 200, 250));
+    assertEquals(1, HFileBlock.FSReaderImpl.planRead(offsets, sizes, 0, 200, 0));
+  }
+
+  private Path writeFile() throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name.getMethodName());
+    HFileContext meta = new HFileContextBuilder().withBlockSize(1024).build();
+    try (HFile.Writer writer = HFile.getWriterFactory(conf, new CacheConfig(conf))
+      .withPath(fs, path).withFileContext(meta).create()) {
+      for (int i = 0; i < NUM_ROWS; i++) {
+        writer.append(new KeyValue(Bytes.toBytes(String.format("row-%06d", i)), FAM, QUAL, i,
+          Bytes.toBytes("value-" + i)));
+      }
+    }
+    return path;
+  }
+
+  private static void assertSameBlock(HFileBlock expected, HFileBlock actual) {
+    assertEquals(expected.getOffset(), actual.getOffset());
+    assertEquals(expected.getBlockType(), actual.getBlockType());
+    ByteBuff expectedBuf = expected.getBufferReadOnly();
+    ByteBuff actualBuf = actual.getBufferReadOnly();
+    assertEquals(0,
+      ByteBuff.compareTo(expectedBuf, 0, expectedBuf.limit(), actualBuf, 0, actualBuf.limit()));
+  }
+
+  private void testReadBlocks(CacheConfig cacheConf, int cachedEvery, boolean cacheOnly)
+    throws IOException {
+    Path path = writeFile();
+    MetricsIOSource source = HFile.metrics.getMetricsSource();
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      BlockZoneMap zoneMap = reader.getBlockZoneMap();
+      int count = zoneMap.getBlockCount();
+      assertTrue(count > 10);
+      long[] offsets = new long[count];
+      int[] sizes = new int[count];
+      HFileBlock[] expected = new HFileBlock[count];
+      int cached = 0;
+      for (int i = 0; i < count; i++) {
+        offsets[i] = zoneMap.getBlockOffset(i);
+        sizes[i] = zoneMap.getBlockOnDiskSize(i);
+        boolean cacheBlock = cachedEvery > 0 && i % cachedEvery == 0;
+        expected[i] = reader.readBlock(offsets[i], sizes[i], cacheBlock, true, false, false,
+          BlockType.DATA, null);
+        if (cacheBlock) {
+          cached++;
+        }
+      }
+      long coalescedReads = HELPER.getCounter(MetricsIOSource.COALESCED_READS_KEY, source);
+      long coalescedBlocks = HELPER.getCounter(MetricsIOSource.COALESCED_READ_BLOCKS_KEY, source);
+      HFileBlock[] blocks = reader.readBlocks(offsets, sizes, false, false, cacheOnly, null);
+      try {
+        for (int i = 0; i < count; i++) {
+          assertSameBlock(expected[i], blocks[i]);
+        }
+      } finally {
+        for (int i = 0; i < count; i++) {
+          expected[i].release();
+          blocks[i].release();
+        }
+      }
+      assertTrue(HELPER.getCounter(MetricsIOSource.COALESCED_READS_KEY, source) > coalescedReads);
+      // Only the blocks missing from the cache are read
+      long read =
+        HELPER.getCounter(MetricsIOSource.COALESCED_READ_BLOCKS_KEY, source) - coalescedBlocks;
+      assertTrue("read " + read + " blocks", read > 0 && read <= count - cached);
+    }
+  }
+
+  @Test
+  public void testReadBlocks() throws IOException {
+    testReadBlocks(new CacheConfig(conf), 0, false);
+  }
+
+  @Test
+  public void testReadBlocksPartlyCached() throws IOException {
+    testReadBlocks(new CacheConfig(conf, BlockCacheFactory.createBlockCache(conf)), 3, false);
+  }
+
+  @Test
+  public void testPrefetchReadBlocksPartlyCached() throws IOException {
+    // the blocks already cached are not read again when prefetching either
+    testReadBlocks(new CacheConfig(conf, BlockCacheFactory.createBlockCache(conf)), 3, true);
+  }
+
+  @Test
+  public void testReadBlocksCachesTypedBlocks() throws IOException {
+    Path path = writeFile();
+    LruBlockCache cache =
+      new LruBlockCache(32 * 1024 * 1024, HConstants.DEFAULT_BLOCKSIZE, false, conf);
+    MetricsIOSource source = HFile.metrics.getMetricsSource();
+    try (HFile.Reader reader = HFile.createReader(fs, path, new CacheConfig(conf, cache), true,
+      conf)) {
+      BlockZoneMap zoneMap = reader.getBlockZoneMap();
+      int count = zoneMap.getBlockCount();
+      long[] offsets = new long[count];
+      int[] sizes = new int[count];
+      for (int i = 0; i < count; i++) {
+        offsets[i] = zoneMap.getBlockOffset(i);
+        sizes[i] = zoneMap.getBlockOnDiskSize(i);
+      }
+      for (HFileBlock block : reader.readBlocks(offsets, sizes, true, false, false, null)) {
+        block.release();
+      }
+      for (long offset : offsets) {
+        BlockCacheKey key = new BlockCacheKey(reader.getName(), offset);
+        LruCachedBlock cached = cache.getMapForTests().get(key);
+        assertEquals(cached.getBuffer().getBlockType(), cached.getCacheKey().getBlockType());
+      }
+      // All the blocks now come from the cache
+      long coalescedBlocks = HELPER.getCounter(MetricsIOSource.COALESCED_READ_BLOCKS_KEY, source);
+      for (HFileBlock block : reader.readBlocks(offsets, sizes, true, false, false, null)) {
+        block.release();
+      }
+      assertEquals(coalescedBlocks,
+        HELPER.getCounter(MetricsIOSource.COALESCED_READ_BLOCKS_KEY, source));
+    } finally {
+      cache.shutdown();
+    }
+  }
+}
@@ -53,6 +53,7 @@ import org.apache.hadoop.hbase.io.ByteBuffAllocator;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.compress.Compression.Algorithm;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
 import org.apache.hadoop.hbase.io.hfile.HFileBlockIndex.BlockIndexReader;
 import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.nio.MultiByteBuff;
@@ -671,6 +672,140 @@ public class TestHFileBlockIndex {
     }
   }
 
+  /**
+   * Writes the same keys with and without {@link IndexBlockEncoding#PREFIX_TREE} and checks the
+   * encoded multi-level index is smaller and finds the same blocks.
+   */
+  @Test
+  public void testPrefixTreeIndexBlockEncoding() throws IOException {
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 512);
+    CacheConfig cacheConf = new CacheConfig(conf);
+    byte[][] keys = new byte[NUM_KV][];
+    Path[] paths = new Path[2];
+    IndexBlockEncoding[] encodings = { IndexBlockEncoding.NONE, IndexBlockEncoding.PREFIX_TREE };
+    for (int e = 0; e < encodings.length; e++) {
+      paths[e] = new Path(TEST_UTIL.getDataTestDir(), "hfile_for_index_encoding_" + encodings[e]);
+      HFileContext meta = new HFileContextBuilder().withBlockSize(SMALL_BLOCK_SIZE)
+        .withCompression(compr).withIndexBlockEncoding(encodings[e]).build();
+      HFile.Writer writer = HFile.getWriterFactory(conf, cacheConf).withPath(fs, paths[e])
+        .withFileContext(meta).create();
+      Random rand = new Random(19231737);
+      for (int i = 0; i < NUM_KV; ++i) {
+        // Long rows sharing most of their bytes, as with composite row keys
+        byte[] row = Bytes.toBytes(String.format("user/tenant-0001/device-%010d", i));
+        KeyValue kv = new KeyValue(row, Bytes.toBytes("f"), Bytes.toBytes("q"), 1L,
+          RandomKeyValueUtil.randomValue(rand));
+        keys[i] = kv.getKey();
+        writer.append(kv);
+      }
+      writer.close();
+    }
+
+    HFile.Reader plainReader = HFile.createReader(fs, paths[0], cacheConf, true, conf);
+    HFile.Reader reader = HFile.createReader(fs, paths[1], cacheConf, true, conf);
+    try {
+      assertEquals(IndexBlockEncoding.PREFIX_TREE.name(),
+        Bytes.toString(reader.getHFileInfo().get(HFileIndexBlockEncoder.INDEX_BLOCK_ENCODING)));
+      assertEquals(plainReader.getTrailer().getNumDataIndexLevels(),
+        reader.getTrailer().getNumDataIndexLevels());
+      assertTrue(reader.getTrailer().getNumDataIndexLevels() > 2);
+      assertTrue(reader.getTrailer().getUncompressedDataIndexSize()
+          < plainReader.getTrailer().getUncompressedDataIndexSize());
+
+      assertTrue(Bytes.equals(keys[0], ((KeyValue) reader.getFirstKey().get()).getKey()));
+      assertEquals(plainReader.midKey(), reader.midKey());
+      assertEquals(plainReader.getDataBlockIndexReader().getRootBlockCount(),
+        reader.getDataBlockIndexReader().getRootBlockCount());
+
+      for (boolean pread : new boolean[] { false, true }) {
+        HFileScanner scanner = reader.getScanner(conf, true, pread);
+        for (int i = 0; i < NUM_KV; ++i) {
+          checkSeekTo(keys, scanner, i);
+          assertTrue(Bytes.equals(keys[i], ((KeyValue) scanner.getKey()).getKey()));
+        }
+        for (int i = NUM_KV - 1; i > 0; i -= 97) {
+          assertTrue(scanner.seekBefore(KeyValueUtil.createKeyValueFromKey(keys[i])));
+          assertTrue(Bytes.equals(keys[i - 1], ((KeyValue) scanner.getKey()).getKey()));
+        }
+        KeyValue beforeFirst = KeyValueUtil.createFirstOnRow(Bytes.toBytes("a"));
+        assertEquals(-1, scanner.seekTo(beforeFirst));
+        assertFalse(scanner.seekBefore(KeyValueUtil.createKeyValueFromKey(keys[0])));
+      }
+    } finally {
+      plainReader.close();
+      reader.close();
+    }
+  }
+
+  /**
+   * Checks that the data blocks found from the block index by offset are the data blocks of the
+   * file, for a single level index and for multi-level ones, with and without index encoding.
+   */
+  @Test
+  public void testGetDataBlocks() throws IOException {
+    CacheConfig cacheConf = new CacheConfig(conf);
+    int[] indexChunkSizes = { 1024 * 1024, INDEX_CHUNK_SIZES[0], INDEX_CHUNK_SIZES[2] };
+    for (IndexBlockEncoding encoding : new IndexBlockEncoding[] { IndexBlockEncoding.NONE,
+      IndexBlockEncoding.PREFIX_TREE }) {
+      for (int indexChunkSize : indexChunkSizes) {
+        conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, indexChunkSize);
+        Path hfilePath = new Path(TEST_UTIL.getDataTestDir(),
+          "hfile_for_data_blocks_" + encoding + "_" + indexChunkSize);
+        HFileContext meta = new HFileContextBuilder().withBlockSize(SMALL_BLOCK_SIZE)
+          .withCompression(compr).withIndexBlockEncoding(encoding).build();
+        try (HFile.Writer writer = HFile.getWriterFactory(conf, cacheConf)
+          .withPath(fs, hfilePath).withFileContext(meta).create()) {
+          Random rand = new Random(19231737);
+          for (int i = 0; i < NUM_KV; ++i) {
+            writer.append(new KeyValue(RandomKeyValueUtil.randomOrderedKey(rand, i),
+              Bytes.toBytes("f"), Bytes.toBytes("q"), 1L, RandomKeyValueUtil.randomValue(rand)));
+          }
+        }
+
+        try (HFile.Reader reader = HFile.createReader(fs, hfilePath, cacheConf, true, conf)) {
+          List<Long> offsets = new ArrayList<>();
+          List<Integer> onDiskSizes = new ArrayList<>();
+          HFileBlock.BlockIterator iter = reader.getUncachedBlockReader().blockRange(0,
+            reader.getTrailer().getLoadOnOpenDataOffset());
+          HFileBlock block;
+          while ((block = iter.nextBlock()) != null) {
+            if (block.getBlockType().isData()) {
+              offsets.add(block.getOffset());
+              onDiskSizes.add(block.getOnDiskSizeWithHeader());
+            }
+            block.release();
+          }
+          String desc = encoding + ", " + reader.getTrailer().getNumDataIndexLevels() + " levels";
+
+          long[] all = new long[offsets.size() + 1];
+          int[] allSizes = new int[offsets.size() + 1];
+          assertEquals(desc, offsets.size(), reader.getDataBlocks(0, all, allSizes));
+          for (int i = 0; i < offsets.size(); i++) {
+            assertEquals(desc, (long) offsets.get(i), all[i]);
+            assertEquals(desc, (int) onDiskSizes.get(i), allSizes[i]);
+          }
+
+          long[] some = new long[5];
+          int[] someSizes = new int[5];
+          for (int i = 0; i < offsets.size(); i += 7) {
+            // From the start of a data block, and from within it
+            for (long from : new long[] { offsets.get(i), offsets.get(i) + 1 }) {
+              int first = from == offsets.get(i) ? i : i + 1;
+              int expected = Math.min(some.length, offsets.size() - first);
+              assertEquals(desc, expected, reader.getDataBlocks(from, some, someSizes));
+              for (int j = 0; j < expected; j++) {
+                assertEquals(desc, (long) offsets.get(first + j), some[j]);
+                assertEquals(desc, (int) onDiskSizes.get(first + j), someSizes[j]);
+              }
+            }
+          }
+          assertEquals(desc, 0, reader.getDataBlocks(offsets.get(offsets.size() - 1) + 1, some,
+            someSizes));
+        }
+      }
+    }
+  }
+
   private void checkSeekTo(byte[][] keys, HFileScanner scanner, int i) throws IOException {
     assertEquals("Failed to seek to key #" + i + " (" + Bytes.toStringBinary(keys[i]) + ")", 0,
       scanner.seekTo(KeyValueUtil.createKeyValueFromKey(keys[i])));
@@ -109,19 +109,25 @@ public class TestLazyDataBlockDecompression {
     writer.close();
   }
 
-  /**
-   * Read all blocks from {@code path} to populate {@code blockCache}.
-   */
-  private static void cacheBlocks(Configuration conf, CacheConfig cacheConfig, FileSystem fs,
-    Path path, HFileContext cxt) throws IOException {
+  private static HFile.Reader openReader(Configuration conf, CacheConfig cacheConfig, FileSystem fs,
+    Path path) throws IOException {
     FSDataInputStreamWrapper fsdis = new FSDataInputStreamWrapper(fs, path);
     long fileSize = fs.getFileStatus(path).getLen();
-    FixedFileTrailer trailer = FixedFileTrailer.readFromStream(fsdis.getStream(false), fileSize);
     ReaderContext context = new ReaderContextBuilder().withFilePath(path).withFileSize(fileSize)
       .withFileSystem(fsdis.getHfs()).withInputStreamWrapper(fsdis).build();
     HFileInfo fileInfo = new HFileInfo(context, conf);
     HFile.Reader reader = new HFilePreadReader(context, fileInfo, cacheConfig, conf);
     fileInfo.initMetaAndIndex(reader);
+    return reader;
+  }
+
+  /**
+   * Read all blocks from {@code path} to populate {@code blockCache}.
+   */
+  private static void cacheBlocks(Configuration conf, CacheConfig cacheConfig, FileSystem fs,
+    Path path, HFileContext cxt) throws IOException {
+    HFile.Reader reader = openReader(conf, cacheConfig, fs, path);
+    FixedFileTrailer trailer = reader.getTrailer();
     long offset = trailer.getFirstDataBlockOffset(), max = trailer.getLastDataBlockOffset();
     List<HFileBlock> blocks = new ArrayList<>(4);
     HFileBlock block;
@@ -228,4 +234,49 @@ public class TestLazyDataBlockDecompression {
       + "disabledEvictedCount=" + disabledEvictedCount + ", enabledEvictedCount="
       + enabledEvictedCount, enabledEvictedCount < disabledEvictedCount);
   }
+
+  @Test
+  public void testHotBlocksArePromotedToUnpacked() throws Exception {
+    Path hfilePath = new Path(TEST_UTIL.getDataTestDir(), "testHotBlocksArePromotedToUnpacked");
+    HFileContext context =
+      new HFileContextBuilder().withCompression(Compression.Algorithm.GZ).build();
+    Configuration conf = HBaseConfiguration.create(TEST_UTIL.getConfiguration());
+    conf.setBoolean(CacheConfig.CACHE_BLOCKS_ON_WRITE_KEY, cacheOnWrite);
+    conf.setBoolean(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_KEY, true);
+    conf.setInt(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_PROMOTE_FREQUENCY_KEY, 4);
+    LruBlockCache blockCache = new LruBlockCache(HConstants.DEFAULT_BLOCKSIZE * 16,
+      HConstants.DEFAULT_BLOCKSIZE, false, conf);
+    CacheConfig cc = new CacheConfig(conf, blockCache);
+    assertEquals(4, cc.getCacheDataCompressedPromoteFrequency());
+    writeHFile(conf, cc, fs, hfilePath, context, 2000);
+    cacheBlocks(conf, cc, fs, hfilePath, context);
+
+    HFile.Reader reader = openReader(conf, cc, fs, hfilePath);
+    try {
+      long hotOffset = reader.getTrailer().getFirstDataBlockOffset();
+      BlockCacheKey hotKey = new BlockCacheKey(reader.getName(), hotOffset);
+      HFileBlock packed = (HFileBlock) blockCache.getMapForTests().get(hotKey).getBuffer();
+      assertFalse(packed.isUnpacked());
+      assertTrue(packed.hasDistinctUnpackedSize());
+      for (int i = 0; i < 4; i++) {
+        HFileBlock block = reader.readBlock(hotOffset, -1, true, true, false, true, null, null);
+        // Callers always see the unpacked block, whatever the form it is cached in
+        assertTrue(block.isUnpacked());
+        block.release();
+      }
+      for (Map.Entry<BlockCacheKey, LruCachedBlock> e : blockCache.getMapForTests().entrySet()) {
+        HFileBlock block = (HFileBlock) e.getValue().getBuffer();
+        if (block.getBlockType().isData()) {
+          assertEquals("block=" + block, e.getKey().equals(hotKey), block.isUnpacked());
+        }
+      }
+      HFileBlock block = reader.readBlock(hotOffset, -1, true, true, false, true, null, null);
+      assertTrue(block.isUnpacked());
+      assertEquals(packed.getUncompressedSizeWithoutHeader(),
+        block.getUncompressedSizeWithoutHeader());
+      block.release();
+    } finally {
+      reader.close();
+    }
+  }
 }
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestMissRatioCurve {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestMissRatioCurve.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static void scan(MissRatioCurve curve, String group, int blocks, int rounds) {
+    for (int round = 0; round < rounds; round++) {
+      for (int i = 0; i < blocks; i++) {
+        curve.record(new BlockCacheKey(group, i * 65536L), group);
+      }
+    }
+  }
+
+  @Test
+  public void testCyclicScan() {
+    MissRatioCurve curve = new MissRatioCurve(1, 4096);
+    scan(curve, "f", 1000, 10);
+    assertEquals(10000, curve.getSampledRequests());
+    // A cache smaller than the scanned blocks never hits, a larger one hits all but the first round
+    assertEquals(0, curve.getHitRatio(900), 0.001);
+    assertEquals(0.9, curve.getHitRatio(1100), 0.001);
+    assertEquals(0.9, curve.getHitRatio(Long.MAX_VALUE), 0.001);
+  }
+
+  @Test
+  public void testSampled() {
+    MissRatioCurve curve = new MissRatioCurve(0.1, 4096);
+    scan(curve, "f", 20000, 5);
+    long sampled = curve.getSampledRequests();
+    assertTrue("sampled " + sampled, sampled > 5000 && sampled < 15000);
+    assertEquals(0, curve.getHitRatio(15000), 0.05);
+    assertEquals(0.8, curve.getHitRatio(30000), 0.05);
+  }
+
+  @Test
+  public void testGroups() {
+    MissRatioCurve curve = new MissRatioCurve(1, 4096);
+    for (int round = 0; round < 20; round++) {
+      scan(curve, "hot", 10, 1);
+      scan(curve, "scan", 200, 1);
+    }
+    assertEquals(Arrays.asList("hot", "scan"), curve.getGroups());
+    // The hot blocks hit as soon as the cache holds them and the scanned blocks in between
+    assertEquals(0, curve.getHitRatio("hot", 100), 0.001);
+    assertEquals(0.95, curve.getHitRatio("hot", 250), 0.001);
+    assertEquals(0, curve.getHitRatio("scan", 100), 0.001);
+    assertEquals(0.95, curve.getHitRatio("scan", 250), 0.001);
+    assertEquals(0, curve.getHitRatio("other", 250), 0.001);
+  }
+
+  @Test
+  public void testForgetOldestBlocks() {
+    MissRatioCurve curve = new MissRatioCurve(1, 100);
+    // Too many blocks to remember, and many renumberings of the remembered ones
+    scan(curve, "f", 1000, 10);
+    assertEquals(0, curve.getHitRatio(curve.getMaxBlocks()), 0.001);
+    scan(curve, "f", 50, 10);
+    // The last blocks of the large scan were still remembered, the first ones were not
+    assertEquals(9 * 50.0 / 10500, curve.getHitRatio(curve.getMaxBlocks()), 0.0001);
+    assertEquals(9 * 50.0 / 10500, curve.getHitRatio(60), 0.0001);
+    assertEquals(0, curve.getHitRatio(40), 0.0001);
+  }
+
+  @Test
+  public void testGroupOf() {
+    assertEquals("default:t1/f",
+      MissRatioCurve.groupOf(new Path("/hbase/data/default/t1/0123abcd/f/f00d")));
+    assertEquals("f", MissRatioCurve.groupOf(new Path("f/f00d")));
+  }
+
+  @Test
+  public void testRecordedByReader() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setBoolean(MissRatioCurve.ENABLED_KEY, true);
+    conf.setFloat(MissRatioCurve.SAMPLING_RATE_KEY, 1);
+    CacheConfig cacheConf = new CacheConfig(conf, BlockCacheFactory.createBlockCache(conf));
+    FileSystem fs = FileSystem.get(conf);
+    Path path = new Path(TEST_UTIL.getDataTestDir(), "ns/table/region/family/file");
+    HFileContext meta = new HFileContextBuilder().withBlockSize(1024).build();
+    try (HFile.Writer writer =
+      HFile.getWriterFactory(conf, cacheConf).withPath(fs, path).withFileContext(meta).create()) {
+      for (int i = 0; i < 1000; i++) {
+        writer.append(new KeyValue(Bytes.toBytes(String.format("row-%06d", i)), Bytes.toBytes("f"),
+          Bytes.toBytes("q"), Bytes.toBytes("value-" + i)));
+      }
+    }
+    MissRatioCurve curve = cacheConf.getBlockCache().get().getStats().getMissRatioCurve();
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      for (int round = 0; round < 2; round++) {
+        try (HFileScanner scanner = reader.getScanner(conf, true, true)) {
+          assertTrue(scanner.seekTo());
+          while (scanner.next()) {
+          }
+        }
+      }
+    }
+    assertEquals(Arrays.asList("ns:table/family"), curve.getGroups());
+    assertTrue(curve.getSampledRequests() > 20);
+    // The second scan hits for any cache holding the whole file
+    assertEquals(0.5, curve.getHitRatio(curve.getMaxBlocks()), 0.1);
+  }
+}
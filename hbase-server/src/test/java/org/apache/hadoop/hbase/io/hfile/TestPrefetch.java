@@ -26,6 +26,7 @@ import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -33,8 +34,11 @@ import static org.junit.Assert.fail;
 import io.opentelemetry.sdk.testing.junit4.OpenTelemetryRule;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
@@ -43,6 +47,7 @@ import java.util.function.Consumer;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.CompatibilityFactory;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HBaseTestingUtil;
@@ -57,6 +62,7 @@ import org.apache.hadoop.hbase.client.trace.StringTraceRenderer;
 import org.apache.hadoop.hbase.fs.HFileSystem;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
 import org.apache.hadoop.hbase.io.HFileLink;
+import org.apache.hadoop.hbase.io.MetricsIOSource;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.regionserver.BloomType;
 import org.apache.hadoop.hbase.regionserver.ConstantSizeRegionSplitPolicy;
@@ -65,6 +71,7 @@ import org.apache.hadoop.hbase.regionserver.HStoreFile;
 import org.apache.hadoop.hbase.regionserver.StoreFileInfo;
 import org.apache.hadoop.hbase.regionserver.StoreFileWriter;
 import org.apache.hadoop.hbase.regionserver.TestHStoreFile;
+import org.apache.hadoop.hbase.test.MetricsAssertHelper;
 import org.apache.hadoop.hbase.testclassification.IOTests;
 import org.apache.hadoop.hbase.testclassification.MediumTests;
 import org.apache.hadoop.hbase.trace.TraceUtil;
@@ -89,6 +96,9 @@ public class TestPrefetch {
 
   private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
 
+  private static final MetricsAssertHelper HELPER =
+    CompatibilityFactory.getInstance(MetricsAssertHelper.class);
+
   private static final int NUM_VALID_KEY_TYPES = KeyValue.Type.values().length - 2;
   private static final int DATA_BLOCK_SIZE = 2048;
   private static final int NUM_KV = 1000;
@@ -141,6 +151,52 @@ public class TestPrefetch {
       hasItem(allOf(hasName("PrefetchExecutor.request"), not(hasParentSpanId(testSpan)))));
   }
 
+  @Test
+  public void testPrefetchOrderedByReadRequests() throws Exception {
+    // Keep all the prefetch threads busy, one of them until the hot and cold files are ready
+    int threads = conf.getInt("hbase.hfile.thread.prefetch", 4);
+    CountDownLatch blockersStarted = new CountDownLatch(threads);
+    CountDownLatch releaseOne = new CountDownLatch(1);
+    CountDownLatch releaseOthers = new CountDownLatch(1);
+    for (int i = 0; i < threads; i++) {
+      Path path = new Path("/ordering/blockerRegion/f/blocker" + i);
+      CountDownLatch release = i == 0 ? releaseOne : releaseOthers;
+      PrefetchExecutor.request(path, () -> {
+        blockersStarted.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        PrefetchExecutor.complete(path);
+      });
+    }
+    assertTrue(blockersStarted.await(30, TimeUnit.SECONDS));
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    PrefetchExecutor.registerRegion("hotRegion", () -> 100);
+    try {
+      Path cold = new Path("/ordering/coldRegion/f/cold");
+      Path hot = new Path("/ordering/hotRegion/f/hot");
+      for (Path path : new Path[] { cold, hot }) {
+        PrefetchExecutor.request(path, () -> {
+          order.add(path.getName());
+          PrefetchExecutor.complete(path);
+        });
+      }
+      // Past the delay of both files, the cold one was requested first but is not picked first
+      Thread.sleep(2000);
+      releaseOne.countDown();
+      TEST_UTIL.waitFor(30000, () -> order.size() == 2);
+      assertEquals("hot", order.get(0));
+      assertEquals("cold", order.get(1));
+    } finally {
+      releaseOne.countDown();
+      releaseOthers.countDown();
+      PrefetchExecutor.unregisterRegion("hotRegion");
+    }
+  }
+
   @Test
   public void testPrefetchRace() throws Exception {
     for (int i = 0; i < 10; i++) {
@@ -240,6 +296,15 @@ public class TestPrefetch {
 
   }
 
+  @Test
+  public void testPrefetchCoalescesReads() throws Exception {
+    // The runs of data blocks listed by the block index are read with coalesced reads
+    MetricsIOSource source = HFile.metrics.getMetricsSource();
+    long coalescedReads = HELPER.getCounter(MetricsIOSource.COALESCED_READS_KEY, source);
+    readStoreFile(writeStoreFile("TestPrefetchCoalescesReads"));
+    assertTrue(HELPER.getCounter(MetricsIOSource.COALESCED_READS_KEY, source) > coalescedReads);
+  }
+
   @Test
   public void testPrefetchSkipsRefs() throws Exception {
     testPrefetchWhenRefs(true, c -> {
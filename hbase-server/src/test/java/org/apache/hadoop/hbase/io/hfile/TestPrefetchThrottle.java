@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestPrefetchThrottle {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestPrefetchThrottle.class);
+
+  @Test
+  public void testBackOffAndRecover() {
+    PrefetchThrottle throttle = new PrefetchThrottle(1600, 10);
+    for (int i = 0; i < 50; i++) {
+      throttle.updateForegroundLatency(100);
+    }
+    assertTrue(throttle.getForegroundLatency() > 10);
+    long[] expected = { 800, 400, 200, 100, 100 };
+    for (long rate : expected) {
+      throttle.adjustRate();
+      assertEquals(rate, throttle.getRate());
+    }
+    for (int i = 0; i < 100; i++) {
+      throttle.updateForegroundLatency(1);
+    }
+    assertTrue(throttle.getForegroundLatency() < 10);
+    throttle.adjustRate();
+    assertEquals(200, throttle.getRate());
+    for (int i = 0; i < 20; i++) {
+      throttle.adjustRate();
+    }
+    assertEquals(1600, throttle.getRate());
+  }
+
+  @Test
+  public void testNoBackOffWithoutTarget() {
+    PrefetchThrottle throttle = new PrefetchThrottle(1600, 0);
+    throttle.updateForegroundLatency(1000);
+    throttle.adjustRate();
+    assertEquals(1600, throttle.getRate());
+  }
+
+  @Test
+  public void testAcquireWaitsForBudget() throws InterruptedException {
+    PrefetchThrottle throttle = new PrefetchThrottle(1000 * 1000, 0);
+    long start = System.nanoTime();
+    for (int i = 0; i < 3; i++) {
+      throttle.acquire(500 * 1000);
+    }
+    // The first acquire is free, the next two wait for half a second each
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+
+    PrefetchThrottle unlimited = new PrefetchThrottle(0, 0);
+    assertFalse(unlimited.isEnabled());
+    start = System.nanoTime();
+    for (int i = 0; i < 3; i++) {
+      unlimited.acquire(Long.MAX_VALUE / 4);
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+  }
+}
@@ -466,6 +466,55 @@ public class TestBucketCache {
     }
   }
 
+  @Test
+  public void testAdmissionFilter() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(BucketCache.ADMISSION_FILTER_ENABLED_KEY, true);
+    // Make the cache look full from the start so that the filter is always applied
+    conf.setFloat(BucketCache.ACCEPT_FACTOR_CONFIG_NAME, 0f);
+    conf.setFloat(BucketCache.MIN_FACTOR_CONFIG_NAME, 0f);
+    BucketCache bucketCache = new BucketCache(ioEngineName, capacitySize, constructedBlockSize,
+      constructedBlockSizes, writeThreads, writerQLen, null, 100, conf);
+    try {
+      HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(constructedBlockSize, 3);
+      BlockCacheKey victimKey = blocks[0].getBlockName();
+      BlockCacheKey coldKey = blocks[1].getBlockName();
+      BlockCacheKey hotKey = blocks[2].getBlockName();
+
+      // Nothing evicted yet, so admitted, and then evicted by the writer as the cache is "full"
+      assertNull(bucketCache.getBlock(victimKey, true, false, true));
+      bucketCache.cacheBlock(victimKey, blocks[0].getBlock());
+      while (bucketCache.admissionVictim == null) {
+        Thread.sleep(100);
+      }
+      assertEquals(victimKey, bucketCache.admissionVictim);
+      assertEquals(0, bucketCache.getStats().getRejectedAdmissions());
+      // Keep admitted blocks in the ramCache, where they are easy to check for
+      bucketCache.stopWriterThreads();
+
+      // Requested less often than the victim, so turned away
+      bucketCache.cacheBlock(coldKey, blocks[1].getBlock());
+      assertNull(bucketCache.getBlock(coldKey, true, false, true));
+      assertEquals(1, bucketCache.getStats().getRejectedAdmissions());
+
+      // Requested more often than the victim, so admitted
+      assertNull(bucketCache.getBlock(hotKey, true, false, true));
+      assertNull(bucketCache.getBlock(hotKey, true, false, true));
+      bucketCache.cacheBlock(hotKey, blocks[2].getBlock());
+      assertEquals(1, bucketCache.getStats().getRejectedAdmissions());
+      assertTrue(bucketCache.ramCache.containsKey(hotKey));
+      assertFalse(bucketCache.ramCache.containsKey(coldKey));
+
+      // In-memory blocks bypass the filter
+      BlockCacheKey inMemoryKey = new BlockCacheKey("inMemory", 0);
+      bucketCache.cacheBlock(inMemoryKey, blocks[0].getBlock(), true);
+      assertEquals(1, bucketCache.getStats().getRejectedAdmissions());
+      assertTrue(bucketCache.ramCache.containsKey(inMemoryKey));
+    } finally {
+      bucketCache.shutdown();
+    }
+  }
+
   @Test
   public void testValidBucketCacheConfigs() throws IOException {
     Configuration conf = HBaseConfiguration.create();
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestBucketCacheJournal {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBucketCacheJournal.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final int BLOCK_SIZE = 8192;
+  private static final long CAPACITY = 32 * 1024 * 1024;
+
+  private BucketCache createCache(Path testDir, Configuration conf) throws IOException {
+    return new BucketCache("file:" + testDir + "/bucket.cache", CAPACITY, BLOCK_SIZE, null,
+      BucketCache.DEFAULT_WRITER_THREADS, BucketCache.DEFAULT_WRITER_QUEUE_ITEMS,
+      testDir + "/bucket.persistence", 60 * 1000, conf);
+  }
+
+  @Test
+  public void testReplayOnRestart() throws Exception {
+    Path testDir = TEST_UTIL.getDataTestDir();
+    TEST_UTIL.getTestFileSystem().mkdirs(testDir);
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(BucketCache.JOURNAL_ENABLED_KEY, true);
+    // Never compact on the second checkpoint, so the restart has to replay the journal
+    conf.setFloat(BucketCache.JOURNAL_COMPACTION_RATIO_KEY, 100f);
+    conf.setLong(CacheConfig.BUCKETCACHE_PERSIST_INTERVAL_KEY, Long.MAX_VALUE);
+    CacheTestUtils.HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, 4);
+
+    BucketCache cache = createCache(testDir, conf);
+    try {
+      for (int i = 0; i < 2; i++) {
+        cache.cacheBlock(blocks[i].getBlockName(), blocks[i].getBlock());
+      }
+      TestBucketCache.waitUntilAllFlushedToBucket(cache);
+      // The first checkpoint has no journal to append to yet, it writes a full snapshot in the
+      // background
+      cache.checkpoint();
+      cache.awaitJournalSnapshot();
+      assertEquals(1, cache.journal.getGeneration());
+      assertTrue(new File(testDir + "/bucket.persistence").exists());
+
+      for (int i = 2; i < 4; i++) {
+        cache.cacheBlock(blocks[i].getBlockName(), blocks[i].getBlock());
+      }
+      TestBucketCache.waitUntilAllFlushedToBucket(cache);
+      assertTrue(cache.evictBlock(blocks[0].getBlockName()));
+      long snapshotModified = new File(testDir + "/bucket.persistence").lastModified();
+      cache.checkpoint();
+      assertEquals(1, cache.journal.getGeneration());
+      // The adds queued before the snapshot are written again, replaying them is harmless
+      assertEquals(5, cache.journal.getRecords());
+      assertEquals(snapshotModified, new File(testDir + "/bucket.persistence").lastModified());
+    } finally {
+      cache.shutdown();
+    }
+    assertTrue(new File(testDir + "/bucket.persistence" + BucketCache.JOURNAL_SUFFIX).exists());
+
+    long usedSize = cache.getAllocator().getUsedSize();
+    cache = createCache(testDir, conf);
+    try {
+      assertEquals(3, cache.backingMap.size());
+      assertFalse(cache.backingMap.containsKey(blocks[0].getBlockName()));
+      for (int i = 1; i < 4; i++) {
+        BlockCacheKey key = blocks[i].getBlockName();
+        assertNotNull(cache.getBlock(key, false, false, false));
+      }
+      assertEquals(usedSize, cache.getAllocator().getUsedSize());
+    } finally {
+      cache.shutdown();
+      TEST_UTIL.cleanupDataTestDirOnTestFS(String.valueOf(testDir));
+    }
+  }
+
+  @Test
+  public void testUncommittedRecordsAreDropped() throws Exception {
+    Path testDir = TEST_UTIL.getDataTestDir();
+    TEST_UTIL.getTestFileSystem().mkdirs(testDir);
+    String path = testDir + "/test.journal";
+    CacheTestUtils.HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, 3);
+    BucketEntry entry = new BucketEntry(BLOCK_SIZE, BLOCK_SIZE, 0L, false,
+      (e) -> ByteBuffAllocator.NONE, ByteBuffAllocator.HEAP);
+
+    BucketCacheJournal journal = new BucketCacheJournal(path, 0.5f);
+    try {
+      assertTrue(journal.needsCompaction(0));
+      journal.reset(7);
+      journal.logAdd(blocks[0].getBlockName(), entry);
+      journal.logAdd(blocks[1].getBlockName(), entry);
+      assertEquals(2, journal.flush(new byte[] { 1, 2, 3 }));
+      assertFalse(journal.needsCompaction(4));
+      assertTrue(journal.needsCompaction(3));
+      // The checkpoint of this flush is torn below, as if the server died while writing it
+      journal.logEvict(blocks[0].getBlockName(), entry);
+      journal.logAdd(blocks[2].getBlockName(), entry);
+      assertEquals(2, journal.flush(new byte[] { 4, 5, 6 }));
+    } finally {
+      journal.close();
+    }
+
+    byte[] content = Files.readAllBytes(new File(path).toPath());
+    BucketCacheJournal.Replay replay;
+    try (FileInputStream in = new FileInputStream(path)) {
+      replay = BucketCacheJournal.read(in);
+    }
+    assertEquals(7, replay.getGeneration());
+    assertEquals(4, replay.size());
+    assertTrue(Arrays.equals(new byte[] { 4, 5, 6 }, replay.getChecksum()));
+
+    // Cut the file in the middle of the last checkpoint record
+    replay =
+      BucketCacheJournal.read(new ByteArrayInputStream(Arrays.copyOf(content, content.length - 2)));
+    assertEquals(7, replay.getGeneration());
+    assertEquals(2, replay.size());
+    assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, replay.getChecksum()));
+    TEST_UTIL.cleanupDataTestDirOnTestFS(String.valueOf(testDir));
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.io.hfile.BlockCache;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.io.hfile.HFileBlock;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestTieredBucketCache {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestTieredBucketCache.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final int BLOCK_SIZE = 2048;
+  private static final int[] BUCKET_SIZES = new int[] { 4096 };
+  private static final int NUM_BLOCKS = 200;
+
+  private BucketCache ramTier;
+  private BucketCache fileTier;
+  private HFileBlockPair[] blocks;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    Path dir = TEST_UTIL.getDataTestDir("TestTieredBucketCache");
+    dir.getFileSystem(conf).mkdirs(dir);
+    fileTier = new BucketCache("file:" + dir + "/bucket.cache", 4 * 1024 * 1024, BLOCK_SIZE,
+      BUCKET_SIZES, 1, 1000, null, BucketCache.DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    // Room for 64 blocks only
+    ramTier = new BucketCache("offheap", 256 * 1024, BLOCK_SIZE, BUCKET_SIZES, 1, 1000, null,
+      BucketCache.DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    ramTier.setVictimCache(fileTier);
+    blocks = CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, NUM_BLOCKS);
+  }
+
+  @After
+  public void tearDown() {
+    ramTier.shutdown();
+  }
+
+  private static void waitUntilFlushed(BucketCache cache) throws InterruptedException {
+    while (!cache.ramCache.isEmpty()) {
+      Thread.sleep(10);
+    }
+  }
+
+  private void cacheAll() throws InterruptedException {
+    for (HFileBlockPair block : blocks) {
+      ramTier.cacheBlock(block.getBlockName(), block.getBlock(), false, true);
+      waitUntilFlushed(ramTier);
+    }
+    waitUntilFlushed(fileTier);
+  }
+
+  private static boolean contains(BucketCache cache, BlockCacheKey key) {
+    return cache.backingMap.containsKey(key) || cache.ramCache.containsKey(key);
+  }
+
+  private static void assertSameContent(HFileBlock expected, Cacheable actual) {
+    ByteBuff expectedBuf = expected.getBufferWithoutHeader();
+    ByteBuff actualBuf = ((HFileBlock) actual).getBufferWithoutHeader();
+    assertEquals(0,
+      ByteBuff.compareTo(expectedBuf, 0, expectedBuf.limit(), actualBuf, 0, actualBuf.limit()));
+  }
+
+  @Test
+  public void testDemoteInsteadOfEvict() throws Exception {
+    cacheAll();
+    BucketCacheStats stats = (BucketCacheStats) ramTier.getStats();
+    assertTrue(stats.getDemotedCount() > 0);
+    assertTrue(ramTier.getBlockCount() < NUM_BLOCKS);
+    for (HFileBlockPair block : blocks) {
+      BlockCacheKey key = block.getBlockName();
+      assertTrue(key + " lost", contains(ramTier, key) || contains(fileTier, key));
+      Cacheable cached = ramTier.getBlock(key, false, false, true);
+      assertNotNull(cached);
+      try {
+        assertSameContent(block.getBlock(), cached);
+      } finally {
+        cached.release();
+      }
+    }
+    // Each tier keeps its own statistics
+    BlockCache[] tiers = ramTier.getBlockCaches();
+    assertEquals(2, tiers.length);
+    assertTrue(tiers[1].getStats().getHitCount() > 0);
+    assertEquals(NUM_BLOCKS, tiers[0].getStats().getHitCount() + tiers[1].getStats().getHitCount());
+  }
+
+  @Test
+  public void testPromoteOnRepeatedHits() throws Exception {
+    cacheAll();
+    BlockCacheKey key = null;
+    HFileBlock expected = null;
+    for (HFileBlockPair block : blocks) {
+      if (!contains(ramTier, block.getBlockName())) {
+        key = block.getBlockName();
+        expected = block.getBlock();
+        break;
+      }
+    }
+    assertNotNull(key);
+    for (int i = 0; i < BucketCache.TIER_PROMOTION_MIN_HITS_DEFAULT; i++) {
+      assertFalse(contains(ramTier, key));
+      Cacheable cached = ramTier.getBlock(key, true, false, true);
+      assertNotNull(cached);
+      try {
+        assertSameContent(expected, cached);
+      } finally {
+        cached.release();
+      }
+    }
+    assertTrue(contains(ramTier, key));
+    assertFalse(contains(fileTier, key));
+    assertEquals(1, ((BucketCacheStats) ramTier.getStats()).getPromotedCount());
+    waitUntilFlushed(ramTier);
+    Cacheable cached = ramTier.getBlock(key, true, false, true);
+    try {
+      assertSameContent(expected, cached);
+    } finally {
+      cached.release();
+    }
+  }
+
+  @Test
+  public void testEvictFromAllTiers() throws Exception {
+    cacheAll();
+    int evicted = 0;
+    for (HFileBlockPair block : blocks) {
+      evicted += ramTier.evictBlocksByHfileName(block.getBlockName().getHfileName());
+      assertFalse(contains(ramTier, block.getBlockName()));
+      assertFalse(contains(fileTier, block.getBlockName()));
+    }
+    assertEquals(NUM_BLOCKS, evicted);
+    assertEquals(0, ramTier.getBlockCount());
+    assertEquals(0, fileTier.getBlockCount());
+  }
+
+  @Test
+  public void testDemoteBypassesAdmissionFilter() throws Exception {
+    ramTier.shutdown();
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setBoolean(BucketCache.ADMISSION_FILTER_ENABLED_KEY, true);
+    Path dir = TEST_UTIL.getDataTestDir("TestTieredBucketCache-admission");
+    dir.getFileSystem(conf).mkdirs(dir);
+    // The lower tier is full after 64 blocks too, and would then only admit frequent blocks
+    fileTier = new BucketCache("file:" + dir + "/bucket.cache", 256 * 1024, BLOCK_SIZE,
+      BUCKET_SIZES, 1, 1000, null, BucketCache.DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    ramTier = new BucketCache("offheap", 256 * 1024, BLOCK_SIZE, BUCKET_SIZES, 1, 1000, null,
+      BucketCache.DEFAULT_ERROR_TOLERATION_DURATION, TEST_UTIL.getConfiguration());
+    ramTier.setVictimCache(fileTier);
+    cacheAll();
+    assertEquals(0, fileTier.getStats().getRejectedAdmissions());
+    assertTrue(((BucketCacheStats) ramTier.getStats()).getDemotedCount() > 64);
+  }
+}
@@ -82,6 +82,16 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 600;
   }
 
+  @Override
+  public long getMemStoreLABAllocationRetryCount() {
+    return 12;
+  }
+
+  @Override
+  public double getMemStoreLABWastePercent() {
+    return 3;
+  }
+
   @Override
   public long getStoreFileSize() {
     return 1900;
@@ -372,11 +382,26 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 97;
   }
 
+  @Override
+  public double getBlockCacheEstimatedHitPercent(double sizeMultiplier) {
+    return sizeMultiplier < 1 ? 90 : 99;
+  }
+
+  @Override
+  public String getBlockCacheMissRatioCurve() {
+    return "default:t/f: 1.0x=97.0%";
+  }
+
   @Override
   public long getBlockCacheFailedInsertions() {
     return 36;
   }
 
+  @Override
+  public long getBlockCacheRejectedAdmissions() {
+    return 37;
+  }
+
   @Override
   public long getL1CacheSize() {
     return 123;
@@ -457,6 +482,46 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 10;
   }
 
+  @Override
+  public long getL3CacheSize() {
+    return 789;
+  }
+
+  @Override
+  public long getL3CacheFreeSize() {
+    return 300;
+  }
+
+  @Override
+  public long getL3CacheCount() {
+    return 150;
+  }
+
+  @Override
+  public long getL3CacheEvictedCount() {
+    return 1000;
+  }
+
+  @Override
+  public long getL3CacheHitCount() {
+    return 400;
+  }
+
+  @Override
+  public long getL3CacheMissCount() {
+    return 600;
+  }
+
+  @Override
+  public double getL3CacheHitRatio() {
+    return 40;
+  }
+
+  @Override
+  public double getL3CacheMissRatio() {
+    return 60;
+  }
+
   @Override
   public long getUpdatesBlockedTime() {
     return 419;
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks CellBTreeMap against a ConcurrentSkipListMap.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestCellBTreeMap {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestCellBTreeMap.class);
+
+  private static final CellComparator COMPARATOR = CellComparator.getInstance();
+  private static final byte[] FAM = Bytes.toBytes("f");
+  private static final byte[] QUAL = Bytes.toBytes("q");
+
+  private static KeyValue cell(int row, long ts) {
+    return new KeyValue(Bytes.toBytes(String.format("row-%08d", row)), FAM, QUAL, ts,
+      Bytes.toBytes(row));
+  }
+
+  private static void assertSameCell(Cell expected, Cell actual) {
+    if (expected == null) {
+      assertNull(actual);
+    } else {
+      assertEquals(0, COMPARATOR.compare(expected, actual));
+    }
+  }
+
+  private static void assertSameMap(NavigableMap<Cell, Cell> expected,
+    NavigableMap<Cell, Cell> actual, Random rand, int rows) {
+    assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(actual.values()));
+    assertEquals(expected.size(), actual.size());
+    assertSameCell(expected.isEmpty() ? null : expected.firstKey(),
+      actual.isEmpty() ? null : actual.firstKey());
+    assertSameCell(expected.isEmpty() ? null : expected.lastKey(),
+      actual.isEmpty() ? null : actual.lastKey());
+    for (int i = 0; i < 100; i++) {
+      Cell key = cell(rand.nextInt(rows + 2) - 1, rand.nextInt(3));
+      assertSameCell(expected.get(key), actual.get(key));
+      assertSameCell(expected.lowerKey(key), actual.lowerKey(key));
+      assertSameCell(expected.floorKey(key), actual.floorKey(key));
+      assertSameCell(expected.ceilingKey(key), actual.ceilingKey(key));
+      assertSameCell(expected.higherKey(key), actual.higherKey(key));
+    }
+  }
+
+  @Test
+  public void testRandomOperations() {
+    Random rand = new Random(12345);
+    for (int round = 0; round < 20; round++) {
+      int rows = 1 + rand.nextInt(round < 10 ? 100 : 5000);
+      NavigableMap<Cell, Cell> expected = new ConcurrentSkipListMap<>(COMPARATOR);
+      NavigableMap<Cell, Cell> actual = new CellBTreeMap(COMPARATOR);
+      for (int i = 0; i < 10000; i++) {
+        KeyValue kv = cell(rand.nextInt(rows), rand.nextInt(3));
+        if (rand.nextInt(5) == 0) {
+          assertSameCell(expected.remove(kv), actual.remove(kv));
+        } else {
+          assertSameCell(expected.put(kv, kv), actual.put(kv, kv));
+        }
+      }
+      assertSameMap(expected, actual, rand, rows);
+      assertSameMap(expected.descendingMap(), actual.descendingMap(), rand, rows);
+      for (int i = 0; i < 10; i++) {
+        Cell from = cell(rand.nextInt(rows), 1);
+        Cell to = cell(rand.nextInt(rows), 1);
+        if (COMPARATOR.compare(from, to) > 0) {
+          Cell c = from;
+          from = to;
+          to = c;
+        }
+        boolean fromInclusive = rand.nextBoolean();
+        boolean toInclusive = rand.nextBoolean();
+        assertSameMap(expected.subMap(from, fromInclusive, to, toInclusive),
+          actual.subMap(from, fromInclusive, to, toInclusive), rand, rows);
+        assertSameMap(expected.headMap(to, toInclusive), actual.headMap(to, toInclusive), rand,
+          rows);
+        assertSameMap(expected.tailMap(from, fromInclusive), actual.tailMap(from, fromInclusive),
+          rand, rows);
+        assertSameMap(expected.descendingMap().headMap(to, toInclusive),
+          actual.descendingMap().headMap(to, toInclusive), rand, rows);
+        assertSameMap(expected.tailMap(from, fromInclusive).descendingMap(),
+          actual.tailMap(from, fromInclusive).descendingMap(), rand, rows);
+      }
+      // remove every other cell through the iterators
+      Iterator<Cell> expectedIt = expected.values().iterator();
+      Iterator<Cell> actualIt = actual.values().iterator();
+      boolean remove = false;
+      while (expectedIt.hasNext()) {
+        assertSameCell(expectedIt.next(), actualIt.next());
+        if (remove) {
+          expectedIt.remove();
+          actualIt.remove();
+        }
+        remove = !remove;
+      }
+      assertSameMap(expected, actual, rand, rows);
+    }
+  }
+
+  @Test
+  public void testConcurrentInserts() throws Exception {
+    int numThreads = 8;
+    int rowsPerThread = 20000;
+    CellBTreeMap map = new CellBTreeMap(COMPARATOR);
+    List<Throwable> errors = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        Random rand = new Random(thread);
+        for (int i = 0; i < rowsPerThread; i++) {
+          // interleaved rows, half appended and half at random places
+          int row = (rand.nextBoolean() ? i : rand.nextInt(rowsPerThread)) * numThreads + thread;
+          KeyValue kv = cell(row, 0);
+          map.put(kv, kv);
+        }
+      }));
+    }
+    // a scanner running concurrently must see the cells in order
+    threads.add(new Thread(() -> {
+      try {
+        for (int i = 0; i < 20; i++) {
+          Cell prev = null;
+          for (Cell c : map.values()) {
+            assertTrue(prev == null || COMPARATOR.compare(prev, c) < 0);
+            prev = c;
+          }
+        }
+      } catch (Throwable e) {
+        synchronized (errors) {
+          errors.add(e);
+        }
+      }
+    }));
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(errors.toString(), errors.isEmpty());
+    NavigableMap<Cell, Cell> expected = new ConcurrentSkipListMap<>(COMPARATOR);
+    for (Cell c : map.values()) {
+      expected.put(c, c);
+    }
+    int found = 0;
+    for (int row = 0; row < rowsPerThread * numThreads; row++) {
+      if (map.get(cell(row, 0)) != null) {
+        found++;
+      }
+    }
+    assertEquals(expected.size(), found);
+    assertSameMap(expected, map, new Random(), rowsPerThread * numThreads);
+  }
+
+  @Test
+  public void testMutableSegmentIndex() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(SegmentFactory.MUTABLE_SEGMENT_INDEX_KEY, "btree");
+    conf.setBoolean(MemStoreLAB.USEMSLAB_KEY, false);
+    MutableSegment segment = SegmentFactory.instance().createMutableSegment(conf, COMPARATOR,
+      new NonThreadSafeMemStoreSizing());
+    assertTrue(segment.getCellSet().getDelegatee() instanceof CellBTreeMap);
+    assertTrue(CellBTreeMap.ENTRY_SIZE < ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY);
+    MemStoreSizing sizing = new NonThreadSafeMemStoreSizing();
+    KeyValue kv = cell(1, 1);
+    segment.add(kv, false, sizing, false);
+    assertEquals(ClassSize.align(CellBTreeMap.ENTRY_SIZE + kv.heapSize()),
+      sizing.getMemStoreSize().getHeapSize());
+    // the index stays the same once the segment is immutable
+    ImmutableSegment immutable = SegmentFactory.instance().createImmutableSegment(segment, null);
+    assertEquals(CellBTreeMap.ENTRY_SIZE, immutable.indexEntrySize());
+    Map.Entry<Cell, Cell> first = immutable.getCellSet().getDelegatee().firstEntry();
+    assertSameCell(kv, first.getValue());
+  }
+}
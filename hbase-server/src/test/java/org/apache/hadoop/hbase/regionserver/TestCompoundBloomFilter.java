@@ -51,6 +51,7 @@ import org.apache.hadoop.hbase.io.hfile.RandomKeyValueUtil;
 import org.apache.hadoop.hbase.testclassification.LargeTests;
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
 import org.apache.hadoop.hbase.util.BloomFilterFactory;
+import org.apache.hadoop.hbase.util.BloomFilterFactory.ChunkType;
 import org.apache.hadoop.hbase.util.BloomFilterUtil;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Before;
@@ -166,6 +167,47 @@ public class TestCompoundBloomFilter {
     }
   }
 
+  @Test
+  public void testBinaryFuseChunks() throws IOException {
+    conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_ENABLED, true);
+    conf.setEnum(BloomFilterFactory.IO_STOREFILE_BLOOM_CHUNK_TYPE, ChunkType.BINARY_FUSE);
+    try {
+      for (int t : new int[] { 0, 2, 5, 7 }) {
+        conf.setFloat(BloomFilterFactory.IO_STOREFILE_BLOOM_ERROR_RATE,
+          (float) TARGET_ERROR_RATES[t]);
+        testIdMsg = "in test #" + t + ":";
+        List<KeyValue> kvs = createSortedKeyValues(new Random(GENERATION_SEED), NUM_KV[t]);
+        BloomType bt = BLOOM_TYPES[t];
+        Path sfPath = writeStoreFile(t, bt, kvs);
+
+        HStoreFile sf = new HStoreFile(fs, sfPath, conf, cacheConf, bt, true);
+        sf.initReader();
+        StoreFileReader r = sf.getReader();
+        StoreFileScanner scanner = r.getStoreFileScanner(true, true, false, 0, 0, false);
+        for (KeyValue kv : kvs) {
+          assertTrue(testIdMsg + " false negative",
+            isInBloom(scanner, CellUtil.cloneRow(kv), CellUtil.cloneQualifier(kv)));
+        }
+        CompoundBloomFilter cbf = (CompoundBloomFilter) r.getGeneralBloomFilter();
+        cbf.enableTestingStats();
+        Random rand = new Random(EVALUATION_SEED);
+        int numFalsePos = 0;
+        int nTrials = NUM_KV[t] * 10;
+        for (int i = 0; i < nTrials; ++i) {
+          byte[] query = RandomKeyValueUtil.randomRowOrQualifier(rand);
+          if (isInBloom(scanner, query, bt, rand)) {
+            numFalsePos += 1;
+          }
+        }
+        // The fingerprints are sized for an error rate at most the target one
+        validateFalsePosRate(numFalsePos * 1.0 / nTrials, nTrials, 1.96, cbf, "");
+        r.close(true);
+      }
+    } finally {
+      conf.unset(BloomFilterFactory.IO_STOREFILE_BLOOM_CHUNK_TYPE);
+    }
+  }
+
   /**
    * Validates the false positive ratio by computing its z-value and comparing it to the provided
    * threshold.
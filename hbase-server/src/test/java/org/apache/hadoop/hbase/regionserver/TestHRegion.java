@@ -24,8 +24,10 @@ import static org.apache.hadoop.hbase.HBaseTestingUtil.fam3;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -35,6 +37,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -61,6 +64,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -126,6 +130,7 @@ import org.apache.hadoop.hbase.coprocessor.MetaTableMetrics;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessor;
 import org.apache.hadoop.hbase.coprocessor.RegionObserver;
 import org.apache.hadoop.hbase.exceptions.FailedSanityCheckException;
+import org.apache.hadoop.hbase.executor.ExecutorType;
 import org.apache.hadoop.hbase.filter.BigDecimalComparator;
 import org.apache.hadoop.hbase.filter.BinaryComparator;
 import org.apache.hadoop.hbase.filter.ColumnCountGetFilter;
@@ -166,6 +171,7 @@ import org.apache.hadoop.hbase.util.Threads;
 import org.apache.hadoop.hbase.wal.AbstractFSWALProvider;
 import org.apache.hadoop.hbase.wal.FaultyFSLog;
 import org.apache.hadoop.hbase.wal.NettyAsyncFSWALConfigHelper;
+import org.apache.hadoop.hbase.wal.RegionGroupingProvider;
 import org.apache.hadoop.hbase.wal.WAL;
 import org.apache.hadoop.hbase.wal.WALEdit;
 import org.apache.hadoop.hbase.wal.WALFactory;
@@ -466,6 +472,44 @@ public class TestHRegion {
     }
   }
 
+  @Test
+  public void testParallelStoreFlush() throws Exception {
+    // the parallelism is region server wide, so it is taken from the region server configuration
+    Configuration rsConf = HBaseConfiguration.create(CONF);
+    rsConf.setInt(HRegion.FLUSH_STORES_PARALLELISM, 3);
+    byte[][] families = { Bytes.toBytes("fam1"), Bytes.toBytes("fam2"), Bytes.toBytes("fam3"),
+      Bytes.toBytes("fam4"), Bytes.toBytes("fam5") };
+    this.region = initHRegion(tableName, method, CONF, families);
+    org.apache.hadoop.hbase.executor.ExecutorService executorService =
+      new org.apache.hadoop.hbase.executor.ExecutorService(method);
+    RegionServerServices rsServices = mock(RegionServerServices.class);
+    when(rsServices.getConfiguration()).thenReturn(rsConf);
+    when(rsServices.getExecutorService()).thenReturn(executorService);
+    region.rsServices = rsServices;
+    try {
+      putData(0, 100, qual1, families);
+      region.flush(true);
+      assertEquals(0, region.getMemStoreDataSize());
+      for (HStore store : region.getStores()) {
+        assertEquals(1, store.getStorefilesCount());
+      }
+      verifyData(region, 0, 100, qual1, families);
+
+      // a second round adds one more file to every store, on the same pool
+      putData(100, 100, qual1, families);
+      region.flush(true);
+      for (HStore store : region.getStores()) {
+        assertEquals(2, store.getStorefilesCount());
+      }
+      verifyData(region, 0, 200, qual1, families);
+      ThreadPoolExecutor pool = executorService.getExecutorThreadPool(ExecutorType.RS_FLUSH_STORES);
+      assertEquals(3, pool.getCorePoolSize());
+      TEST_UTIL.waitFor(10000, () -> pool.getCompletedTaskCount() == 2 * families.length);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
   /**
    * Test we do not lose data if we fail a flush and then close. Part of HBase-10466. Tests the
    * following from the issue description: "Bug 1: Wrong calculation of HRegion.memstoreSize: When a
@@ -781,6 +825,124 @@ public class TestHRegion {
     }
   }
 
+  @Test
+  public void testParallelRecoveredEditsReplay() throws Exception {
+    Configuration conf = HBaseConfiguration.create(CONF);
+    conf.setInt(HRegion.REPLAY_RECOVERED_EDITS_PARALLELISM, 3);
+    // apply every few edits
+    conf.setLong(HRegion.REPLAY_RECOVERED_EDITS_BATCH_SIZE, 1024);
+    byte[][] families = { Bytes.toBytes("fam1"), Bytes.toBytes("fam2"), Bytes.toBytes("fam3") };
+    this.region = initHRegion(tableName, method, conf, families);
+    final WALFactory wals = new WALFactory(CONF, method);
+    try {
+      Path regiondir = region.getRegionFileSystem().getRegionDir();
+      FileSystem fs = region.getRegionFileSystem().getFileSystem();
+      byte[] regionName = region.getRegionInfo().getEncodedNameAsBytes();
+
+      Path recoveredEditsDir = WALSplitUtil.getRegionDirRecoveredEditsDir(regiondir);
+
+      long maxSeqId = 1200;
+      long minSeqId = 1000;
+      // the last store already has the edits up to this one
+      long lastStoreSeqId = 1100;
+
+      for (long i = minSeqId; i <= maxSeqId; i += 100) {
+        Path recoveredEdits = new Path(recoveredEditsDir, String.format("%019d", i + 99));
+        fs.create(recoveredEdits);
+        WALProvider.Writer writer = wals.createRecoveredEditsWriter(fs, recoveredEdits);
+        for (long j = i; j < i + 100; j++) {
+          long time = System.nanoTime();
+          WALEdit edit = new WALEdit();
+          for (byte[] family : families) {
+            edit.add(new KeyValue(row, family, Bytes.toBytes(j), time, KeyValue.Type.Put,
+              Bytes.toBytes(j)));
+          }
+          writer.append(new WAL.Entry(
+            new WALKeyImpl(regionName, tableName, j, time, HConstants.DEFAULT_CLUSTER_ID), edit));
+        }
+        writer.close();
+      }
+      MonitoredTask status = TaskMonitor.get().createStatus(method);
+      Map<byte[], Long> maxSeqIdInStores = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      for (HStore store : region.getStores()) {
+        maxSeqIdInStores.put(Bytes.toBytes(store.getColumnFamilyName()), minSeqId - 1);
+      }
+      maxSeqIdInStores.put(families[2], lastStoreSeqId);
+      long seqId = region.replayRecoveredEditsIfAny(maxSeqIdInStores, null, status);
+      assertEquals(maxSeqId + 99, seqId);
+      region.getMVCC().advanceTo(seqId);
+      Result result = region.get(new Get(row));
+      for (long i = minSeqId; i < maxSeqId + 100; i++) {
+        for (byte[] family : families) {
+          List<Cell> kvs = result.getColumnCells(family, Bytes.toBytes(i));
+          if (family == families[2] && i <= lastStoreSeqId) {
+            assertEquals(0, kvs.size());
+          } else {
+            assertEquals(1, kvs.size());
+            assertArrayEquals(Bytes.toBytes(i), CellUtil.cloneValue(kvs.get(0)));
+          }
+        }
+      }
+    } finally {
+      HBaseTestingUtil.closeRegionAndWAL(this.region);
+      this.region = null;
+      wals.close();
+    }
+  }
+
+  @Test
+  public void testParallelRecoveredEditsReplayStoreFailure() throws Exception {
+    Configuration conf = HBaseConfiguration.create(CONF);
+    conf.setInt(HRegion.REPLAY_RECOVERED_EDITS_PARALLELISM, 3);
+    conf.setClass(HConstants.REGION_IMPL, HRegionWithFailingRestore.class, Region.class);
+    byte[][] families = { Bytes.toBytes("fam1"), HRegionWithFailingRestore.FAILING_FAMILY,
+      Bytes.toBytes("fam3") };
+    this.region = initHRegion(tableName, method, conf, families);
+    final WALFactory wals = new WALFactory(CONF, method);
+    try {
+      Path regiondir = region.getRegionFileSystem().getRegionDir();
+      FileSystem fs = region.getRegionFileSystem().getFileSystem();
+      byte[] regionName = region.getRegionInfo().getEncodedNameAsBytes();
+      Path recoveredEdits =
+        new Path(WALSplitUtil.getRegionDirRecoveredEditsDir(regiondir), String.format("%019d", 99));
+      fs.create(recoveredEdits);
+      WALProvider.Writer writer = wals.createRecoveredEditsWriter(fs, recoveredEdits);
+      for (long j = 0; j < 100; j++) {
+        long time = System.nanoTime();
+        WALEdit edit = new WALEdit();
+        for (byte[] family : families) {
+          edit.add(new KeyValue(row, family, Bytes.toBytes(j), time, KeyValue.Type.Put,
+            Bytes.toBytes(j)));
+        }
+        writer.append(new WAL.Entry(
+          new WALKeyImpl(regionName, tableName, j, time, HConstants.DEFAULT_CLUSTER_ID), edit));
+      }
+      writer.close();
+      MonitoredTask status = TaskMonitor.get().createStatus(method);
+      Map<byte[], Long> maxSeqIdInStores = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      for (byte[] family : families) {
+        maxSeqIdInStores.put(family, -1L);
+      }
+      try {
+        region.replayRecoveredEditsIfAny(maxSeqIdInStores, null, status);
+        fail("The failure of a store should fail the replay");
+      } catch (IOException e) {
+        // expected
+      }
+      // the cells added to the other stores are accounted for all the same
+      long storesDataSize = 0;
+      for (HStore store : region.getStores()) {
+        storesDataSize += store.getMemStoreSize().getDataSize();
+      }
+      assertTrue(storesDataSize > 0);
+      assertEquals(storesDataSize, region.getMemStoreDataSize());
+    } finally {
+      HBaseTestingUtil.closeRegionAndWAL(this.region);
+      this.region = null;
+      wals.close();
+    }
+  }
+
   @Test
   public void testSkipRecoveredEditsReplaySomeIgnored() throws Exception {
     byte[] family = Bytes.toBytes("family");
@@ -1039,6 +1201,61 @@ public class TestHRegion {
     }
   }
 
+  @Test
+  public void testMoveToAnotherWALWithUnflushedSnapshot() throws Exception {
+    byte[] family = Bytes.toBytes("family");
+    byte[] qual = Bytes.toBytes("q");
+    Configuration conf = new Configuration(CONF);
+    conf.set(RegionGroupingProvider.REGION_GROUPING_STRATEGY,
+      RegionGroupingProvider.Strategies.loadAware.name());
+    Configuration walConf = new Configuration(CONF);
+    CommonFSUtils.setRootDir(walConf, new Path(new Path(dir + method), "log"));
+    // See durabilityTest on why the spied WAL is a FSHLog
+    walConf.set(WALFactory.WAL_PROVIDER, "filesystem");
+    RegionInfo hri = RegionInfoBuilder.newBuilder(tableName).build();
+    WALFactory oldWALs = new WALFactory(walConf, HBaseTestingUtil.getRandomUUID().toString());
+    WALFactory newWALs = new WALFactory(walConf, HBaseTestingUtil.getRandomUUID().toString());
+    WAL oldWAL = spy(oldWALs.getWAL(hri));
+    WAL newWAL = newWALs.getWAL(hri);
+    try {
+      region = initHRegion(tableName, HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW, conf,
+        false, Durability.SYNC_WAL, oldWAL, family);
+      RegionServerServices rsServices = mock(RegionServerServices.class);
+      when(rsServices.getWAL(any())).thenReturn(newWAL);
+      region.rsServices = rsServices;
+      byte[] encodedName = region.getRegionInfo().getEncodedNameAsBytes();
+
+      region.put(new Put(Bytes.toBytes("r1")).addColumn(family, qual, Bytes.toBytes("v1")));
+      long oldestSeqId = oldWAL.getEarliestMemStoreSeqNum(encodedName, family);
+      assertNotEquals(HConstants.NO_SEQNUM, oldestSeqId);
+
+      // The flush moves the region to the new WAL, then fails to sync the old one, which leaves
+      // the snapshot unflushed
+      doThrow(new IOException("injected")).when(oldWAL).sync();
+      assertThrows(IOException.class, () -> region.flush(true));
+      assertSame(newWAL, region.getWAL());
+      assertEquals(oldestSeqId, oldWAL.getEarliestMemStoreSeqNum(encodedName, family));
+      assertEquals(oldestSeqId, region.getOldestSeqIdOfStore(family));
+
+      // The new edits go to the new WAL, the oldest unflushed edit is still in the old one
+      region.put(new Put(Bytes.toBytes("r2")).addColumn(family, qual, Bytes.toBytes("v2")));
+      assertNotEquals(HConstants.NO_SEQNUM, newWAL.getEarliestMemStoreSeqNum(encodedName, family));
+      assertEquals(oldestSeqId, region.getOldestSeqIdOfStore(family));
+
+      // Once a flush commits the snapshot, the old WAL tracks nothing of the region anymore
+      doCallRealMethod().when(oldWAL).sync();
+      region.flush(true);
+      assertEquals(HConstants.NO_SEQNUM, oldWAL.getEarliestMemStoreSeqNum(encodedName, family));
+      assertFalse(region.get(new Get(Bytes.toBytes("r1"))).isEmpty());
+      assertFalse(region.get(new Get(Bytes.toBytes("r2"))).isEmpty());
+    } finally {
+      HBaseTestingUtil.closeRegionAndWAL(this.region);
+      this.region = null;
+      oldWALs.close();
+      newWALs.close();
+    }
+  }
+
   @Test
   public void testFlushMarkers() throws Exception {
     // tests that flush markers are written to WAL and handled at recovered edits
@@ -7492,6 +7709,33 @@ public class TestHRegion {
    * The same as HRegion class, the only difference is that instantiateHStore will create a
    * different HStore - HStoreForTesting. [HBASE-8518]
    */
+  /**
+   * HRegion that fails to restore the recovered edits of one of its families.
+   */
+  public static class HRegionWithFailingRestore extends HRegion {
+
+    static final byte[] FAILING_FAMILY = Bytes.toBytes("fam2");
+
+    public HRegionWithFailingRestore(final Path tableDir, final WAL wal, final FileSystem fs,
+      final Configuration confParam, final RegionInfo regionInfo, final TableDescriptor htd,
+      final RegionServerServices rsServices) {
+      super(tableDir, wal, fs, confParam, regionInfo, htd, rsServices);
+    }
+
+    public HRegionWithFailingRestore(HRegionFileSystem fs, WAL wal, Configuration confParam,
+      TableDescriptor htd, RegionServerServices rsServices) {
+      super(fs, wal, confParam, htd, rsServices);
+    }
+
+    @Override
+    protected void restoreEdit(HStore s, Cell cell, MemStoreSizing memstoreAccounting) {
+      if (CellUtil.matchingFamily(cell, FAILING_FAMILY)) {
+        throw new RuntimeException("Injected failure restoring " + cell);
+      }
+      super.restoreEdit(s, cell, memstoreAccounting);
+    }
+  }
+
   public static class HRegionForTesting extends HRegion {
 
     public HRegionForTesting(final Path tableDir, final WAL wal, final FileSystem fs,
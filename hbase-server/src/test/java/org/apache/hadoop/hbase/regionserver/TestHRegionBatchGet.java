@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Durability;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.BloomFilterFactory;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestHRegionBatchGet {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestHRegionBatchGet.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] OTHER_FAMILY = Bytes.toBytes("g");
+  private static final byte[] QUAL1 = Bytes.toBytes("q1");
+  private static final byte[] QUAL2 = Bytes.toBytes("q2");
+
+  @Rule
+  public TestName name = new TestName();
+
+  private HRegion region;
+
+  @Before
+  public void setUp() throws IOException {
+    TableName tableName = TableName.valueOf(name.getMethodName());
+    RegionInfo info = RegionInfoBuilder.newBuilder(tableName).build();
+    // Keep Bloom filter false positives from reading blocks the test does not expect
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setFloat(BloomFilterFactory.IO_STOREFILE_BLOOM_ERROR_RATE, 0.0001f);
+    region = HBaseTestingUtil.createRegionAndWAL(info,
+      TEST_UTIL.getDataTestDir(name.getMethodName()), conf,
+      TableDescriptorBuilder.newBuilder(tableName)
+        .setColumnFamily(ColumnFamilyDescriptorBuilder.newBuilder(FAMILY).setBlocksize(1024)
+          .setBloomFilterType(BloomType.ROW).build())
+        .setColumnFamily(ColumnFamilyDescriptorBuilder.of(OTHER_FAMILY)).build());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    HBaseTestingUtil.closeRegionAndWAL(region);
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row-%05d", i));
+  }
+
+  /**
+   * Writes the even rows in three store files and the memstore, with a few deletes, so that rows
+   * are spread over several sources and some rows have no cells left.
+   */
+  private void loadData() throws IOException {
+    for (int file = 0; file < 4; file++) {
+      for (int i = file * 2; i < 400; i += 8) {
+        Put put = new Put(row(i));
+        put.setDurability(Durability.SKIP_WAL);
+        put.addColumn(FAMILY, QUAL1, Bytes.toBytes("v1-" + i));
+        put.addColumn(FAMILY, QUAL2, Bytes.toBytes("v2-" + i));
+        put.addColumn(OTHER_FAMILY, QUAL1, Bytes.toBytes("o-" + i));
+        region.put(put);
+      }
+      if (file < 3) {
+        region.flush(true);
+      }
+    }
+    for (int i = 0; i < 400; i += 30) {
+      region.delete(new Delete(row(i)).addFamily(FAMILY).addFamily(OTHER_FAMILY));
+    }
+  }
+
+  /** Runs the Gets together, after checking them as RSRpcServices does */
+  private List<Result> get(List<Get> batch) throws IOException {
+    return get(batch, Long.MAX_VALUE);
+  }
+
+  private List<Result> get(List<Get> batch, long maxResultSize) throws IOException {
+    for (Get get : batch) {
+      region.prepareGet(get);
+    }
+    return region.get(batch, maxResultSize);
+  }
+
+  private void assertSameAsSingleGets(IntFunction<Get> gets, int count) throws Exception {
+    List<Get> batch = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      batch.add(gets.apply(i));
+    }
+    List<Result> results = get(batch);
+    assertEquals(count, results.size());
+    for (int i = 0; i < count; i++) {
+      Result expected = region.get(gets.apply(i));
+      Result actual = results.get(i);
+      Result.compareResults(expected, actual);
+      assertEquals(expected.getExists(), actual.getExists());
+    }
+  }
+
+  @Test
+  public void testSameResultsAsSingleGets() throws Exception {
+    loadData();
+    // Unsorted rows, with duplicates, missing and deleted rows
+    assertSameAsSingleGets(i -> new Get(row((i * 37) % 401)), 200);
+    // Different column sets, options and attributes, which are not all read by the same scanner
+    assertSameAsSingleGets(i -> {
+      Get get = new Get(row((i * 13) % 400));
+      switch (i % 6) {
+        case 0:
+          return get.addColumn(FAMILY, QUAL1);
+        case 1:
+          return get.addFamily(OTHER_FAMILY);
+        case 2:
+          return get.setFilter(new ValueFilter(CompareOperator.EQUAL,
+            new BinaryComparator(Bytes.toBytes("v2-" + ((i * 13) % 400)))));
+        case 3:
+          return get.setCheckExistenceOnly(true);
+        case 4:
+          return get.setAttribute("attr", Bytes.toBytes(i % 2));
+        default:
+          return get;
+      }
+    }, 100);
+  }
+
+  @Test
+  public void testFewerBlocksRead() throws Exception {
+    loadData();
+    region.flush(true);
+    List<Get> batch = new ArrayList<>();
+    for (int i = 100; i < 200; i++) {
+      batch.add(new Get(row(i)).addFamily(FAMILY));
+    }
+    long before = HFile.DATABLOCK_READ_COUNT.sum();
+    List<Result> results = get(batch);
+    long batchBlocks = HFile.DATABLOCK_READ_COUNT.sum() - before;
+
+    before = HFile.DATABLOCK_READ_COUNT.sum();
+    for (int i = 100; i < 200; i++) {
+      Result expected = region.get(new Get(row(i)).addFamily(FAMILY));
+      Result.compareResults(expected, results.get(i - 100));
+    }
+    long singleBlocks = HFile.DATABLOCK_READ_COUNT.sum() - before;
+    assertTrue("batch read " + batchBlocks + " blocks, single gets " + singleBlocks,
+      batchBlocks * 2 < singleBlocks);
+  }
+
+  @Test
+  public void testMissingRowsSkipSharedScanner() throws Exception {
+    loadData();
+    region.flush(true);
+    // The odd rows are in no store file, so their Bloom filters spare them from reading any block
+    List<Get> batch = new ArrayList<>();
+    for (int i = 101; i < 200; i += 2) {
+      batch.add(new Get(row(i)).addFamily(FAMILY));
+    }
+    long before = HFile.DATABLOCK_READ_COUNT.sum();
+    List<Result> results = get(batch);
+    long batchBlocks = HFile.DATABLOCK_READ_COUNT.sum() - before;
+
+    before = HFile.DATABLOCK_READ_COUNT.sum();
+    for (int i = 0; i < batch.size(); i++) {
+      Result expected = region.get(new Get(row(101 + i * 2)).addFamily(FAMILY));
+      assertTrue(expected.isEmpty());
+      Result.compareResults(expected, results.get(i));
+    }
+    long singleBlocks = HFile.DATABLOCK_READ_COUNT.sum() - before;
+    assertTrue("batch read " + batchBlocks + " blocks, single gets " + singleBlocks,
+      batchBlocks <= singleBlocks);
+  }
+
+  @Test
+  public void testStopsAtMaxResultSize() throws Exception {
+    loadData();
+    List<Get> batch = new ArrayList<>();
+    for (int i = 2; i < 40; i += 2) {
+      batch.add(new Get(row(i)).addFamily(FAMILY));
+    }
+    // a row is over the limit, so only the first Get is read
+    List<Result> results = get(batch, 1);
+    assertEquals(batch.size(), results.size());
+    assertNotNull(results.get(0));
+    Result.compareResults(region.get(batch.get(0)), results.get(0));
+    for (int i = 1; i < batch.size(); i++) {
+      assertNull(results.get(i));
+    }
+  }
+}
@@ -20,13 +20,16 @@ package org.apache.hadoop.hbase.regionserver;
 import static org.apache.hadoop.hbase.regionserver.MemStoreLAB.CHUNK_SIZE_KEY;
 import static org.apache.hadoop.hbase.regionserver.MemStoreLAB.MAX_ALLOC_KEY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -332,6 +335,79 @@ public class TestMemStoreLAB {
 
   }
 
+  /**
+   * Test that with several stripes, the handlers of different stripes never allocate from the same
+   * chunk, and that the allocations are counted.
+   */
+  @Test
+  public void testLABStripes() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    int numStripes = 4;
+    conf.setInt(MemStoreLAB.MSLAB_STRIPES_KEY, numStripes);
+    MemStoreLABImpl mslab = new MemStoreLABImpl(conf);
+    assertEquals(numStripes, mslab.getNumStripes());
+    int numThreads = 8;
+    int allocsPerThread = 1000;
+    long allocsBefore = ChunkCreator.getInstance().getAllocationCount();
+    List<Set<ByteBuffer>> chunksByThread = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      Set<ByteBuffer> chunks = Collections.newSetFromMap(new IdentityHashMap<>());
+      chunksByThread.add(chunks);
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < allocsPerThread; j++) {
+          KeyValue kv = new KeyValue(rk, cf, q, new byte[j % 50]);
+          chunks.add(((ByteBufferKeyValue) mslab.copyCellInto(kv)).getBuffer());
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (int i = 0; i < numThreads; i++) {
+      for (int j = i + 1; j < numThreads; j++) {
+        if (threads.get(i).getId() % numStripes != threads.get(j).getId() % numStripes) {
+          for (ByteBuffer chunk : chunksByThread.get(i)) {
+            assertFalse(chunksByThread.get(j).contains(chunk));
+          }
+        }
+      }
+    }
+    long allocs = ChunkCreator.getInstance().getAllocationCount() - allocsBefore;
+    assertTrue(allocs >= numThreads * allocsPerThread);
+    double wastePercent = ChunkCreator.getInstance().getWastePercent();
+    assertTrue(wastePercent > 0 && wastePercent < 100);
+    mslab.close();
+  }
+
+  /**
+   * Test that an MSLAB never has more stripes than the data chunk pool allows for.
+   */
+  @Test
+  public void testLABStripesBoundedByPool() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(MemStoreLAB.MSLAB_STRIPES_KEY, 8);
+    ChunkCreator oldInstance = ChunkCreator.instance;
+    try {
+      // a pool of two stripes worth of chunks
+      ChunkCreator.instance = null;
+      ChunkCreator.clearDisableFlag();
+      ChunkCreator.initialize(1024, false, 2L * MemStoreLABImpl.POOL_CHUNKS_PER_STRIPE * 1024, 1.0f,
+        MemStoreLAB.POOL_INITIAL_SIZE_DEFAULT, null, 0f);
+      assertEquals(2, new MemStoreLABImpl(conf).getNumStripes());
+      // no pool
+      ChunkCreator.instance = null;
+      ChunkCreator.initialize(1024, false, 2L * MemStoreLABImpl.POOL_CHUNKS_PER_STRIPE * 1024, 0f,
+        MemStoreLAB.POOL_INITIAL_SIZE_DEFAULT, null, 0f);
+      assertEquals(1, new MemStoreLABImpl(conf).getNumStripes());
+    } finally {
+      ChunkCreator.instance = oldInstance;
+    }
+  }
+
   private Thread getChunkQueueTestThread(final MemStoreLABImpl mslab, String threadName,
     Cell cellToCopyInto) {
     Thread thread = new Thread() {
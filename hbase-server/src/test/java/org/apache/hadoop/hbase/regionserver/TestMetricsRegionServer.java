@@ -71,6 +71,7 @@ public class TestMetricsRegionServer {
     HELPER.assertTag("serverName", "test", serverSource);
     HELPER.assertTag("clusterId", "tClusterId", serverSource);
     HELPER.assertTag("zookeeperQuorum", "zk", serverSource);
+    HELPER.assertTag("blockCacheMissRatioCurve", "default:t/f: 1.0x=97.0%", serverSource);
     HELPER.assertGauge("regionServerStartTime", 100, serverSource);
     HELPER.assertGauge("regionCount", 101, serverSource);
     HELPER.assertGauge("storeCount", 2, serverSource);
@@ -83,6 +84,8 @@ public class TestMetricsRegionServer {
     HELPER.assertGauge("hlogFileSize", 1024000, serverSource);
     HELPER.assertGauge("storeFileCount", 300, serverSource);
     HELPER.assertGauge("memstoreSize", 1025, serverSource);
+    HELPER.assertCounter("memStoreLABAllocationRetryCount", 12, serverSource);
+    HELPER.assertGauge("memStoreLABWastePercent", 3, serverSource);
     HELPER.assertGauge("storeFileSize", 1900, serverSource);
     HELPER.assertGauge("storeFileSizeGrowthRate", 50.0, serverSource);
     HELPER.assertCounter("totalRequestCount", 899, serverSource);
@@ -119,7 +122,10 @@ public class TestMetricsRegionServer {
     HELPER.assertCounter("blockCacheEvictionCount", 418, serverSource);
     HELPER.assertGauge("blockCacheCountHitPercent", 98, serverSource);
     HELPER.assertGauge("blockCacheExpressHitPercent", 97, serverSource);
+    HELPER.assertGauge("blockCacheEstimatedHitPercentAtHalfSize", 90, serverSource);
+    HELPER.assertGauge("blockCacheEstimatedHitPercentAtDoubleSize", 99, serverSource);
     HELPER.assertCounter("blockCacheFailedInsertionCount", 36, serverSource);
+    HELPER.assertCounter("blockCacheRejectedAdmissionCount", 37, serverSource);
     HELPER.assertGauge("l1CacheFreeSize", 100, serverSource);
     HELPER.assertGauge("l1CacheSize", 123, serverSource);
     HELPER.assertGauge("l1CacheCount", 50, serverSource);
@@ -136,6 +142,14 @@ public class TestMetricsRegionServer {
     HELPER.assertGauge("l2CacheMissCount", 200, serverSource);
     HELPER.assertGauge("l2CacheHitRatio", 90, serverSource);
     HELPER.assertGauge("l2CacheMissRatio", 10, serverSource);
+    HELPER.assertGauge("l3CacheFreeSize", 300, serverSource);
+    HELPER.assertGauge("l3CacheSize", 789, serverSource);
+    HELPER.assertGauge("l3CacheCount", 150, serverSource);
+    HELPER.assertCounter("l3CacheEvictionCount", 1000, serverSource);
+    HELPER.assertGauge("l3CacheHitCount", 400, serverSource);
+    HELPER.assertGauge("l3CacheMissCount", 600, serverSource);
+    HELPER.assertGauge("l3CacheHitRatio", 40, serverSource);
+    HELPER.assertGauge("l3CacheMissRatio", 60, serverSource);
     HELPER.assertCounter("updatesBlockedTime", 419, serverSource);
   }
 
@@ -222,6 +236,10 @@ public class TestMetricsRegionServer {
     HELPER.assertCounter("flushOutputSize_num_ops", 2, serverSource);
     HELPER.assertCounter("flushedMemstoreBytes", 22, serverSource);
     HELPER.assertCounter("flushedOutputBytes", 33, serverSource);
+
+    rsm.updateStoreFlush(4);
+    rsm.updateStoreFlush(6);
+    HELPER.assertCounter("storeFlushTime_num_ops", 2, serverSource);
   }
 
   @Test
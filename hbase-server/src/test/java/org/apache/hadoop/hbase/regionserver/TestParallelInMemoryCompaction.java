@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.util.MemorySizeUtil;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checks that flattening and merging segments into a CellChunkMap by several threads gives the
+ * same segments as doing it in a single thread.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestParallelInMemoryCompaction {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestParallelInMemoryCompaction.class);
+
+  private static final CellComparator COMPARATOR = CellComparator.getInstance();
+  private static final byte[] FAM = Bytes.toBytes("f");
+  private static final byte[] QUAL = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 40000;
+
+  private static Configuration sequentialConf;
+  private static Configuration parallelConf;
+  private static ThreadPoolExecutor indexPool;
+
+  @BeforeClass
+  public static void setUpBeforeClass() {
+    sequentialConf = HBaseConfiguration.create();
+    parallelConf = HBaseConfiguration.create();
+    parallelConf.setInt(CompactingMemStore.IN_MEMORY_COMPACTION_INDEX_PARALLELISM_KEY, 4);
+    parallelConf.setInt(CompactingMemStore.IN_MEMORY_COMPACTION_INDEX_MIN_CELLS_KEY, 1000);
+    long globalMemStoreLimit =
+      (long) (ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax()
+        * MemorySizeUtil.getGlobalMemStoreHeapPercent(sequentialConf, false));
+    ChunkCreator.initialize(MemStoreLAB.CHUNK_SIZE_DEFAULT, false, globalMemStoreLimit, 0.2f,
+      MemStoreLAB.POOL_INITIAL_SIZE_DEFAULT, null, MemStoreLAB.INDEX_CHUNK_SIZE_PERCENTAGE_DEFAULT);
+    indexPool = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() {
+    indexPool.shutdownNow();
+  }
+
+  /**
+   * Returns a segment with a cell for every step-th row, several versions of some of them.
+   */
+  private static CSLMImmutableSegment createSegment(int first, int step, long seqId) {
+    MemStoreSizing sizing = new NonThreadSafeMemStoreSizing();
+    MutableSegment segment =
+      SegmentFactory.instance().createMutableSegment(sequentialConf, COMPARATOR, sizing);
+    for (int i = first; i < NUM_ROWS; i += step) {
+      byte[] row = Bytes.toBytes(String.format("row-%06d", i));
+      for (int version = 0; version < 1 + i % 3; version++) {
+        KeyValue kv = new KeyValue(row, FAM, QUAL, seqId + version, Bytes.toBytes("value-" + i));
+        kv.setSequenceId(seqId + version);
+        segment.add(kv, true, sizing, false);
+      }
+    }
+    return (CSLMImmutableSegment) SegmentFactory.instance().createImmutableSegment(segment, sizing);
+  }
+
+  private static ImmutableSegment flatten(Configuration conf, CSLMImmutableSegment segment,
+    MemStoreSizing sizing, MemStoreCompactionStrategy.Action action) {
+    return SegmentFactory.instance().createImmutableSegmentByFlattening(conf, segment,
+      CompactingMemStore.IndexType.CHUNK_MAP, sizing, action, indexPool);
+  }
+
+  private static void assertSameSegment(ImmutableSegment expected, ImmutableSegment actual) {
+    assertTrue(actual instanceof CellChunkImmutableSegment);
+    assertEquals(expected.getCellsCount(), actual.getCellsCount());
+    assertEquals(expected.getDataSize(), actual.getDataSize());
+    assertEquals(expected.getHeapSize(), actual.getHeapSize());
+    assertEquals(expected.getOffHeapSize(), actual.getOffHeapSize());
+    assertEquals(expected.getNumUniqueKeys(), actual.getNumUniqueKeys());
+    assertEquals(expected.getMinSequenceId(), actual.getMinSequenceId());
+    assertEquals(expected.getTimeRangeTracker().getMin(), actual.getTimeRangeTracker().getMin());
+    assertEquals(expected.getTimeRangeTracker().getMax(), actual.getTimeRangeTracker().getMax());
+    Iterator<Cell> expectedCells = expected.getCellSet().iterator();
+    Iterator<Cell> actualCells = actual.getCellSet().iterator();
+    while (expectedCells.hasNext()) {
+      assertTrue(actualCells.hasNext());
+      Cell expectedCell = expectedCells.next();
+      Cell actualCell = actualCells.next();
+      assertTrue(actualCell + " instead of " + expectedCell,
+        CellUtil.equals(expectedCell, actualCell));
+      assertEquals(expectedCell.getSequenceId(), actualCell.getSequenceId());
+      assertTrue(CellUtil.matchingValue(expectedCell, actualCell));
+    }
+    assertFalse(actualCells.hasNext());
+  }
+
+  @Test
+  public void testIndexRanges() {
+    assertEquals(1, CellChunkImmutableSegment.getIndexRanges(null, NUM_ROWS));
+    assertEquals(1, CellChunkImmutableSegment.getIndexRanges(sequentialConf, NUM_ROWS));
+    assertEquals(4, CellChunkImmutableSegment.getIndexRanges(parallelConf, NUM_ROWS));
+    assertEquals(2, CellChunkImmutableSegment.getIndexRanges(parallelConf, 2500));
+    assertEquals(1, CellChunkImmutableSegment.getIndexRanges(parallelConf, 10));
+  }
+
+  @Test
+  public void testFlatten() {
+    for (MemStoreCompactionStrategy.Action action : new MemStoreCompactionStrategy.Action[] {
+      MemStoreCompactionStrategy.Action.FLATTEN,
+      MemStoreCompactionStrategy.Action.FLATTEN_COUNT_UNIQUE_KEYS }) {
+      MemStoreSizing expectedSizing = new NonThreadSafeMemStoreSizing();
+      ImmutableSegment expected =
+        flatten(sequentialConf, createSegment(0, 1, 1), expectedSizing, action);
+      MemStoreSizing actualSizing = new NonThreadSafeMemStoreSizing();
+      ImmutableSegment actual = flatten(parallelConf, createSegment(0, 1, 1), actualSizing, action);
+      assertSameSegment(expected, actual);
+      assertEquals(expectedSizing.getMemStoreSize(), actualSizing.getMemStoreSize());
+    }
+  }
+
+  private static List<ImmutableSegment> createSegmentsToMerge() {
+    List<ImmutableSegment> segments = new ArrayList<>();
+    // the newer segments first, as in the pipeline
+    segments.add(createSegment(1, 7, 300));
+    segments.add(flatten(sequentialConf, createSegment(0, 3, 200),
+      new NonThreadSafeMemStoreSizing(), MemStoreCompactionStrategy.Action.FLATTEN));
+    segments.add(flatten(sequentialConf, createSegment(0, 2, 100),
+      new NonThreadSafeMemStoreSizing(), MemStoreCompactionStrategy.Action.FLATTEN));
+    return segments;
+  }
+
+  private static ImmutableSegment merge(Configuration conf, List<ImmutableSegment> segments,
+    MemStoreCompactionStrategy.Action action) throws IOException {
+    int numOfCells = 0;
+    for (ImmutableSegment segment : segments) {
+      numOfCells += segment.getCellsCount();
+    }
+    MemStoreSegmentsIterator iterator =
+      new MemStoreMergerSegmentsIterator(segments, COMPARATOR, Integer.MAX_VALUE);
+    try {
+      return SegmentFactory.instance().createImmutableSegmentByMerge(conf, COMPARATOR, iterator,
+        numOfCells, segments, CompactingMemStore.IndexType.CHUNK_MAP, action, indexPool);
+    } finally {
+      iterator.close();
+    }
+  }
+
+  @Test
+  public void testMerge() throws IOException {
+    for (MemStoreCompactionStrategy.Action action : new MemStoreCompactionStrategy.Action[] {
+      MemStoreCompactionStrategy.Action.MERGE,
+      MemStoreCompactionStrategy.Action.MERGE_COUNT_UNIQUE_KEYS }) {
+      ImmutableSegment expected = merge(sequentialConf, createSegmentsToMerge(), action);
+      ImmutableSegment actual = merge(parallelConf, createSegmentsToMerge(), action);
+      assertSameSegment(expected, actual);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Optional;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestRowCache {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestRowCache.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] CACHED = Bytes.toBytes("cached");
+  private static final byte[] UNCACHED = Bytes.toBytes("uncached");
+  private static final byte[] ROW = Bytes.toBytes("row");
+  private static final byte[] Q1 = Bytes.toBytes("q1");
+  private static final byte[] Q2 = Bytes.toBytes("q2");
+
+  @Rule
+  public TestName name = new TestName();
+
+  private RowCache rowCache;
+  private HRegion region;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    ChunkCreator.initialize(MemStoreLAB.CHUNK_SIZE_DEFAULT, false, 0, 0, 0, null,
+      MemStoreLAB.INDEX_CHUNK_SIZE_PERCENTAGE_DEFAULT);
+    TableDescriptor htd = TableDescriptorBuilder.newBuilder(TableName.valueOf(name.getMethodName()))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.newBuilder(CACHED)
+        .setConfiguration(RowCache.ROW_CACHE_ENABLED_KEY, "true").build())
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.of(UNCACHED)).build();
+    RegionInfo info = RegionInfoBuilder.newBuilder(htd.getTableName()).build();
+    rowCache = new RowCache(1024 * 1024, RowCache.ROW_CACHE_MAX_ROW_SIZE_DEFAULT);
+    RegionServerServices rss = mock(RegionServerServices.class);
+    when(rss.getConfiguration()).thenReturn(conf);
+    when(rss.getServerName()).thenReturn(ServerName.valueOf("localhost", 16020, 1));
+    when(rss.getRowCache()).thenReturn(Optional.of(rowCache));
+    Path rootDir = TEST_UTIL.getDataTestDir(name.getMethodName());
+    region = HRegion.createHRegion(info, rootDir, conf, htd,
+      HBaseTestingUtil.createWal(conf, rootDir, info), true, rss);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (region != null) {
+      HBaseTestingUtil.closeRegionAndWAL(region);
+    }
+  }
+
+  private byte[] getValue(Get get, byte[] family, byte[] qualifier) throws IOException {
+    Result result = region.get(get);
+    return result.getValue(family, qualifier);
+  }
+
+  private void put(byte[] family, byte[] qualifier, String value) throws IOException {
+    region.put(new Put(ROW).addColumn(family, qualifier, Bytes.toBytes(value)));
+  }
+
+  @Test
+  public void testHitAndInvalidateOnMutation() throws IOException {
+    put(CACHED, Q1, "v1");
+    assertArrayEquals(Bytes.toBytes("v1"), getValue(new Get(ROW).addFamily(CACHED), CACHED, Q1));
+    assertEquals(1, rowCache.getMissCount());
+    assertEquals(0, rowCache.getHitCount());
+    long readRequests = region.getReadRequestsCount();
+    assertArrayEquals(Bytes.toBytes("v1"), getValue(new Get(ROW).addFamily(CACHED), CACHED, Q1));
+    assertEquals(1, rowCache.getHitCount());
+    assertEquals(readRequests + 1, region.getReadRequestsCount());
+
+    put(CACHED, Q1, "v2");
+    assertArrayEquals(Bytes.toBytes("v2"), getValue(new Get(ROW).addFamily(CACHED), CACHED, Q1));
+    assertEquals(2, rowCache.getMissCount());
+    assertArrayEquals(Bytes.toBytes("v2"), getValue(new Get(ROW).addFamily(CACHED), CACHED, Q1));
+    assertEquals(2, rowCache.getHitCount());
+
+    region.delete(new Delete(ROW));
+    assertTrue(region.get(new Get(ROW).addFamily(CACHED)).isEmpty());
+    assertEquals(3, rowCache.getMissCount());
+    assertTrue(region.get(new Get(ROW).addFamily(CACHED)).isEmpty());
+    assertEquals(3, rowCache.getHitCount());
+  }
+
+  @Test
+  public void testColumnsAreCachedSeparately() throws IOException {
+    put(CACHED, Q1, "v1");
+    put(CACHED, Q2, "v2");
+    Result result = region.get(new Get(ROW).addColumn(CACHED, Q1));
+    assertEquals(1, result.size());
+    result = region.get(new Get(ROW).addFamily(CACHED));
+    assertEquals(2, result.size());
+    assertEquals(2, rowCache.getMissCount());
+    result = region.get(new Get(ROW).addColumn(CACHED, Q1));
+    assertEquals(1, result.size());
+    assertEquals(1, rowCache.getHitCount());
+  }
+
+  @Test
+  public void testUncacheableGets() throws IOException {
+    put(CACHED, Q1, "v1");
+    put(UNCACHED, Q1, "v1");
+    // A family without the row cache, or all the families
+    region.get(new Get(ROW).addFamily(UNCACHED));
+    region.get(new Get(ROW).addFamily(UNCACHED));
+    region.get(new Get(ROW));
+    // Anything but the latest version of the columns
+    region.get(new Get(ROW).addFamily(CACHED).setFilter(new FirstKeyOnlyFilter()));
+    region.get(new Get(ROW).addFamily(CACHED).readVersions(2));
+    region.get(new Get(ROW).addFamily(CACHED).setTimeRange(0, 100));
+    region.get(new Get(ROW).addFamily(CACHED).setCacheBlocks(false));
+    assertEquals(0, rowCache.getMissCount());
+    assertEquals(0, rowCache.getHitCount());
+  }
+
+  @Test
+  public void testRowsWithCellTTLAreNotCached() throws IOException {
+    region.put(new Put(ROW).addColumn(CACHED, Q1, Bytes.toBytes("v1")).setTTL(60000));
+    assertArrayEquals(Bytes.toBytes("v1"), getValue(new Get(ROW).addFamily(CACHED), CACHED, Q1));
+    assertArrayEquals(Bytes.toBytes("v1"), getValue(new Get(ROW).addFamily(CACHED), CACHED, Q1));
+    assertEquals(2, rowCache.getMissCount());
+    assertEquals(0, rowCache.getHitCount());
+  }
+
+  @Test
+  public void testInvalidateOnFlushAndClose() throws IOException {
+    put(CACHED, Q1, "v1");
+    region.get(new Get(ROW).addFamily(CACHED));
+    region.get(new Get(ROW).addFamily(CACHED));
+    assertEquals(1, rowCache.getHitCount());
+    region.flush(true);
+    assertArrayEquals(Bytes.toBytes("v1"), getValue(new Get(ROW).addFamily(CACHED), CACHED, Q1));
+    assertEquals(2, rowCache.getMissCount());
+    assertEquals(1, rowCache.getHitCount());
+
+    rowCache.cleanUp();
+    assertEquals(1, rowCache.getEntryCount());
+    HBaseTestingUtil.closeRegionAndWAL(region);
+    region = null;
+    rowCache.cleanUp();
+    assertEquals(0, rowCache.getEntryCount());
+  }
+
+  @Test
+  public void testLargeRowsAreNotCached() throws IOException {
+    rowCache = new RowCache(1024 * 1024, 1024);
+    RegionRowCache regionRowCache = rowCache.forRegion(region.getTableDescriptor());
+    region.put(new Put(ROW).addColumn(CACHED, Q1, new byte[2048]));
+    Get get = new Get(ROW).addFamily(CACHED);
+    regionRowCache.cache(get, regionRowCache.getVersion(ROW), region.get(get).listCells());
+    assertNull(regionRowCache.get(get));
+    put(CACHED, Q1, "v1");
+    regionRowCache.cache(get, regionRowCache.getVersion(ROW), region.get(get).listCells());
+    assertEquals(1, regionRowCache.get(get).size());
+  }
+}
@@ -18,6 +18,7 @@
 package org.apache.hadoop.hbase.regionserver.wal;
 
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -27,6 +28,7 @@ import java.util.List;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.hadoop.conf.Configuration;
@@ -41,6 +43,7 @@ import org.apache.hadoop.hbase.client.RegionInfo;
 import org.apache.hadoop.hbase.client.RegionInfoBuilder;
 import org.apache.hadoop.hbase.client.TableDescriptor;
 import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.regionserver.HRegion;
 import org.apache.hadoop.hbase.regionserver.LogRoller;
 import org.apache.hadoop.hbase.regionserver.MultiVersionConcurrencyControl;
 import org.apache.hadoop.hbase.regionserver.RegionServerServices;
@@ -225,4 +228,46 @@ public class TestAsyncFSWAL extends AbstractTestFSWAL {
       assertNull(error.get());
     }
   }
+
+  /**
+   * Test that once the batch window is open, a sync is held until it ends, but a forced one is not.
+   */
+  @Test
+  public void testSyncBatchWindow() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setBoolean(HRegion.WAL_HSYNC_CONF_KEY, false);
+    conf.setLong(AsyncFSWAL.WAL_SYNC_BATCH_TARGET_LATENCY_US, TimeUnit.SECONDS.toMicros(60));
+    conf.setLong(AsyncFSWAL.WAL_SYNC_BATCH_MAX_WINDOW_US, TimeUnit.SECONDS.toMicros(20));
+    // the window opens by a twentieth of the maximum once a full sample of syncs is under target
+    long windowNs = TimeUnit.SECONDS.toNanos(1);
+    TableDescriptor td = TableDescriptorBuilder.newBuilder(TableName.valueOf("table"))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.of("row")).build();
+    RegionInfo ri = RegionInfoBuilder.newBuilder(td.getTableName()).build();
+    MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    NavigableMap<byte[], Integer> scopes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (byte[] fam : td.getColumnFamilyNames()) {
+      scopes.put(fam, 0);
+    }
+    String testName = currentTest.getMethodName();
+    try (AbstractFSWAL<?> wal = newWAL(FS, CommonFSUtils.getWALRootDir(conf), DIR.toString(),
+      testName, conf, null, true, null, null)) {
+      for (int i = 0; i < SyncBatchController.SAMPLES; i++) {
+        addEdits(wal, ri, td, 1, mvcc, scopes, "row");
+      }
+      long startNs = System.nanoTime();
+      addEdits(wal, ri, td, 1, mvcc, scopes, "row");
+      assertTrue(System.nanoTime() - startNs >= windowNs);
+
+      startNs = System.nanoTime();
+      byte[] row = Bytes.toBytes("row");
+      long timestamp = EnvironmentEdgeManager.currentTime();
+      WALEdit cols = new WALEdit();
+      cols.add(new KeyValue(row, row, row, timestamp, row));
+      wal.appendData(ri, new WALKeyImpl(ri.getEncodedNameAsBytes(), td.getTableName(),
+        SequenceId.NO_SEQUENCE_ID, timestamp, WALKey.EMPTY_UUIDS, HConstants.NO_NONCE,
+        HConstants.NO_NONCE, mvcc, scopes), cols);
+      wal.sync(true);
+      assertTrue(System.nanoTime() - startNs < windowNs);
+    }
+  }
 }
@@ -77,6 +77,16 @@ public class TestMetricsWAL {
     verify(source, times(1)).incrementSyncTime(145);
   }
 
+  @Test
+  public void testPostSyncBatch() throws Exception {
+    long nanos = TimeUnit.MICROSECONDS.toNanos(250);
+    MetricsWALSource source = mock(MetricsWALSourceImpl.class);
+    MetricsWAL metricsWAL = new MetricsWAL(source);
+    metricsWAL.postSyncBatch(nanos, 4096);
+    verify(source, times(1)).incrementSyncBatchWindow(250);
+    verify(source, times(1)).incrementSyncBatchSize(4096);
+  }
+
   @Test
   public void testSlowAppend() throws Exception {
     String testName = name.getMethodName();
@@ -136,6 +146,23 @@ public class TestMetricsWAL {
     }
   }
 
+  @Test
+  public void testPerGroupWALMetrics() throws Exception {
+    MetricsWALSourceImpl source = new MetricsWALSourceImpl("foo", "foo", "foo", "foo");
+    WALKey walKey = new WALKeyImpl(null, TableName.valueOf("foo"), -1);
+    MetricsWAL group0 = new MetricsWAL(source, "regiongroup-0");
+    MetricsWAL group1 = new MetricsWAL(source, "regiongroup-1");
+    group0.postAppend(100, 1, walKey, null);
+    group0.postAppend(200, 1, walKey, null);
+    group1.postAppend(50, 1, walKey, null);
+    new MetricsWAL(source).postAppend(10, 1, walKey, null);
+    DynamicMetricsRegistry registry = source.getMetricsRegistry();
+    assertEquals(300,
+      registry.getCounter("regiongroup-0." + MetricsWALSource.GROUP_APPEND_SIZE, -1).value());
+    assertEquals(50,
+      registry.getCounter("regiongroup-1." + MetricsWALSource.GROUP_APPEND_SIZE, -1).value());
+  }
+
   @Test
   public void testLogRolls() {
     String testName = name.getMethodName();
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestSyncBatchController {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestSyncBatchController.class);
+
+  private static final long TARGET_NS = TimeUnit.MILLISECONDS.toNanos(2);
+
+  private static final long MAX_WINDOW_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static void completeSyncs(SyncBatchController controller, long latencyNs) {
+    for (int i = 0; i < SyncBatchController.SAMPLES; i++) {
+      controller.syncCompleted(latencyNs);
+    }
+  }
+
+  @Test
+  public void testDisabled() {
+    SyncBatchController controller = new SyncBatchController(0, MAX_WINDOW_NS);
+    assertFalse(controller.isEnabled());
+    completeSyncs(controller, 1);
+    assertEquals(0, controller.getWindowNs());
+    assertTrue(controller.getRemainingNs(0, 0, false) <= 0);
+  }
+
+  @Test
+  public void testWindowGrowsUnderTarget() {
+    SyncBatchController controller = new SyncBatchController(TARGET_NS, MAX_WINDOW_NS);
+    assertTrue(controller.isEnabled());
+    assertEquals(0, controller.getWindowNs());
+    completeSyncs(controller, TARGET_NS / 2);
+    assertEquals(MAX_WINDOW_NS / 20, controller.getWindowNs());
+    // the requests are held until the window ends
+    assertEquals(MAX_WINDOW_NS / 20 - 10, controller.getRemainingNs(100, 110, false));
+    // but not the forced ones
+    assertTrue(controller.getRemainingNs(100, 110, true) <= 0);
+    for (int i = 0; i < 30; i++) {
+      completeSyncs(controller, TARGET_NS / 2);
+    }
+    assertEquals(MAX_WINDOW_NS, controller.getWindowNs());
+  }
+
+  @Test
+  public void testWindowShrinksOverTarget() {
+    SyncBatchController controller = new SyncBatchController(TARGET_NS, MAX_WINDOW_NS);
+    for (int i = 0; i < 20; i++) {
+      completeSyncs(controller, TARGET_NS / 2);
+    }
+    assertEquals(MAX_WINDOW_NS, controller.getWindowNs());
+    // a single slow sync is under the 99th percentile
+    controller.syncCompleted(TARGET_NS * 2);
+    for (int i = 1; i < SyncBatchController.SAMPLES; i++) {
+      controller.syncCompleted(TARGET_NS / 2);
+    }
+    assertEquals(MAX_WINDOW_NS, controller.getWindowNs());
+    // but not two
+    controller.syncCompleted(TARGET_NS * 2);
+    controller.syncCompleted(TARGET_NS * 2);
+    for (int i = 2; i < SyncBatchController.SAMPLES; i++) {
+      controller.syncCompleted(TARGET_NS / 2);
+    }
+    assertEquals(MAX_WINDOW_NS / 2, controller.getWindowNs());
+    // and the window closes if the syncs alone are too slow
+    for (int i = 0; i < 30; i++) {
+      completeSyncs(controller, TARGET_NS * 2);
+    }
+    assertEquals(0, controller.getWindowNs());
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Compares the Bloom filter chunks of compound Bloom filters with binary fuse filter chunks of the
+ * same byte size: bits per key, measured false positive rate, and the time to build a chunk and to
+ * look up keys that are and are not in it.
+ * <p>
+ * Usage: {@code BloomFilterChunkPerformanceEvaluation [chunkByteSize] [lookups]}
+ */
+@InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.TOOLS)
+public class BloomFilterChunkPerformanceEvaluation {
+
+  private static final double[] ERROR_RATES = { 0.05, 0.01, 0.001 };
+
+  private final int chunkByteSize;
+  private final int lookups;
+  private final Hash hash = Hash.getInstance(Hash.MURMUR_HASH3);
+
+  BloomFilterChunkPerformanceEvaluation(int chunkByteSize, int lookups) {
+    this.chunkByteSize = chunkByteSize;
+    this.lookups = lookups;
+  }
+
+  private static byte[] key(long i) {
+    return Bytes.toBytes(String.format("row-%012d", i));
+  }
+
+  private interface Lookup {
+    boolean contains(byte[] key);
+  }
+
+  private void run() {
+    System.out.println(String.format("%-12s %-10s %8s %8s %12s %10s %10s %10s", "chunk",
+      "errorRate", "keys", "bits/key", "fpRate", "build(ms)", "hit(ns)", "miss(ns)"));
+    for (double errorRate : ERROR_RATES) {
+      // Bloom filter chunk, sized as CompoundBloomFilterWriter does
+      long start = System.nanoTime();
+      BloomFilterChunk bloom =
+        BloomFilterUtil.createBySize(chunkByteSize, errorRate, Hash.MURMUR_HASH3, 0, BloomType.ROW);
+      bloom.allocBloom();
+      int bloomKeys = bloom.getMaxKeys() > Integer.MAX_VALUE ? 0 : (int) bloom.getMaxKeys();
+      for (int i = 0; i < bloomKeys; i++) {
+        byte[] k = key(i);
+        bloom.add(k, 0, k.length);
+      }
+      long bloomBuildNanos = System.nanoTime() - start;
+      ByteBuff bloomBuf = new SingleByteBuff(bloom.bloom);
+      int bloomSize = (int) bloom.getByteSize();
+      int hashCount = bloom.getHashCount();
+      report("bloom", errorRate, bloomKeys, bloomSize, bloomBuildNanos,
+        k -> BloomFilterUtil.contains(k, 0, k.length, bloomBuf, 0, bloomSize, hash, hashCount));
+
+      // Binary fuse filter chunk of the same byte size
+      start = System.nanoTime();
+      BinaryFuseFilterChunk fuse =
+        new BinaryFuseFilterChunk(chunkByteSize, errorRate, Hash.MURMUR_HASH3, BloomType.ROW);
+      fuse.allocBloom();
+      int fuseKeys = (int) fuse.getMaxKeys();
+      for (int i = 0; i < fuseKeys; i++) {
+        byte[] k = key(i);
+        fuse.add(k, 0, k.length);
+      }
+      fuse.compactBloom();
+      long fuseBuildNanos = System.nanoTime() - start;
+      ByteBuff fuseBuf = new SingleByteBuff(fuse.bloom);
+      report("binary_fuse", errorRate, fuseKeys, (int) fuse.getByteSize(), fuseBuildNanos,
+        k -> BinaryFuseFilterChunk.contains(k, 0, k.length, fuseBuf, 0, hash));
+    }
+  }
+
+  private void report(String name, double errorRate, int numKeys, int byteSize, long buildNanos,
+    Lookup lookup) {
+    byte[][] hits = new byte[Math.min(lookups, numKeys)][];
+    for (int i = 0; i < hits.length; i++) {
+      hits[i] = key((i * 7919L) % numKeys);
+    }
+    byte[][] misses = new byte[lookups][];
+    for (int i = 0; i < misses.length; i++) {
+      misses[i] = key(numKeys + (long) i);
+    }
+    // Warm up
+    for (int round = 0; round < 3; round++) {
+      lookupAll(lookup, hits);
+      lookupAll(lookup, misses);
+    }
+    long start = System.nanoTime();
+    lookupAll(lookup, hits);
+    long hitNanos = (System.nanoTime() - start) / Math.max(1, hits.length);
+    start = System.nanoTime();
+    int falsePositives = lookupAll(lookup, misses);
+    long missNanos = (System.nanoTime() - start) / Math.max(1, misses.length);
+    System.out.println(String.format("%-12s %-10s %8d %8.2f %12.6f %10.1f %10d %10d", name,
+      errorRate, numKeys, byteSize * 8.0 / numKeys, falsePositives * 1.0 / misses.length,
+      buildNanos / 1e6, hitNanos, missNanos));
+  }
+
+  private static int lookupAll(Lookup lookup, byte[][] keys) {
+    int found = 0;
+    for (byte[] k : keys) {
+      if (lookup.contains(k)) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  public static void main(String[] args) {
+    int chunkByteSize = args.length > 0 ? Integer.parseInt(args[0]) : 128 * 1024;
+    int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+    new BloomFilterChunkPerformanceEvaluation(chunkByteSize, lookups).run();
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.MultiByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.testclassification.MiscTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ MiscTests.class, SmallTests.class })
+public class TestBinaryFuseFilterChunk {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBinaryFuseFilterChunk.class);
+
+  private static BinaryFuseFilterChunk build(int byteSize, double errorRate, int numKeys) {
+    BinaryFuseFilterChunk chunk =
+      new BinaryFuseFilterChunk(byteSize, errorRate, Hash.MURMUR_HASH3, BloomType.ROW);
+    chunk.allocBloom();
+    for (int i = 0; i < numKeys; i++) {
+      byte[] key = Bytes.toBytes(i);
+      chunk.add(key, 0, key.length);
+    }
+    chunk.compactBloom();
+    return chunk;
+  }
+
+  private static boolean contains(BinaryFuseFilterChunk chunk, ByteBuff buf, int offset, int i) {
+    byte[] key = Bytes.toBytes(i);
+    return BinaryFuseFilterChunk.contains(key, 0, key.length, buf, offset, chunk.hash);
+  }
+
+  @Test
+  public void testNoFalseNegatives() throws Exception {
+    for (int numKeys : new int[] { 1, 2, 3, 10, 1000, 50000 }) {
+      BinaryFuseFilterChunk chunk = build(128 * 1024, 0.01, numKeys);
+      ByteBuff buf = new MultiByteBuff(chunk.bloom);
+      for (int i = 0; i < numKeys; i++) {
+        assertTrue("key " + i + " of " + numKeys, contains(chunk, buf, 0, i));
+      }
+    }
+  }
+
+  @Test
+  public void testErrorRateAndSize() throws Exception {
+    int numKeys = 50000;
+    for (double errorRate : new double[] { 0.05, 0.01, 0.001 }) {
+      BinaryFuseFilterChunk chunk = build(256 * 1024, errorRate, numKeys);
+      ByteBuff buf = new MultiByteBuff(chunk.bloom);
+      int falsePositives = 0;
+      int trials = 200000;
+      for (int i = numKeys; i < numKeys + trials; i++) {
+        if (contains(chunk, buf, 0, i)) {
+          falsePositives++;
+        }
+      }
+      double rate = falsePositives * 1.0 / trials;
+      assertTrue("error rate " + rate + " for " + errorRate, rate < errorRate * 1.2);
+      // Smaller than a Bloom filter with the same error rate
+      assertTrue(chunk.getByteSize() * 8 < BloomFilterUtil.computeBitSize(numKeys, errorRate));
+    }
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    BinaryFuseFilterChunk chunk = build(4096, 0.01, 1000);
+    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+    chunk.writeBloom(new DataOutputStream(bOut));
+    assertEquals(chunk.getByteSize(), bOut.size());
+    assertTrue(chunk.getByteSize() <= 4096);
+
+    // Read it back at an offset, spanning several buffers
+    byte[] bytes = new byte[bOut.size() + 33];
+    System.arraycopy(bOut.toByteArray(), 0, bytes, 33, bOut.size());
+    ByteBuff buf = new MultiByteBuff(ByteBuffer.wrap(bytes, 0, 100).slice(),
+      ByteBuffer.wrap(bytes, 100, bytes.length - 100).slice());
+    int falsePositives = 0;
+    for (int i = 0; i < 2000; i++) {
+      boolean found = contains(chunk, buf, 33, i);
+      if (i < 1000) {
+        assertTrue(found);
+      } else if (found) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives < 50);
+  }
+
+  @Test
+  public void testDuplicateKeys() throws Exception {
+    BinaryFuseFilterChunk chunk =
+      new BinaryFuseFilterChunk(4096, 0.01, Hash.MURMUR_HASH3, BloomType.ROW);
+    chunk.allocBloom();
+    for (int i = 0; i < 100; i++) {
+      byte[] key = Bytes.toBytes(i % 10);
+      chunk.add(key, 0, key.length);
+    }
+    chunk.compactBloom();
+    ByteBuff buf = new MultiByteBuff(chunk.bloom);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(contains(chunk, buf, 0, i));
+    }
+    assertFalse(chunk.getByteSize() > 4096);
+  }
+
+  @Test
+  public void testCreateAnother() {
+    BinaryFuseFilterChunk chunk =
+      new BinaryFuseFilterChunk(128 * 1024, 0.01, Hash.MURMUR_HASH3, BloomType.ROW);
+    BloomFilterChunk another = chunk.createAnother();
+    assertTrue(another instanceof BinaryFuseFilterChunk);
+    assertEquals(chunk.getMaxKeys(), another.getMaxKeys());
+    assertEquals(7, ((BinaryFuseFilterChunk) another).getFingerprintBits());
+    assertEquals(0, another.getKeyCount());
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.wal;
+
+import static org.apache.hadoop.hbase.wal.BoundedGroupingStrategy.NUM_REGION_GROUPS;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestLoadAwareGroupingStrategy {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestLoadAwareGroupingStrategy.class);
+
+  private static final String[] GROUPS =
+    { "test.regiongroup-0", "test.regiongroup-1", "test.regiongroup-2" };
+
+  private LoadAwareGroupingStrategy strategy;
+
+  @Before
+  public void setUp() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(NUM_REGION_GROUPS, GROUPS.length);
+    conf.setLong(LoadAwareGroupingStrategy.REBALANCE_INTERVAL, 0);
+    conf.setInt(LoadAwareGroupingStrategy.MAX_MOVES, 1);
+    strategy = new LoadAwareGroupingStrategy();
+    strategy.init(conf, "test");
+  }
+
+  private String group(String region) {
+    return strategy.group(Bytes.toBytes(region), null);
+  }
+
+  private void append(String region, long size) {
+    strategy.appended(group(region), Bytes.toBytes(region), size);
+  }
+
+  @Test
+  public void testNewRegionsInTurnWhenIdle() {
+    for (int i = 0; i < 6; i++) {
+      assertEquals(GROUPS[i % GROUPS.length], group("region-" + i));
+    }
+    // the assignment is kept
+    assertEquals(GROUPS[0], group("region-0"));
+  }
+
+  @Test
+  public void testMoveHotRegion() {
+    for (int i = 0; i < 4; i++) {
+      group("region-" + i);
+    }
+    append("region-0", 1000);
+    append("region-3", 500);
+    append("region-1", 100);
+    append("region-2", 100);
+    assertEquals(1, strategy.rebalance());
+    // the largest region of the hottest group moves to the coolest one
+    assertEquals(GROUPS[1], group("region-0"));
+    assertEquals(GROUPS[0], group("region-3"));
+    // new regions go to the least loaded group
+    assertEquals(GROUPS[2], group("region-4"));
+  }
+
+  @Test
+  public void testNoMoveWhenBalanced() {
+    for (int i = 0; i < 6; i++) {
+      append("region-" + i, 100);
+    }
+    assertEquals(0, strategy.rebalance());
+    for (int i = 0; i < 6; i++) {
+      assertEquals(GROUPS[i % GROUPS.length], group("region-" + i));
+    }
+  }
+
+  @Test
+  public void testNoMoveOfWholeImbalance() {
+    for (int i = 0; i < 3; i++) {
+      group("region-" + i);
+    }
+    // moving the only busy region would just make another group the hottest
+    append("region-0", 1000);
+    assertEquals(0, strategy.rebalance());
+    assertEquals(GROUPS[0], group("region-0"));
+  }
+
+  @Test
+  public void testClosedRegionIsForgotten() {
+    for (int i = 0; i < 4; i++) {
+      group("region-" + i);
+    }
+    append("region-0", 1000);
+    strategy.closed(Bytes.toBytes("region-0"));
+    append("region-3", 500);
+    append("region-1", 100);
+    append("region-2", 100);
+    // region-0 no longer counts, so the groups are balanced enough
+    assertEquals(0, strategy.rebalance());
+    // and gets a new assignment if reopened
+    assertEquals(GROUPS[1], group("region-0"));
+  }
+
+  @Test
+  public void testMovedRegionCountsInOldGroupUntilSwitched() {
+    for (int i = 0; i < 4; i++) {
+      group("region-" + i);
+    }
+    append("region-0", 1000);
+    append("region-3", 500);
+    append("region-1", 100);
+    append("region-2", 100);
+    assertEquals(1, strategy.rebalance());
+    // region-0 still appends to its old WAL, it must not be picked again
+    strategy.appended(GROUPS[0], Bytes.toBytes("region-0"), 1000);
+    append("region-3", 100);
+    append("region-1", 100);
+    append("region-2", 100);
+    assertEquals(1, strategy.rebalance());
+    assertEquals(GROUPS[1], group("region-0"));
+    assertEquals(GROUPS[1], group("region-3"));
+  }
+}